@@ -0,0 +1,127 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 比較三種呼叫路徑的每次呼叫成本:
+ * - baseline:          不經過斷路器，直接呼叫 RestTemplate
+ * - aopProxy:          DownstreamService.callDownstream() 的 @CircuitBreaker AOP 代理
+ * - decoratedSupplier: CircuitBreaker.decorateSupplier() 直接包裝
+ *
+ * 下游以 StubClientHttpRequestFactory 取代，日誌等級調到 ERROR，
+ * 量到的是斷路器 + Spring 本身的開銷，而非網路或 console I/O。
+ *
+ * 執行: ./gradlew jmh -PjmhIncludes=CircuitBreakerInvocationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CircuitBreakerInvocationBenchmark {
+
+    private static final int CONTENDED_THREADS = 4;
+
+    @Param({"CLOSED", "OPEN", "HALF_OPEN"})
+    public BreakerState state;
+
+    private ConfigurableApplicationContext context;
+    private DownstreamService downstreamService;
+    private RestTemplate restTemplate;
+    private String downstreamUrl;
+    private CircuitBreaker proxyCircuitBreaker;
+    private CircuitBreaker plainCircuitBreaker;
+    private Supplier<String> decoratedSupplier;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new SpringApplicationBuilder(CircuitBreakerDemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "downstream.url=http://stub.invalid/",
+                        "logging.level.root=ERROR",
+                        // 避免 OPEN 在量測期間自動轉為 HALF_OPEN
+                        "resilience4j.circuitbreaker.configs.default.waitDurationInOpenState=1h",
+                        "resilience4j.circuitbreaker.configs.default.automaticTransitionFromOpenToHalfOpenEnabled=false")
+                .run();
+
+        downstreamService = context.getBean(DownstreamService.class);
+        restTemplate = context.getBean(RestTemplate.class);
+        restTemplate.setRequestFactory(new StubClientHttpRequestFactory());
+        downstreamUrl = context.getEnvironment().getProperty("downstream.url");
+
+        CircuitBreakerRegistry registry = context.getBean(CircuitBreakerRegistry.class);
+        proxyCircuitBreaker = registry.circuitBreaker("downstreamService");
+        plainCircuitBreaker = registry.circuitBreaker("plainSupplier");
+        decoratedSupplier = CircuitBreaker.decorateSupplier(plainCircuitBreaker,
+                () -> restTemplate.getForObject(downstreamUrl, String.class));
+    }
+
+    @Setup(Level.Iteration)
+    public void enterState() {
+        state.applyTo(proxyCircuitBreaker);
+        state.applyTo(plainCircuitBreaker);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String baseline() {
+        return restTemplate.getForObject(downstreamUrl, String.class);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public DownstreamResponse aopProxy() {
+        return downstreamService.callDownstream();
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public DownstreamResponse aopProxyContended() {
+        return downstreamService.callDownstream();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String decoratedSupplier() {
+        return callDecorated();
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public String decoratedSupplierContended() {
+        return callDecorated();
+    }
+
+    private String callDecorated() {
+        try {
+            return decoratedSupplier.get();
+        } catch (CallNotPermittedException ex) {
+            return downstreamService.fallback(ex).body();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.poc.circuitbreaker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 斷路器 OPEN 時被拒絕的呼叫成本: ApiController.call() 到回應 body 的 bytes
+ *
+ * - fastReject=true:  CallNotPermittedException 不帶 stack trace，回傳預先序列化的 bytes，WARN 日誌限流
+ * - fastReject=false: 原本的路徑，每次填 stack trace、組 fallback 字串、序列化 Map 並寫 WARN 日誌
+ *
+ * 以 -prof gc 執行 (build.gradle 預設) 時 gc.alloc.rate.norm 即為每個請求的配置量。
+ *
+ * 執行: ./gradlew jmh -PjmhIncludes=RejectionPathBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RejectionPathBenchmark {
+
+    private static final int CONTENDED_THREADS = 4;
+
+    @Param({"true", "false"})
+    public boolean fastReject;
+
+    private ConfigurableApplicationContext context;
+    private ApiController apiController;
+    private ObjectMapper objectMapper;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new SpringApplicationBuilder(CircuitBreakerDemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "downstream.url=http://stub.invalid/",
+                        "logging.level.root=ERROR",
+                        // fallback 的 WARN 日誌是比較對象之一，保留
+                        "logging.level.com.poc.circuitbreaker=WARN",
+                        "fast-reject.enabled=" + fastReject,
+                        "resilience4j.circuitbreaker.configs.default.writableStackTraceEnabled=" + !fastReject,
+                        // 只量測沒有快取可用的拒絕路徑
+                        "fallback.cache.enabled=false",
+                        "resilience4j.circuitbreaker.configs.default.waitDurationInOpenState=1h",
+                        "resilience4j.circuitbreaker.configs.default.automaticTransitionFromOpenToHalfOpenEnabled=false")
+                .run();
+        apiController = context.getBean(ApiController.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void openBreaker() {
+        BreakerState.OPEN.applyTo(context.getBean(CircuitBreakerRegistry.class).circuitBreaker("downstreamService"));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] rejected() throws IOException {
+        return respond();
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public byte[] rejectedContended() throws IOException {
+        return respond();
+    }
+
+    /**
+     * 與 HttpMessageConverter 相同: byte[] 原樣寫出，其他 body 交給 Jackson
+     */
+    private byte[] respond() throws IOException {
+        ResponseEntity<?> response = apiController.call();
+        Object body = response.getBody();
+        return body instanceof byte[] bytes ? bytes : objectMapper.writeValueAsBytes(body);
+    }
+}
@@ -0,0 +1,96 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 不經過網路的下游替身: 固定回傳 200 + JSON，讓基準測試只量到斷路器本身的成本
+ */
+class StubClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    static final byte[] BODY = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new StubRequest(uri, httpMethod);
+    }
+
+    private static final class StubRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+
+        StubRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return new ByteArrayOutputStream(0);
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) {
+            return new StubResponse();
+        }
+    }
+
+    private static final class StubResponse implements ClientHttpResponse {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        StubResponse() {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentLength(BODY.length);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        public String getStatusText() {
+            return "OK";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(BODY);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
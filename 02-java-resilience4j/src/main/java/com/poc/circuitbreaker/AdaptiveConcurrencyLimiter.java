@@ -0,0 +1,118 @@
+package com.poc.circuitbreaker;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 依 RTT 自動調整的並行上限 (Gradient 演算法)
+ *
+ * - 長期 RTT 以 EWMA 追蹤，短期 RTT 為最新樣本
+ * - gradient = tolerance * 長期 RTT / 短期 RTT (限制在 0.5 ~ 1.0)，RTT 變長時 gradient 小於 1，上限隨之下降
+ * - 每次再加上 sqrt(limit) 的排隊空間，RTT 正常時上限會慢慢往上探
+ * - 逾時 / IO 錯誤視為壅塞訊號，直接乘以 0.9；HTTP 錯誤等其他例外不列入樣本
+ * - 使用量不到上限一半時不調整，避免閒置時把上限推到很高
+ *
+ * 超過上限的呼叫立即以 ConcurrencyLimitExceededException 拒絕。
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final ConcurrencyLimitProperties props;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder shed = new LongAdder();
+
+    private volatile double limit;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimiter(String name, ConcurrencyLimitProperties props) {
+        this.name = name;
+        this.props = props;
+        this.limit = props.getInitialLimit();
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        if (!props.isEnabled()) {
+            return call.get();
+        }
+        int current = acquire();
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            onSample(System.nanoTime() - start, current, false);
+            return result;
+        } catch (RuntimeException ex) {
+            if (isCongestion(ex)) {
+                onSample(System.nanoTime() - start, current, true);
+            }
+            throw ex;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private int acquire() {
+        while (true) {
+            int current = inFlight.get();
+            int allowed = (int) limit;
+            if (current >= allowed) {
+                shed.increment();
+                throw new ConcurrencyLimitExceededException(name, allowed);
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        double newLimit;
+        if (dropped) {
+            newLimit = limit * BACKOFF_RATIO;
+        } else {
+            longRttNanos = longRttNanos == 0
+                    ? rttNanos
+                    : longRttNanos + (rttNanos - longRttNanos) / props.getLongWindow();
+            // 長期 RTT 遠高於目前 RTT (例如剛從壅塞恢復)，往下拉回，讓上限能再回升
+            if (longRttNanos / rttNanos > 2) {
+                longRttNanos *= 0.95;
+            }
+            if (inFlightAtStart < limit / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, props.getRttTolerance() * longRttNanos / rttNanos));
+            newLimit = limit * gradient + Math.sqrt(limit);
+            newLimit = limit * (1 - props.getSmoothing()) + newLimit * props.getSmoothing();
+        }
+        limit = Math.max(props.getMinLimit(), Math.min(props.getMaxLimit(), newLimit));
+    }
+
+    private static boolean isCongestion(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof IOException || t instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", props.isEnabled());
+        stats.put("limit", limit());
+        stats.put("in_flight", inFlight.get());
+        stats.put("shed_calls", shed.sum());
+        stats.put("long_rtt_ms", longRttNanos / 1_000_000.0);
+        return stats;
+    }
+}
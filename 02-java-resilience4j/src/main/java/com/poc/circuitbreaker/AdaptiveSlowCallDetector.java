@@ -0,0 +1,138 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.circuitbreaker.IllegalStateTransitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 依觀察到的延遲自動調整的慢速呼叫門檻
+ *
+ * - 每 baselineWindow 筆呼叫計算一次 p99，以 EWMA 併入基準；門檻 = max(minThreshold, 基準 × multiplier)
+ * - 所有呼叫 (含慢速) 都列入基準，長期變慢時門檻會跟著緩慢上升，短時間的劣化則會先觸發 OPEN
+ * - 斷路器為 CLOSED 時以 64-bit 位元環記錄最近 windowSize 筆是否慢速，比例達到 rateThreshold 即轉為 OPEN
+ *
+ * Resilience4j 的 slowCallDurationThreshold 是固定值、且無法在執行中修改，
+ * 因此慢速比例在這裡自行計算，由 transitionToOpenState() 開啟斷路器。
+ */
+public class AdaptiveSlowCallDetector {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveSlowCallDetector.class);
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final String name;
+    private final SlowCallProperties props;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final long minThresholdNanos;
+    private final long[] samples;
+    private int sampleCount;
+    private double baselineNanos;
+    private volatile long thresholdNanos;
+
+    private long outcomes;
+    private int cursor;
+    private int calls;
+    private final LongAdder slowOpens = new LongAdder();
+
+    public AdaptiveSlowCallDetector(CircuitBreakerRegistry circuitBreakerRegistry, String name, SlowCallProperties props) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.name = name;
+        this.props = props;
+        this.windowSize = Math.max(1, Math.min(props.getWindowSize(), Long.SIZE));
+        this.minimumCalls = Math.min(props.getMinimumCalls(), windowSize);
+        this.minThresholdNanos = props.getMinThreshold().toNanos();
+        this.samples = new long[Math.max(1, props.getBaselineWindow())];
+        this.thresholdNanos = props.getInitialThreshold().toNanos();
+    }
+
+    /**
+     * 記錄一次實際送往下游的呼叫耗時；回傳是否為慢速呼叫
+     */
+    public boolean record(long nanos) {
+        if (!props.isEnabled()) {
+            return false;
+        }
+        boolean slow = nanos > thresholdNanos;
+        boolean trip = false;
+        // 每次從 registry 取得，斷路器被替換 (CircuitBreakerReconfigurer) 後作用在新的 instance
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(name);
+        synchronized (this) {
+            samples[sampleCount++] = nanos;
+            if (sampleCount == samples.length) {
+                updateBaseline();
+            }
+            if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+                resetWindow();
+            } else {
+                long bit = 1L << cursor;
+                outcomes = slow ? outcomes | bit : outcomes & ~bit;
+                cursor = (cursor + 1) % windowSize;
+                if (calls < windowSize) {
+                    calls++;
+                }
+                if (calls >= minimumCalls && slowCallRate() >= props.getRateThreshold()) {
+                    resetWindow();
+                    trip = true;
+                }
+            }
+        }
+        if (trip) {
+            open(circuitBreaker);
+        }
+        return slow;
+    }
+
+    private void updateBaseline() {
+        Arrays.sort(samples);
+        long p99 = samples[(int) Math.ceil(0.99 * samples.length) - 1];
+        baselineNanos = baselineNanos == 0 ? p99 : baselineNanos + props.getSmoothing() * (p99 - baselineNanos);
+        thresholdNanos = Math.max(minThresholdNanos, (long) (baselineNanos * props.getMultiplier()));
+        sampleCount = 0;
+    }
+
+    private void resetWindow() {
+        outcomes = 0;
+        cursor = 0;
+        calls = 0;
+    }
+
+    private float slowCallRate() {
+        return calls == 0 ? 0f : Long.bitCount(outcomes) * 100f / calls;
+    }
+
+    private void open(CircuitBreaker circuitBreaker) {
+        try {
+            circuitBreaker.transitionToOpenState();
+            slowOpens.increment();
+            log.warn("CB [{}] opened: slow call rate reached {}% (threshold {}ms)",
+                circuitBreaker.getName(), props.getRateThreshold(), thresholdNanos / 1_000_000);
+        } catch (IllegalStateTransitionException ex) {
+            // 同時已被失敗率轉換過狀態
+        }
+    }
+
+    /**
+     * 目前的慢速門檻 (毫秒)
+     */
+    public double thresholdMillis() {
+        return thresholdNanos / 1_000_000.0;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", props.isEnabled());
+        stats.put("threshold_ms", thresholdMillis());
+        stats.put("baseline_p99_ms", baselineNanos / 1_000_000.0);
+        stats.put("slow_call_rate", calls < minimumCalls ? -1.0f : slowCallRate());
+        stats.put("window_calls", calls);
+        stats.put("slow_opens", slowOpens.sum());
+        return stats;
+    }
+}
@@ -2,9 +2,13 @@ package com.poc.circuitbreaker;
 
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -13,19 +17,90 @@ import java.util.Map;
 public class ApiController {
 
     private final DownstreamService downstreamService;
+    private final ReactiveDownstreamService reactiveDownstreamService;
+    private final RequestCoalescer requestCoalescer;
     private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final LatencyRecorder latencyRecorder;
+    private final ClusterStateSync clusterStateSync;
+    private final AdaptiveSlowCallDetector slowCallDetector;
+    private final CircuitBreakerReconfigurer circuitBreakerReconfigurer;
+    private final ResponseStreamer responseStreamer;
+    private final RetryPolicy retryPolicy;
 
     public ApiController(DownstreamService downstreamService,
-                         CircuitBreakerRegistry circuitBreakerRegistry) {
+                         ReactiveDownstreamService reactiveDownstreamService,
+                         RequestCoalescer requestCoalescer,
+                         CircuitBreakerRegistry circuitBreakerRegistry,
+                         AdaptiveConcurrencyLimiter concurrencyLimiter,
+                         LatencyRecorder latencyRecorder,
+                         ClusterStateSync clusterStateSync,
+                         AdaptiveSlowCallDetector slowCallDetector,
+                         CircuitBreakerReconfigurer circuitBreakerReconfigurer,
+                         ResponseStreamer responseStreamer,
+                         RetryPolicy retryPolicy) {
         this.downstreamService = downstreamService;
+        this.reactiveDownstreamService = reactiveDownstreamService;
+        this.requestCoalescer = requestCoalescer;
         this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.latencyRecorder = latencyRecorder;
+        this.clusterStateSync = clusterStateSync;
+        this.slowCallDetector = slowCallDetector;
+        this.circuitBreakerReconfigurer = circuitBreakerReconfigurer;
+        this.responseStreamer = responseStreamer;
+        this.retryPolicy = retryPolicy;
     }
 
+    /**
+     * 開啟 coalescing.enabled 時，同時到達的請求共用同一次下游呼叫
+     */
     @GetMapping("/api/call")
-    public ResponseEntity<Map<String, Object>> call() {
-        CircuitBreaker cb = circuitBreakerRegistry.circuitBreaker("downstreamService");
+    public ResponseEntity<?> call() {
+        return respond(requestCoalescer.execute("downstreamService", downstreamService::callDownstream));
+    }
 
-        String result = downstreamService.callDownstream();
+    /**
+     * 非阻塞呼叫: 等待下游期間 Servlet 執行緒即釋放
+     */
+    @GetMapping("/api/reactive/call")
+    public Mono<ResponseEntity<?>> reactiveCall() {
+        return reactiveDownstreamService.callDownstream()
+            .map(this::respond);
+    }
+
+    /**
+     * 串流轉送: body 與下游相同，斷路器狀態在 X-Circuit-State / X-Circuit-Failure-Rate header
+     */
+    @GetMapping("/api/call/stream")
+    public void stream(HttpServletResponse response) {
+        downstreamService.streamDownstream(response);
+    }
+
+    @GetMapping("/api/reactive/call/stream")
+    public Mono<Void> reactiveStream(HttpServletResponse response) {
+        return reactiveDownstreamService.streamDownstream(response);
+    }
+
+    /**
+     * 取自快取的回應加上 Age header (秒)；斷路器拒絕時的預先序列化回應直接寫出 bytes
+     */
+    private ResponseEntity<?> respond(DownstreamResponse result) {
+        if (result.isPreSerialized()) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(result.serialized());
+        }
+        Map<String, Object> body = buildResponse(result.body());
+        if (!result.fromCache()) {
+            return ResponseEntity.ok(body);
+        }
+        body.put("cache_age_ms", result.age().toMillis());
+        return ResponseEntity.ok()
+            .header(HttpHeaders.AGE, String.valueOf(result.age().toSeconds()))
+            .body(body);
+    }
+
+    private Map<String, Object> buildResponse(String result) {
+        CircuitBreaker cb = circuitBreakerRegistry.circuitBreaker("downstreamService");
 
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("circuit_state", cb.getState().name());
@@ -35,8 +110,7 @@ public class ApiController {
         response.put("successful_calls", cb.getMetrics().getNumberOfSuccessfulCalls());
         response.put("not_permitted_calls", cb.getMetrics().getNumberOfNotPermittedCalls());
         response.put("response", result);
-
-        return ResponseEntity.ok(response);
+        return response;
     }
 
     /**
@@ -57,15 +131,36 @@ public class ApiController {
         status.put("not_permitted_calls", metrics.getNumberOfNotPermittedCalls());
 
         Map<String, Object> config = new LinkedHashMap<>();
+        config.put("config_version", circuitBreakerReconfigurer.version(cb.getName()));
         config.put("sliding_window_size", cb.getCircuitBreakerConfig().getSlidingWindowSize());
         config.put("failure_rate_threshold", cb.getCircuitBreakerConfig().getFailureRateThreshold());
         config.put("wait_duration_in_open_state", cb.getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1) + "ms");
         config.put("permitted_calls_in_half_open", cb.getCircuitBreakerConfig().getPermittedNumberOfCallsInHalfOpenState());
 
         status.put("config", config);
+
+        Map<String, Object> coalescing = new LinkedHashMap<>();
+        coalescing.put("enabled", requestCoalescer.isEnabled());
+        coalescing.put("executed_calls", requestCoalescer.executedCalls("downstreamService"));
+        coalescing.put("coalesced_calls", requestCoalescer.coalescedCalls("downstreamService"));
+        status.put("coalescing", coalescing);
+        status.put("concurrency_limit", concurrencyLimiter.stats());
+        status.put("streaming", responseStreamer.stats());
+        status.put("latency", latencyRecorder.snapshot("downstreamService"));
+        status.put("slow_call", slowCallDetector.stats());
+        status.put("retry", retryPolicy.stats());
+        status.put("cluster", clusterStateSync.view("downstreamService"));
         return ResponseEntity.ok(status);
     }
 
+    /**
+     * 叢集狀態同步: node id、收送訊息數、因其他節點而開啟的次數
+     */
+    @GetMapping("/api/cluster")
+    public ResponseEntity<Map<String, Object>> cluster() {
+        return ResponseEntity.ok(clusterStateSync.stats());
+    }
+
     /**
      * 手動重置 Circuit Breaker
      */
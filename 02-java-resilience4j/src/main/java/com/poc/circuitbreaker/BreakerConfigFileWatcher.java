@@ -0,0 +1,125 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定期讀取斷路器設定檔，內容改變時交給 CircuitBreakerReconfigurer 套用
+ *
+ * - 以內容比對而非檔案修改時間: k8s ConfigMap 更新是替換 symlink，修改時間不一定改變
+ * - 每個斷路器在每版檔案內容只套用一次，之後透過 actuator 的調整不會被覆蓋；
+ *   檔案列出但尚未建立的斷路器 (第一次呼叫時才建立) 在之後的檢查中套用
+ * - 格式錯誤或不合法的值只記錄 log，不影響其他斷路器
+ */
+public class BreakerConfigFileWatcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BreakerConfigFileWatcher.class);
+
+    private final Path file;
+    private final CircuitBreakerReconfigurer reconfigurer;
+    private final CircuitBreakerRegistry registry;
+    private final ScheduledExecutorService scheduler;
+    private byte[] content;
+    private Map<String, Map<String, String>> desired = Map.of();
+    private final Set<String> applied = new HashSet<>();
+
+    public BreakerConfigFileWatcher(ReconfigurationProperties props, CircuitBreakerReconfigurer reconfigurer,
+                                    CircuitBreakerRegistry registry) {
+        this.file = props.getFile();
+        this.reconfigurer = reconfigurer;
+        this.registry = registry;
+        if (file == null) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "breaker-config");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = props.getPollInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::poll, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void poll() {
+        try {
+            byte[] current = Files.readAllBytes(file);
+            if (!Arrays.equals(current, content)) {
+                desired = parse(current);
+                content = current;
+                applied.clear();
+                log.info("Breaker config file {} changed: {} breaker(s)", file, desired.size());
+            }
+        } catch (NoSuchFileException ex) {
+            return;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Breaker config file {} ignored: {}", file, ex.toString());
+            return;
+        }
+        desired.forEach((name, values) -> {
+            if (applied.contains(name) || registry.find(name).isEmpty()) {
+                return;
+            }
+            applied.add(name);
+            try {
+                reconfigurer.reconfigure(name, CircuitBreakerReconfigurer.Change.parse(values));
+            } catch (IllegalArgumentException ex) {
+                log.warn("CB [{}] config from {} rejected: {}", name, file, ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 攤平成 name.key=value 後以最後一個 '.' 分組
+     */
+    private Map<String, Map<String, String>> parse(byte[] bytes) throws IOException {
+        Properties properties;
+        String fileName = file.getFileName().toString();
+        if (fileName.endsWith(".yml") || fileName.endsWith(".yaml")) {
+            YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+            yaml.setResources(new ByteArrayResource(bytes));
+            properties = yaml.getObject();
+        } else {
+            properties = new Properties();
+            properties.load(new ByteArrayInputStream(bytes));
+        }
+        Map<String, Map<String, String>> byBreaker = new LinkedHashMap<>();
+        if (properties == null) {
+            return byBreaker;
+        }
+        properties.forEach((key, value) -> {
+            String path = key.toString();
+            int dot = path.lastIndexOf('.');
+            if (dot > 0) {
+                byBreaker.computeIfAbsent(path.substring(0, dot), name -> new LinkedHashMap<>())
+                    .put(path.substring(dot + 1), String.valueOf(value));
+            }
+        });
+        return byBreaker;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
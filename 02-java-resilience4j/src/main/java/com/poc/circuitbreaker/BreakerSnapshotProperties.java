@@ -0,0 +1,71 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 斷路器狀態快照設定 (breaker-snapshot.*)
+ *
+ * 定期把每個斷路器的狀態、OPEN 起始時間與視窗計數寫入 memory-mapped 檔案，
+ * 重新啟動時在接受流量前還原，避免 pod 在下游故障期間重啟後立刻以 CLOSED 狀態衝擊下游。
+ */
+@ConfigurationProperties(prefix = "breaker-snapshot")
+public class BreakerSnapshotProperties {
+
+    /** 是否啟用 */
+    private boolean enabled = false;
+
+    /** 快照檔路徑 (k8s 上放在 emptyDir 等可跨容器重啟保留的 volume) */
+    private Path path = Path.of(System.getProperty("java.io.tmpdir"), "circuit-breaker-snapshot.bin");
+
+    /** 定期寫入的間隔 (狀態轉換時另外立即寫入) */
+    private Duration interval = Duration.ofSeconds(1);
+
+    /** 超過此時間的快照視為過期，不還原 */
+    private Duration maxAge = Duration.ofMinutes(5);
+
+    /** 檔案可容納的斷路器數量 */
+    private int maxBreakers = 64;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public void setPath(Path path) {
+        this.path = path;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public void setInterval(Duration interval) {
+        this.interval = interval;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public int getMaxBreakers() {
+        return maxBreakers;
+    }
+
+    public void setMaxBreakers(int maxBreakers) {
+        this.maxBreakers = maxBreakers;
+    }
+}
@@ -0,0 +1,266 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnStateTransitionEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 斷路器事件的非同步批次輸出，取代每次呼叫一行 log 的 listener
+ *
+ * - 呼叫端只把事件 (類型、斷路器 id、耗時) 寫入固定大小的 ring buffer，不做 I/O、不配置物件
+ * - ring buffer 為 lock-free 多生產者佇列 (每格一個序號)；滿了就丟棄並計數，不阻塞呼叫端
+ * - 背景執行緒每 drainInterval 取出事件並依斷路器彙總；有事件時每 100µs 再取一次直到取空，
+ *   每 flushInterval 輸出一行摘要
+ * - 狀態轉換仍在發生當下立即輸出
+ */
+public class CircuitBreakerEventSink implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerEventSink.class);
+
+    private static final long BUSY_PARK_NANOS = 100_000;
+
+    static final byte SUCCESS = 0;
+    static final byte ERROR = 1;
+    static final byte IGNORED_ERROR = 2;
+    static final byte NOT_PERMITTED = 3;
+    static final byte STATE_TRANSITION = 4;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final byte[] types;
+    private final int[] breakerIds;
+    private final long[] durations;
+    private final Class<?>[] errors;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+    private final LongAdder dropped = new LongAdder();
+    private long reportedDropped;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> attached = new ConcurrentHashMap<>();
+    private final List<Aggregate> aggregates = new CopyOnWriteArrayList<>();
+    private final long flushIntervalNanos;
+    private long nextFlush;
+    private final ScheduledExecutorService consumer;
+
+    public CircuitBreakerEventSink(EventSinkProperties props) {
+        this.capacity = Integer.highestOneBit(Math.max(2, props.getBufferSize() - 1)) << 1;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.types = new byte[capacity];
+        this.breakerIds = new int[capacity];
+        this.durations = new long[capacity];
+        this.errors = new Class<?>[capacity];
+        this.flushIntervalNanos = props.getFlushInterval().toNanos();
+        this.nextFlush = System.nanoTime() + flushIntervalNanos;
+        this.consumer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cb-event-sink");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long drainMillis = props.getDrainInterval().toMillis();
+        consumer.scheduleWithFixedDelay(this::drainAndMaybeFlush, drainMillis, drainMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 掛上事件 listener；同一個 instance 只註冊一次，
+     * 同名斷路器被替換 (CircuitBreakerReconfigurer) 時新的 instance 沿用同一份彙總
+     */
+    public void register(CircuitBreaker cb) {
+        String name = cb.getName();
+        int id;
+        synchronized (aggregates) {
+            if (attached.put(name, cb) == cb) {
+                return;
+            }
+            Integer existing = ids.get(name);
+            if (existing == null) {
+                existing = aggregates.size();
+                ids.put(name, existing);
+                aggregates.add(new Aggregate(name));
+            }
+            id = existing;
+        }
+        cb.getEventPublisher()
+            .onSuccess(event -> publish(SUCCESS, id, event.getElapsedDuration().toNanos(), null))
+            .onError(event -> publish(ERROR, id, event.getElapsedDuration().toNanos(), event.getThrowable().getClass()))
+            .onIgnoredError(event -> publish(IGNORED_ERROR, id, event.getElapsedDuration().toNanos(), event.getThrowable().getClass()))
+            .onCallNotPermitted(event -> publish(NOT_PERMITTED, id, 0, null))
+            .onStateTransition(event -> {
+                logStateTransition(event);
+                publish(STATE_TRANSITION, id, 0, null);
+            });
+    }
+
+    void publish(byte type, int breakerId, long durationNanos, Class<?> error) {
+        long seq;
+        int index;
+        while (true) {
+            seq = tail.get();
+            index = (int) (seq & mask);
+            long available = sequences.get(index);
+            if (available == seq) {
+                if (tail.compareAndSet(seq, seq + 1)) {
+                    break;
+                }
+            } else if (available < seq) {
+                // 消費者還沒取走上一輪的事件: buffer 已滿
+                dropped.increment();
+                return;
+            }
+        }
+        types[index] = type;
+        breakerIds[index] = breakerId;
+        durations[index] = durationNanos;
+        errors[index] = error;
+        sequences.set(index, seq + 1);
+    }
+
+    /**
+     * 只由背景執行緒 (或關閉時的呼叫端) 執行
+     */
+    synchronized int drain() {
+        int drained = 0;
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return drained;
+            }
+            aggregates.get(breakerIds[index]).add(types[index], durations[index], errors[index]);
+            errors[index] = null;
+            sequences.set(index, head + capacity);
+            head++;
+            drained++;
+        }
+    }
+
+    private void drainAndMaybeFlush() {
+        try {
+            // 持續有事件時不等下一個 drainInterval，避免 buffer 在兩次 drain 之間滿載
+            while (drain() > 0) {
+                LockSupport.parkNanos(BUSY_PARK_NANOS);
+            }
+            long now = System.nanoTime();
+            if (now - nextFlush >= 0) {
+                flush();
+                nextFlush = now + flushIntervalNanos;
+            }
+        } catch (RuntimeException ex) {
+            log.error("CB event sink failed", ex);
+        }
+    }
+
+    synchronized void flush() {
+        for (Aggregate aggregate : aggregates) {
+            aggregate.flush();
+        }
+        long total = dropped.sum();
+        long lost = total - reportedDropped;
+        reportedDropped = total;
+        if (lost > 0) {
+            log.warn("CB event buffer full, dropped {} events", lost);
+        }
+    }
+
+    private void logStateTransition(CircuitBreakerOnStateTransitionEvent event) {
+        log.warn("============================================");
+        log.warn("  CB [{}] 狀態轉換: {} → {}",
+            event.getCircuitBreakerName(),
+            event.getStateTransition().getFromState(),
+            event.getStateTransition().getToState());
+        log.warn("============================================");
+    }
+
+    /**
+     * 啟動以來因 buffer 已滿而丟棄的事件數
+     */
+    public long droppedEvents() {
+        return dropped.sum();
+    }
+
+    /**
+     * 測試用: 目前尚未 flush 的事件數
+     */
+    synchronized long pending(String name, byte type) {
+        Integer id = ids.get(name);
+        return id == null ? 0 : aggregates.get(id).count(type);
+    }
+
+    @Override
+    public void close() {
+        consumer.shutdown();
+        try {
+            consumer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        flush();
+    }
+
+    /**
+     * 單一斷路器在一個 flush 區間內的彙總 (只由持有 sink 鎖的執行緒存取)
+     */
+    static final class Aggregate {
+        private final String name;
+        private final long[] counts = new long[STATE_TRANSITION + 1];
+        private long timedCalls;
+        private long totalNanos;
+        private long maxNanos;
+        private Class<?> lastError;
+
+        Aggregate(String name) {
+            this.name = name;
+        }
+
+        void add(byte type, long durationNanos, Class<?> error) {
+            counts[type]++;
+            if (type <= IGNORED_ERROR) {
+                timedCalls++;
+                totalNanos += durationNanos;
+                maxNanos = Math.max(maxNanos, durationNanos);
+            }
+            if (error != null) {
+                lastError = error;
+            }
+        }
+
+        long count(byte type) {
+            return counts[type];
+        }
+
+        void flush() {
+            if (timedCalls == 0 && counts[NOT_PERMITTED] == 0 && counts[STATE_TRANSITION] == 0) {
+                return;
+            }
+            log.info("CB [{}] success={} error={} ignored={} not_permitted={} transitions={} avg={}ms max={}ms last_error={}",
+                name, counts[SUCCESS], counts[ERROR], counts[IGNORED_ERROR], counts[NOT_PERMITTED], counts[STATE_TRANSITION],
+                timedCalls == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos / timedCalls),
+                TimeUnit.NANOSECONDS.toMillis(maxNanos),
+                lastError == null ? "-" : lastError.getSimpleName());
+            Arrays.fill(counts, 0);
+            timedCalls = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+            lastError = null;
+        }
+    }
+}
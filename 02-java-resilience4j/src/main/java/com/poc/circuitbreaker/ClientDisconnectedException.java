@@ -0,0 +1,13 @@
+package com.poc.circuitbreaker;
+
+/**
+ * 串流轉送時寫入呼叫端失敗 (連線已中斷)
+ *
+ * 與下游無關，斷路器設定為 ignoreExceptions；讀取下游失敗則維持原本的例外，計入失敗率。
+ */
+public class ClientDisconnectedException extends RuntimeException {
+
+    public ClientDisconnectedException(Throwable cause) {
+        super("Client disconnected while streaming: " + cause.getMessage(), cause, false, false);
+    }
+}
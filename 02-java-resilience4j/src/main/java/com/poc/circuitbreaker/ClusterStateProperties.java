@@ -0,0 +1,107 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多個 replica 之間共享斷路器狀態 (cluster-state.*)
+ *
+ * 任一節點的斷路器轉為 OPEN 時通知其他節點，其他節點的同名斷路器隨即 OPEN，
+ * 不必各自再累積一整個失敗視窗。
+ */
+@ConfigurationProperties(prefix = "cluster-state")
+public class ClusterStateProperties {
+
+    public enum Transport { LOOPBACK, UDP }
+
+    /** 是否啟用 (預設關閉，單一 replica 不需要) */
+    private boolean enabled = false;
+
+    /** 傳輸層: UDP 或 LOOPBACK (同一 JVM，測試用) */
+    private Transport transport = Transport.UDP;
+
+    /** UDP 監聽的 port */
+    private int port = 7946;
+
+    /** 其他節點 host:port；可使用 headless service 名稱 */
+    private List<String> peers = new ArrayList<>();
+
+    /** 定期送出視窗摘要的間隔 (同時補足遺失的狀態轉換訊息) */
+    private Duration summaryInterval = Duration.ofSeconds(1);
+
+    /** 超過此時間沒有收到摘要的節點不再列入 */
+    private Duration peerTimeout = Duration.ofSeconds(5);
+
+    /** 是否依其他節點的 OPEN 或合併後的失敗率預先開啟本地斷路器 */
+    private boolean applyRemoteOpen = true;
+
+    /** 訊息簽章 (HMAC-SHA256) 的共用密鑰；空字串表示不簽章，只依來源位址過濾 */
+    private String secret = "";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public List<String> getPeers() {
+        return peers;
+    }
+
+    public void setPeers(List<String> peers) {
+        this.peers = peers;
+    }
+
+    public Duration getSummaryInterval() {
+        return summaryInterval;
+    }
+
+    public void setSummaryInterval(Duration summaryInterval) {
+        this.summaryInterval = summaryInterval;
+    }
+
+    public Duration getPeerTimeout() {
+        return peerTimeout;
+    }
+
+    public void setPeerTimeout(Duration peerTimeout) {
+        this.peerTimeout = peerTimeout;
+    }
+
+    public boolean isApplyRemoteOpen() {
+        return applyRemoteOpen;
+    }
+
+    public void setApplyRemoteOpen(boolean applyRemoteOpen) {
+        this.applyRemoteOpen = applyRemoteOpen;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+}
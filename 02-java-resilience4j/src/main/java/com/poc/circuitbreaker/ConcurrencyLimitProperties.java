@@ -0,0 +1,89 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 自適應並行上限設定 (concurrency-limit.*)
+ *
+ * 依下游 RTT 調整同時進行中的呼叫數: RTT 變長就降低上限，在斷路器跳開之前先減輕下游負擔。
+ */
+@ConfigurationProperties(prefix = "concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    /** 是否啟用 */
+    private boolean enabled = true;
+
+    /** 啟動時的上限 */
+    private int initialLimit = 20;
+
+    /** 上限的下限 */
+    private int minLimit = 2;
+
+    /** 上限的上限 (仍受 bulkhead maxConcurrentCalls 約束) */
+    private int maxLimit = 200;
+
+    /** 短期 RTT 可超過長期 RTT 的倍數，超過才開始降低上限 */
+    private double rttTolerance = 1.5;
+
+    /** 每次調整時新值所佔的比重 */
+    private double smoothing = 0.2;
+
+    /** 長期 RTT (EWMA) 的樣本視窗 */
+    private int longWindow = 100;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    public void setRttTolerance(double rttTolerance) {
+        this.rttTolerance = rttTolerance;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public int getLongWindow() {
+        return longWindow;
+    }
+
+    public void setLongWindow(int longWindow) {
+        this.longWindow = longWindow;
+    }
+}
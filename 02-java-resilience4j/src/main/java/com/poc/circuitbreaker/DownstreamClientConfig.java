@@ -0,0 +1,106 @@
+package com.poc.circuitbreaker;
+
+import org.apache.hc.client5.http.ConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import io.netty.channel.ChannelOption;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * 下游 HTTP Client 設定
+ *
+ * RestTemplate 預設的 SimpleClientHttpRequestFactory 沒有連線池也沒有逾時，
+ * 這裡改用 Apache HttpClient 5 連線池，TCP/TLS 建立成本只在建立連線時付一次。
+ * Reactive 路徑 (WebClient) 使用 Reactor Netty 連線池，套用同一組上限與逾時。
+ */
+@Configuration
+@EnableConfigurationProperties(DownstreamHttpProperties.class)
+public class DownstreamClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager downstreamConnectionManager(DownstreamHttpProperties props) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(props.getMaxConnectionsTotal())
+                .setMaxConnPerRoute(props.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(props.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(props.getReadTimeout()))
+                        .build())
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient downstreamHttpClient(PoolingHttpClientConnectionManager downstreamConnectionManager,
+                                                    DownstreamHttpProperties props) {
+        return HttpClients.custom()
+                .setConnectionManager(downstreamConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(props.getConnectionRequestTimeout()))
+                        .setResponseTimeout(Timeout.of(props.getResponseTimeout()))
+                        .build())
+                .setKeepAliveStrategy(cappedKeepAlive(TimeValue.of(props.getKeepAlive())))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(props.getIdleEvictionTimeout()))
+                // 重試交給 resilience 層決定，避免在斷路器看不到的地方放大流量
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient downstreamHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(downstreamHttpClient));
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider downstreamConnectionProvider(DownstreamHttpProperties props) {
+        // Reactor Netty 的 maxConnections 以 remote address 為單位，對應 per-route 上限
+        return ConnectionProvider.builder("downstream")
+                .maxConnections(props.getMaxConnectionsPerRoute())
+                .pendingAcquireTimeout(props.getConnectionRequestTimeout())
+                .maxIdleTime(props.getKeepAlive())
+                .evictInBackground(props.getIdleEvictionTimeout())
+                .build();
+    }
+
+    /**
+     * Reactive 路徑使用的 WebClient，I/O 在 Reactor Netty event loop 上完成，不佔用請求執行緒
+     */
+    @Bean
+    public WebClient webClient(ConnectionProvider downstreamConnectionProvider,
+                               DownstreamHttpProperties props,
+                               @Value("${downstream.url}") String downstreamUrl) {
+        HttpClient httpClient = HttpClient.create(downstreamConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) props.getConnectTimeout().toMillis())
+                .responseTimeout(props.getResponseTimeout());
+        return WebClient.builder()
+                .baseUrl(downstreamUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    /**
+     * 以伺服器回傳的 Keep-Alive 為準，但不超過設定上限
+     */
+    private static ConnectionKeepAliveStrategy cappedKeepAlive(TimeValue max) {
+        return (response, context) -> {
+            TimeValue hint = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return TimeValue.isPositive(hint) && hint.compareTo(max) < 0 ? hint : max;
+        };
+    }
+}
@@ -0,0 +1,103 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 下游 HTTP 連線池設定 (downstream.http.*)
+ *
+ * 逾時要比斷路器的判定時間短，下游卡住時才會由 Client 先中斷、計入失敗，
+ * 而不是讓 Tomcat 執行緒一直等下去。
+ */
+@ConfigurationProperties(prefix = "downstream.http")
+public class DownstreamHttpProperties {
+
+    /** 整個連線池的最大連線數 */
+    private int maxConnectionsTotal = 50;
+
+    /** 每個 route (host:port) 的最大連線數 */
+    private int maxConnectionsPerRoute = 20;
+
+    /** 建立 TCP 連線的逾時 */
+    private Duration connectTimeout = Duration.ofSeconds(1);
+
+    /** 兩個封包之間的最長等待 (socket read timeout) */
+    private Duration readTimeout = Duration.ofSeconds(2);
+
+    /** 送出請求後等待回應的逾時 */
+    private Duration responseTimeout = Duration.ofSeconds(2);
+
+    /** 從連線池取得連線的等待上限，池滿時快速失敗 */
+    private Duration connectionRequestTimeout = Duration.ofMillis(500);
+
+    /** 連線閒置可被重用的最長時間 (伺服器回傳的 Keep-Alive 較短時以伺服器為準) */
+    private Duration keepAlive = Duration.ofSeconds(30);
+
+    /** 背景清除閒置連線的門檻 */
+    private Duration idleEvictionTimeout = Duration.ofSeconds(30);
+
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public Duration getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    public void setResponseTimeout(Duration responseTimeout) {
+        this.responseTimeout = responseTimeout;
+    }
+
+    public Duration getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public void setConnectionRequestTimeout(Duration connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(Duration keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public Duration getIdleEvictionTimeout() {
+        return idleEvictionTimeout;
+    }
+
+    public void setIdleEvictionTimeout(Duration idleEvictionTimeout) {
+        this.idleEvictionTimeout = idleEvictionTimeout;
+    }
+}
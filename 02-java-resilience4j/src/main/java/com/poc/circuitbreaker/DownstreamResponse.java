@@ -0,0 +1,31 @@
+package com.poc.circuitbreaker;
+
+import java.time.Duration;
+
+/**
+ * 下游回應內容；age 不為 null 表示取自 last-known-good 快取
+ *
+ * serialized 不為 null 表示斷路器拒絕時預先序列化好的 API 回應 (RejectionResponses)，controller 直接寫出。
+ */
+public record DownstreamResponse(String body, Duration age, byte[] serialized) {
+
+    public static DownstreamResponse of(String body) {
+        return new DownstreamResponse(body, null, null);
+    }
+
+    public static DownstreamResponse cached(String body, Duration age) {
+        return new DownstreamResponse(body, age, null);
+    }
+
+    public static DownstreamResponse preSerialized(String body, byte[] serialized) {
+        return new DownstreamResponse(body, null, serialized);
+    }
+
+    public boolean fromCache() {
+        return age != null;
+    }
+
+    public boolean isPreSerialized() {
+        return serialized != null;
+    }
+}
@@ -1,9 +1,13 @@
 package com.poc.circuitbreaker;
 
+import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
@@ -11,26 +15,134 @@ import org.springframework.web.client.RestTemplate;
 public class DownstreamService {
 
     private static final Logger log = LoggerFactory.getLogger(DownstreamService.class);
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
+    private final LastKnownGoodCache lastKnownGoodCache;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final LatencyRecorder latencyRecorder;
+    private final AdaptiveSlowCallDetector slowCallDetector;
+    private final RejectionResponses rejectionResponses;
+    private final ResponseStreamer responseStreamer;
+    private final RetryPolicy retryPolicy;
+    private final String downstreamUrl;
+    private final String cacheKey;
 
-    @Value("${downstream.url}")
-    private String downstreamUrl;
+    public DownstreamService(RestTemplate restTemplate, LastKnownGoodCache lastKnownGoodCache,
+                             AdaptiveConcurrencyLimiter concurrencyLimiter, LatencyRecorder latencyRecorder,
+                             AdaptiveSlowCallDetector slowCallDetector, RejectionResponses rejectionResponses,
+                             ResponseStreamer responseStreamer, RetryPolicy retryPolicy,
+                             @Value("${downstream.url}") String downstreamUrl) {
+        this.restTemplate = restTemplate;
+        this.lastKnownGoodCache = lastKnownGoodCache;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.latencyRecorder = latencyRecorder;
+        this.slowCallDetector = slowCallDetector;
+        this.rejectionResponses = rejectionResponses;
+        this.responseStreamer = responseStreamer;
+        this.retryPolicy = retryPolicy;
+        this.downstreamUrl = downstreamUrl;
+        this.cacheKey = "GET " + downstreamUrl;
+    }
 
+    /**
+     * Bulkhead (semaphore) 限制同時進行中的呼叫數，超過上限直接走 fallback；
+     * 搭配 virtual thread 時，這是唯一的固定並行上限。
+     * bulkhead 之內再由 AdaptiveConcurrencyLimiter 依 RTT 調整實際允許的並行數。
+     * 成功的回應寫入 last-known-good 快取；實際送出的呼叫耗時記入 LatencyRecorder，
+     * 並交給 AdaptiveSlowCallDetector 判定是否慢速。
+     * 連線錯誤與 5xx 由 RetryPolicy 在斷路器之內依預算重試，斷路器只記最後的結果。
+     */
     @CircuitBreaker(name = "downstreamService", fallbackMethod = "fallback")
-    public String callDownstream() {
-        log.info(">>> Calling downstream service...");
-        String response = restTemplate.getForObject(
-            downstreamUrl, String.class
-        );
-        log.info(">>> Downstream responded: {}", response);
-        return response;
+    @Bulkhead(name = "downstreamService")
+    public DownstreamResponse callDownstream() {
+        log.debug(">>> Calling downstream service...");
+        String response = retryPolicy.execute(() -> concurrencyLimiter.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                return restTemplate.getForObject(downstreamUrl, String.class);
+            } finally {
+                recordLatency(System.nanoTime() - start);
+            }
+        }));
+        log.debug(">>> Downstream responded: {}", response);
+        lastKnownGoodCache.put(cacheKey, response);
+        return DownstreamResponse.of(response);
+    }
+
+    /**
+     * 串流版本: 下游 body 直接複製到回應，斷路器狀態放在 header
+     *
+     * 非 2xx 由 RestTemplate 的 error handler 拋出 (計入失敗)；body 完整轉送完畢方法才返回 (計入成功)，
+     * 讀取下游中途失敗同樣計入失敗；呼叫端中斷連線為 ClientDisconnectedException，不影響失敗率。
+     * 延遲以收到回應 header 為準 (不含傳送 body 的時間)。串流內容不寫入 last-known-good 快取。
+     */
+    @CircuitBreaker(name = "downstreamService", fallbackMethod = "streamFallback")
+    @Bulkhead(name = "downstreamService")
+    public void streamDownstream(HttpServletResponse response) {
+        concurrencyLimiter.execute(() -> {
+            long start = System.nanoTime();
+            boolean[] recorded = new boolean[1];
+            try {
+                return restTemplate.execute(downstreamUrl, HttpMethod.GET, null, downstream -> {
+                    recordLatency(System.nanoTime() - start);
+                    recorded[0] = true;
+                    responseStreamer.writeHeaders(response, "downstreamService", downstream.getHeaders().getContentType());
+                    return responseStreamer.copy(downstream.getBody(), response);
+                });
+            } finally {
+                if (!recorded[0]) {
+                    recordLatency(System.nanoTime() - start);
+                }
+            }
+        });
+    }
+
+    private void recordLatency(long elapsed) {
+        latencyRecorder.record("downstreamService", elapsed);
+        slowCallDetector.record(elapsed);
     }
 
     /**
      * Fallback: 當 Circuit Breaker 為 OPEN 或呼叫失敗時觸發
+     * 優先回傳快取的 last-known-good 回應，沒有快取才回傳預設內容；
+     * 超過並行上限的呼叫直接回傳 CONCURRENCY_LIMIT，不讀快取
      */
-    public String fallback(Exception ex) {
+    public DownstreamResponse fallback(Exception ex) {
         log.warn(">>> FALLBACK triggered! Reason: {}", ex.getMessage());
-        return "{\"source\":\"FALLBACK\",\"message\":\"Circuit breaker activated, returning cached/default response\",\"error\":\"" + ex.getMessage() + "\"}";
+        if (ex instanceof ConcurrencyLimitExceededException) {
+            return DownstreamResponse.of("{\"source\":\"CONCURRENCY_LIMIT\",\"message\":\"Too many in-flight calls, request shed\",\"error\":\"" + errorMessage(ex) + "\"}");
+        }
+        return lastKnownGoodCache.lookup(cacheKey, ex instanceof CallNotPermittedException)
+            .orElseGet(() -> DownstreamResponse.of("{\"source\":\"FALLBACK\",\"message\":\"Circuit breaker activated, no cached response available, returning default response\",\"error\":\"" + errorMessage(ex) + "\"}"));
+    }
+
+    /**
+     * 例外訊息可能帶有下游回應的 body (含雙引號)，放進 JSON 字串前替換掉
+     */
+    private static String errorMessage(Exception ex) {
+        return String.valueOf(ex.getMessage()).replace("\"", "'");
+    }
+
+    /**
+     * 斷路器拒絕呼叫時的 fallback (resilience4j 依例外型別選擇最接近的 fallback 方法)
+     * 快速路徑: 先查快取，沒有才回傳預先序列化的回應，日誌限流；關閉時與一般 fallback 相同
+     */
+    public DownstreamResponse fallback(CallNotPermittedException ex) {
+        if (!rejectionResponses.isEnabled()) {
+            return fallback((Exception) ex);
+        }
+        DownstreamResponse cached = lastKnownGoodCache.lookup(cacheKey, true).orElse(null);
+        return cached != null ? cached : rejectionResponses.response(ex);
+    }
+
+    /**
+     * 串流的 fallback: 還沒開始輸出時改寫為 fallback 內容；
+     * 已送出部分 body 則無法更改，重新拋出讓連線中斷，呼叫端不會把不完整的內容當成成功
+     */
+    public void streamFallback(HttpServletResponse response, Exception ex) throws Exception {
+        if (ex instanceof ClientDisconnectedException || response.isCommitted()) {
+            throw ex;
+        }
+        DownstreamResponse result = ex instanceof CallNotPermittedException rejected ? fallback(rejected) : fallback(ex);
+        responseStreamer.writeFallback(response, "downstreamService", result);
     }
 }
@@ -0,0 +1,25 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(EventSinkProperties.class)
+public class EventSinkConfig {
+
+    /**
+     * 所有斷路器 (包含之後才建立的、執行中被替換的) 的事件都交給 sink 批次彙總
+     */
+    @Bean
+    public CircuitBreakerEventSink circuitBreakerEventSink(EventSinkProperties props,
+                                                           CircuitBreakerRegistry circuitBreakerRegistry) {
+        CircuitBreakerEventSink sink = new CircuitBreakerEventSink(props);
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(sink::register);
+        circuitBreakerRegistry.getEventPublisher()
+            .onEntryAdded(event -> sink.register(event.getAddedEntry()))
+            .onEntryReplaced(event -> sink.register(event.getNewEntry()));
+        return sink;
+    }
+}
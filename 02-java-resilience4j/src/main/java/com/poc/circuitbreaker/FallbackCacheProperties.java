@@ -0,0 +1,70 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Last-known-good 快取設定 (fallback.cache.*)
+ *
+ * ttl 內的快取在任何失敗時都可以回傳；超過 ttl 的舊資料只在斷路器拒絕呼叫 (OPEN) 時回傳，
+ * 最多保留到 max-stale。
+ */
+@ConfigurationProperties(prefix = "fallback.cache")
+public class FallbackCacheProperties {
+
+    /** 是否啟用快取 fallback */
+    private boolean enabled = true;
+
+    /** 最多保留幾筆回應 (超過時依 W-TinyLFU 淘汰) */
+    private long maximumSize = 1000;
+
+    /** 快取視為新鮮的時間 */
+    private Duration ttl = Duration.ofSeconds(30);
+
+    /** 斷路器 OPEN 時是否回傳超過 ttl 的舊資料 */
+    private boolean serveStaleWhileOpen = true;
+
+    /** 舊資料的保留上限 */
+    private Duration maxStale = Duration.ofMinutes(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public boolean isServeStaleWhileOpen() {
+        return serveStaleWhileOpen;
+    }
+
+    public void setServeStaleWhileOpen(boolean serveStaleWhileOpen) {
+        this.serveStaleWhileOpen = serveStaleWhileOpen;
+    }
+
+    public Duration getMaxStale() {
+        return maxStale;
+    }
+
+    public void setMaxStale(Duration maxStale) {
+        this.maxStale = maxStale;
+    }
+}
@@ -0,0 +1,19 @@
+package com.poc.circuitbreaker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(FastRejectProperties.class)
+public class FastRejectConfig {
+
+    @Bean
+    public RejectionResponses rejectionResponses(FastRejectProperties props,
+                                                 CircuitBreakerRegistry circuitBreakerRegistry,
+                                                 ObjectMapper objectMapper) {
+        return new RejectionResponses(props, circuitBreakerRegistry, objectMapper);
+    }
+}
@@ -0,0 +1,37 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 斷路器拒絕呼叫時的快速路徑設定 (fast-reject.*)
+ *
+ * 下游故障期間所有流量都走拒絕路徑，這裡每次呼叫只做快取查詢，
+ * 回應使用預先序列化的 bytes，WARN 日誌每個 log-interval 最多一筆 (附上期間被省略的次數)。
+ */
+@ConfigurationProperties(prefix = "fast-reject")
+public class FastRejectProperties {
+
+    /** 是否啟用；關閉時與一般 fallback 相同 (每次組 JSON、每次 WARN) */
+    private boolean enabled = true;
+
+    /** 拒絕日誌的最小間隔 */
+    private Duration logInterval = Duration.ofSeconds(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getLogInterval() {
+        return logInterval;
+    }
+
+    public void setLogInterval(Duration logInterval) {
+        this.logInterval = logInterval;
+    }
+}
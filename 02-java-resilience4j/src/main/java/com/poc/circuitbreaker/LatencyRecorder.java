@@ -0,0 +1,46 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每個斷路器一個 LatencyHistogram，記錄實際送往下游的呼叫耗時 (成功或失敗都記錄，不含被拒絕的呼叫)
+ */
+@Component
+public class LatencyRecorder {
+
+    private final long intervalNanos;
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final LatencyHistogram empty;
+
+    public LatencyRecorder(@Value("${latency.interval:60s}") Duration interval) {
+        this.intervalNanos = interval.toNanos();
+        this.empty = new LatencyHistogram(intervalNanos);
+    }
+
+    public void record(String name, long nanos) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(name, key -> new LatencyHistogram(intervalNanos));
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * 尚無紀錄時回傳空的分布 (count = 0)，不會建立 histogram
+     */
+    public Map<String, Object> snapshot(String name) {
+        return histograms.getOrDefault(name, empty).snapshot();
+    }
+
+    public Map<String, Map<String, Object>> snapshots() {
+        Map<String, Map<String, Object>> all = new TreeMap<>();
+        histograms.forEach((name, histogram) -> all.put(name, histogram.snapshot()));
+        return all;
+    }
+}
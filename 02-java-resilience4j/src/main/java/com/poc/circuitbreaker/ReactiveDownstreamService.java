@@ -0,0 +1,124 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.timelimiter.TimeLimiterOperator;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 非阻塞版本: WebClient + resilience4j-reactor operators
+ *
+ * 與 DownstreamService 共用同一個 downstreamService 斷路器、bulkhead 與 last-known-good 快取，
+ * 套用順序與註解版相同: CircuitBreaker( TimeLimiter( Bulkhead( 呼叫 ) ) )。
+ * TimeLimiter 逾時會取消訂閱，Reactor Netty 隨即中斷該次請求，不會有執行緒卡在等待。
+ */
+@Service
+public class ReactiveDownstreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveDownstreamService.class);
+
+    private final WebClient webClient;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final TimeLimiter timeLimiter;
+    private final Bulkhead bulkhead;
+    private final LastKnownGoodCache lastKnownGoodCache;
+    private final ResponseStreamer responseStreamer;
+    private final String cacheKey;
+
+    public ReactiveDownstreamService(WebClient webClient,
+                                     CircuitBreakerRegistry circuitBreakerRegistry,
+                                     TimeLimiterRegistry timeLimiterRegistry,
+                                     BulkheadRegistry bulkheadRegistry,
+                                     LastKnownGoodCache lastKnownGoodCache,
+                                     ResponseStreamer responseStreamer,
+                                     @Value("${downstream.url}") String downstreamUrl) {
+        this.webClient = webClient;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.timeLimiter = timeLimiterRegistry.timeLimiter("downstreamService");
+        this.bulkhead = bulkheadRegistry.bulkhead("downstreamService");
+        this.lastKnownGoodCache = lastKnownGoodCache;
+        this.responseStreamer = responseStreamer;
+        this.cacheKey = "GET " + downstreamUrl;
+    }
+
+    public Mono<DownstreamResponse> callDownstream() {
+        return webClient.get()
+            .retrieve()
+            .bodyToMono(String.class)
+            .doOnNext(response -> log.debug(">>> [Reactive] Downstream responded: {}", response))
+            .transformDeferred(BulkheadOperator.of(bulkhead))
+            .transformDeferred(TimeLimiterOperator.of(timeLimiter))
+            // 每次訂閱時由 registry 取得，斷路器被替換 (CircuitBreakerReconfigurer) 後立即使用新設定
+            .transformDeferred(call -> CircuitBreakerOperator.<String>of(circuitBreakerRegistry.circuitBreaker("downstreamService")).apply(call))
+            .doOnNext(response -> lastKnownGoodCache.put(cacheKey, response))
+            .map(DownstreamResponse::of)
+            .onErrorResume(this::fallback);
+    }
+
+    /**
+     * 串流版本: 下游 body 以 DataBuffer (Reactor Netty pooled buffer) 逐段寫到 Servlet 回應
+     *
+     * 斷路器包住 header 與整個 body: 非 2xx 與中途失敗計入失敗，body 完成才計入成功；
+     * 寫入在斷路器之外 (boundedElastic，不阻塞 event loop)，呼叫端中斷只會取消訂閱，不計入失敗率。
+     * TimeLimiter 套用在 Flux 上是每段資料之間的等待上限。
+     */
+    public Mono<Void> streamDownstream(HttpServletResponse response) {
+        return webClient.get()
+            .retrieve()
+            .toEntityFlux(DataBuffer.class)
+            .flatMapMany(entity -> {
+                responseStreamer.writeHeaders(response, "downstreamService", entity.getHeaders().getContentType());
+                return entity.getBody();
+            })
+            .transformDeferred(BulkheadOperator.of(bulkhead))
+            .transformDeferred(TimeLimiterOperator.of(timeLimiter))
+            .transformDeferred(call -> CircuitBreakerOperator.<DataBuffer>of(circuitBreakerRegistry.circuitBreaker("downstreamService")).apply(call))
+            .publishOn(Schedulers.boundedElastic())
+            .doOnNext(buffer -> {
+                try {
+                    responseStreamer.write(buffer, response);
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            })
+            .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+            .then()
+            .onErrorResume(ex -> {
+                if (ex instanceof ClientDisconnectedException) {
+                    return Mono.empty();
+                }
+                if (response.isCommitted()) {
+                    return Mono.error(ex);
+                }
+                return fallback(ex)
+                    .doOnNext(result -> responseStreamer.writeFallback(response, "downstreamService", result))
+                    .then();
+            });
+    }
+
+    /**
+     * Fallback: 斷路器 OPEN、bulkhead 滿載、逾時或呼叫失敗時觸發
+     * 優先回傳快取的 last-known-good 回應
+     */
+    private Mono<DownstreamResponse> fallback(Throwable ex) {
+        log.warn(">>> [Reactive] FALLBACK triggered! Reason: {}", ex.getMessage());
+        return Mono.just(lastKnownGoodCache.lookup(cacheKey, ex instanceof CallNotPermittedException)
+            .orElseGet(() -> DownstreamResponse.of("{\"source\":\"REACTIVE_FALLBACK\",\"message\":\"Circuit breaker activated, no cached response available, returning default response\",\"error\":\""
+                + String.valueOf(ex.getMessage()).replace("\"", "'") + "\"}")));
+    }
+}
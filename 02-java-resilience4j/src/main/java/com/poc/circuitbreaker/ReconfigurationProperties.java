@@ -0,0 +1,39 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 執行中調整斷路器門檻的檔案來源設定 (breaker-config.*)
+ *
+ * 檔案 (.yml / .yaml / .properties) 以斷路器名稱分組，例如
+ * downstreamService.failure-rate-threshold=30；內容改變時套用到既有的斷路器。
+ * 在 k8s 上可掛載 ConfigMap，更新 ConfigMap 即可調整門檻，不需重新部署。
+ */
+@ConfigurationProperties(prefix = "breaker-config")
+public class ReconfigurationProperties {
+
+    /** 設定檔路徑，未設定時只能透過 actuator 調整 */
+    private Path file;
+
+    /** 檢查檔案內容的間隔 */
+    private Duration pollInterval = Duration.ofSeconds(5);
+
+    public Path getFile() {
+        return file;
+    }
+
+    public void setFile(Path file) {
+        this.file = file;
+    }
+
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+}
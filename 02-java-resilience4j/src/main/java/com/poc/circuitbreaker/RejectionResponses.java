@@ -0,0 +1,95 @@
+package com.poc.circuitbreaker;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 斷路器拒絕呼叫 (OPEN / HALF_OPEN 名額已滿 / FORCED_OPEN) 時的預先序列化回應
+ *
+ * 回應內容只取決於斷路器名稱與狀態，第一次遇到時序列化一次並快取 DownstreamResponse，
+ * 之後每次拒絕都不配置新物件；WARN 日誌依 log-interval 限流。
+ * CallNotPermittedException 本身不帶 stack trace (resilience4j writableStackTraceEnabled: false)。
+ */
+public class RejectionResponses {
+
+    private static final Logger log = LoggerFactory.getLogger(RejectionResponses.class);
+
+    private static final CircuitBreaker.State[] STATES = CircuitBreaker.State.values();
+
+    private final boolean enabled;
+    private final long logIntervalNanos;
+    private final CircuitBreakerRegistry registry;
+    private final ObjectMapper objectMapper;
+    private final Map<String, DownstreamResponse[]> responses = new ConcurrentHashMap<>();
+    private final AtomicLong nextLogAt = new AtomicLong(System.nanoTime());
+    private final LongAdder suppressed = new LongAdder();
+
+    public RejectionResponses(FastRejectProperties props, CircuitBreakerRegistry registry, ObjectMapper objectMapper) {
+        this.enabled = props.isEnabled();
+        this.logIntervalNanos = props.getLogInterval().toNanos();
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 拒絕時的回應；同一個斷路器 + 狀態永遠回傳同一個 instance
+     */
+    public DownstreamResponse response(CallNotPermittedException ex) {
+        String name = ex.getCausingCircuitBreakerName();
+        CircuitBreaker.State state = registry.circuitBreaker(name).getState();
+        logRejection(name, state);
+        DownstreamResponse[] byState = responses.computeIfAbsent(name, key -> new DownstreamResponse[STATES.length]);
+        DownstreamResponse response = byState[state.ordinal()];
+        if (response == null) {
+            response = serialize(name, state);
+            byState[state.ordinal()] = response;
+        }
+        return response;
+    }
+
+    private DownstreamResponse serialize(String name, CircuitBreaker.State state) {
+        try {
+            Map<String, Object> fallback = new LinkedHashMap<>();
+            fallback.put("source", "FALLBACK");
+            fallback.put("message", "Circuit breaker activated, no cached response available, returning default response");
+            fallback.put("error", "CircuitBreaker '" + name + "' is " + state + " and does not permit further calls");
+            String fallbackJson = objectMapper.writeValueAsString(fallback);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("circuit_state", state.name());
+            body.put("response", fallbackJson);
+            return DownstreamResponse.preSerialized(fallbackJson, objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 每個 log-interval 最多一筆 WARN，附上期間省略的次數
+     */
+    private void logRejection(String name, CircuitBreaker.State state) {
+        long now = System.nanoTime();
+        long next = nextLogAt.get();
+        if (now - next < 0 || !nextLogAt.compareAndSet(next, now + logIntervalNanos)) {
+            suppressed.increment();
+            return;
+        }
+        log.warn(">>> FALLBACK: CB [{}] is {}, rejecting calls ({} more rejections not logged)",
+            name, state, suppressed.sumThenReset());
+    }
+}
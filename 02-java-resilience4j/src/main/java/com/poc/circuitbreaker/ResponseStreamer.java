@@ -0,0 +1,159 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 把下游 body 直接複製到 Servlet 回應，不經過 String / JSON 包裝
+ *
+ * - 斷路器狀態放在 header (X-Circuit-State、X-Circuit-Failure-Rate)，body 與下游完全相同
+ * - 複製用的 byte[] 由固定大小的 pool 借出，用完歸還
+ * - 寫入呼叫端失敗轉為 ClientDisconnectedException，與讀取下游的失敗區分
+ * - 下游暫時沒有更多資料時才 flush，慢慢送出的 body 也能即時轉送
+ */
+public class ResponseStreamer {
+
+    public static final String STATE_HEADER = "X-Circuit-State";
+    public static final String FAILURE_RATE_HEADER = "X-Circuit-Failure-Rate";
+    /** DOWNSTREAM / CACHE / FALLBACK */
+    public static final String SOURCE_HEADER = "X-Response-Source";
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> pool;
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder streamedBytes = new LongAdder();
+
+    public ResponseStreamer(StreamingProperties props, CircuitBreakerRegistry circuitBreakerRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bufferSize = props.getBufferSize();
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, props.getMaxPooledBuffers()));
+    }
+
+    /**
+     * 下游回應成功 (2xx) 後、寫出 body 之前呼叫
+     */
+    public void writeHeaders(HttpServletResponse response, String name, MediaType contentType) {
+        writeCircuitHeaders(response, name, "DOWNSTREAM");
+        if (contentType != null) {
+            response.setContentType(contentType.toString());
+        }
+    }
+
+    /**
+     * 阻塞式複製到 EOF；讀取下游的 IOException 原樣拋出 (計入斷路器失敗)
+     */
+    public long copy(InputStream in, HttpServletResponse response) throws IOException {
+        OutputStream out = outputStream(response);
+        byte[] buffer = acquire();
+        long total = 0;
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                write(out, buffer, read, in.available() == 0);
+                total += read;
+            }
+        } finally {
+            release(buffer);
+            streamedBytes.add(total);
+        }
+        return total;
+    }
+
+    /**
+     * 寫出一個 reactive 路徑的 DataBuffer (Netty pooled buffer)；呼叫端負責 release
+     */
+    public void write(DataBuffer dataBuffer, HttpServletResponse response) {
+        OutputStream out = outputStream(response);
+        byte[] buffer = acquire();
+        try {
+            int remaining;
+            while ((remaining = dataBuffer.readableByteCount()) > 0) {
+                int chunk = Math.min(remaining, buffer.length);
+                dataBuffer.read(buffer, 0, chunk);
+                write(out, buffer, chunk, chunk == remaining);
+                streamedBytes.add(chunk);
+            }
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * 尚未開始輸出時改寫為 fallback 內容 (已寫入緩衝區的部分下游 body 一併清除)
+     */
+    public void writeFallback(HttpServletResponse response, String name, DownstreamResponse fallback) {
+        response.resetBuffer();
+        response.setStatus(HttpServletResponse.SC_OK);
+        writeCircuitHeaders(response, name, fallback.fromCache() ? "CACHE" : "FALLBACK");
+        if (fallback.fromCache()) {
+            response.setHeader(HttpHeaders.AGE, String.valueOf(fallback.age().toSeconds()));
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        byte[] body = fallback.body().getBytes(StandardCharsets.UTF_8);
+        response.setContentLength(body.length);
+        write(outputStream(response), body, body.length, true);
+    }
+
+    private void writeCircuitHeaders(HttpServletResponse response, String name, String source) {
+        CircuitBreaker cb = circuitBreakerRegistry.circuitBreaker(name);
+        response.setHeader(STATE_HEADER, cb.getState().name());
+        response.setHeader(FAILURE_RATE_HEADER, String.valueOf(cb.getMetrics().getFailureRate()));
+        response.setHeader(SOURCE_HEADER, source);
+    }
+
+    private static OutputStream outputStream(HttpServletResponse response) {
+        try {
+            return response.getOutputStream();
+        } catch (IOException ex) {
+            throw new ClientDisconnectedException(ex);
+        }
+    }
+
+    private static void write(OutputStream out, byte[] buffer, int length, boolean flush) {
+        try {
+            out.write(buffer, 0, length);
+            if (flush) {
+                out.flush();
+            }
+        } catch (IOException ex) {
+            throw new ClientDisconnectedException(ex);
+        }
+    }
+
+    private byte[] acquire() {
+        byte[] buffer = pool.poll();
+        if (buffer == null) {
+            allocated.increment();
+            buffer = new byte[bufferSize];
+        }
+        return buffer;
+    }
+
+    private void release(byte[] buffer) {
+        pool.offer(buffer);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("buffer_size", bufferSize);
+        stats.put("buffers_allocated", allocated.sum());
+        stats.put("buffers_pooled", pool.size());
+        stats.put("streamed_bytes", streamedBytes.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,141 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 斷路器之內的重試 (每次 attempt 重新取得並行上限名額)
+ *
+ * - 只重試連線錯誤與 5xx；並行上限拒絕、4xx 等不重試
+ * - 預算: 每次成功存入 budgetPercent/100 個 token，重試花 1 個 token，額外流量不超過成功流量的設定比例
+ * - 斷路器不是 CLOSED (OPEN / HALF_OPEN / FORCED_OPEN) 時不重試，HALF_OPEN 的探測結果不被重試掩蓋
+ * - 等待時間為 decorrelated jitter: min(maxDelay, random(baseDelay, 上次等待 × 3))
+ * - 整個呼叫在斷路器裡只記一次，重試成功即計為成功
+ */
+public class RetryPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private static final int TOKEN = 100;
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final String name;
+    private final RetryProperties props;
+    private final AtomicInteger tokens = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder succeededAfterRetry = new LongAdder();
+    private final LongAdder budgetDenied = new LongAdder();
+    private final LongAdder skippedNotClosed = new LongAdder();
+
+    public RetryPolicy(CircuitBreakerRegistry circuitBreakerRegistry, String name, RetryProperties props) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.name = name;
+        this.props = props;
+    }
+
+    public <T> T execute(Supplier<T> attempt) {
+        if (!props.isEnabled()) {
+            return attempt.get();
+        }
+        calls.increment();
+        long delayNanos = props.getBaseDelay().toNanos();
+        for (int attempts = 1; ; attempts++) {
+            try {
+                T result = attempt.get();
+                depositToken();
+                if (attempts > 1) {
+                    succeededAfterRetry.increment();
+                }
+                return result;
+            } catch (RuntimeException ex) {
+                if (attempts >= props.getMaxAttempts() || !isRetryable(ex) || !permitRetry()) {
+                    throw ex;
+                }
+                delayNanos = nextDelay(delayNanos);
+                if (!sleep(delayNanos)) {
+                    throw ex;
+                }
+                retries.increment();
+                log.debug("Retrying {} (attempt {}) after {}ms: {}", name, attempts + 1,
+                    TimeUnit.NANOSECONDS.toMillis(delayNanos), ex.getMessage());
+            }
+        }
+    }
+
+    private static boolean isRetryable(RuntimeException ex) {
+        return ex instanceof ResourceAccessException || ex instanceof HttpServerErrorException;
+    }
+
+    private boolean permitRetry() {
+        if (circuitBreakerRegistry.circuitBreaker(name).getState() != CircuitBreaker.State.CLOSED) {
+            skippedNotClosed.increment();
+            return false;
+        }
+        if (!tryWithdrawToken()) {
+            budgetDenied.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private long nextDelay(long previousNanos) {
+        long base = props.getBaseDelay().toNanos();
+        long upper = Math.max(base + 1, previousNanos * 3);
+        return Math.min(props.getMaxDelay().toNanos(), ThreadLocalRandom.current().nextLong(base, upper));
+    }
+
+    private static boolean sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void depositToken() {
+        int max = props.getMaxTokens() * TOKEN;
+        tokens.getAndUpdate(current -> Math.min(max, current + props.getBudgetPercent()));
+    }
+
+    private boolean tryWithdrawToken() {
+        int current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        long total = calls.sum();
+        long retried = retries.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", props.isEnabled());
+        stats.put("calls", total);
+        stats.put("retries", retried);
+        stats.put("succeeded_after_retry", succeededAfterRetry.sum());
+        stats.put("budget_denied", budgetDenied.sum());
+        stats.put("skipped_not_closed", skippedNotClosed.sum());
+        stats.put("budget_tokens", tokens.get() / (double) TOKEN);
+        // 實際送往下游的 attempt 數 / 呼叫數
+        stats.put("amplification", total == 0 ? 1.0 : (total + retried) / (double) total);
+        return stats;
+    }
+}
@@ -0,0 +1,81 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 斷路器之內的重試設定 (retry.*)
+ *
+ * 重試次數受預算限制: 每次成功的呼叫存入 budgetPercent/100 個 token，每次重試花 1 個 token，
+ * 下游故障期間成功的呼叫變少，重試也跟著停止，不會放大流量。
+ */
+@ConfigurationProperties(prefix = "retry")
+public class RetryProperties {
+
+    /** 是否啟用 */
+    private boolean enabled = true;
+
+    /** 每次呼叫最多嘗試次數 (含第一次) */
+    private int maxAttempts = 2;
+
+    /** 重試額度佔成功呼叫的比例 (%) */
+    private int budgetPercent = 10;
+
+    /** 最多累積的重試額度 */
+    private int maxTokens = 10;
+
+    /** decorrelated jitter 的最短等待時間 */
+    private Duration baseDelay = Duration.ofMillis(50);
+
+    /** decorrelated jitter 的最長等待時間 */
+    private Duration maxDelay = Duration.ofSeconds(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getBudgetPercent() {
+        return budgetPercent;
+    }
+
+    public void setBudgetPercent(int budgetPercent) {
+        this.budgetPercent = budgetPercent;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public void setMaxTokens(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    public Duration getBaseDelay() {
+        return baseDelay;
+    }
+
+    public void setBaseDelay(Duration baseDelay) {
+        this.baseDelay = baseDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(Duration maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+}
@@ -0,0 +1,114 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 自適應慢速呼叫判定設定 (slow-call.*)
+ *
+ * 每個斷路器以 EWMA 追蹤最近呼叫的 p99 作為基準，超過基準 multiplier 倍的呼叫視為慢速；
+ * 視窗內慢速比例達到 rateThreshold 時斷路器轉為 OPEN，不必等到下游真的回傳錯誤。
+ */
+@ConfigurationProperties(prefix = "slow-call")
+public class SlowCallProperties {
+
+    /** 是否啟用 */
+    private boolean enabled = true;
+
+    /** 慢速門檻 = 基準 p99 × multiplier */
+    private double multiplier = 3.0;
+
+    /** 門檻下限，避免下游很快時把正常抖動當成慢速 */
+    private Duration minThreshold = Duration.ofMillis(50);
+
+    /** 尚未累積足夠樣本前使用的門檻 */
+    private Duration initialThreshold = Duration.ofSeconds(2);
+
+    /** 基準 EWMA 的權重 (新 p99 佔的比例) */
+    private double smoothing = 0.2;
+
+    /** 每累積多少筆呼叫計算一次 p99 並更新基準 */
+    private int baselineWindow = 100;
+
+    /** 慢速呼叫比例門檻 (%) */
+    private float rateThreshold = 50;
+
+    /** 計算慢速比例的最近呼叫數 (最多 64) */
+    private int windowSize = 20;
+
+    /** 至少幾筆呼叫才計算慢速比例 */
+    private int minimumCalls = 10;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    public Duration getMinThreshold() {
+        return minThreshold;
+    }
+
+    public void setMinThreshold(Duration minThreshold) {
+        this.minThreshold = minThreshold;
+    }
+
+    public Duration getInitialThreshold() {
+        return initialThreshold;
+    }
+
+    public void setInitialThreshold(Duration initialThreshold) {
+        this.initialThreshold = initialThreshold;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public int getBaselineWindow() {
+        return baselineWindow;
+    }
+
+    public void setBaselineWindow(int baselineWindow) {
+        this.baselineWindow = baselineWindow;
+    }
+
+    public float getRateThreshold() {
+        return rateThreshold;
+    }
+
+    public void setRateThreshold(float rateThreshold) {
+        this.rateThreshold = rateThreshold;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+}
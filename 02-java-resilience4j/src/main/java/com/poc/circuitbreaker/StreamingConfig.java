@@ -0,0 +1,16 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(StreamingProperties.class)
+public class StreamingConfig {
+
+    @Bean
+    public ResponseStreamer responseStreamer(StreamingProperties props, CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new ResponseStreamer(props, circuitBreakerRegistry);
+    }
+}
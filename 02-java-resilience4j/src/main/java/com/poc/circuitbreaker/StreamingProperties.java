@@ -0,0 +1,35 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 串流轉送設定 (streaming.*)
+ *
+ * /api/call/stream 不把下游 body 讀成 String，而是以固定大小的緩衝區直接複製到回應；
+ * 緩衝區用完歸還，最多保留 max-pooled-buffers 個。
+ */
+@ConfigurationProperties(prefix = "streaming")
+public class StreamingProperties {
+
+    /** 每次複製的緩衝區大小 (bytes) */
+    private int bufferSize = 8192;
+
+    /** 閒置時保留的緩衝區數量上限，超過的直接丟棄 */
+    private int maxPooledBuffers = 64;
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getMaxPooledBuffers() {
+        return maxPooledBuffers;
+    }
+
+    public void setMaxPooledBuffers(int maxPooledBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+}
@@ -0,0 +1,154 @@
+package com.poc.circuitbreaker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * UDP 傳輸層: 每則訊息以一個 datagram 送給所有 peer
+ *
+ * - peer 為 host:port；啟動時與每次 refresh() (cluster-state 執行緒，每 summaryInterval) 重新解析 host，
+ *   k8s headless service 的 DNS 名稱會展開成所有 pod IP；解析失敗時沿用該 peer 上次成功解析的位址
+ * - 只接受來源為 peer 的 datagram (最近一次解析出的 IP + port)，其他來源直接丟棄並計數；
+ *   來源位址可以偽造，需要驗證內容時另外設定 cluster-state.secret (由 ClusterStateSync 簽章)
+ * - 送給自己的訊息由 ClusterStateSync 依 node id 丟棄
+ * - 送出失敗只計數，不影響呼叫端；接收在單一 daemon 執行緒上進行
+ */
+public class UdpClusterTransport implements ClusterStateTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(UdpClusterTransport.class);
+
+    private final DatagramChannel channel;
+    private final List<String> peers;
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder rejectedDatagrams = new LongAdder();
+    private final LongAdder resolveFailures = new LongAdder();
+    private final Map<String, Set<SocketAddress>> resolved = new HashMap<>();
+    private volatile Set<SocketAddress> peerAddresses = Set.of();
+    private volatile Consumer<byte[]> handler = payload -> { };
+
+    public UdpClusterTransport(int port, List<String> peers) {
+        this.peers = List.copyOf(peers);
+        try {
+            this.channel = DatagramChannel.open().bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot bind cluster-state UDP port " + port, e);
+        }
+        refresh();
+        Thread receiver = new Thread(this::receiveLoop, "cluster-state-udp");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @Override
+    public void broadcast(byte[] payload) {
+        for (SocketAddress address : peerAddresses) {
+            try {
+                channel.send(ByteBuffer.wrap(payload), address);
+            } catch (IOException | RuntimeException e) {
+                sendFailures.increment();
+                log.debug("Cluster-state send to {} failed: {}", address, e.toString());
+            }
+        }
+    }
+
+    /**
+     * 重新解析所有 peer；暫時解析失敗 (DNS 逾時等) 的 peer 沿用上次的位址並計入 resolveFailures
+     */
+    @Override
+    public synchronized void refresh() {
+        for (String peer : peers) {
+            int colon = peer.lastIndexOf(':');
+            try {
+                int port = Integer.parseInt(peer.substring(colon + 1));
+                Set<SocketAddress> addresses = new HashSet<>();
+                for (InetAddress address : InetAddress.getAllByName(peer.substring(0, colon))) {
+                    addresses.add(new InetSocketAddress(address, port));
+                }
+                resolved.put(peer, addresses);
+            } catch (IOException | RuntimeException e) {
+                resolveFailures.increment();
+                log.debug("Cluster-state peer {} cannot be resolved, keeping {}: {}", peer, resolved.get(peer), e.toString());
+            }
+        }
+        Set<SocketAddress> all = new HashSet<>();
+        resolved.values().forEach(all::addAll);
+        peerAddresses = Set.copyOf(all);
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_PAYLOAD);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress source = channel.receive(buffer);
+                if (!peerAddresses.contains(source)) {
+                    rejectedDatagrams.increment();
+                    continue;
+                }
+                buffer.flip();
+                handler.accept(Arrays.copyOf(buffer.array(), buffer.limit()));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Cluster-state receive failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void onReceive(Consumer<byte[]> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * 實際綁定的 port (設定為 0 時由系統指定)
+     */
+    public int localPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long sendFailures() {
+        return sendFailures.sum();
+    }
+
+    public long resolveFailures() {
+        return resolveFailures.sum();
+    }
+
+    /**
+     * 來源不是 peer 而被丟棄的 datagram 數
+     */
+    public long rejectedDatagrams() {
+        return rejectedDatagrams.sum();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Closing cluster-state channel failed", e);
+        }
+    }
+}
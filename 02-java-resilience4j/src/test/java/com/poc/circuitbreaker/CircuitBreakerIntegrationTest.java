@@ -3,18 +3,38 @@ package com.poc.circuitbreaker;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClient;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
@@ -32,6 +52,21 @@ class CircuitBreakerIntegrationTest {
     @Autowired
     CircuitBreakerRegistry cbRegistry;
 
+    @Autowired
+    DownstreamService downstreamService;
+
+    @Autowired
+    LastKnownGoodCache lastKnownGoodCache;
+
+    @Autowired
+    CircuitBreakerEventSink eventSink;
+
+    @Autowired
+    WebClient webClient;
+
+    @Autowired
+    LatencyRecorder latencyRecorder;
+
     @BeforeAll
     static void startWireMock() {
         wireMock.start();
@@ -51,6 +86,7 @@ class CircuitBreakerIntegrationTest {
     void resetState() {
         wireMock.resetAll();
         cbRegistry.circuitBreaker("downstreamService").reset();
+        lastKnownGoodCache.invalidateAll();
     }
 
     @Test
@@ -119,4 +155,638 @@ class CircuitBreakerIntegrationTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.new_state").value("CLOSED"));
     }
+
+    @Test
+    @DisplayName("Hanging downstream is cut off by the response timeout and recorded as a failure")
+    void hangingDownstream_timesOut() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withFixedDelay(3000)));
+
+        long start = System.nanoTime();
+        mockMvc.perform(get("/api/call"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.response").value(
+                        org.hamcrest.Matchers.containsString("FALLBACK")));
+        long elapsedMs = java.time.Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        Assertions.assertTrue(elapsedMs < 2000, "call should be bounded by response-timeout, took " + elapsedMs + "ms");
+        Assertions.assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    @DisplayName("Connection pool utilisation is exposed through actuator")
+    void poolStatsEndpoint() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+
+        mockMvc.perform(get("/api/call"));
+
+        mockMvc.perform(get("/actuator/httpclientpool"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.leased").value(0))
+                .andExpect(jsonPath("$.available").value(org.hamcrest.Matchers.greaterThanOrEqualTo(1)))
+                .andExpect(jsonPath("$.max_per_route").value(20));
+    }
+
+    @Test
+    @DisplayName("Bulkhead sheds calls beyond maxConcurrentCalls without tripping the breaker")
+    void bulkhead_shedsExcessConcurrentCalls() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")
+                        .withFixedDelay(300)));
+
+        // maxConcurrentCalls=2 (application-test.yml)
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return downstreamService.callDownstream().body();
+                }));
+            }
+            start.countDown();
+
+            int shed = 0;
+            for (Future<String> result : results) {
+                if (result.get().contains("Bulkhead")) {
+                    shed++;
+                }
+            }
+            Assertions.assertTrue(shed >= 2, "expected at least 2 calls shed by the bulkhead, got " + shed);
+        } finally {
+            callers.shutdownNow();
+        }
+
+        CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+        Assertions.assertEquals(0, cb.getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    @DisplayName("Reactive endpoint - returns downstream response through the reactive operators")
+    void reactiveCall_success() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"status\":\"ok\"}")));
+        // Reactor Netty 第一次使用的初始化可能超過 300ms TimeLimiter，先暖機
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/warmup")).willReturn(WireMock.aResponse().withStatus(200)));
+        webClient.get().uri("/warmup").retrieve().toBodilessEntity().block(Duration.ofSeconds(10));
+
+        MvcResult pending = mockMvc.perform(get("/api/reactive/call"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.circuit_state").value("CLOSED"))
+                .andExpect(jsonPath("$.successful_calls").value(1))
+                .andExpect(jsonPath("$.response").value(org.hamcrest.Matchers.containsString("ok")));
+    }
+
+    @Test
+    @DisplayName("Reactive endpoint - TimeLimiter cancels a hanging call and records a failure")
+    void reactiveCall_timeLimiterCancelsHangingCall() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withFixedDelay(3000)));
+
+        // timelimiter 300ms < response-timeout 500ms (application-test.yml)
+        long start = System.nanoTime();
+        MvcResult pending = mockMvc.perform(get("/api/reactive/call"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.response").value(
+                        org.hamcrest.Matchers.containsString("REACTIVE_FALLBACK")));
+        long elapsedMs = java.time.Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        Assertions.assertTrue(elapsedMs < 1500, "call should be cancelled by the TimeLimiter, took " + elapsedMs + "ms");
+        Assertions.assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    @DisplayName("Failed call serves the last-known-good response with an Age header")
+    void failedCall_servesLastKnownGood() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        mockMvc.perform(get("/api/call"))
+                .andExpect(header().doesNotExist("Age"));
+
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(500).withBody("error")));
+        mockMvc.perform(get("/api/call"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Age", "0"))
+                .andExpect(jsonPath("$.cache_age_ms").exists())
+                .andExpect(jsonPath("$.response").value("{\"status\":\"ok\"}"));
+    }
+
+    @Test
+    @DisplayName("Stale entry is served only while the breaker is OPEN")
+    void staleEntry_servedOnlyWhileOpen() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        mockMvc.perform(get("/api/call"));
+
+        // ttl=1s (application-test.yml)
+        Thread.sleep(1200);
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(500).withBody("error")));
+
+        // CLOSED: 過期的快取不回傳
+        mockMvc.perform(get("/api/call"))
+                .andExpect(header().doesNotExist("Age"))
+                .andExpect(jsonPath("$.response").value(org.hamcrest.Matchers.containsString("FALLBACK")));
+        mockMvc.perform(get("/api/call"));
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, cbRegistry.circuitBreaker("downstreamService").getState());
+
+        // OPEN: 回傳舊資料，下游不會收到請求
+        int before = wireMock.countRequestsMatching(WireMock.getRequestedFor(WireMock.urlEqualTo("/")).build()).getCount();
+        mockMvc.perform(get("/api/call"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Age", "1"))
+                .andExpect(jsonPath("$.response").value("{\"status\":\"ok\"}"));
+        int after = wireMock.countRequestsMatching(WireMock.getRequestedFor(WireMock.urlEqualTo("/")).build()).getCount();
+        Assertions.assertEquals(before, after);
+    }
+
+    @Test
+    @DisplayName("Concurrent identical requests share one downstream call and one breaker call")
+    void concurrentCalls_areCoalesced() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")
+                        .withFixedDelay(300)));
+
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return mockMvc.perform(get("/api/call"))
+                            .andExpect(status().isOk())
+                            .andReturn().getResponse().getContentAsString();
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                Assertions.assertTrue(result.get().contains("ok"));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        wireMock.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/")));
+        Assertions.assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfBufferedCalls());
+        mockMvc.perform(get("/api/status"))
+                .andExpect(jsonPath("$.coalescing.coalesced_calls").value(org.hamcrest.Matchers.greaterThanOrEqualTo(3)));
+    }
+
+    @Test
+    @DisplayName("Concurrency limit shrinks when RTT rises above the long-term baseline")
+    void concurrencyLimit_shrinksOnRisingRtt() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", new ConcurrencyLimitProperties());
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(10_000_000L, 1_000, false);
+        }
+        int healthy = limiter.limit();
+        Assertions.assertTrue(healthy > 20, "limit should grow while RTT is stable: " + healthy);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(100_000_000L, 1_000, false);
+        }
+        Assertions.assertTrue(limiter.limit() < healthy / 2, "limit should shrink under latency: " + limiter.limit());
+    }
+
+    @Test
+    @DisplayName("Calls above the concurrency limit are shed with a distinct fallback reason")
+    void concurrencyLimit_shedsExcessCalls() throws Exception {
+        ConcurrencyLimitProperties props = new ConcurrencyLimitProperties();
+        props.setInitialLimit(1);
+        props.setMinLimit(1);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", props);
+
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> inFlight = caller.submit(() -> limiter.execute(() -> {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "ok";
+            }));
+            entered.await();
+
+            ConcurrencyLimitExceededException shed = Assertions.assertThrows(
+                    ConcurrencyLimitExceededException.class, () -> limiter.execute(() -> "never"));
+            Assertions.assertTrue(downstreamService.fallback(shed).body().contains("CONCURRENCY_LIMIT"));
+            // 例外訊息含雙引號時回應仍是合法的 JSON
+            String quoted = downstreamService.fallback(new ConcurrencyLimitExceededException("a\"b", 1)).body();
+            Assertions.assertEquals("CONCURRENCY_LIMIT",
+                    new com.fasterxml.jackson.databind.ObjectMapper().readTree(quoted).get("source").asText());
+
+            release.countDown();
+            Assertions.assertEquals("ok", inFlight.get());
+            Assertions.assertEquals(1L, limiter.stats().get("shed_calls"));
+        } finally {
+            caller.shutdownNow();
+        }
+
+        mockMvc.perform(get("/api/status"))
+                .andExpect(jsonPath("$.concurrency_limit.limit").value(org.hamcrest.Matchers.greaterThanOrEqualTo(2)));
+    }
+
+    @Test
+    @DisplayName("Breaker events are aggregated by the async event sink")
+    void eventSink_aggregatesBreakerEvents() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        eventSink.drain();
+        eventSink.flush();
+
+        mockMvc.perform(get("/api/call")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/call")).andExpect(status().isOk());
+
+        eventSink.drain();
+        Assertions.assertEquals(2, eventSink.pending("downstreamService", CircuitBreakerEventSink.SUCCESS));
+    }
+
+    @Test
+    @DisplayName("Downstream call latency is reported as percentiles on status and actuator")
+    void latency_recordedPerBreaker() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}").withFixedDelay(50)));
+        long before = (long) latencyRecorder.snapshot("downstreamService").get("count");
+
+        mockMvc.perform(get("/api/call")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/call")).andExpect(status().isOk());
+
+        Assertions.assertEquals(before + 2, latencyRecorder.snapshot("downstreamService").get("count"));
+        mockMvc.perform(get("/api/status"))
+                .andExpect(jsonPath("$.latency.max_ms").value(org.hamcrest.Matchers.greaterThanOrEqualTo(50.0)));
+        mockMvc.perform(get("/actuator/latency/downstreamService"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.p50_ms").exists())
+                .andExpect(jsonPath("$.p999_ms").value(org.hamcrest.Matchers.greaterThanOrEqualTo(50.0)));
+    }
+
+    @Test
+    @DisplayName("A breaker opening on another replica pre-emptively opens the local breaker")
+    void clusterState_remoteOpenOpensLocalBreaker() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        CircuitBreaker local = cbRegistry.circuitBreaker("downstreamService");
+        local.reset();
+
+        ClusterStateProperties props = new ClusterStateProperties();
+        props.setEnabled(true);
+        props.setTransport(ClusterStateProperties.Transport.LOOPBACK);
+        props.setSummaryInterval(Duration.ofHours(1));
+        LoopbackClusterTransport localTransport = new LoopbackClusterTransport();
+        CircuitBreakerRegistry remoteRegistry = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        try (ClusterStateSync localSync = new ClusterStateSync(props, localTransport, cbRegistry);
+             ClusterStateSync remoteSync = new ClusterStateSync(props, localTransport.peer(), remoteRegistry)) {
+            List<String> senderThreads = new java.util.concurrent.CopyOnWriteArrayList<>();
+            List<byte[]> captured = new java.util.concurrent.CopyOnWriteArrayList<>();
+            localTransport.peer().onReceive(payload -> {
+                senderThreads.add(Thread.currentThread().getName());
+                captured.add(payload);
+            });
+            remoteRegistry.circuitBreaker("downstreamService").transitionToOpenState();
+            remoteSync.awaitPending();
+
+            // 轉換訊息在 cluster-state 執行緒上送出，不佔用觸發轉換的請求執行緒
+            Assertions.assertFalse(senderThreads.isEmpty());
+            Assertions.assertTrue(senderThreads.stream().allMatch("cluster-state"::equals), senderThreads.toString());
+            Assertions.assertEquals(CircuitBreaker.State.OPEN, local.getState());
+            Assertions.assertEquals(1L, localSync.stats().get("remote_opens"));
+
+            // 重送已收過的訊息 (序號未增加) 整則丟棄
+            Object received = localSync.stats().get("messages_received");
+            captured.forEach(localSync::receive);
+            Assertions.assertTrue((long) localSync.stats().get("stale_messages") >= 1L);
+            Assertions.assertEquals(received, localSync.stats().get("messages_received"));
+            wireMock.resetRequests();
+            mockMvc.perform(get("/api/call")).andExpect(status().isOk());
+            wireMock.verify(0, WireMock.getRequestedFor(WireMock.urlEqualTo("/")));
+        } finally {
+            local.reset();
+        }
+
+        mockMvc.perform(get("/api/cluster"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.enabled").value(false));
+    }
+
+    @Test
+    @DisplayName("Cluster-state OPEN messages from non-peer addresses or with a wrong signature are dropped")
+    void clusterState_dropsForgedMessages() throws Exception {
+        ClusterStateProperties props = new ClusterStateProperties();
+        props.setEnabled(true);
+        props.setSummaryInterval(Duration.ofHours(1));
+        props.setSecret("s3cret");
+        ClusterStateProperties forgedProps = new ClusterStateProperties();
+        forgedProps.setEnabled(true);
+        forgedProps.setSummaryInterval(Duration.ofHours(1));
+        forgedProps.setSecret("guess");
+        CircuitBreakerRegistry localRegistry = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        CircuitBreakerRegistry peerRegistry = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        CircuitBreakerRegistry strangerRegistry = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        CircuitBreakerRegistry forgerRegistry = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        CircuitBreaker local = localRegistry.circuitBreaker("downstreamService");
+
+        int localPort;
+        try (java.nio.channels.DatagramChannel probe = java.nio.channels.DatagramChannel.open()
+                .bind(new java.net.InetSocketAddress(0))) {
+            localPort = ((java.net.InetSocketAddress) probe.getLocalAddress()).getPort();
+        }
+        List<String> toLocal = List.of("127.0.0.1:" + localPort);
+        try (UdpClusterTransport peerTransport = new UdpClusterTransport(0, toLocal);
+             UdpClusterTransport forgerTransport = new UdpClusterTransport(0, toLocal);
+             UdpClusterTransport localTransport = new UdpClusterTransport(localPort,
+                     List.of("127.0.0.1:" + peerTransport.localPort(), "127.0.0.1:" + forgerTransport.localPort()));
+             UdpClusterTransport strangerTransport = new UdpClusterTransport(0, toLocal);
+             ClusterStateSync localSync = new ClusterStateSync(props, localTransport, localRegistry);
+             ClusterStateSync peerSync = new ClusterStateSync(props, peerTransport, peerRegistry);
+             ClusterStateSync strangerSync = new ClusterStateSync(props, strangerTransport, strangerRegistry);
+             ClusterStateSync forgerSync = new ClusterStateSync(forgedProps, forgerTransport, forgerRegistry)) {
+            // 不在 peers 中的位址: 即使知道 secret 也在傳輸層丟棄
+            strangerRegistry.circuitBreaker("downstreamService").transitionToOpenState();
+            awaitTrue(() -> localTransport.rejectedDatagrams() == 1);
+            // peer 位址但簽章不符: 整則丟棄
+            forgerRegistry.circuitBreaker("downstreamService").transitionToOpenState();
+            awaitTrue(() -> (Long) localSync.stats().get("auth_failures") == 1L);
+            Assertions.assertEquals(CircuitBreaker.State.CLOSED, local.getState());
+
+            peerRegistry.circuitBreaker("downstreamService").transitionToOpenState();
+            awaitTrue(() -> (Long) localSync.stats().get("remote_opens") == 1L);
+            Assertions.assertEquals(CircuitBreaker.State.OPEN, local.getState());
+            Assertions.assertEquals(1L, localSync.stats().get("rejected_datagrams"));
+        }
+    }
+
+    private static void awaitTrue(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.get() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(condition.get());
+    }
+
+    @Test
+    @DisplayName("Breaker state survives a restart through the memory-mapped snapshot")
+    void breakerSnapshot_restoresOpenStateAfterRestart(@org.junit.jupiter.api.io.TempDir java.nio.file.Path dir) {
+        BreakerSnapshotProperties props = new BreakerSnapshotProperties();
+        props.setEnabled(true);
+        props.setPath(dir.resolve("snapshot.bin"));
+        props.setInterval(Duration.ofHours(1));
+
+        CircuitBreakerRegistry before = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        before.circuitBreaker("downstreamService");
+        try (BreakerSnapshotStore store = new BreakerSnapshotStore(props, before)) {
+            before.circuitBreaker("downstreamService").transitionToOpenState();
+        }
+
+        CircuitBreakerRegistry after = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        CircuitBreaker restored = after.circuitBreaker("downstreamService");
+        try (BreakerSnapshotStore store = new BreakerSnapshotStore(props, after)) {
+            Assertions.assertEquals(1, store.restored());
+            Assertions.assertEquals(CircuitBreaker.State.OPEN, restored.getState());
+            Assertions.assertFalse(restored.tryAcquirePermission());
+        }
+    }
+
+    @Test
+    @DisplayName("Slow calls relative to the learned baseline open the breaker without any failure")
+    void slowCall_adaptiveThresholdOpensBreaker() throws Exception {
+        mockMvc.perform(get("/api/status"))
+                .andExpect(jsonPath("$.slow_call.enabled").value(true))
+                .andExpect(jsonPath("$.slow_call.threshold_ms").value(org.hamcrest.Matchers.greaterThanOrEqualTo(50.0)));
+
+        SlowCallProperties props = new SlowCallProperties();
+        props.setBaselineWindow(10);
+        props.setWindowSize(10);
+        props.setMinimumCalls(10);
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        CircuitBreaker cb = registry.circuitBreaker("downstreamService");
+        AdaptiveSlowCallDetector detector = new AdaptiveSlowCallDetector(registry, "downstreamService", props);
+        for (int i = 0; i < 10; i++) {
+            detector.record(Duration.ofMillis(40).toNanos());
+        }
+        Assertions.assertEquals(120.0, detector.thresholdMillis(), 0.001);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertTrue(detector.record(Duration.ofMillis(500).toNanos()));
+        }
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+    }
+
+    @Test
+    @DisplayName("Retries are capped by the success-funded budget and stop while the breaker is not CLOSED")
+    void retry_budgetedAndSkippedWhenNotClosed() throws Exception {
+        mockMvc.perform(get("/api/status"))
+                .andExpect(jsonPath("$.retry.enabled").value(false));
+
+        RetryProperties props = new RetryProperties();
+        props.setMaxAttempts(3);
+        props.setBaseDelay(Duration.ofMillis(1));
+        props.setMaxDelay(Duration.ofMillis(5));
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(cbRegistry.getDefaultConfig());
+        CircuitBreaker cb = registry.circuitBreaker("downstreamService");
+        RetryPolicy retryPolicy = new RetryPolicy(registry, "downstreamService", props);
+        AtomicInteger attempts = new AtomicInteger();
+        Supplier<String> failOnce = () -> {
+            if (attempts.getAndIncrement() == 0) {
+                throw new ResourceAccessException("connection reset");
+            }
+            return "ok";
+        };
+
+        // 還沒有成功的呼叫: 沒有預算，不重試
+        Assertions.assertThrows(ResourceAccessException.class,
+                () -> retryPolicy.execute(failOnce));
+        Assertions.assertEquals(1, attempts.get());
+
+        // 20 次成功存入 2 個 token: 暫時性失敗重試一次即成功，之後預算用完
+        for (int i = 0; i < 20; i++) {
+            retryPolicy.execute(() -> "ok");
+        }
+        attempts.set(0);
+        Assertions.assertEquals("ok", retryPolicy.execute(failOnce));
+        Assertions.assertEquals(2, attempts.get());
+        attempts.set(0);
+        Assertions.assertEquals("ok", retryPolicy.execute(failOnce));
+        attempts.set(0);
+        Assertions.assertThrows(ResourceAccessException.class,
+                () -> retryPolicy.execute(failOnce));
+
+        // 4xx 不重試；斷路器不是 CLOSED 時不重試
+        for (int i = 0; i < 20; i++) {
+            retryPolicy.execute(() -> "ok");
+        }
+        attempts.set(0);
+        Assertions.assertThrows(HttpClientErrorException.class, () -> retryPolicy.execute(() -> {
+            attempts.incrementAndGet();
+            throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+        }));
+        Assertions.assertEquals(1, attempts.get());
+        cb.transitionToOpenState();
+        attempts.set(0);
+        Assertions.assertThrows(ResourceAccessException.class,
+                () -> retryPolicy.execute(failOnce));
+        Assertions.assertEquals(1, attempts.get());
+
+        Map<String, Object> stats = retryPolicy.stats();
+        Assertions.assertEquals(2L, stats.get("retries"));
+        Assertions.assertEquals(2L, stats.get("succeeded_after_retry"));
+        Assertions.assertEquals(2L, stats.get("budget_denied"));
+        Assertions.assertEquals(1L, stats.get("skipped_not_closed"));
+        Assertions.assertEquals((46 + 2) / 46.0, (Double) stats.get("amplification"), 0.0001);
+    }
+
+    @Test
+    @DisplayName("Breaker thresholds are changed at runtime through actuator without losing the window")
+    void breakerConfig_updatedThroughActuator() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(500)));
+        mockMvc.perform(get("/api/call"));
+        CircuitBreaker before = cbRegistry.circuitBreaker("downstreamService");
+        Assertions.assertEquals(1, before.getMetrics().getNumberOfFailedCalls());
+
+        try {
+            mockMvc.perform(post("/actuator/breakerconfig/downstreamService")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"slidingWindowSize\": \"10\", \"minimumNumberOfCalls\": \"5\"}"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.config_version").value(2));
+
+            CircuitBreaker after = cbRegistry.circuitBreaker("downstreamService");
+            Assertions.assertNotSame(before, after);
+            Assertions.assertEquals(1, after.getMetrics().getNumberOfFailedCalls());
+            mockMvc.perform(get("/api/status"))
+                    .andExpect(jsonPath("$.config.config_version").value(2))
+                    .andExpect(jsonPath("$.config.sliding_window_size").value(10));
+
+            // 新的 instance 接手之後的呼叫
+            mockMvc.perform(get("/api/call"));
+            Assertions.assertEquals(2, after.getMetrics().getNumberOfFailedCalls());
+            Assertions.assertEquals(CircuitBreaker.State.CLOSED, after.getState());
+
+            mockMvc.perform(post("/actuator/breakerconfig/downstreamService")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"failureRateThreshold\": \"abc\"}"))
+                    .andExpect(status().isBadRequest());
+
+            // 等待時間與 application.yml 同樣接受 ISO-8601 與 h / d 單位
+            mockMvc.perform(post("/actuator/breakerconfig/downstreamService")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"waitDurationInOpenState\": \"1h\"}"))
+                    .andExpect(status().isOk());
+            Assertions.assertEquals(Duration.ofHours(1).toMillis(), cbRegistry.circuitBreaker("downstreamService")
+                    .getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1));
+            mockMvc.perform(post("/actuator/breakerconfig/downstreamService")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"waitDurationInOpenState\": \"PT2S\"}"))
+                    .andExpect(status().isOk());
+            Assertions.assertEquals(Duration.ofSeconds(2).toMillis(), cbRegistry.circuitBreaker("downstreamService")
+                    .getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1));
+        } finally {
+            mockMvc.perform(post("/actuator/breakerconfig/downstreamService")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"slidingWindowSize\": \"3\", \"minimumNumberOfCalls\": \"2\"}"));
+        }
+    }
+
+    @Test
+    @DisplayName("Rejected calls get a pre-serialized fallback without stack traces")
+    void openState_fastRejectReusesSerializedResponse() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(500)));
+        mockMvc.perform(get("/api/call"));
+        mockMvc.perform(get("/api/call"));
+        CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+
+        mockMvc.perform(get("/api/call"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.circuit_state").value("OPEN"))
+                .andExpect(jsonPath("$.response").value(
+                        org.hamcrest.Matchers.containsString("FALLBACK")));
+
+        CallNotPermittedException first = CallNotPermittedException.createCallNotPermittedException(cb);
+        CallNotPermittedException second = CallNotPermittedException.createCallNotPermittedException(cb);
+        Assertions.assertEquals(0, first.getStackTrace().length);
+        DownstreamResponse response = downstreamService.fallback(first);
+        Assertions.assertTrue(response.isPreSerialized());
+        Assertions.assertSame(response, downstreamService.fallback(second));
+    }
+
+    @Test
+    @DisplayName("Stream mode copies the downstream body as-is and reports breaker state in headers")
+    void stream_passesBodyThroughWithStateHeaders() throws Exception {
+        String payload = "{\"items\":\"" + "x".repeat(100_000) + "\"}";
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(payload)));
+
+        mockMvc.perform(get("/api/call/stream"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ResponseStreamer.STATE_HEADER, "CLOSED"))
+                .andExpect(header().string(ResponseStreamer.SOURCE_HEADER, "DOWNSTREAM"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().string(payload));
+        CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+        Assertions.assertEquals(1, cb.getMetrics().getNumberOfSuccessfulCalls());
+
+        // 非 2xx 計入失敗，回應改為 fallback 內容
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(500).withBody("error")));
+        mockMvc.perform(get("/api/call/stream"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ResponseStreamer.SOURCE_HEADER, "FALLBACK"))
+                .andExpect(jsonPath("$.source").value("FALLBACK"));
+        Assertions.assertEquals(1, cb.getMetrics().getNumberOfFailedCalls());
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+
+        MvcResult pending = mockMvc.perform(get("/api/reactive/call/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(header().string(ResponseStreamer.STATE_HEADER, "OPEN"))
+                .andExpect(header().string(ResponseStreamer.SOURCE_HEADER, "FALLBACK"));
+        Assertions.assertEquals(1, cb.getMetrics().getNumberOfNotPermittedCalls());
+    }
+
+    @Test
+    @DisplayName("Reactive stream mode records success only after the body completes")
+    void reactiveStream_recordsSuccessOnCompletion() throws Exception {
+        String payload = "y".repeat(50_000);
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody(payload)));
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/warmup")).willReturn(WireMock.aResponse().withStatus(200)));
+        webClient.get().uri("/warmup").retrieve().toBodilessEntity().block(Duration.ofSeconds(10));
+
+        MvcResult pending = mockMvc.perform(get("/api/reactive/call/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ResponseStreamer.STATE_HEADER, "CLOSED"))
+                .andExpect(content().string(payload));
+        Assertions.assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfSuccessfulCalls());
+    }
 }
@@ -0,0 +1,31 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+/**
+ * 基準測試要量測的斷路器狀態
+ *
+ * HALF_OPEN 代表「試探請求仍在進行中」的穩態: 允許的試探名額已被佔用，
+ * 其餘流量都走 HALF_OPEN 的拒絕路徑，這也是實際流量下最常見的 HALF_OPEN 情境。
+ */
+public enum BreakerState {
+    CLOSED,
+    OPEN,
+    HALF_OPEN;
+
+    public void applyTo(CircuitBreaker cb) {
+        cb.reset();
+        switch (this) {
+            case CLOSED -> { }
+            case OPEN -> cb.transitionToOpenState();
+            case HALF_OPEN -> {
+                cb.transitionToOpenState();
+                cb.transitionToHalfOpenState();
+                int permitted = cb.getCircuitBreakerConfig().getPermittedNumberOfCallsInHalfOpenState();
+                for (int i = 0; i < permitted; i++) {
+                    cb.tryAcquirePermission();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 每次呼叫的事件處理成本 (8 個執行緒同時呼叫同一個斷路器):
+ * - none:     不掛任何 listener
+ * - syncLog:  原本的 listener，每次 success / error 同步寫一行 INFO log
+ * - eventSink: CircuitBreakerEventSink，只寫入 ring buffer，背景執行緒彙總後輸出
+ *
+ * log 寫入 ${java.io.tmpdir}/cb-event-benchmark.log (見 src/jmh/resources/logback.xml)。
+ *
+ * 執行: ./gradlew jmh -PjmhIncludes=EventSinkBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class EventSinkBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger("com.poc.circuitbreaker.events");
+
+    @Param({"none", "syncLog", "eventSink"})
+    public String listener;
+
+    /** 只影響 eventSink: CPU 核心少時背景執行緒排不到，buffer 太小會以丟棄收場 */
+    @Param({"8192", "1048576"})
+    public int bufferSize;
+
+    private CircuitBreaker circuitBreaker;
+    private CircuitBreakerEventSink eventSink;
+    private final Supplier<String> call = () -> "ok";
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        circuitBreaker = CircuitBreaker.of("downstreamService", CircuitBreakerConfig.ofDefaults());
+        switch (listener) {
+            case "syncLog" -> circuitBreaker.getEventPublisher()
+                .onError(event -> log.error("CB [{}] Error: {}",
+                    event.getCircuitBreakerName(), event.getThrowable().getMessage()))
+                .onSuccess(event -> log.info("CB [{}] Success (duration: {}ms)",
+                    event.getCircuitBreakerName(), event.getElapsedDuration().toMillis()));
+            case "eventSink" -> {
+                EventSinkProperties props = new EventSinkProperties();
+                props.setBufferSize(bufferSize);
+                eventSink = new CircuitBreakerEventSink(props);
+                eventSink.register(circuitBreaker);
+            }
+            default -> { }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (eventSink != null) {
+            eventSink.close();
+            System.out.println("eventSink dropped events: " + eventSink.droppedEvents());
+        }
+    }
+
+    @Benchmark
+    public String call() {
+        return circuitBreaker.executeSupplier(call);
+    }
+}
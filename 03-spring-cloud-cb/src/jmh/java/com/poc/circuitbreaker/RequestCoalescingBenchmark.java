@@ -0,0 +1,112 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JCircuitBreakerFactory;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 突發負載下 single-flight 省下的下游呼叫數
+ *
+ * 64 個 JMH 執行緒同時呼叫 /api/call 的路徑 (RequestCoalescer -> callWithSpringCloudCB -> 5ms 下游)，
+ * 比較 coalescing 關閉 / 開啟:
+ * - 主要結果 (ops/ms) 是 client 看到的完成數
+ * - downstreamCalls (ops/ms) 是實際經過斷路器、送到下游的呼叫數
+ * 兩者相除就是每次下游呼叫服務了幾個 client 請求。
+ *
+ * 執行: ./gradlew jmh -PjmhIncludes=RequestCoalescingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+public class RequestCoalescingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean coalescing;
+
+    @Param({"5"})
+    public int downstreamLatencyMs;
+
+    private ExecutorService breakerExecutor;
+    private DownstreamService downstreamService;
+    private RequestCoalescer requestCoalescer;
+
+    /**
+     * 每個執行緒各自計數 (只有實際送出呼叫的執行緒會累加)，JMH 會加總並換算成速率
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long downstreamCalls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            downstreamCalls = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        breakerExecutor = Executors.newCachedThreadPool();
+        TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom()
+                .timeoutDuration(Duration.ofSeconds(2))
+                .cancelRunningFuture(true)
+                .build();
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.ofDefaults());
+        Resilience4JCircuitBreakerFactory factory = new Resilience4JCircuitBreakerFactory(
+                circuitBreakerRegistry, TimeLimiterRegistry.of(timeLimiterConfig), null);
+        factory.configureExecutorService(breakerExecutor);
+
+        RestClient restClient = RestClient.builder()
+                .baseUrl("http://stub.invalid")
+                .requestFactory(new StubClientHttpRequestFactory(Duration.ofMillis(downstreamLatencyMs)))
+                .build();
+        // 並行上限 / 慢速判定會在高並行時拒絕呼叫或開啟斷路器，這裡只量測斷路器本身
+        ConcurrencyLimitProperties concurrencyLimit = new ConcurrencyLimitProperties();
+        concurrencyLimit.setEnabled(false);
+        SlowCallProperties slowCall = new SlowCallProperties();
+        slowCall.setEnabled(false);
+        downstreamService = new DownstreamService(restClient, WebClient.create("http://stub.invalid"), factory,
+                new LastKnownGoodCache(new FallbackCacheProperties()), new HedgingPolicy(new HedgingProperties()),
+                new ConcurrencyLimiterRegistry(concurrencyLimit), new LatencyRecorder(Duration.ofMinutes(1)),
+                new SlowCallDetectorRegistry(slowCall, circuitBreakerRegistry),
+                new RetryPolicyRegistry(new RetryProperties(), circuitBreakerRegistry),
+                new BulkheadIsolationRegistry(new BulkheadIsolationProperties(), BulkheadRegistry.ofDefaults()));
+        requestCoalescer = new RequestCoalescer(coalescing);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        breakerExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public DownstreamResponse burst(Counters counters) {
+        return requestCoalescer.execute("downstreamService", () -> {
+            counters.downstreamCalls++;
+            return downstreamService.callWithSpringCloudCB();
+        });
+    }
+}
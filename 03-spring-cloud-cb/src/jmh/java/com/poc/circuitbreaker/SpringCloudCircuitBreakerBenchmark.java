@@ -0,0 +1,146 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 比較 Spring Cloud CircuitBreakerFactory 路徑與直接包裝 Supplier 的每次呼叫成本:
+ * - baseline:           不經過斷路器，直接呼叫 RestClient
+ * - springCloudFactory: DownstreamService.callWithSpringCloudCB() (factory.create(...).run(...))
+ * - decoratedSupplier:  CircuitBreaker.decorateSupplier() 直接包裝
+ *
+ * 斷路器設定對應 application.yml 的 shared 組態 (OPEN 等待時間拉長以免量測中途轉態)，
+ * 下游以 StubClientHttpRequestFactory 取代。
+ *
+ * 執行: ./gradlew jmh -PjmhIncludes=SpringCloudCircuitBreakerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SpringCloudCircuitBreakerBenchmark {
+
+    private static final int CONTENDED_THREADS = 4;
+
+    @Param({"CLOSED", "OPEN", "HALF_OPEN"})
+    public BreakerState state;
+
+    private DownstreamService downstreamService;
+    private RestClient restClient;
+    private CircuitBreaker factoryCircuitBreaker;
+    private CircuitBreaker plainCircuitBreaker;
+    private Supplier<String> decoratedSupplier;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CircuitBreakerConfig sharedConfig = CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(5)
+                .minimumNumberOfCalls(3)
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofHours(1))
+                .permittedNumberOfCallsInHalfOpenState(2)
+                .automaticTransitionFromOpenToHalfOpenEnabled(false)
+                .recordExceptions(Exception.class)
+                .build();
+        TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom()
+                .timeoutDuration(Duration.ofSeconds(2))
+                .cancelRunningFuture(true)
+                .build();
+
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(sharedConfig);
+        Resilience4JCircuitBreakerFactory factory = new Resilience4JCircuitBreakerFactory(
+                registry, TimeLimiterRegistry.of(timeLimiterConfig), null);
+        factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
+                .circuitBreakerConfig(sharedConfig)
+                .timeLimiterConfig(timeLimiterConfig)
+                .build());
+
+        restClient = RestClient.builder()
+                .baseUrl("http://stub.invalid")
+                .requestFactory(new StubClientHttpRequestFactory())
+                .build();
+        // 並行上限 / 慢速判定會在高並行時拒絕呼叫或開啟斷路器，這裡只量測斷路器本身
+        ConcurrencyLimitProperties concurrencyLimit = new ConcurrencyLimitProperties();
+        concurrencyLimit.setEnabled(false);
+        SlowCallProperties slowCall = new SlowCallProperties();
+        slowCall.setEnabled(false);
+        downstreamService = new DownstreamService(restClient, WebClient.create("http://stub.invalid"), factory,
+                new LastKnownGoodCache(new FallbackCacheProperties()), new HedgingPolicy(new HedgingProperties()),
+                new ConcurrencyLimiterRegistry(concurrencyLimit), new LatencyRecorder(Duration.ofMinutes(1)),
+                new SlowCallDetectorRegistry(slowCall, registry),
+                new RetryPolicyRegistry(new RetryProperties(), registry),
+                new BulkheadIsolationRegistry(new BulkheadIsolationProperties(), BulkheadRegistry.ofDefaults()));
+
+        factoryCircuitBreaker = registry.circuitBreaker("downstreamService");
+        plainCircuitBreaker = registry.circuitBreaker("plainSupplier");
+        decoratedSupplier = CircuitBreaker.decorateSupplier(plainCircuitBreaker,
+                () -> restClient.get().uri("/").retrieve().body(String.class));
+    }
+
+    @Setup(Level.Iteration)
+    public void enterState() {
+        state.applyTo(factoryCircuitBreaker);
+        state.applyTo(plainCircuitBreaker);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String baseline() {
+        return restClient.get().uri("/").retrieve().body(String.class);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public DownstreamResponse springCloudFactory() {
+        return downstreamService.callWithSpringCloudCB();
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public DownstreamResponse springCloudFactoryContended() {
+        return downstreamService.callWithSpringCloudCB();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String decoratedSupplier() {
+        return callDecorated();
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public String decoratedSupplierContended() {
+        return callDecorated();
+    }
+
+    private String callDecorated() {
+        try {
+            return decoratedSupplier.get();
+        } catch (CallNotPermittedException ex) {
+            return "{\"source\":\"FALLBACK\"}";
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * 不經過網路的下游替身: 固定回傳 200 + JSON，讓基準測試只量到斷路器本身的成本
+ * 指定 latency 時以阻塞等待模擬慢速下游 (與真實 socket read 一樣會佔住呼叫執行緒)
+ */
+class StubClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    static final byte[] BODY = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final long latencyMillis;
+
+    StubClientHttpRequestFactory() {
+        this(Duration.ZERO);
+    }
+
+    StubClientHttpRequestFactory(Duration latency) {
+        this.latencyMillis = latency.toMillis();
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new StubRequest(uri, httpMethod, latencyMillis);
+    }
+
+    private static final class StubRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final long latencyMillis;
+
+        StubRequest(URI uri, HttpMethod method, long latencyMillis) {
+            this.uri = uri;
+            this.method = method;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return new ByteArrayOutputStream(0);
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("stub downstream interrupted");
+                }
+            }
+            return new StubResponse();
+        }
+    }
+
+    private static final class StubResponse implements ClientHttpResponse {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        StubResponse() {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentLength(BODY.length);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        public String getStatusText() {
+            return "OK";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(BODY);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JCircuitBreakerFactory;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.core.task.support.ExecutorServiceAdapter;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 慢速下游下，platform thread 與 virtual thread 的吞吐量與 p99 比較
+ *
+ * 400 個 JMH 執行緒代表同時在線的 client (closed-loop)，每個請求:
+ *   request executor (模擬 Tomcat worker) -> callWithSpringCloudCB() -> factory executor -> 慢速下游
+ * - PLATFORM: request executor 為 200 條固定執行緒 (Tomcat 預設 maxThreads)，factory 使用預設 cached pool
+ * - VIRTUAL:  兩者皆為每個任務一個 virtual thread (spring.threads.virtual.enabled=true 的行為)
+ *
+ * Throughput 看每毫秒完成數，SampleTime 看 p99 (排隊時間會直接反映在尾延遲)。
+ * VIRTUAL 需要 Java 21+: ./gradlew jmh -PjmhIncludes=VirtualThreadBenchmark -PjmhJvm=/path/to/jdk21/bin/java
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(400)
+public class VirtualThreadBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    public enum ThreadingMode { PLATFORM, VIRTUAL }
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ThreadingMode mode;
+
+    @Param({"100"})
+    public int downstreamLatencyMs;
+
+    private ExecutorService requestExecutor;
+    private ExecutorService breakerExecutor;
+    private DownstreamService downstreamService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (mode == ThreadingMode.VIRTUAL) {
+            requestExecutor = new ExecutorServiceAdapter(new VirtualThreadTaskExecutor("request-vt-"));
+            breakerExecutor = new ExecutorServiceAdapter(new VirtualThreadTaskExecutor("cb-vt-"));
+        } else {
+            requestExecutor = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+            breakerExecutor = Executors.newCachedThreadPool();
+        }
+
+        CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.ofDefaults();
+        TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom()
+                .timeoutDuration(Duration.ofSeconds(2))
+                .cancelRunningFuture(true)
+                .build();
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
+        Resilience4JCircuitBreakerFactory factory = new Resilience4JCircuitBreakerFactory(
+                circuitBreakerRegistry, TimeLimiterRegistry.of(timeLimiterConfig), null);
+        factory.configureExecutorService(breakerExecutor);
+
+        RestClient restClient = RestClient.builder()
+                .baseUrl("http://stub.invalid")
+                .requestFactory(new StubClientHttpRequestFactory(Duration.ofMillis(downstreamLatencyMs)))
+                .build();
+        // 並行上限 / 慢速判定會在高並行時拒絕呼叫或開啟斷路器，這裡只量測斷路器本身
+        ConcurrencyLimitProperties concurrencyLimit = new ConcurrencyLimitProperties();
+        concurrencyLimit.setEnabled(false);
+        SlowCallProperties slowCall = new SlowCallProperties();
+        slowCall.setEnabled(false);
+        downstreamService = new DownstreamService(restClient, WebClient.create("http://stub.invalid"), factory,
+                new LastKnownGoodCache(new FallbackCacheProperties()), new HedgingPolicy(new HedgingProperties()),
+                new ConcurrencyLimiterRegistry(concurrencyLimit), new LatencyRecorder(Duration.ofMinutes(1)),
+                new SlowCallDetectorRegistry(slowCall, circuitBreakerRegistry),
+                new RetryPolicyRegistry(new RetryProperties(), circuitBreakerRegistry),
+                new BulkheadIsolationRegistry(new BulkheadIsolationProperties(), BulkheadRegistry.ofDefaults()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (mode == ThreadingMode.PLATFORM) {
+            requestExecutor.shutdownNow();
+            breakerExecutor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public DownstreamResponse slowDownstream() throws Exception {
+        return requestExecutor.submit(downstreamService::callWithSpringCloudCB).get();
+    }
+}
@@ -2,14 +2,22 @@ package com.poc.circuitbreaker;
 
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -17,21 +25,64 @@ import java.util.stream.Collectors;
 public class ApiController {
 
     private final DownstreamService downstreamService;
+    private final ReactiveDownstreamService reactiveDownstreamService;
+    private final RequestCoalescer requestCoalescer;
+    private final HedgingPolicy hedgingPolicy;
     private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final ConcurrencyLimiterRegistry concurrencyLimiterRegistry;
+    private final RouteDownstreamService routeDownstreamService;
+    private final RouteCircuitBreakerRegistry routeCircuitBreakerRegistry;
+    private final LatencyRecorder latencyRecorder;
+    private final ClusterStateSync clusterStateSync;
+    private final SlowCallDetectorRegistry slowCallDetectorRegistry;
+    private final CircuitBreakerReconfigurer circuitBreakerReconfigurer;
+    private final BatchCallExecutor batchCallExecutor;
+    private final DownstreamLoadBalancer downstreamLoadBalancer;
+    private final RetryPolicyRegistry retryPolicyRegistry;
+    private final BulkheadIsolationRegistry bulkheadIsolationRegistry;
 
     public ApiController(DownstreamService downstreamService,
-                         CircuitBreakerRegistry circuitBreakerRegistry) {
+                         ReactiveDownstreamService reactiveDownstreamService,
+                         RequestCoalescer requestCoalescer,
+                         HedgingPolicy hedgingPolicy,
+                         CircuitBreakerRegistry circuitBreakerRegistry,
+                         ConcurrencyLimiterRegistry concurrencyLimiterRegistry,
+                         RouteDownstreamService routeDownstreamService,
+                         RouteCircuitBreakerRegistry routeCircuitBreakerRegistry,
+                         LatencyRecorder latencyRecorder,
+                         ClusterStateSync clusterStateSync,
+                         SlowCallDetectorRegistry slowCallDetectorRegistry,
+                         CircuitBreakerReconfigurer circuitBreakerReconfigurer,
+                         BatchCallExecutor batchCallExecutor,
+                         DownstreamLoadBalancer downstreamLoadBalancer,
+                         RetryPolicyRegistry retryPolicyRegistry,
+                         BulkheadIsolationRegistry bulkheadIsolationRegistry) {
         this.downstreamService = downstreamService;
+        this.reactiveDownstreamService = reactiveDownstreamService;
+        this.requestCoalescer = requestCoalescer;
+        this.hedgingPolicy = hedgingPolicy;
         this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.concurrencyLimiterRegistry = concurrencyLimiterRegistry;
+        this.routeDownstreamService = routeDownstreamService;
+        this.routeCircuitBreakerRegistry = routeCircuitBreakerRegistry;
+        this.latencyRecorder = latencyRecorder;
+        this.clusterStateSync = clusterStateSync;
+        this.slowCallDetectorRegistry = slowCallDetectorRegistry;
+        this.circuitBreakerReconfigurer = circuitBreakerReconfigurer;
+        this.batchCallExecutor = batchCallExecutor;
+        this.downstreamLoadBalancer = downstreamLoadBalancer;
+        this.retryPolicyRegistry = retryPolicyRegistry;
+        this.bulkheadIsolationRegistry = bulkheadIsolationRegistry;
     }
 
     /**
      * 使用 Spring Cloud Circuit Breaker 呼叫 (一般服務)
+     * 開啟 coalescing.enabled 時，同時到達的請求共用同一次下游呼叫
      */
     @GetMapping("/call")
     public ResponseEntity<Map<String, Object>> call() {
-        String result = downstreamService.callWithSpringCloudCB();
-        return ResponseEntity.ok(buildResponse("downstreamService", result));
+        return respond("downstreamService",
+            requestCoalescer.execute("downstreamService", downstreamService::callWithSpringCloudCB));
     }
 
     /**
@@ -39,8 +90,87 @@ public class ApiController {
      */
     @GetMapping("/call-critical")
     public ResponseEntity<Map<String, Object>> callCritical() {
-        String result = downstreamService.callCriticalService();
-        return ResponseEntity.ok(buildResponse("criticalService", result));
+        return respond("criticalService",
+            requestCoalescer.execute("criticalService", downstreamService::callCriticalService));
+    }
+
+    /**
+     * 一次請求並行呼叫多個項目，每個項目經過各自的斷路器，回傳各自的結果與 fallback 狀態
+     * 例如 {"items": [{"id": "profile", "breaker": "criticalService", "critical": true}, {"id": "news", "breaker": "route", "path": "/news"}]}
+     */
+    @PostMapping("/call-batch")
+    public ResponseEntity<Map<String, Object>> callBatch(@RequestBody BatchCallExecutor.Request request) {
+        try {
+            return ResponseEntity.ok(batchCallExecutor.execute(request.items()));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        } catch (RejectedExecutionException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", ex.getMessage()));
+        }
+    }
+
+    /**
+     * 非阻塞呼叫 (一般服務)，等待下游期間 Servlet 執行緒即釋放
+     */
+    @GetMapping("/reactive/call")
+    public Mono<ResponseEntity<Map<String, Object>>> reactiveCall() {
+        return reactiveDownstreamService.callWithSpringCloudCB()
+            .map(result -> respond("downstreamService", result));
+    }
+
+    /**
+     * 非阻塞呼叫 (關鍵服務)
+     */
+    @GetMapping("/reactive/call-critical")
+    public Mono<ResponseEntity<Map<String, Object>>> reactiveCallCritical() {
+        return reactiveDownstreamService.callCriticalService()
+            .map(result -> respond("criticalService", result));
+    }
+
+    /**
+     * 以路由 (host + path) 為單位的斷路器呼叫，只接受單純的相對路徑
+     */
+    @GetMapping("/routes/call")
+    public ResponseEntity<Map<String, Object>> routeCall(@RequestParam(defaultValue = "/") String path) {
+        if (!RouteDownstreamService.PATH.matcher(path).matches()) {
+            return ResponseEntity.badRequest().build();
+        }
+        DownstreamResponse result = routeDownstreamService.call(path);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("route", routeDownstreamService.routeKey(path));
+        body.put("state", String.valueOf(routeCircuitBreakerRegistry.state(routeDownstreamService.routeKey(path))));
+        body.put("response", result.body());
+        if (!result.fromCache()) {
+            return ResponseEntity.ok(body);
+        }
+        body.put("cache_age_ms", result.age().toMillis());
+        return ResponseEntity.ok()
+            .header(HttpHeaders.AGE, String.valueOf(result.age().toSeconds()))
+            .body(body);
+    }
+
+    /**
+     * 路由斷路器總覽 (數量、淘汰數、非 CLOSED 的路由)
+     */
+    @GetMapping("/routes")
+    public ResponseEntity<Map<String, Object>> routes() {
+        return ResponseEntity.ok(routeCircuitBreakerRegistry.stats(100));
+    }
+
+    /**
+     * 查看 / 重置特定路由，只查詢既有的路由
+     */
+    @GetMapping("/routes/status")
+    public ResponseEntity<Map<String, Object>> routeStatus(@RequestParam String route) {
+        return ResponseEntity.of(routeCircuitBreakerRegistry.find(route));
+    }
+
+    @GetMapping("/routes/reset")
+    public ResponseEntity<Map<String, Object>> routeReset(@RequestParam String route) {
+        if (!routeCircuitBreakerRegistry.reset(route)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.of(routeCircuitBreakerRegistry.find(route));
     }
 
     /**
@@ -60,8 +190,22 @@ public class ApiController {
             info.put("failed_calls", m.getNumberOfFailedCalls());
             info.put("successful_calls", m.getNumberOfSuccessfulCalls());
             info.put("not_permitted_calls", m.getNumberOfNotPermittedCalls());
+            info.put("coalesced_calls", requestCoalescer.coalescedCalls(cb.getName()));
+            info.put("concurrency_limit", concurrencyLimiterRegistry.limiter(cb.getName()).stats());
+            info.put("latency", latencyRecorder.snapshot(cb.getName()));
+            info.put("slow_call", slowCallDetectorRegistry.detector(cb.getName()).stats());
+            info.put("retry", retryPolicyRegistry.policy(cb.getName()).stats());
+            info.put("bulkhead", bulkheadIsolationRegistry.isolation(cb.getName()).stats());
+            info.put("cluster", clusterStateSync.view(cb.getName()));
+            if ("criticalService".equals(cb.getName())) {
+                info.put("hedging", hedgingPolicy.stats());
+            }
+            if ("downstreamService".equals(cb.getName()) && downstreamLoadBalancer.isEnabled()) {
+                info.put("load_balancer", downstreamLoadBalancer.stats());
+            }
 
             Map<String, Object> config = new LinkedHashMap<>();
+            config.put("config_version", circuitBreakerReconfigurer.version(cb.getName()));
             config.put("sliding_window_size", cb.getCircuitBreakerConfig().getSlidingWindowSize());
             config.put("failure_rate_threshold", cb.getCircuitBreakerConfig().getFailureRateThreshold());
             config.put("wait_in_open_state", cb.getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1) + "ms");
@@ -74,21 +218,38 @@ public class ApiController {
         return ResponseEntity.ok(dashboard);
     }
 
+    /**
+     * 叢集狀態同步: node id、收送訊息數、因其他節點而開啟的次數
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<Map<String, Object>> cluster() {
+        return ResponseEntity.ok(clusterStateSync.stats());
+    }
+
     /**
      * 查看特定 Circuit Breaker 狀態
+     * 只查詢既有的斷路器，不存在時回傳 404 (不會替任意名稱建立新的斷路器)
      */
     @GetMapping("/status/{name}")
     public ResponseEntity<Map<String, Object>> status(@PathVariable String name) {
-        CircuitBreaker cb = circuitBreakerRegistry.circuitBreaker(name);
-        return ResponseEntity.ok(buildResponse(name, null));
+        if (circuitBreakerRegistry.find(name).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Map<String, Object> status = buildResponse(name, null);
+        status.put("config_version", circuitBreakerReconfigurer.version(name));
+        status.put("slow_call", slowCallDetectorRegistry.detector(name).stats());
+        return ResponseEntity.ok(status);
     }
 
     /**
-     * 重置特定 Circuit Breaker
+     * 重置特定 Circuit Breaker (只查詢既有的斷路器)
      */
     @GetMapping("/reset/{name}")
     public ResponseEntity<Map<String, String>> reset(@PathVariable String name) {
-        CircuitBreaker cb = circuitBreakerRegistry.circuitBreaker(name);
+        CircuitBreaker cb = circuitBreakerRegistry.find(name).orElse(null);
+        if (cb == null) {
+            return ResponseEntity.notFound().build();
+        }
         String oldState = cb.getState().name();
         cb.reset();
         return ResponseEntity.ok(Map.of(
@@ -113,7 +274,33 @@ public class ApiController {
         return ResponseEntity.ok(results);
     }
 
+    /**
+     * 呼叫端的時間預算在取得斷路器名額前已經用完
+     */
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<Map<String, String>> deadlineExceeded(DeadlineExceededException ex) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(Map.of(
+            "error", "DEADLINE_EXCEEDED",
+            "message", ex.getMessage()
+        ));
+    }
+
     // --- Helper ---
+
+    /**
+     * 取自快取的回應加上 Age header (秒)
+     */
+    private ResponseEntity<Map<String, Object>> respond(String cbName, DownstreamResponse result) {
+        Map<String, Object> body = buildResponse(cbName, result.body());
+        if (!result.fromCache()) {
+            return ResponseEntity.ok(body);
+        }
+        body.put("cache_age_ms", result.age().toMillis());
+        return ResponseEntity.ok()
+            .header(HttpHeaders.AGE, String.valueOf(result.age().toSeconds()))
+            .body(body);
+    }
+
     private Map<String, Object> buildResponse(String cbName, String result) {
         CircuitBreaker cb = circuitBreakerRegistry.circuitBreaker(cbName);
         CircuitBreaker.Metrics m = cb.getMetrics();
@@ -0,0 +1,286 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 一次請求內並行呼叫多個下游項目 (POST /api/call-batch)
+ *
+ * - 每個項目各自經過對應的斷路器 (downstreamService / criticalService / 路由斷路器)，結果附上各自的 fallback 狀態
+ * - 結構化並行: 最多 maxConcurrency 個 worker 依序領取項目，所有 worker 結束 (或期限到後的短暫寬限) 才回傳，
+ *   不會有項目在回應之後繼續佔用斷路器名額或連線
+ * - worker 來自所有批次共用的固定大小執行緒池 (maxWorkers，排隊位置同樣數量)；池與排隊都滿時
+ *   拿不到任何 worker 的批次立即拒絕 (RejectedExecutionException)，執行緒數不會隨並行的批次數無限增加
+ * - 整個批次共用一個 Deadline，期限到時進行中的下游請求直接中斷，尚未開始的項目不再送出
+ * - critical 項目沒有成功 (fallback / 錯誤) 時 Deadline.cancel(): 其餘進行中的請求立即中斷、未開始的項目取消；
+ *   因此中斷的呼叫轉為 DeadlineExceededException，不計入斷路器失敗率
+ * - 不經過 RequestCoalescer: 批次取消時不能影響其他請求共用的那次呼叫
+ */
+public class BatchCallExecutor implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchCallExecutor.class);
+
+    /** 期限到或取消後，等待進行中項目結束的時間 */
+    private static final long CANCEL_GRACE_MILLIS = 500;
+
+    private final BatchProperties props;
+    private final DownstreamService downstreamService;
+    private final RouteDownstreamService routeDownstreamService;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final RouteCircuitBreakerRegistry routeCircuitBreakerRegistry;
+    private final ThreadPoolExecutor workers;
+    private final AtomicInteger workerIds = new AtomicInteger();
+
+    public BatchCallExecutor(BatchProperties props,
+                             DownstreamService downstreamService,
+                             RouteDownstreamService routeDownstreamService,
+                             CircuitBreakerRegistry circuitBreakerRegistry,
+                             RouteCircuitBreakerRegistry routeCircuitBreakerRegistry) {
+        this.props = props;
+        this.downstreamService = downstreamService;
+        this.routeDownstreamService = routeDownstreamService;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.routeCircuitBreakerRegistry = routeCircuitBreakerRegistry;
+        int maxWorkers = Math.max(1, props.getMaxWorkers());
+        this.workers = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(maxWorkers), runnable -> {
+                Thread thread = new Thread(runnable, "batch-" + workerIds.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 批次中的一個項目
+     *
+     * @param breaker  downstreamService (預設)、criticalService 或 route (以 path 的路由斷路器呼叫)
+     * @param critical 沒有成功時取消整個批次
+     */
+    public record Item(String id, String breaker, String path, boolean critical) {
+    }
+
+    public record Request(List<Item> items) {
+    }
+
+    /**
+     * @throws IllegalArgumentException 項目數超過上限、未知的斷路器或不合法的路由 path
+     * @throws RejectedExecutionException 共用的 worker 與排隊位置都已用完
+     */
+    public Map<String, Object> execute(List<Item> items) {
+        validate(items);
+        long start = System.nanoTime();
+        Batch batch = new Batch(items, Deadline.within(Deadline.current(), props.getTimeout()));
+        int workerCount = Math.min(Math.max(1, props.getMaxConcurrency()), items.size());
+        CountDownLatch done = new CountDownLatch(workerCount);
+        int started = 0;
+        for (int i = 0; i < workerCount; i++) {
+            try {
+                workers.execute(() -> {
+                    try {
+                        batch.drain();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+                started++;
+            } catch (RejectedExecutionException ex) {
+                // 拿到的 worker 較少時照樣執行，只是並行度較低
+                done.countDown();
+            }
+        }
+        if (started == 0) {
+            throw new RejectedExecutionException("All " + workers.getMaximumPoolSize() + " batch workers are busy");
+        }
+        boolean finished = await(done, batch.deadline.remainingNanos());
+        if (!finished) {
+            // 期限已到: 中斷尚在等待下游的項目
+            batch.deadline.cancel();
+            finished = await(done, TimeUnit.MILLISECONDS.toNanos(CANCEL_GRACE_MILLIS));
+        }
+        if (!finished) {
+            log.warn("Batch of {} items returned with calls still running after the deadline", items.size());
+        }
+        return batch.summary(System.nanoTime() - start);
+    }
+
+    private void validate(List<Item> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Batch has no items");
+        }
+        if (items.size() > props.getMaxItems()) {
+            throw new IllegalArgumentException("Batch has " + items.size() + " items, limit is " + props.getMaxItems());
+        }
+        for (Item item : items) {
+            String breaker = breakerOf(item);
+            switch (breaker) {
+                case "downstreamService", "criticalService" -> { }
+                case "route" -> {
+                    if (item.path() == null || !RouteDownstreamService.PATH.matcher(item.path()).matches()) {
+                        throw new IllegalArgumentException("Invalid route path for item " + item.id());
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown circuit breaker for item " + item.id() + ": " + breaker);
+            }
+        }
+    }
+
+    /** 執行中與排隊中的 worker 數 (所有批次合計) */
+    int pendingWorkers() {
+        return workers.getActiveCount() + workers.getQueue().size();
+    }
+
+    private static boolean await(CountDownLatch latch, long nanos) {
+        try {
+            return latch.await(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return latch.getCount() == 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * 一次批次的狀態: 下一個要領取的項目、每個項目的結果、取消原因
+     */
+    private final class Batch {
+
+        private final List<Item> items;
+        private final Deadline deadline;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicReferenceArray<Map<String, Object>> results;
+        private final AtomicReference<String> cancelledBy = new AtomicReference<>();
+
+        Batch(List<Item> items, Deadline deadline) {
+            this.items = items;
+            this.deadline = deadline;
+            this.results = new AtomicReferenceArray<>(items.size());
+        }
+
+        void drain() {
+            int index;
+            while ((index = next.getAndIncrement()) < items.size()) {
+                Item item = items.get(index);
+                if (deadline.isExpired()) {
+                    results.compareAndSet(index, null, skipped(item));
+                    continue;
+                }
+                results.compareAndSet(index, null, run(item));
+            }
+        }
+
+        private Map<String, Object> run(Item item) {
+            long start = System.nanoTime();
+            String status;
+            DownstreamResponse response = null;
+            String error = null;
+            try (Deadline.Scope scope = Deadline.open(deadline)) {
+                response = call(item);
+                status = !response.fallback() ? "OK" : deadline.isExpired() ? interruptedStatus() : "FALLBACK";
+            } catch (DeadlineExceededException ex) {
+                status = interruptedStatus();
+                error = ex.getMessage();
+            } catch (RuntimeException ex) {
+                status = "ERROR";
+                error = ex.getMessage();
+            }
+            if (item.critical() && ("FALLBACK".equals(status) || "ERROR".equals(status))) {
+                cancel(item);
+            }
+            Map<String, Object> result = result(item, status);
+            result.put("elapsed_ms", Duration.ofNanos(System.nanoTime() - start).toMillis());
+            if (response != null) {
+                result.put("from_cache", response.fromCache());
+                result.put("response", response.body());
+            }
+            if (error != null) {
+                result.put("error", error);
+            }
+            return result;
+        }
+
+        private DownstreamResponse call(Item item) {
+            return switch (breakerOf(item)) {
+                case "criticalService" -> downstreamService.callCriticalService();
+                case "route" -> routeDownstreamService.call(item.path());
+                default -> downstreamService.callWithSpringCloudCB();
+            };
+        }
+
+        private void cancel(Item item) {
+            if (cancelledBy.compareAndSet(null, String.valueOf(item.id()))) {
+                log.warn("Batch cancelled: critical item {} did not succeed", item.id());
+                deadline.cancel();
+            }
+        }
+
+        private String interruptedStatus() {
+            return cancelledBy.get() != null ? "CANCELLED" : "DEADLINE_EXCEEDED";
+        }
+
+        private Map<String, Object> skipped(Item item) {
+            return result(item, interruptedStatus());
+        }
+
+        private Map<String, Object> result(Item item, String status) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("id", item.id());
+            String breaker = breakerOf(item);
+            if ("route".equals(breaker)) {
+                String route = routeDownstreamService.routeKey(item.path());
+                result.put("circuit_breaker", route);
+                result.put("state", String.valueOf(routeCircuitBreakerRegistry.state(route)));
+            } else {
+                result.put("circuit_breaker", breaker);
+                result.put("state", circuitBreakerRegistry.circuitBreaker(breaker).getState().name());
+            }
+            result.put("status", status);
+            return result;
+        }
+
+        Map<String, Object> summary(long elapsedNanos) {
+            List<Map<String, Object>> list = new ArrayList<>(items.size());
+            int ok = 0;
+            for (int i = 0; i < items.size(); i++) {
+                // 寬限時間後仍未結束的項目 (之後才完成的結果不會覆蓋)
+                results.compareAndSet(i, null, result(items.get(i), interruptedStatus()));
+                Map<String, Object> result = results.get(i);
+                if ("OK".equals(result.get("status"))) {
+                    ok++;
+                }
+                list.add(result);
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("items", list);
+            summary.put("succeeded", ok);
+            summary.put("not_succeeded", items.size() - ok);
+            summary.put("cancelled_by", cancelledBy.get());
+            summary.put("deadline_exceeded", cancelledBy.get() == null && deadline.isExpired());
+            summary.put("elapsed_ms", Duration.ofNanos(elapsedNanos).toMillis());
+            return summary;
+        }
+    }
+
+    private static String breakerOf(Item item) {
+        return item.breaker() == null ? "downstreamService" : item.breaker();
+    }
+}
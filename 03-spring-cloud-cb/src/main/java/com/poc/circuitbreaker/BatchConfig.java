@@ -0,0 +1,21 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(BatchProperties.class)
+public class BatchConfig {
+
+    @Bean(destroyMethod = "close")
+    public BatchCallExecutor batchCallExecutor(BatchProperties props,
+                                               DownstreamService downstreamService,
+                                               RouteDownstreamService routeDownstreamService,
+                                               CircuitBreakerRegistry circuitBreakerRegistry,
+                                               RouteCircuitBreakerRegistry routeCircuitBreakerRegistry) {
+        return new BatchCallExecutor(props, downstreamService, routeDownstreamService,
+            circuitBreakerRegistry, routeCircuitBreakerRegistry);
+    }
+}
@@ -0,0 +1,58 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * POST /api/call-batch 的設定 (batch.*)
+ *
+ * 一個批次的所有項目共用同一個 Deadline: 呼叫端 X-Request-Timeout 與 timeout 取較早者。
+ */
+@ConfigurationProperties(prefix = "batch")
+public class BatchProperties {
+
+    /** 單一批次的項目數上限 */
+    private int maxItems = 20;
+
+    /** 單一批次同時進行中的項目數上限 */
+    private int maxConcurrency = 4;
+
+    /** 所有批次共用的 worker 執行緒上限；另有同樣數量的排隊位置，都用完時新的批次立即拒絕 */
+    private int maxWorkers = 16;
+
+    /** 整個批次的時間上限 */
+    private Duration timeout = Duration.ofSeconds(5);
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public void setMaxItems(int maxItems) {
+        this.maxItems = maxItems;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = maxWorkers;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+}
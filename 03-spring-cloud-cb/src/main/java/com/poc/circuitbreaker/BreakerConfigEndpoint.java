@@ -0,0 +1,64 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.OptionalParameter;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 執行中調整斷路器門檻: GET /actuator/breakerconfig、POST /actuator/breakerconfig/{name}
+ *
+ * POST body 例如 {"failureRateThreshold": "30", "waitDurationInOpenState": "10s"}，未提供的欄位維持原值
+ * 本身沒有驗證，預設不加入 web exposure；需要時只在獨立的 management.server.port 上開放
+ */
+@Component
+@Endpoint(id = "breakerconfig")
+public class BreakerConfigEndpoint {
+
+    private final CircuitBreakerReconfigurer reconfigurer;
+
+    public BreakerConfigEndpoint(CircuitBreakerReconfigurer reconfigurer) {
+        this.reconfigurer = reconfigurer;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> configs() {
+        return reconfigurer.describeAll();
+    }
+
+    @WriteOperation
+    public Map<String, Object> update(@Selector String name,
+                                      @OptionalParameter String slidingWindowSize,
+                                      @OptionalParameter String failureRateThreshold,
+                                      @OptionalParameter String waitDurationInOpenState,
+                                      @OptionalParameter String minimumNumberOfCalls,
+                                      @OptionalParameter String permittedNumberOfCallsInHalfOpenState) {
+        Map<String, String> values = new LinkedHashMap<>();
+        putIfPresent(values, "slidingWindowSize", slidingWindowSize);
+        putIfPresent(values, "failureRateThreshold", failureRateThreshold);
+        putIfPresent(values, "waitDurationInOpenState", waitDurationInOpenState);
+        putIfPresent(values, "minimumNumberOfCalls", minimumNumberOfCalls);
+        putIfPresent(values, "permittedNumberOfCallsInHalfOpenState", permittedNumberOfCallsInHalfOpenState);
+        try {
+            long version = reconfigurer.reconfigure(name, CircuitBreakerReconfigurer.Change.parse(values));
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("circuit_breaker", name);
+            result.put("config_version", version);
+            return result;
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidEndpointRequestException(ex.getMessage(), ex.getMessage());
+        }
+    }
+
+    private static void putIfPresent(Map<String, String> values, String key, String value) {
+        if (value != null) {
+            values.put(key, value);
+        }
+    }
+}
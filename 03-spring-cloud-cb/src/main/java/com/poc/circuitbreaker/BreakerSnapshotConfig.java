@@ -0,0 +1,20 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(BreakerSnapshotProperties.class)
+public class BreakerSnapshotConfig {
+
+    /**
+     * 建立時即還原快照 (context refresh 期間，Web server 尚未接受請求)
+     */
+    @Bean
+    public BreakerSnapshotStore breakerSnapshotStore(BreakerSnapshotProperties props,
+                                                     CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new BreakerSnapshotStore(props, circuitBreakerRegistry);
+    }
+}
@@ -0,0 +1,269 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.circuitbreaker.IllegalStateTransitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 斷路器狀態快照，存在固定大小的 memory-mapped 檔案
+ *
+ * - 啟動時 (Spring context refresh，Web server 開始接受請求之前) 讀取快照並還原:
+ *   OPEN 且等待時間未到 → OPEN 到原本的到期時間；等待時間已過或 HALF_OPEN → HALF_OPEN，先以少量探測確認下游；
+ *   CLOSED → 以視窗計數重播成功 / 失敗結果
+ * - 之後才建立的斷路器 (例如 Spring Cloud factory 第一次 create) 在加入 registry 時還原；
+ *   執行中被替換的斷路器 (CircuitBreakerReconfigurer) 改為監聽新的 instance
+ * - 背景執行緒每 interval 寫入一次，狀態轉換時另外立即寫入；呼叫路徑上不做任何事
+ * - 寫入以 sequence 標記 (奇數表示寫入中)，程序在寫入途中終止時下次啟動會忽略該快照；
+ *   資料在 page cache 中，程序 crash 也不會遺失，不需要每次 fsync
+ *
+ * 檔案格式: header 32 bytes (magic、版本、sequence、寫入時間、筆數)，之後每個斷路器固定 128 bytes。
+ */
+public class BreakerSnapshotStore implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BreakerSnapshotStore.class);
+
+    private static final int MAGIC = 0x43425353;
+    private static final int VERSION = 1;
+    private static final int SEQUENCE = 8;
+    private static final int WRITTEN_AT = 16;
+    private static final int COUNT = 24;
+    private static final int HEADER = 32;
+
+    static final int ENTRY_SIZE = 128;
+    private static final int MAX_NAME = 100;
+    private static final int STATE = 104;
+    private static final int FAILED = 108;
+    private static final int BUFFERED = 112;
+    private static final int SLOW = 116;
+    private static final int OPEN_SINCE = 120;
+
+    private static final CircuitBreaker.State[] STATES = CircuitBreaker.State.values();
+
+    private final CircuitBreakerRegistry registry;
+    private final LongSupplier wallClock;
+    private final long maxAgeMillis;
+    private final int maxBreakers;
+    private final MappedByteBuffer buffer;
+    private final ScheduledExecutorService writer;
+    private final Map<String, Long> openSince = new ConcurrentHashMap<>();
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+    private long sequence;
+    private int restored;
+
+    public BreakerSnapshotStore(BreakerSnapshotProperties props, CircuitBreakerRegistry registry) {
+        this(props, registry, System::currentTimeMillis);
+    }
+
+    BreakerSnapshotStore(BreakerSnapshotProperties props, CircuitBreakerRegistry registry, LongSupplier wallClock) {
+        this.registry = registry;
+        this.wallClock = wallClock;
+        this.maxAgeMillis = props.getMaxAge().toMillis();
+        this.maxBreakers = props.getMaxBreakers();
+        this.buffer = props.isEnabled() ? map(props.getPath(), HEADER + maxBreakers * ENTRY_SIZE) : null;
+        if (buffer == null) {
+            this.writer = null;
+            return;
+        }
+        read();
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "breaker-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        registry.getAllCircuitBreakers().forEach(this::register);
+        registry.getEventPublisher()
+            .onEntryAdded(event -> register(event.getAddedEntry()))
+            .onEntryReplaced(event -> register(event.getNewEntry()));
+        log.info("Breaker snapshot {}: restored {} breaker(s), {} pending", props.getPath(), restored, pending.size());
+        long intervalMillis = props.getInterval().toMillis();
+        writer.scheduleWithFixedDelay(this::writeQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static MappedByteBuffer map(Path path, int size) {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Breaker snapshot disabled, cannot map {}: {}", path, e.toString());
+            return null;
+        }
+    }
+
+    private void read() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(SEQUENCE, 0).putInt(COUNT, 0);
+            return;
+        }
+        long seq = buffer.getLong(SEQUENCE);
+        this.sequence = seq + (seq & 1);
+        if ((seq & 1) != 0) {
+            log.warn("Breaker snapshot was being written when the process stopped, ignored");
+            return;
+        }
+        long age = wallClock.getAsLong() - buffer.getLong(WRITTEN_AT);
+        if (age > maxAgeMillis) {
+            log.info("Breaker snapshot is {}s old, ignored", age / 1_000);
+            return;
+        }
+        int count = Math.min(buffer.getInt(COUNT), maxBreakers);
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER + i * ENTRY_SIZE;
+            int length = buffer.get(offset) & 0xFF;
+            int state = buffer.get(offset + STATE);
+            if (length == 0 || length > MAX_NAME || state < 0 || state >= STATES.length) {
+                continue;
+            }
+            byte[] name = new byte[length];
+            buffer.get(offset + 1, name);
+            pending.put(new String(name, StandardCharsets.UTF_8), new Entry(STATES[state],
+                buffer.getInt(offset + FAILED), buffer.getInt(offset + BUFFERED),
+                buffer.getInt(offset + SLOW), buffer.getLong(offset + OPEN_SINCE)));
+        }
+    }
+
+    private void register(CircuitBreaker cb) {
+        cb.getEventPublisher().onStateTransition(event -> {
+            if (event.getStateTransition().getToState() == CircuitBreaker.State.OPEN) {
+                openSince.put(cb.getName(), wallClock.getAsLong());
+            }
+            try {
+                writer.execute(this::writeQuietly);
+            } catch (RejectedExecutionException ex) {
+                // 已關閉
+            }
+        });
+        Entry entry = pending.remove(cb.getName());
+        if (entry != null) {
+            restore(cb, entry);
+        }
+    }
+
+    private void restore(CircuitBreaker cb, Entry entry) {
+        try {
+            switch (entry.state()) {
+                case OPEN, HALF_OPEN -> {
+                    long until = entry.openSince() + cb.getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1);
+                    if (entry.state() == CircuitBreaker.State.OPEN && until > wallClock.getAsLong()) {
+                        cb.transitionToOpenStateUntil(Instant.ofEpochMilli(until));
+                    } else {
+                        cb.transitionToOpenState();
+                        cb.transitionToHalfOpenState();
+                    }
+                    openSince.put(cb.getName(), entry.openSince());
+                }
+                case CLOSED -> BreakerWindowReplay.replay(cb, entry.failedCalls(), entry.bufferedCalls());
+                default -> {
+                    // DISABLED / FORCED_OPEN / METRICS_ONLY 為手動設定的狀態，不還原
+                    return;
+                }
+            }
+            restored++;
+            log.info("CB [{}] restored from snapshot: {} (failed {}/{})",
+                cb.getName(), cb.getState(), entry.failedCalls(), entry.bufferedCalls());
+        } catch (IllegalStateTransitionException ex) {
+            log.warn("CB [{}] could not be restored: {}", cb.getName(), ex.getMessage());
+        }
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (RuntimeException ex) {
+            log.error("Breaker snapshot write failed", ex);
+        }
+    }
+
+    /**
+     * 寫入所有斷路器；尚未建立而未還原的快照項目原樣保留
+     */
+    synchronized void write() {
+        buffer.putLong(SEQUENCE, ++sequence);
+        VarHandle.storeStoreFence();
+        int count = 0;
+        for (CircuitBreaker cb : registry.getAllCircuitBreakers()) {
+            if (count == maxBreakers) {
+                break;
+            }
+            CircuitBreaker.Metrics metrics = cb.getMetrics();
+            if (put(count, cb.getName(), new Entry(cb.getState(), metrics.getNumberOfFailedCalls(),
+                    metrics.getNumberOfBufferedCalls(), metrics.getNumberOfSlowCalls(),
+                    openSince.getOrDefault(cb.getName(), 0L)))) {
+                count++;
+            }
+        }
+        for (Map.Entry<String, Entry> entry : pending.entrySet()) {
+            if (count < maxBreakers && put(count, entry.getKey(), entry.getValue())) {
+                count++;
+            }
+        }
+        buffer.putInt(COUNT, count);
+        buffer.putLong(WRITTEN_AT, wallClock.getAsLong());
+        VarHandle.storeStoreFence();
+        buffer.putLong(SEQUENCE, ++sequence);
+    }
+
+    private boolean put(int index, String name, Entry entry) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME) {
+            return false;
+        }
+        int offset = HEADER + index * ENTRY_SIZE;
+        buffer.put(offset, (byte) bytes.length)
+            .put(offset + 1, bytes)
+            .put(offset + STATE, (byte) entry.state().ordinal())
+            .putInt(offset + FAILED, entry.failedCalls())
+            .putInt(offset + BUFFERED, entry.bufferedCalls())
+            .putInt(offset + SLOW, entry.slowCalls())
+            .putLong(offset + OPEN_SINCE, entry.openSince());
+        return true;
+    }
+
+    /**
+     * 啟動時從快照還原的斷路器數量
+     */
+    public int restored() {
+        return restored;
+    }
+
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        write();
+        buffer.force();
+    }
+
+    private record Entry(CircuitBreaker.State state, int failedCalls, int bufferedCalls, int slowCalls, long openSince) {
+    }
+}
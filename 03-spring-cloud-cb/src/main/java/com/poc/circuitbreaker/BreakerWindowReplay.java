@@ -0,0 +1,34 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把視窗計數重播到 (新建立的) 斷路器: 先成功、後失敗
+ *
+ * Resilience4j 沒有直接設定視窗內容的 API，只能以 onSuccess / onError 重新記錄；
+ * 原本的先後順序已無法得知，失敗放在最後 (較保守)。
+ */
+final class BreakerWindowReplay {
+
+    private static final RuntimeException REPLAYED_FAILURE = new ReplayedFailureException();
+
+    private BreakerWindowReplay() {
+    }
+
+    static void replay(CircuitBreaker cb, int failedCalls, int bufferedCalls) {
+        for (int i = failedCalls; i < bufferedCalls; i++) {
+            cb.onSuccess(0, TimeUnit.NANOSECONDS);
+        }
+        for (int i = 0; i < failedCalls; i++) {
+            cb.onError(0, TimeUnit.NANOSECONDS, REPLAYED_FAILURE);
+        }
+    }
+
+    private static final class ReplayedFailureException extends RuntimeException {
+        ReplayedFailureException() {
+            super("replayed window outcome", null, false, false);
+        }
+    }
+}
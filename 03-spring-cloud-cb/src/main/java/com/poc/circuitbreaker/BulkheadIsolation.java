@@ -0,0 +1,77 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 單一斷路器的 bulkhead 隔離: 在 Resilience4j semaphore bulkhead 前加上排隊長度上限
+ *
+ * - 進入斷路器前先佔一個位置 (並行名額 + 排隊長度)，位置用完立即拒絕，呼叫端執行緒不會被卡住
+ * - 拿到位置但沒有並行名額的呼叫，在 semaphore 上最多等 maxWaitDuration (排隊逾時)，逾時由 bulkhead 拒絕
+ * - 一個下游卡住時，最多只佔用 maxConcurrentCalls + maxQueueDepth 條請求執行緒，其他斷路器不受影響
+ */
+public class BulkheadIsolation {
+
+    private final Bulkhead bulkhead;
+    private final int maxQueueDepth;
+    private final int maxConnections;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+    private final LongAdder rejectedWaitTimeout = new LongAdder();
+
+    public BulkheadIsolation(Bulkhead bulkhead, BulkheadIsolationProperties.Instance props) {
+        this.bulkhead = bulkhead;
+        this.maxQueueDepth = props.getMaxQueueDepth();
+        this.maxConnections = props.getMaxConnections();
+        bulkhead.getEventPublisher().onCallRejected(event -> rejectedWaitTimeout.increment());
+    }
+
+    /**
+     * 佔一個位置；回傳 false 表示並行名額與排隊位置都已用完，呼叫端應立即回傳
+     */
+    public boolean tryEnter() {
+        int capacity = bulkhead.getBulkheadConfig().getMaxConcurrentCalls() + maxQueueDepth;
+        if (admitted.incrementAndGet() > capacity) {
+            admitted.decrementAndGet();
+            rejectedQueueFull.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public void exit() {
+        admitted.decrementAndGet();
+    }
+
+    public BulkheadQueueFullException queueFull() {
+        return new BulkheadQueueFullException(bulkhead.getName(), maxQueueDepth);
+    }
+
+    /** 已取得並行名額的呼叫數 */
+    public int active() {
+        return bulkhead.getBulkheadConfig().getMaxConcurrentCalls() - bulkhead.getMetrics().getAvailableConcurrentCalls();
+    }
+
+    /** 等待並行名額的呼叫數 */
+    public int queueDepth() {
+        return Math.max(0, admitted.get() - active());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("max_concurrent_calls", bulkhead.getBulkheadConfig().getMaxConcurrentCalls());
+        stats.put("active", active());
+        stats.put("queue_depth", queueDepth());
+        stats.put("max_queue_depth", maxQueueDepth);
+        stats.put("queue_timeout_ms", bulkhead.getBulkheadConfig().getMaxWaitDuration().toMillis());
+        stats.put("rejected_queue_full", rejectedQueueFull.sum());
+        stats.put("rejected_wait_timeout", rejectedWaitTimeout.sum());
+        // 0 表示專屬連線池沿用 downstream.http.max-connections-per-route
+        stats.put("max_connections", maxConnections);
+        return stats;
+    }
+}
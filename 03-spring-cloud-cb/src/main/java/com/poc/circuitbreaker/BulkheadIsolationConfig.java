@@ -0,0 +1,17 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(BulkheadIsolationProperties.class)
+public class BulkheadIsolationConfig {
+
+    @Bean
+    public BulkheadIsolationRegistry bulkheadIsolationRegistry(BulkheadIsolationProperties props,
+                                                               BulkheadRegistry bulkheadRegistry) {
+        return new BulkheadIsolationRegistry(props, bulkheadRegistry);
+    }
+}
@@ -0,0 +1,68 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 每個斷路器的 bulkhead 隔離設定 (bulkhead-isolation.instances.*)
+ *
+ * 並行上限與排隊逾時沿用 resilience4j.bulkhead.instances 的 maxConcurrentCalls / maxWaitDuration，
+ * 這裡補上 semaphore 沒有的排隊長度上限，以及專屬 HTTP 連線數。
+ * 只有自己持有 HTTP client 的斷路器 (DEDICATED_POOLS) 能設定 max-connections，其他斷路器設定時啟動即失敗，
+ * 不會被默默忽略。
+ */
+@ConfigurationProperties(prefix = "bulkhead-isolation")
+public class BulkheadIsolationProperties {
+
+    /** 有專屬連線池的斷路器: downstreamService (Apache HttpClient) / criticalService (Reactor Netty) */
+    static final Set<String> DEDICATED_POOLS = Set.of("downstreamService", "criticalService");
+
+    /** 斷路器名稱 → 隔離設定；未列出的斷路器不排隊 (滿載即拒絕) */
+    private Map<String, Instance> instances = new LinkedHashMap<>();
+
+    public Map<String, Instance> getInstances() {
+        return instances;
+    }
+
+    public void setInstances(Map<String, Instance> instances) {
+        instances.forEach((name, instance) -> {
+            if (instance.getMaxConnections() > 0 && !DEDICATED_POOLS.contains(name)) {
+                throw new IllegalArgumentException("bulkhead-isolation.instances." + name
+                    + ".max-connections is only supported for " + DEDICATED_POOLS);
+            }
+        });
+        this.instances = instances;
+    }
+
+    public Instance instance(String name) {
+        return instances.getOrDefault(name, new Instance());
+    }
+
+    public static class Instance {
+
+        /** 並行名額用完後最多幾個呼叫排隊等待，超過立即拒絕 */
+        private int maxQueueDepth = 0;
+
+        /** 專屬連線池的連線數上限；0 表示沿用 downstream.http.max-connections-per-route */
+        private int maxConnections = 0;
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public void setMaxQueueDepth(int maxQueueDepth) {
+            this.maxQueueDepth = maxQueueDepth;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+    }
+}
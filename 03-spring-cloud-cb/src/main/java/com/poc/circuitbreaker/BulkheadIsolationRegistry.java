@@ -0,0 +1,28 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每個斷路器各自一個 BulkheadIsolation (名稱與斷路器、bulkhead 相同)
+ *
+ * 使用與 Spring Cloud Resilience4jBulkheadProvider 同一個 BulkheadRegistry，排隊計數與實際的 semaphore 一致。
+ */
+public class BulkheadIsolationRegistry {
+
+    private final BulkheadIsolationProperties props;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final Map<String, BulkheadIsolation> isolations = new ConcurrentHashMap<>();
+
+    public BulkheadIsolationRegistry(BulkheadIsolationProperties props, BulkheadRegistry bulkheadRegistry) {
+        this.props = props;
+        this.bulkheadRegistry = bulkheadRegistry;
+    }
+
+    public BulkheadIsolation isolation(String name) {
+        return isolations.computeIfAbsent(name,
+            key -> new BulkheadIsolation(bulkheadRegistry.bulkhead(key), props.instance(key)));
+    }
+}
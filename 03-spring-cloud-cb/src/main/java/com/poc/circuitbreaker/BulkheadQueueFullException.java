@@ -0,0 +1,13 @@
+package com.poc.circuitbreaker;
+
+/**
+ * bulkhead 並行名額與排隊位置都已用完而被拒絕的呼叫
+ *
+ * 在進入斷路器前就拒絕，不計入斷路器；不需要 stack trace，拒絕路徑不做額外配置。
+ */
+public class BulkheadQueueFullException extends RuntimeException {
+
+    public BulkheadQueueFullException(String name, int maxQueueDepth) {
+        super("Bulkhead queue of '" + name + "' is full (max_queue_depth=" + maxQueueDepth + ")", null, false, false);
+    }
+}
@@ -0,0 +1,227 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 執行中調整斷路器門檻，不需重新啟動
+ *
+ * Resilience4j 的斷路器設定建立後不可修改，因此以新設定建立新的 instance、移轉狀態後以 registry.replace 替換:
+ * - OPEN → OPEN 到「開啟時間 + 新的 waitDurationInOpenState」；已經到期則直接 HALF_OPEN
+ * - HALF_OPEN → HALF_OPEN，以新設定的探測數重新確認
+ * - CLOSED → 重播視窗的成功 / 失敗計數；新視窗較小時按比例縮減 (失敗數無條件進位)
+ * - FORCED_OPEN / DISABLED / METRICS_ONLY → 相同的手動狀態
+ *
+ * 呼叫端每次都由 registry 取得斷路器 (Spring Cloud CircuitBreakerFactory 的 run)，替換後的下一次呼叫即使用新設定；
+ * 替換當下仍在舊 instance 上進行中的呼叫，結果記錄在舊 instance，不會影響新的視窗。
+ * 每次實際變更後該斷路器的設定版本 +1 (啟動時為 1)。
+ */
+public class CircuitBreakerReconfigurer {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerReconfigurer.class);
+
+    private final CircuitBreakerRegistry registry;
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final Map<String, Long> openedAt = new ConcurrentHashMap<>();
+
+    public CircuitBreakerReconfigurer(CircuitBreakerRegistry registry) {
+        this.registry = registry;
+        registry.getAllCircuitBreakers().forEach(this::track);
+        registry.getEventPublisher()
+            .onEntryAdded(event -> track(event.getAddedEntry()))
+            .onEntryReplaced(event -> track(event.getNewEntry()));
+    }
+
+    /**
+     * 記錄 OPEN 的時間，替換時才能保留原本的到期時間
+     */
+    private void track(CircuitBreaker cb) {
+        cb.getEventPublisher().onStateTransition(event -> {
+            if (event.getStateTransition().getToState() == CircuitBreaker.State.OPEN) {
+                openedAt.put(cb.getName(), System.nanoTime());
+            }
+        });
+    }
+
+    /**
+     * 套用變更；只調整既有的斷路器，設定沒有差異時不替換
+     *
+     * @return 套用後的設定版本
+     * @throws IllegalArgumentException 斷路器不存在或設定值不合法
+     */
+    public synchronized long reconfigure(String name, Change change) {
+        CircuitBreaker current = registry.find(name)
+            .orElseThrow(() -> new IllegalArgumentException("Unknown circuit breaker: " + name));
+        CircuitBreakerConfig config = change.applyTo(current.getCircuitBreakerConfig());
+        if (config == null) {
+            return version(name);
+        }
+        CircuitBreaker replacement = CircuitBreaker.of(name, config, current.getTags());
+        migrate(current, replacement);
+        registry.replace(name, replacement);
+        long version = versions.merge(name, 2L, (previous, one) -> previous + 1);
+        log.info("CB [{}] reconfigured to v{}: {} (state {}, failed {}/{})", name, version, change,
+            replacement.getState(), replacement.getMetrics().getNumberOfFailedCalls(),
+            replacement.getMetrics().getNumberOfBufferedCalls());
+        return version;
+    }
+
+    private void migrate(CircuitBreaker from, CircuitBreaker to) {
+        switch (from.getState()) {
+            case OPEN -> {
+                Long since = openedAt.get(from.getName());
+                if (since == null) {
+                    to.transitionToOpenState();
+                    return;
+                }
+                long waitNanos = Duration.ofMillis(to.getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1)).toNanos();
+                long remaining = since + waitNanos - System.nanoTime();
+                if (remaining > 0) {
+                    to.transitionToOpenStateFor(Duration.ofNanos(remaining));
+                } else {
+                    to.transitionToOpenState();
+                    to.transitionToHalfOpenState();
+                }
+                openedAt.put(from.getName(), since);
+            }
+            case HALF_OPEN -> {
+                to.transitionToOpenState();
+                to.transitionToHalfOpenState();
+            }
+            case FORCED_OPEN -> to.transitionToForcedOpenState();
+            case DISABLED -> to.transitionToDisabledState();
+            case METRICS_ONLY -> to.transitionToMetricsOnlyState();
+            case CLOSED -> {
+                CircuitBreaker.Metrics metrics = from.getMetrics();
+                int buffered = metrics.getNumberOfBufferedCalls();
+                int failed = metrics.getNumberOfFailedCalls();
+                int capacity = to.getCircuitBreakerConfig().getSlidingWindowSize();
+                if (buffered > capacity) {
+                    failed = (int) Math.ceil((double) failed * capacity / buffered);
+                    buffered = capacity;
+                }
+                BreakerWindowReplay.replay(to, failed, buffered);
+                if (to.getState() == CircuitBreaker.State.OPEN) {
+                    openedAt.put(to.getName(), System.nanoTime());
+                }
+            }
+        }
+    }
+
+    /**
+     * 目前的設定版本，未調整過為 1
+     */
+    public long version(String name) {
+        return versions.getOrDefault(name, 1L);
+    }
+
+    public Map<String, Map<String, Object>> describeAll() {
+        Map<String, Map<String, Object>> all = new LinkedHashMap<>();
+        registry.getAllCircuitBreakers().forEach(cb -> all.put(cb.getName(), describe(cb)));
+        return all;
+    }
+
+    public Map<String, Object> describe(CircuitBreaker cb) {
+        CircuitBreakerConfig config = cb.getCircuitBreakerConfig();
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("version", version(cb.getName()));
+        info.put("state", cb.getState().name());
+        info.put("sliding_window_size", config.getSlidingWindowSize());
+        info.put("minimum_number_of_calls", config.getMinimumNumberOfCalls());
+        info.put("failure_rate_threshold", config.getFailureRateThreshold());
+        info.put("wait_in_open_state", config.getWaitIntervalFunctionInOpenState().apply(1) + "ms");
+        info.put("half_open_calls", config.getPermittedNumberOfCallsInHalfOpenState());
+        return info;
+    }
+
+    /**
+     * 要變更的門檻，null 表示維持原值
+     */
+    public record Change(Integer slidingWindowSize,
+                         Float failureRateThreshold,
+                         Duration waitDurationInOpenState,
+                         Integer minimumNumberOfCalls,
+                         Integer permittedNumberOfCallsInHalfOpenState) {
+
+        /**
+         * 由單一斷路器的設定值建立 (鍵可用 kebab-case 或 camelCase，例如 sliding-window-size / slidingWindowSize)
+         *
+         * @throws IllegalArgumentException 未知的鍵或無法解析的值
+         */
+        public static Change parse(Map<String, String> values) {
+            Integer slidingWindowSize = null;
+            Float failureRateThreshold = null;
+            Duration waitDurationInOpenState = null;
+            Integer minimumNumberOfCalls = null;
+            Integer permittedNumberOfCallsInHalfOpenState = null;
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                String value = entry.getValue().trim();
+                try {
+                    switch (entry.getKey().replace("-", "").toLowerCase()) {
+                        case "slidingwindowsize" -> slidingWindowSize = Integer.valueOf(value);
+                        case "failureratethreshold" -> failureRateThreshold = Float.valueOf(value);
+                        case "waitdurationinopenstate" -> waitDurationInOpenState = duration(entry.getKey(), value);
+                        case "minimumnumberofcalls" -> minimumNumberOfCalls = Integer.valueOf(value);
+                        case "permittednumberofcallsinhalfopenstate" -> permittedNumberOfCallsInHalfOpenState = Integer.valueOf(value);
+                        default -> throw new IllegalArgumentException("Unsupported setting: " + entry.getKey());
+                    }
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid value for " + entry.getKey() + ": " + value);
+                }
+            }
+            return new Change(slidingWindowSize, failureRateThreshold, waitDurationInOpenState,
+                minimumNumberOfCalls, permittedNumberOfCallsInHalfOpenState);
+        }
+
+        /**
+         * 與 application.yml 相同的格式: ISO-8601 (PT30S)、帶單位 (500ms / 30s / 1m / 1h / 1d) 或純數字 (毫秒)
+         */
+        static Duration duration(String key, String value) {
+            try {
+                return DurationStyle.detectAndParse(value);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Invalid value for " + key + ": " + value, ex);
+            }
+        }
+
+        /**
+         * 以目前的設定為基礎套用變更；沒有差異時回傳 null
+         */
+        CircuitBreakerConfig applyTo(CircuitBreakerConfig current) {
+            CircuitBreakerConfig.Builder builder = CircuitBreakerConfig.from(current);
+            boolean changed = false;
+            if (slidingWindowSize != null && slidingWindowSize != current.getSlidingWindowSize()) {
+                builder.slidingWindowSize(slidingWindowSize);
+                changed = true;
+            }
+            if (failureRateThreshold != null && failureRateThreshold != current.getFailureRateThreshold()) {
+                builder.failureRateThreshold(failureRateThreshold);
+                changed = true;
+            }
+            if (waitDurationInOpenState != null
+                    && waitDurationInOpenState.toMillis() != current.getWaitIntervalFunctionInOpenState().apply(1)) {
+                builder.waitDurationInOpenState(waitDurationInOpenState);
+                changed = true;
+            }
+            if (minimumNumberOfCalls != null && minimumNumberOfCalls != current.getMinimumNumberOfCalls()) {
+                builder.minimumNumberOfCalls(minimumNumberOfCalls);
+                changed = true;
+            }
+            if (permittedNumberOfCallsInHalfOpenState != null
+                    && permittedNumberOfCallsInHalfOpenState != current.getPermittedNumberOfCallsInHalfOpenState()) {
+                builder.permittedNumberOfCallsInHalfOpenState(permittedNumberOfCallsInHalfOpenState);
+                changed = true;
+            }
+            return changed ? builder.build() : null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ClusterStateProperties.class)
+public class ClusterStateConfig {
+
+    /**
+     * 未啟用時使用不連網的 loopback，不會綁定 UDP port
+     */
+    @Bean
+    public ClusterStateTransport clusterStateTransport(ClusterStateProperties props) {
+        if (!props.isEnabled() || props.getTransport() == ClusterStateProperties.Transport.LOOPBACK) {
+            return new LoopbackClusterTransport();
+        }
+        return new UdpClusterTransport(props.getPort(), props.getPeers());
+    }
+
+    @Bean
+    public ClusterStateSync clusterStateSync(ClusterStateProperties props,
+                                             ClusterStateTransport clusterStateTransport,
+                                             CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new ClusterStateSync(props, clusterStateTransport, circuitBreakerRegistry);
+    }
+}
@@ -0,0 +1,369 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.circuitbreaker.IllegalStateTransitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在多個 replica 之間同步斷路器狀態
+ *
+ * - 本地斷路器狀態轉換時立即廣播 (TRANSITION)；每 summaryInterval 廣播所有斷路器的視窗摘要 (SUMMARY)；
+ *   送出都在 cluster-state 執行緒上進行，觸發轉換的請求執行緒只排入工作，不做 DNS 查詢或網路 I/O
+ * - 訊息為緊湊的二進位格式: magic、類型、node id、序號、送出時間，之後每個斷路器一筆 (名稱、狀態、失敗數、視窗內呼叫數)；
+ *   設定 secret 時結尾附上 HMAC-SHA256，簽章不符的訊息整則丟棄 (所有節點須使用相同的 secret)
+ * - 序號不大於該節點上一則已接受的訊息、或送出時間與本地時鐘相差超過 peerTimeout 的訊息視為重送而丟棄；
+ *   節點之間的時鐘誤差須小於 peerTimeout
+ * - 某個節點的斷路器從非 OPEN 變成 OPEN 時 (不論來自 TRANSITION 或 SUMMARY)，本地 CLOSED 的同名斷路器隨即 OPEN；
+ *   同一次 OPEN 只套用一次，本地恢復後不會被對方尚未恢復的舊狀態再次開啟
+ * - 本地與其他 CLOSED 節點的視窗合併後達到 minimumNumberOfCalls 與 failureRateThreshold 時，本地也會 OPEN
+ * - 只作用於本地已存在的斷路器；恢復 (HALF_OPEN → CLOSED) 仍由各節點自己的探測決定
+ */
+public class ClusterStateSync implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterStateSync.class);
+
+    private static final short MAGIC = (short) 0xCB51;
+    static final byte TRANSITION = 1;
+    static final byte SUMMARY = 2;
+    private static final int HEADER = Short.BYTES + Byte.BYTES + 3 * Long.BYTES;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+    private static final CircuitBreaker.State[] STATES = CircuitBreaker.State.values();
+
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final boolean enabled;
+    private final boolean applyRemoteOpen;
+    private final long peerTimeoutNanos;
+    private final SecretKeySpec key;
+    private final ClusterStateTransport transport;
+    private final CircuitBreakerRegistry registry;
+    private final Map<String, Map<Long, PeerWindow>> peers = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> registered = new ConcurrentHashMap<>();
+    private final Map<Long, Seen> lastSeen = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final LongAdder authFailures = new LongAdder();
+    private final LongAdder staleMessages = new LongAdder();
+    private final LongAdder remoteOpens = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+
+    public ClusterStateSync(ClusterStateProperties props, ClusterStateTransport transport,
+                            CircuitBreakerRegistry registry) {
+        this.enabled = props.isEnabled();
+        this.applyRemoteOpen = props.isApplyRemoteOpen();
+        this.peerTimeoutNanos = props.getPeerTimeout().toNanos();
+        this.key = props.getSecret().isEmpty()
+            ? null
+            : new SecretKeySpec(props.getSecret().getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        this.transport = transport;
+        this.registry = registry;
+        if (!enabled) {
+            this.scheduler = null;
+            return;
+        }
+        if (key == null && transport instanceof UdpClusterTransport) {
+            log.warn("cluster-state.secret is not set: cluster-state messages are not authenticated");
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-state");
+            thread.setDaemon(true);
+            return thread;
+        });
+        transport.onReceive(this::receive);
+        registry.getAllCircuitBreakers().forEach(this::register);
+        registry.getEventPublisher()
+            .onEntryAdded(event -> register(event.getAddedEntry()))
+            .onEntryReplaced(event -> register(event.getNewEntry()));
+        long intervalMillis = props.getSummaryInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::publishSummaries, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void register(CircuitBreaker cb) {
+        if (registered.put(cb.getName(), cb) != cb) {
+            cb.getEventPublisher().onStateTransition(event -> {
+                try {
+                    scheduler.execute(() -> publishTransition(cb));
+                } catch (RejectedExecutionException ex) {
+                    // 已關閉
+                }
+            });
+        }
+    }
+
+    private void publishTransition(CircuitBreaker cb) {
+        try {
+            send(TRANSITION, List.of(cb));
+        } catch (RuntimeException ex) {
+            log.error("Cluster-state transition for {} failed", cb.getName(), ex);
+        }
+    }
+
+    /**
+     * 等待已排入 cluster-state 執行緒的送出工作完成 (測試用)
+     */
+    void awaitPending() throws Exception {
+        scheduler.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    void publishSummaries() {
+        try {
+            long now = System.nanoTime();
+            peers.values().forEach(byPeer -> byPeer.values().removeIf(window -> now - window.receivedAt() > peerTimeoutNanos));
+            // 超過 2 * peerTimeout 的訊息 (含時鐘誤差) 已會被送出時間檢查擋下，不必再記住序號
+            lastSeen.values().removeIf(seen -> now - seen.seenAt() > 2 * peerTimeoutNanos);
+            transport.refresh();
+            send(SUMMARY, List.copyOf(registry.getAllCircuitBreakers()));
+        } catch (RuntimeException ex) {
+            log.error("Cluster-state summary failed", ex);
+        }
+    }
+
+    /**
+     * 依序寫入斷路器，超過 MAX_PAYLOAD 時拆成多則訊息
+     */
+    private void send(byte type, List<CircuitBreaker> breakers) {
+        ByteBuffer buffer = newMessage(type);
+        for (CircuitBreaker cb : breakers) {
+            byte[] name = cb.getName().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 255) {
+                continue;
+            }
+            if (buffer.remaining() < 1 + name.length + 1 + 2 * Integer.BYTES) {
+                flush(buffer);
+                buffer = newMessage(type);
+            }
+            CircuitBreaker.Metrics metrics = cb.getMetrics();
+            buffer.put((byte) name.length)
+                .put(name)
+                .put((byte) cb.getState().ordinal())
+                .putInt(metrics.getNumberOfFailedCalls())
+                .putInt(metrics.getNumberOfBufferedCalls());
+        }
+        if (buffer.position() > HEADER) {
+            flush(buffer);
+        }
+    }
+
+    private ByteBuffer newMessage(byte type) {
+        return ByteBuffer.allocate(ClusterStateTransport.MAX_PAYLOAD - macLength())
+            .putShort(MAGIC).put(type).putLong(nodeId)
+            .putLong(sequence.incrementAndGet()).putLong(System.currentTimeMillis());
+    }
+
+    private void flush(ByteBuffer buffer) {
+        int length = buffer.position();
+        byte[] payload = new byte[length + macLength()];
+        buffer.flip().get(payload, 0, length);
+        if (key != null) {
+            System.arraycopy(mac(payload, length), 0, payload, length, MAC_LENGTH);
+        }
+        transport.broadcast(payload);
+        sent.increment();
+    }
+
+    private int macLength() {
+        return key == null ? 0 : MAC_LENGTH;
+    }
+
+    /**
+     * payload 前 length bytes 的 HMAC；Mac 不是 thread-safe，每次建立 (訊息頻率很低)
+     */
+    private byte[] mac(byte[] payload, int length) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            mac.update(payload, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    void receive(byte[] payload) {
+        try {
+            int length = payload.length - macLength();
+            if (key != null && (length < HEADER
+                    || !MessageDigest.isEqual(mac(payload, length), Arrays.copyOfRange(payload, length, payload.length)))) {
+                authFailures.increment();
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(payload, 0, length);
+            if (buffer.remaining() < HEADER || buffer.getShort() != MAGIC) {
+                decodeErrors.increment();
+                return;
+            }
+            buffer.get();
+            long from = buffer.getLong();
+            if (from == nodeId) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (!isFresh(from, buffer.getLong(), buffer.getLong(), now)) {
+                staleMessages.increment();
+                return;
+            }
+            received.increment();
+            while (buffer.hasRemaining()) {
+                byte[] name = new byte[buffer.get() & 0xFF];
+                buffer.get(name);
+                CircuitBreaker.State state = STATES[buffer.get()];
+                PeerWindow window = new PeerWindow(state, buffer.getInt(), buffer.getInt(), now);
+                onPeerWindow(new String(name, StandardCharsets.UTF_8), from, window);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            decodeErrors.increment();
+        }
+    }
+
+    /**
+     * 送出時間在 peerTimeout 內且序號比該節點上一則已接受的訊息大時才接受，並記下此序號
+     */
+    private boolean isFresh(long from, long messageSequence, long sentAtMillis, long now) {
+        if (TimeUnit.MILLISECONDS.toNanos(Math.abs(System.currentTimeMillis() - sentAtMillis)) > peerTimeoutNanos) {
+            return false;
+        }
+        boolean[] fresh = new boolean[1];
+        lastSeen.compute(from, (id, seen) -> {
+            if (seen != null && messageSequence <= seen.sequence()) {
+                return seen;
+            }
+            fresh[0] = true;
+            return new Seen(messageSequence, now);
+        });
+        return fresh[0];
+    }
+
+    private void onPeerWindow(String name, long from, PeerWindow window) {
+        PeerWindow previous = peers.computeIfAbsent(name, key -> new ConcurrentHashMap<>()).put(from, window);
+        CircuitBreaker local = registry.find(name).orElse(null);
+        if (!applyRemoteOpen || local == null || local.getState() != CircuitBreaker.State.CLOSED) {
+            return;
+        }
+        if (window.state() == CircuitBreaker.State.OPEN
+                && (previous == null || previous.state() != CircuitBreaker.State.OPEN)) {
+            openLocally(local, "peer " + Long.toHexString(from) + " opened");
+            return;
+        }
+        ClusterWindow cluster = clusterWindow(local, System.nanoTime());
+        CircuitBreakerConfig config = local.getCircuitBreakerConfig();
+        if (cluster.peers() > 0
+                && cluster.bufferedCalls() >= config.getMinimumNumberOfCalls()
+                && cluster.failureRate() >= config.getFailureRateThreshold()) {
+            openLocally(local, "cluster failure rate " + cluster.failureRate() + "%");
+        }
+    }
+
+    private void openLocally(CircuitBreaker cb, String reason) {
+        try {
+            cb.transitionToOpenState();
+            remoteOpens.increment();
+            log.warn("CB [{}] opened by cluster state: {}", cb.getName(), reason);
+        } catch (IllegalStateTransitionException ex) {
+            // 同時已被本地呼叫轉換過狀態
+        }
+    }
+
+    /**
+     * 本地與仍在 peerTimeout 內、狀態為 CLOSED 的節點合併後的視窗
+     */
+    private ClusterWindow clusterWindow(CircuitBreaker local, long now) {
+        int peerCount = 0;
+        int openPeers = 0;
+        long failed = local.getMetrics().getNumberOfFailedCalls();
+        long buffered = local.getMetrics().getNumberOfBufferedCalls();
+        for (PeerWindow window : peers.getOrDefault(local.getName(), Map.of()).values()) {
+            if (now - window.receivedAt() > peerTimeoutNanos) {
+                continue;
+            }
+            peerCount++;
+            if (window.state() == CircuitBreaker.State.CLOSED) {
+                failed += window.failedCalls();
+                buffered += window.bufferedCalls();
+            } else if (window.state() == CircuitBreaker.State.OPEN) {
+                openPeers++;
+            }
+        }
+        return new ClusterWindow(peerCount, openPeers, failed, buffered);
+    }
+
+    /**
+     * 單一斷路器在叢集中的狀態
+     */
+    public Map<String, Object> view(String name) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("enabled", enabled);
+        CircuitBreaker local = registry.find(name).orElse(null);
+        if (!enabled || local == null) {
+            return view;
+        }
+        ClusterWindow cluster = clusterWindow(local, System.nanoTime());
+        view.put("peers", cluster.peers());
+        view.put("open_peers", cluster.openPeers());
+        view.put("cluster_buffered_calls", cluster.bufferedCalls());
+        view.put("cluster_failed_calls", cluster.failedCalls());
+        view.put("cluster_failure_rate", cluster.bufferedCalls() == 0 ? -1.0f : cluster.failureRate());
+        return view;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("node_id", Long.toHexString(nodeId));
+        stats.put("transport", transport.getClass().getSimpleName());
+        stats.put("messages_sent", sent.sum());
+        stats.put("messages_received", received.sum());
+        stats.put("decode_errors", decodeErrors.sum());
+        stats.put("auth_failures", authFailures.sum());
+        stats.put("stale_messages", staleMessages.sum());
+        if (transport instanceof UdpClusterTransport udp) {
+            stats.put("rejected_datagrams", udp.rejectedDatagrams());
+            stats.put("resolve_failures", udp.resolveFailures());
+        }
+        stats.put("remote_opens", remoteOpens.sum());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private record Seen(long sequence, long seenAt) {
+    }
+
+    private record PeerWindow(CircuitBreaker.State state, int failedCalls, int bufferedCalls, long receivedAt) {
+    }
+
+    private record ClusterWindow(int peers, int openPeers, long failedCalls, long bufferedCalls) {
+        float failureRate() {
+            return bufferedCalls == 0 ? 0f : failedCalls * 100f / bufferedCalls;
+        }
+    }
+}
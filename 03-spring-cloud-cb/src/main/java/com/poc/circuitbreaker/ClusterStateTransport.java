@@ -0,0 +1,28 @@
+package com.poc.circuitbreaker;
+
+import java.util.function.Consumer;
+
+/**
+ * ClusterStateSync 使用的傳輸層: 把一段 bytes 送給其他節點，並把收到的 bytes 交給 handler
+ *
+ * - 不保證送達與順序 (UDP)，ClusterStateSync 以定期的視窗摘要補足遺失的訊息
+ * - 可能收到自己送出的訊息，由 ClusterStateSync 依 node id 過濾
+ */
+public interface ClusterStateTransport extends AutoCloseable {
+
+    /** 單一訊息的大小上限 (避免 UDP 分片) */
+    int MAX_PAYLOAD = 1400;
+
+    void broadcast(byte[] payload);
+
+    void onReceive(Consumer<byte[]> handler);
+
+    /**
+     * 每 summaryInterval 在 cluster-state 執行緒上呼叫一次，例如重新解析 peer (不在請求執行緒上做 DNS 查詢)
+     */
+    default void refresh() {
+    }
+
+    @Override
+    void close();
+}
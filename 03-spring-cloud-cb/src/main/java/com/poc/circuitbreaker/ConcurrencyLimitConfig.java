@@ -0,0 +1,15 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    public ConcurrencyLimiterRegistry concurrencyLimiterRegistry(ConcurrencyLimitProperties props) {
+        return new ConcurrencyLimiterRegistry(props);
+    }
+}
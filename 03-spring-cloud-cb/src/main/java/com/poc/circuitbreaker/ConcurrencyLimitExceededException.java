@@ -0,0 +1,13 @@
+package com.poc.circuitbreaker;
+
+/**
+ * 超過自適應並行上限而被拒絕的呼叫
+ *
+ * 屬於本地限流，斷路器設定為 ignoreExceptions；不需要 stack trace，拒絕路徑不做額外配置。
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    public ConcurrencyLimitExceededException(String name, int limit) {
+        super("Concurrency limit of '" + name + "' reached (limit=" + limit + ")", null, false, false);
+    }
+}
@@ -0,0 +1,23 @@
+package com.poc.circuitbreaker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每個斷路器各自一個 AdaptiveConcurrencyLimiter (名稱與斷路器相同)
+ *
+ * criticalService 的延遲變化不會壓縮 downstreamService 的上限，反之亦然。
+ */
+public class ConcurrencyLimiterRegistry {
+
+    private final ConcurrencyLimitProperties props;
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimiterRegistry(ConcurrencyLimitProperties props) {
+        this.props = props;
+    }
+
+    public AdaptiveConcurrencyLimiter limiter(String name) {
+        return limiters.computeIfAbsent(name, key -> new AdaptiveConcurrencyLimiter(key, props));
+    }
+}
@@ -0,0 +1,153 @@
+package com.poc.circuitbreaker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * 呼叫端給的時間預算，以收到請求時的 System.nanoTime() 為起點
+ *
+ * - 透過 header 以「剩餘毫秒數」傳遞 (相對時間，不受各主機時鐘誤差影響)，每一跳送出前重新計算，已花掉的時間自動扣除
+ * - 以 ThreadLocal 綁定在目前執行緒 (open)；換執行緒執行時 (CircuitBreakerFactory 的 executor) 需先取得 current() 再重新 open
+ * - 範圍內排定的取消工作 (DeadlineRequestFactory 在期限到時中斷 socket) 於範圍結束時一併取消
+ * - cancel() 讓期限提前結束 (例如批次中關鍵項目失敗)，並立即執行登記的中斷動作
+ */
+public final class Deadline {
+
+    /** 剩餘的時間預算 (毫秒) */
+    public static final String HEADER = "X-Request-Timeout";
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final Set<Runnable> aborts = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * budget 之後到期，但不晚於 parent (null 表示沒有上層期限)；parent 的 cancel() 不會傳遞
+     */
+    public static Deadline within(Deadline parent, Duration budget) {
+        long deadlineNanos = System.nanoTime() + budget.toNanos();
+        if (parent != null && parent.deadlineNanos - deadlineNanos < 0) {
+            deadlineNanos = parent.deadlineNanos;
+        }
+        return new Deadline(deadlineNanos);
+    }
+
+    /**
+     * 目前執行緒上的 Deadline，沒有時為 null
+     */
+    public static Deadline current() {
+        Scope scope = CURRENT.get();
+        return scope == null ? null : scope.deadline;
+    }
+
+    /**
+     * 在目前執行緒上套用 deadline (null 表示沒有期限)，close 時還原
+     */
+    public static Scope open(Deadline deadline) {
+        Scope scope = new Scope(deadline, CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * 登記期限到時執行的取消工作 (timer) 與同一個中斷動作 (abort，cancel() 時立即執行)，範圍結束時一併取消
+     */
+    static void register(Future<?> timer, Runnable abort) {
+        Scope scope = CURRENT.get();
+        if (scope == null) {
+            timer.cancel(false);
+            return;
+        }
+        Runnable unregister = scope.deadline.onCancel(abort);
+        scope.cleanups.add(() -> {
+            timer.cancel(false);
+            unregister.run();
+        });
+    }
+
+    /**
+     * cancel() 時執行 action (已經 cancel 則立即執行)；回傳取消登記的動作
+     */
+    public Runnable onCancel(Runnable action) {
+        aborts.add(action);
+        if (cancelled && aborts.remove(action)) {
+            action.run();
+        }
+        return () -> aborts.remove(action);
+    }
+
+    /**
+     * 提前結束: 之後 isExpired() 為 true，登記的中斷動作立即執行 (只執行一次)；
+     * 已經到期時只執行中斷動作，不標記為取消 (isCancelled() 用來分辨呼叫端放棄與下游用完預算)
+     */
+    public void cancel() {
+        if (!isExpired()) {
+            cancelled = true;
+        }
+        for (Runnable abort : aborts) {
+            if (aborts.remove(abort)) {
+                abort.run();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long remainingNanos() {
+        return cancelled ? 0 : deadlineNanos - System.nanoTime();
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, remainingNanos()));
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * 期限已過時拒絕，在佔用斷路器或下游資源之前呼叫
+     */
+    public static void checkNotExpired(Deadline deadline, String what) {
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException("Deadline exceeded before " + what);
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        private final Deadline deadline;
+        private final Scope previous;
+        private final List<Runnable> cleanups = new ArrayList<>(1);
+
+        private Scope(Deadline deadline, Scope previous) {
+            this.deadline = deadline;
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            cleanups.forEach(Runnable::run);
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
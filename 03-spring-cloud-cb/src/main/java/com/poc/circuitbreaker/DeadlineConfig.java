@@ -0,0 +1,15 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(DeadlineProperties.class)
+public class DeadlineConfig {
+
+    @Bean
+    public DeadlineFilter deadlineFilter(DeadlineProperties props) {
+        return new DeadlineFilter(props);
+    }
+}
@@ -0,0 +1,18 @@
+package com.poc.circuitbreaker;
+
+/**
+ * 呼叫端給的時間預算 (Deadline) 已經用完，或被 Deadline.cancel() 提前結束
+ *
+ * 只用於送出請求之前的拒絕與取消: 是呼叫端不再等待，不代表下游故障，斷路器設定為 ignoreExceptions；ApiController 回傳 504。
+ * 請求送出後下游用完預算則是 DownstreamTimeoutException，計入失敗率。
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String message) {
+        super(message, null, false, false);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause, false, false);
+    }
+}
@@ -0,0 +1,58 @@
+package com.poc.circuitbreaker;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * 讀取呼叫端的時間預算 (Deadline.HEADER)，在處理請求的執行緒上套用 Deadline
+ *
+ * 預算為 0 或負值 (呼叫端已經放棄) 時直接回傳 504，不進入 controller、不佔用斷路器名額；
+ * 格式錯誤的 header 視為沒有帶。
+ */
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    private final DeadlineProperties props;
+
+    public DeadlineFilter(DeadlineProperties props) {
+        this.props = props;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Duration budget = props.isEnabled() ? budget(request.getHeader(Deadline.HEADER)) : null;
+        if (budget == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (budget.isZero() || budget.isNegative()) {
+            response.setStatus(HttpStatus.GATEWAY_TIMEOUT.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"DEADLINE_EXCEEDED\",\"message\":\"Request arrived with no time budget left\"}");
+            return;
+        }
+        try (Deadline.Scope scope = Deadline.open(Deadline.after(budget))) {
+            chain.doFilter(request, response);
+        }
+    }
+
+    private Duration budget(String header) {
+        if (header != null) {
+            try {
+                Duration requested = Duration.ofMillis(Long.parseLong(header.trim()));
+                return requested.compareTo(props.getMaxTimeout()) > 0 ? props.getMaxTimeout() : requested;
+            } catch (NumberFormatException ex) {
+                // 視為沒有帶
+            }
+        }
+        return props.getDefaultTimeout();
+    }
+}
@@ -0,0 +1,48 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 呼叫端時間預算設定 (deadline.*)
+ *
+ * 請求帶 X-Request-Timeout (剩餘毫秒數) 時，以收到請求的時間為起點計算期限；
+ * 下游呼叫的逾時取剩餘預算，並把扣掉已花時間的預算轉送給下游。
+ */
+@ConfigurationProperties(prefix = "deadline")
+public class DeadlineProperties {
+
+    /** 是否讀取 header */
+    private boolean enabled = true;
+
+    /** 沒有 header 時的預算，未設定表示沒有期限 (仍受 TimeLimiter 與 HTTP client 逾時限制) */
+    private Duration defaultTimeout;
+
+    /** header 的上限，避免呼叫端給出過長的預算 */
+    private Duration maxTimeout = Duration.ofSeconds(30);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    public void setDefaultTimeout(Duration defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    public Duration getMaxTimeout() {
+        return maxTimeout;
+    }
+
+    public void setMaxTimeout(Duration maxTimeout) {
+        this.maxTimeout = maxTimeout;
+    }
+}
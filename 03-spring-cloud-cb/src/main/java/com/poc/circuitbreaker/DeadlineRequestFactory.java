@@ -0,0 +1,68 @@
+package com.poc.circuitbreaker;
+
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.Configurable;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 依目前執行緒上的 Deadline 調整每個下游請求
+ *
+ * - 剩餘預算以 Deadline.HEADER 轉送給下游，下游可以據此提早放棄
+ * - connection request / response timeout 取設定值與剩餘預算的較小者
+ * - 期限到時呼叫 request.cancel() 直接中斷連線: 阻塞在 socket read 上的執行緒不會回應 interrupt，
+ *   TimeLimiter 的 cancelRunningFuture 只能放棄等待，這裡才真正釋放連線與執行緒；Deadline.cancel() 時立即中斷
+ */
+public class DeadlineRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private static final ScheduledThreadPoolExecutor CANCELLER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "deadline-cancel");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        CANCELLER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final RequestConfig defaults;
+
+    public DeadlineRequestFactory(HttpClient httpClient) {
+        super(httpClient);
+        this.defaults = httpClient instanceof Configurable configurable && configurable.getConfig() != null
+            ? configurable.getConfig() : RequestConfig.DEFAULT;
+    }
+
+    @Override
+    protected void postProcessHttpRequest(ClassicHttpRequest request) {
+        Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            return;
+        }
+        long remainingNanos = deadline.remainingNanos();
+        if (remainingNanos <= 0) {
+            throw new DeadlineExceededException("Deadline exceeded before sending " + request.getRequestUri());
+        }
+        long remainingMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+        request.setHeader(Deadline.HEADER, Long.toString(remainingMillis));
+        if (request instanceof HttpUriRequestBase cancellable) {
+            Timeout budget = Timeout.ofMilliseconds(remainingMillis);
+            cancellable.setConfig(RequestConfig.copy(defaults)
+                .setConnectionRequestTimeout(min(defaults.getConnectionRequestTimeout(), budget))
+                .setResponseTimeout(min(defaults.getResponseTimeout(), budget))
+                .build());
+            Runnable abort = cancellable::cancel;
+            Deadline.register(CANCELLER.schedule(abort, remainingNanos, TimeUnit.NANOSECONDS), abort);
+        }
+    }
+
+    private static Timeout min(Timeout configured, Timeout budget) {
+        return configured == null || configured.isDisabled() || configured.compareTo(budget) > 0 ? budget : configured;
+    }
+}
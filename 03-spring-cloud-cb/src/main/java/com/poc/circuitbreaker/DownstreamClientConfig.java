@@ -0,0 +1,146 @@
+package com.poc.circuitbreaker;
+
+import org.apache.hc.client5.http.ConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import io.netty.channel.ChannelOption;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * 下游 HTTP Client 設定
+ *
+ * RestClient 預設的 JDK request factory 沒有連線池上限也沒有逾時，
+ * 這裡改用 Apache HttpClient 5 連線池，TCP/TLS 建立成本只在建立連線時付一次。
+ * Reactive 路徑 (WebClient) 使用 Reactor Netty 連線池，套用同一組上限與逾時。
+ * downstreamService (Apache) 與 criticalService (Reactor Netty) 各有專屬連線池 (bulkhead-isolation 的 max-connections)，
+ * 其中一個下游卡住佔滿自己的連線池時，另一個斷路器與其他呼叫仍有連線可用。
+ * RestClient / WebClient Bean 本身仍在 Resilience4jCustomizer 中建立。
+ */
+@Configuration
+@EnableConfigurationProperties(DownstreamHttpProperties.class)
+public class DownstreamClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager downstreamConnectionManager(DownstreamHttpProperties props) {
+        return connectionManager(props, props.getMaxConnectionsTotal(), props.getMaxConnectionsPerRoute());
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient downstreamHttpClient(
+            @Qualifier("downstreamConnectionManager") PoolingHttpClientConnectionManager downstreamConnectionManager,
+            DownstreamHttpProperties props) {
+        return httpClient(downstreamConnectionManager, props);
+    }
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager downstreamServiceConnectionManager(DownstreamHttpProperties props,
+                                                                                 BulkheadIsolationProperties isolation) {
+        int maxConnections = dedicatedConnections("downstreamService", props, isolation);
+        return connectionManager(props, maxConnections, maxConnections);
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient downstreamServiceHttpClient(
+            @Qualifier("downstreamServiceConnectionManager") PoolingHttpClientConnectionManager downstreamServiceConnectionManager,
+            DownstreamHttpProperties props) {
+        return httpClient(downstreamServiceConnectionManager, props);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider downstreamConnectionProvider(DownstreamHttpProperties props) {
+        // Reactor Netty 的 maxConnections 以 remote address 為單位，對應 per-route 上限
+        return ConnectionProvider.builder("downstream")
+                .maxConnections(props.getMaxConnectionsPerRoute())
+                .pendingAcquireTimeout(props.getConnectionRequestTimeout())
+                .maxIdleTime(props.getKeepAlive())
+                .evictInBackground(props.getIdleEvictionTimeout())
+                .build();
+    }
+
+    @Bean
+    public ReactorClientHttpConnector downstreamClientConnector(
+            @Qualifier("downstreamConnectionProvider") ConnectionProvider downstreamConnectionProvider,
+            DownstreamHttpProperties props) {
+        return connector(downstreamConnectionProvider, props);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider criticalConnectionProvider(DownstreamHttpProperties props,
+                                                         BulkheadIsolationProperties isolation) {
+        return ConnectionProvider.builder("critical")
+                .maxConnections(dedicatedConnections("criticalService", props, isolation))
+                .pendingAcquireTimeout(props.getConnectionRequestTimeout())
+                .maxIdleTime(props.getKeepAlive())
+                .evictInBackground(props.getIdleEvictionTimeout())
+                .build();
+    }
+
+    /**
+     * 專屬連線池的大小: bulkhead-isolation 的 max-connections，未設定時沿用 per-route 上限
+     */
+    static int dedicatedConnections(String name, DownstreamHttpProperties props, BulkheadIsolationProperties isolation) {
+        int maxConnections = isolation.instance(name).getMaxConnections();
+        return maxConnections > 0 ? maxConnections : props.getMaxConnectionsPerRoute();
+    }
+
+    private static PoolingHttpClientConnectionManager connectionManager(DownstreamHttpProperties props,
+                                                                        int maxTotal, int maxPerRoute) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(props.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(props.getReadTimeout()))
+                        .build())
+                .build();
+    }
+
+    private static CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager,
+                                                  DownstreamHttpProperties props) {
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(props.getConnectionRequestTimeout()))
+                        .setResponseTimeout(Timeout.of(props.getResponseTimeout()))
+                        .build())
+                .setKeepAliveStrategy(cappedKeepAlive(TimeValue.of(props.getKeepAlive())))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(props.getIdleEvictionTimeout()))
+                // 重試交給 resilience 層決定，避免在斷路器看不到的地方放大流量
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    /**
+     * 不註冊為 Bean: Spring Boot 的 WebClient 自動設定只接受單一 ClientHttpConnector
+     */
+    static ReactorClientHttpConnector connector(ConnectionProvider connectionProvider, DownstreamHttpProperties props) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) props.getConnectTimeout().toMillis())
+                .responseTimeout(props.getResponseTimeout());
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+    /**
+     * 以伺服器回傳的 Keep-Alive 為準，但不超過設定上限
+     */
+    private static ConnectionKeepAliveStrategy cappedKeepAlive(TimeValue max) {
+        return (response, context) -> {
+            TimeValue hint = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return TimeValue.isPositive(hint) && hint.compareTo(max) < 0 ? hint : max;
+        };
+    }
+}
@@ -0,0 +1,429 @@
+package com.poc.circuitbreaker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RestClient 的 client-side load balancing (power of two choices + least outstanding requests)
+ *
+ * - downstream.url 指向單一 Service 時，一個故障的 pod 就能讓整個 downstreamService 斷路器跳開；
+ *   這裡把請求直接分散到各個 endpoint，每個 endpoint 各自做 outlier detection
+ * - 每次隨機取兩個健康的 endpoint，送往進行中請求較少的一個
+ * - 連續失敗 (連線錯誤或 5xx) 達 consecutive-failures 次即剔除；剔除時間到後只放行一個探測請求，
+ *   成功恢復，失敗則以加倍的時間再次剔除 (上限 max-ejection-time)
+ * - 請求失敗時改送另一個 endpoint (最多 max-attempts 個)，斷路器只看到最後的結果；
+ *   所有 endpoint 都被剔除時拋出 NoHealthyEndpointException，整個池不健康才會讓斷路器跳開
+ * - 在 RetryPolicy 之內時，改送與重試共用該呼叫的 attempt 上限與重試預算 (RetryPolicy.permitFailover)，
+ *   額度用完時直接回傳這次的失敗
+ * - 呼叫端期限到而中斷的請求不算 endpoint 失敗，也不改送其他 endpoint
+ */
+public class DownstreamLoadBalancer implements ClientHttpRequestInterceptor, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DownstreamLoadBalancer.class);
+
+    private final LoadBalancerProperties props;
+    private final URI downstreamUri;
+    private final String source;
+    private final ScheduledExecutorService resolver;
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder failoversDenied = new LongAdder();
+    private final LongAdder noHealthyEndpoint = new LongAdder();
+    private volatile List<Endpoint> endpoints;
+
+    public DownstreamLoadBalancer(LoadBalancerProperties props, String downstreamUrl) {
+        this.props = props;
+        this.downstreamUri = URI.create(downstreamUrl);
+        List<String> configured = props.getEndpoints().stream().filter(url -> !url.isBlank()).toList();
+        if (!configured.isEmpty()) {
+            this.source = "static";
+            this.endpoints = configured.stream().map(url -> new Endpoint(URI.create(url.trim()))).toList();
+        } else {
+            this.source = props.isResolveDns() ? "dns" : "downstream.url";
+            this.endpoints = List.of(new Endpoint(downstreamUri));
+        }
+        if (props.isEnabled() && "dns".equals(source)) {
+            refresh();
+            this.resolver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "lb-dns-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = props.getDnsRefreshInterval().toMillis();
+            resolver.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.resolver = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        List<Endpoint> tried = new ArrayList<>(props.getMaxAttempts());
+        ClientHttpResponse lastResponse = null;
+        IOException lastError = null;
+        for (int attempt = 0; attempt < Math.max(1, props.getMaxAttempts()); attempt++) {
+            Endpoint endpoint = choose(tried);
+            if (endpoint == null) {
+                break;
+            }
+            if (!tried.isEmpty()) {
+                if (!RetryPolicy.permitFailover()) {
+                    endpoint.release();
+                    endpoint.abandonProbe();
+                    failoversDenied.increment();
+                    break;
+                }
+                failovers.increment();
+                if (lastResponse != null) {
+                    lastResponse.close();
+                }
+            }
+            tried.add(endpoint);
+            lastResponse = null;
+            lastError = null;
+            ClientHttpResponse response = null;
+            boolean recorded = false;
+            try {
+                response = new EndpointResponse(execution.execute(new EndpointRequest(request, endpoint), body), endpoint);
+                boolean serverError = response.getStatusCode().is5xxServerError();
+                recorded = true;
+                if (!serverError) {
+                    endpoint.onSuccess();
+                    return response;
+                }
+                endpoint.onFailure();
+                lastResponse = response;
+            } catch (IOException | RuntimeException ex) {
+                if (response != null) {
+                    response.close();
+                } else {
+                    endpoint.release();
+                }
+                if (ex instanceof RuntimeException || deadlineExpired()) {
+                    throw ex;
+                }
+                recorded = true;
+                endpoint.onFailure();
+                lastError = (IOException) ex;
+            } finally {
+                // 期限到或其他例外而沒有結果的探測: 退回 EJECTED (保留剔除時間)，之後的請求可以再探測
+                if (!recorded) {
+                    endpoint.abandonProbe();
+                }
+            }
+        }
+        if (lastResponse != null) {
+            return lastResponse;
+        }
+        if (lastError != null) {
+            throw lastError;
+        }
+        noHealthyEndpoint.increment();
+        throw new NoHealthyEndpointException(endpoints.size());
+    }
+
+    /**
+     * 剔除時間已到的 endpoint 優先送一次探測；否則在健康的 endpoint 中做 P2C。回傳的 endpoint 已計入進行中
+     */
+    private Endpoint choose(List<Endpoint> exclude) {
+        List<Endpoint> pool = endpoints;
+        long now = System.nanoTime();
+        List<Endpoint> healthy = new ArrayList<>(pool.size());
+        for (Endpoint endpoint : pool) {
+            if (exclude.contains(endpoint)) {
+                continue;
+            }
+            if (endpoint.tryProbe(now)) {
+                endpoint.acquire();
+                return endpoint;
+            }
+            if (endpoint.state == State.HEALTHY) {
+                healthy.add(endpoint);
+            }
+        }
+        if (healthy.isEmpty()) {
+            return null;
+        }
+        Endpoint chosen = healthy.get(0);
+        if (healthy.size() > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(healthy.size());
+            int second = random.nextInt(healthy.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            Endpoint a = healthy.get(first);
+            Endpoint b = healthy.get(second);
+            chosen = a.outstanding.get() <= b.outstanding.get() ? a : b;
+        }
+        chosen.acquire();
+        return chosen;
+    }
+
+    private static boolean deadlineExpired() {
+        Deadline deadline = Deadline.current();
+        return deadline != null && deadline.isExpired();
+    }
+
+    /**
+     * 重新解析 downstream.url 的 host；保留既有 endpoint 的狀態，解析失敗時沿用目前清單
+     */
+    void refresh() {
+        try {
+            InetAddress[] addresses = InetAddress.getAllByName(downstreamUri.getHost());
+            Map<String, Endpoint> current = new LinkedHashMap<>();
+            endpoints.forEach(endpoint -> current.put(endpoint.id, endpoint));
+            List<Endpoint> resolved = new ArrayList<>(addresses.length);
+            for (InetAddress address : addresses) {
+                String host = address instanceof Inet6Address ? "[" + address.getHostAddress() + "]" : address.getHostAddress();
+                URI uri = UriComponentsBuilder.fromUri(downstreamUri).host(host).replacePath(null).build(true).toUri();
+                Endpoint endpoint = current.get(Endpoint.id(uri));
+                resolved.add(endpoint != null ? endpoint : new Endpoint(uri));
+            }
+            if (resolved.size() != current.size() || !current.values().containsAll(resolved)) {
+                log.info("Downstream endpoints for {}: {}", downstreamUri.getHost(),
+                    resolved.stream().map(endpoint -> endpoint.id).toList());
+            }
+            endpoints = List.copyOf(resolved);
+        } catch (UnknownHostException | RuntimeException ex) {
+            log.warn("Failed to resolve {}, keeping {} endpoints: {}", downstreamUri.getHost(), endpoints.size(), ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (resolver != null) {
+            resolver.shutdownNow();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long now = System.nanoTime();
+        List<Map<String, Object>> list = new ArrayList<>();
+        int healthy = 0;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.state == State.HEALTHY) {
+                healthy++;
+            }
+            list.add(endpoint.stats(now));
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", props.isEnabled());
+        stats.put("source", source);
+        stats.put("healthy_endpoints", healthy);
+        stats.put("failovers", failovers.sum());
+        stats.put("failovers_denied", failoversDenied.sum());
+        stats.put("no_healthy_endpoint", noHealthyEndpoint.sum());
+        stats.put("endpoints", list);
+        return stats;
+    }
+
+    private enum State {
+        HEALTHY, EJECTED, PROBING
+    }
+
+    /**
+     * 單一 endpoint 的 outlier detector: 進行中請求數、連續失敗數與剔除狀態
+     */
+    private final class Endpoint {
+
+        private final URI base;
+        private final String id;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile State state = State.HEALTHY;
+        private int consecutiveFailures;
+        private int ejections;
+        private long ejectedUntil;
+        private long healthySince = System.nanoTime();
+
+        Endpoint(URI base) {
+            this.base = base;
+            this.id = id(base);
+        }
+
+        static String id(URI uri) {
+            return uri.getScheme() + "://" + uri.getRawAuthority();
+        }
+
+        URI resolve(URI uri) {
+            return UriComponentsBuilder.fromUri(uri)
+                .scheme(base.getScheme())
+                .host(base.getHost())
+                .port(base.getPort())
+                .build(true)
+                .toUri();
+        }
+
+        void acquire() {
+            outstanding.incrementAndGet();
+        }
+
+        void release() {
+            outstanding.decrementAndGet();
+        }
+
+        synchronized boolean tryProbe(long now) {
+            if (state != State.EJECTED || now - ejectedUntil < 0) {
+                return false;
+            }
+            state = State.PROBING;
+            return true;
+        }
+
+        /**
+         * 探測請求沒有結果就結束 (呼叫端期限到、例外)：回到 EJECTED 並保留原本的剔除時間
+         */
+        synchronized void abandonProbe() {
+            if (state == State.PROBING) {
+                state = State.EJECTED;
+            }
+        }
+
+        void onSuccess() {
+            successes.increment();
+            if (state == State.HEALTHY && consecutiveFailures == 0) {
+                return;
+            }
+            synchronized (this) {
+                consecutiveFailures = 0;
+                if (state == State.PROBING) {
+                    state = State.HEALTHY;
+                    healthySince = System.nanoTime();
+                    log.info("Endpoint {} passed its probe and is back in the pool", id);
+                }
+            }
+        }
+
+        synchronized void onFailure() {
+            failures.increment();
+            if (state == State.PROBING || (state == State.HEALTHY && ++consecutiveFailures >= props.getConsecutiveFailures())) {
+                eject();
+            }
+        }
+
+        private void eject() {
+            long now = System.nanoTime();
+            if (state == State.HEALTHY && now - healthySince > props.getMaxEjectionTime().toNanos()) {
+                ejections = 0;
+            }
+            ejections++;
+            long duration = Math.min(props.getBaseEjectionTime().toNanos() << Math.min(ejections - 1, 20),
+                props.getMaxEjectionTime().toNanos());
+            ejectedUntil = now + duration;
+            consecutiveFailures = 0;
+            state = State.EJECTED;
+            log.warn("Endpoint {} ejected for {}ms (ejection #{})", id, TimeUnit.NANOSECONDS.toMillis(duration), ejections);
+        }
+
+        synchronized Map<String, Object> stats(long now) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("endpoint", id);
+            stats.put("state", state.name());
+            stats.put("outstanding", outstanding.get());
+            stats.put("successes", successes.sum());
+            stats.put("failures", failures.sum());
+            stats.put("consecutive_failures", consecutiveFailures);
+            stats.put("ejections", ejections);
+            if (state == State.EJECTED) {
+                stats.put("probe_in_ms", Math.max(0, TimeUnit.NANOSECONDS.toMillis(ejectedUntil - now)));
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * 把請求的 scheme/host/port 換成選中的 endpoint，其餘 (path、query、header) 不變
+     */
+    private static final class EndpointRequest extends HttpRequestWrapper {
+
+        private final URI uri;
+
+        EndpointRequest(HttpRequest request, Endpoint endpoint) {
+            super(request);
+            this.uri = endpoint.resolve(request.getURI());
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+    }
+
+    /**
+     * 回應關閉 (body 讀完) 時才結束 endpoint 的進行中計數
+     */
+    private static final class EndpointResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final Endpoint endpoint;
+        private boolean closed;
+
+        EndpointResponse(ClientHttpResponse delegate, Endpoint endpoint) {
+            this.delegate = delegate;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    endpoint.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.poc.circuitbreaker;
+
+import java.time.Duration;
+
+/**
+ * 下游回應內容；age 不為 null 表示取自 last-known-good 快取
+ *
+ * fallback 為 true 表示不是這次呼叫下游的結果 (快取或預設的 fallback 內容)
+ */
+public record DownstreamResponse(String body, Duration age, boolean fallback) {
+
+    public static DownstreamResponse of(String body) {
+        return new DownstreamResponse(body, null, false);
+    }
+
+    public static DownstreamResponse cached(String body, Duration age) {
+        return new DownstreamResponse(body, age, true);
+    }
+
+    public static DownstreamResponse fallback(String body) {
+        return new DownstreamResponse(body, null, true);
+    }
+
+    public boolean fromCache() {
+        return age != null;
+    }
+}
@@ -1,10 +1,18 @@
 package com.poc.circuitbreaker;
 
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cloud.client.circuitbreaker.CircuitBreakerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Supplier;
 
 /**
  * 使用 Spring Cloud Circuit Breaker 抽象層
@@ -13,75 +21,212 @@ import org.springframework.web.client.RestClient;
  * - CircuitBreakerFactory 是 Spring Cloud 的統一抽象
  * - 可以在不改程式碼的情況下切換實作 (Resilience4j / Sentinel / Spring Retry)
  * - 適合多雲或需要靈活切換 CB 實作的企業場景
+ *
+ * 成功的回應寫入 last-known-good 快取，fallback 時優先回傳快取內容。
+ * 斷路器之內再經過同名的 AdaptiveConcurrencyLimiter，超過並行上限的呼叫回傳 CONCURRENCY_LIMIT。
+ * 呼叫端帶有 Deadline 時: 期限已過在取得斷路器名額前就拒絕，下游呼叫的逾時取剩餘預算並轉送給下游；
+ * 下游用完預算計入斷路器失敗率，批次取消 (Deadline.cancel()) 則不計入。
+ * downstreamService 的連線錯誤與 5xx 由 RetryPolicy 在斷路器之內依預算重試；criticalService 已有 hedging，不再重試。
+ * 進入斷路器前先經過同名的 BulkheadIsolation: 並行名額與排隊位置都用完時回傳 BULKHEAD_FULL，
+ * 一般下游卡住不會佔光請求執行緒；兩個斷路器各自使用專屬連線池的 RestClient / WebClient。
  */
 @Service
 public class DownstreamService {
 
     private static final Logger log = LoggerFactory.getLogger(DownstreamService.class);
 
+    /** 兩個斷路器呼叫的是同一個下游資源，共用同一筆快取 */
+    static final String CACHE_KEY = "GET /";
+
     private final RestClient restClient;
+    private final WebClient criticalWebClient;
     private final CircuitBreakerFactory<?, ?> circuitBreakerFactory;
+    private final LastKnownGoodCache lastKnownGoodCache;
+    private final HedgingPolicy hedgingPolicy;
+    private final ConcurrencyLimiterRegistry concurrencyLimiterRegistry;
+    private final LatencyRecorder latencyRecorder;
+    private final SlowCallDetectorRegistry slowCallDetectorRegistry;
+    private final RetryPolicyRegistry retryPolicyRegistry;
+    private final BulkheadIsolationRegistry bulkheadIsolationRegistry;
 
-    public DownstreamService(RestClient restClient,
-                             CircuitBreakerFactory<?, ?> circuitBreakerFactory) {
+    public DownstreamService(@Qualifier("downstreamServiceRestClient") RestClient restClient,
+                             @Qualifier("criticalWebClient") WebClient criticalWebClient,
+                             CircuitBreakerFactory<?, ?> circuitBreakerFactory,
+                             LastKnownGoodCache lastKnownGoodCache,
+                             HedgingPolicy hedgingPolicy,
+                             ConcurrencyLimiterRegistry concurrencyLimiterRegistry,
+                             LatencyRecorder latencyRecorder,
+                             SlowCallDetectorRegistry slowCallDetectorRegistry,
+                             RetryPolicyRegistry retryPolicyRegistry,
+                             BulkheadIsolationRegistry bulkheadIsolationRegistry) {
         this.restClient = restClient;
+        this.criticalWebClient = criticalWebClient;
         this.circuitBreakerFactory = circuitBreakerFactory;
+        this.lastKnownGoodCache = lastKnownGoodCache;
+        this.hedgingPolicy = hedgingPolicy;
+        this.concurrencyLimiterRegistry = concurrencyLimiterRegistry;
+        this.latencyRecorder = latencyRecorder;
+        this.slowCallDetectorRegistry = slowCallDetectorRegistry;
+        this.retryPolicyRegistry = retryPolicyRegistry;
+        this.bulkheadIsolationRegistry = bulkheadIsolationRegistry;
     }
 
     /**
      * 方式 1: Spring Cloud CircuitBreaker 抽象 (推薦)
      * 透過 Factory 取得 CB 實例，執行時自動套用斷路邏輯
      */
-    public String callWithSpringCloudCB() {
-        log.info(">>> [Spring Cloud CB] Calling downstream...");
+    public DownstreamResponse callWithSpringCloudCB() {
+        log.debug(">>> [Spring Cloud CB] Calling downstream...");
 
+        Deadline deadline = Deadline.current();
+        Deadline.checkNotExpired(deadline, "calling downstreamService");
         org.springframework.cloud.client.circuitbreaker.CircuitBreaker cb =
             circuitBreakerFactory.create("downstreamService");
 
-        return cb.run(
-            // 正常呼叫
+        return isolated("downstreamService", () -> cb.run(
+            // 正常呼叫 (在 factory 的 executor 上執行，重新套用呼叫端的 deadline)
             () -> {
-                String response = restClient.get()
-                    .uri("/")
-                    .retrieve()
-                    .body(String.class);
-                log.info(">>> [Spring Cloud CB] Success: {}", response);
-                return response;
+                String response = withinDeadline(deadline, () ->
+                    retryPolicyRegistry.policy("downstreamService").execute(() ->
+                        concurrencyLimiterRegistry.limiter("downstreamService").execute(() ->
+                            timed("downstreamService", () -> restClient.get()
+                                .uri("/")
+                                .retrieve()
+                                .body(String.class)))));
+                log.debug(">>> [Spring Cloud CB] Success: {}", response);
+                lastKnownGoodCache.put(CACHE_KEY, response);
+                return DownstreamResponse.of(response);
             },
             // Fallback
             throwable -> {
                 log.warn(">>> [Spring Cloud CB] FALLBACK! Reason: {}", throwable.getMessage());
-                return "{\"source\":\"SPRING_CLOUD_CB_FALLBACK\","
+                if (throwable instanceof ConcurrencyLimitExceededException || throwable instanceof BulkheadFullException) {
+                    return shed(throwable);
+                }
+                return lastKnownGoodCache.lookup(CACHE_KEY, throwable instanceof CallNotPermittedException)
+                    .orElseGet(() -> DownstreamResponse.fallback("{\"source\":\"SPRING_CLOUD_CB_FALLBACK\","
                      + "\"message\":\"Circuit breaker fallback via Spring Cloud abstraction\","
-                     + "\"error\":\"" + throwable.getMessage().replace("\"", "'") + "\"}";
+                     + "\"error\":\"" + throwable.getMessage().replace("\"", "'") + "\"}"));
             }
-        );
+        ));
     }
 
     /**
-     * 方式 2: 使用嚴格設定的 Circuit Breaker
+     * 方式 2: 使用嚴格設定的 Circuit Breaker + hedged request
+     * 下游卡住時 (例如 flaky service 的 3 秒停頓)，超過 hedge delay 就再送一次，取先回來的結果；
+     * 兩次 attempt 都在同一次斷路器呼叫內，sliding window 只記一筆。
+     * 使用 WebClient 才能真正中斷輸掉那一方的請求。
      */
-    public String callCriticalService() {
-        log.info(">>> [Critical CB] Calling critical downstream...");
+    public DownstreamResponse callCriticalService() {
+        log.debug(">>> [Critical CB] Calling critical downstream...");
 
+        Deadline deadline = Deadline.current();
+        Deadline.checkNotExpired(deadline, "calling criticalService");
         org.springframework.cloud.client.circuitbreaker.CircuitBreaker cb =
             circuitBreakerFactory.create("criticalService");
 
-        return cb.run(
+        return isolated("criticalService", () -> cb.run(
             () -> {
-                String response = restClient.get()
-                    .uri("/")
-                    .retrieve()
-                    .body(String.class);
-                log.info(">>> [Critical CB] Success: {}", response);
-                return response;
+                String response = withinDeadline(deadline, () ->
+                    concurrencyLimiterRegistry.limiter("criticalService").execute(() ->
+                        timed("criticalService", () -> hedgingPolicy.execute(() -> criticalAttempt(deadline))
+                            .block())));
+                log.debug(">>> [Critical CB] Success: {}", response);
+                lastKnownGoodCache.put(CACHE_KEY, response);
+                return DownstreamResponse.of(response);
             },
             throwable -> {
                 log.warn(">>> [Critical CB] FALLBACK! Reason: {}", throwable.getMessage());
-                return "{\"source\":\"CRITICAL_CB_FALLBACK\","
+                if (throwable instanceof ConcurrencyLimitExceededException || throwable instanceof BulkheadFullException) {
+                    return shed(throwable);
+                }
+                return lastKnownGoodCache.lookup(CACHE_KEY, throwable instanceof CallNotPermittedException)
+                    .orElseGet(() -> DownstreamResponse.fallback("{\"source\":\"CRITICAL_CB_FALLBACK\","
                      + "\"message\":\"Strict circuit breaker fallback\","
-                     + "\"error\":\"" + throwable.getMessage().replace("\"", "'") + "\"}";
+                     + "\"error\":\"" + throwable.getMessage().replace("\"", "'") + "\"}"));
             }
-        );
+        ));
+    }
+
+    /**
+     * 佔不到 bulkhead 位置時不進入斷路器，直接回傳 BULKHEAD_FULL
+     */
+    private DownstreamResponse isolated(String name, Supplier<DownstreamResponse> call) {
+        BulkheadIsolation isolation = bulkheadIsolationRegistry.isolation(name);
+        if (!isolation.tryEnter()) {
+            return shed(isolation.queueFull());
+        }
+        try {
+            return call.get();
+        } finally {
+            isolation.exit();
+        }
+    }
+
+    /**
+     * 每次 attempt (含 hedge) 送出時重新計算剩餘預算；期限到時取消訂閱，Reactor Netty 隨即中斷連線
+     */
+    private Mono<String> criticalAttempt(Deadline deadline) {
+        if (deadline == null) {
+            return criticalWebClient.get().uri("/").retrieve().bodyToMono(String.class);
+        }
+        return Mono.defer(() -> {
+            Deadline.checkNotExpired(deadline, "sending a criticalService attempt");
+            Duration remaining = deadline.remaining();
+            // 期限到或 Deadline.cancel() 時取消
+            Mono<Long> expiry = Mono.delay(remaining)
+                .or(Mono.create(sink -> sink.onDispose(deadline.onCancel(() -> sink.success(0L))::run)));
+            return criticalWebClient.get()
+                .uri("/")
+                .header(Deadline.HEADER, Long.toString(Math.max(1, remaining.toMillis())))
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(expiry, Mono.error(() -> new DeadlineExceededException("Deadline exceeded while calling criticalService")));
+        });
+    }
+
+    /**
+     * 在目前執行緒上套用呼叫端的 deadline；呼叫開始時預算還在、結束時已過期的失敗依原因轉換:
+     * - Deadline.cancel() 取消 → DeadlineExceededException，不計入斷路器失敗率
+     * - 期限到 → 下游 (含重試) 用完了全部預算，DownstreamTimeoutException，計入失敗率
+     */
+    private static <T> T withinDeadline(Deadline deadline, Supplier<T> call) {
+        Deadline.checkNotExpired(deadline, "calling downstream");
+        try (Deadline.Scope scope = Deadline.open(deadline)) {
+            return call.get();
+        } catch (RuntimeException ex) {
+            if (deadline == null || !deadline.isExpired()) {
+                throw ex;
+            }
+            if (deadline.isCancelled()) {
+                throw ex instanceof DeadlineExceededException ? ex
+                    : new DeadlineExceededException("Deadline cancelled while calling downstream", ex);
+            }
+            throw new DownstreamTimeoutException("Downstream did not respond within the caller's deadline", ex);
+        }
+    }
+
+    /**
+     * 記錄實際送往下游的呼叫耗時 (成功或失敗)，並交給自適應慢速判定
+     */
+    private <T> T timed(String name, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            latencyRecorder.record(name, elapsed);
+            slowCallDetectorRegistry.detector(name).record(elapsed);
+        }
+    }
+
+    /**
+     * 超過並行上限或 bulkhead 滿載: 立即回傳，不讀快取，讓呼叫端能分辨是被限流而不是下游故障
+     */
+    static DownstreamResponse shed(Throwable throwable) {
+        String source = throwable instanceof ConcurrencyLimitExceededException ? "CONCURRENCY_LIMIT" : "BULKHEAD_FULL";
+        return DownstreamResponse.fallback("{\"source\":\"" + source + "\","
+            + "\"message\":\"Too many in-flight calls, request shed\","
+            + "\"error\":\"" + throwable.getMessage().replace("\"", "'") + "\"}");
     }
 }
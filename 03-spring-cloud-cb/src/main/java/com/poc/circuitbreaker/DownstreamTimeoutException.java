@@ -0,0 +1,14 @@
+package com.poc.circuitbreaker;
+
+/**
+ * 下游用完呼叫端給的全部時間預算仍未完成 (期限到時被中斷)
+ *
+ * 與 DeadlineExceededException 不同: 請求已經送出、是下游沒有在預算內回應，斷路器記為失敗；
+ * 下游卡住而呼叫端都帶著較短的 X-Request-Timeout 時，斷路器才能 OPEN。
+ */
+public class DownstreamTimeoutException extends RuntimeException {
+
+    public DownstreamTimeoutException(String message, Throwable cause) {
+        super(message, cause, false, false);
+    }
+}
@@ -0,0 +1,15 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(EventSinkProperties.class)
+public class EventSinkConfig {
+
+    @Bean
+    public CircuitBreakerEventSink circuitBreakerEventSink(EventSinkProperties props) {
+        return new CircuitBreakerEventSink(props);
+    }
+}
@@ -0,0 +1,45 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 斷路器事件批次輸出設定 (cb-events.*)
+ */
+@ConfigurationProperties(prefix = "cb-events")
+public class EventSinkProperties {
+
+    /** ring buffer 大小 (取 2 的次方)，滿了之後的事件會被丟棄並計數 */
+    private int bufferSize = 8192;
+
+    /** 背景執行緒取出事件的間隔 */
+    private Duration drainInterval = Duration.ofMillis(100);
+
+    /** 每隔多久輸出一次彙總 */
+    private Duration flushInterval = Duration.ofSeconds(10);
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public Duration getDrainInterval() {
+        return drainInterval;
+    }
+
+    public void setDrainInterval(Duration drainInterval) {
+        this.drainInterval = drainInterval;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+}
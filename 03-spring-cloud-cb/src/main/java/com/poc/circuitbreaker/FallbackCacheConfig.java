@@ -0,0 +1,15 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(FallbackCacheProperties.class)
+public class FallbackCacheConfig {
+
+    @Bean
+    public LastKnownGoodCache lastKnownGoodCache(FallbackCacheProperties props) {
+        return new LastKnownGoodCache(props);
+    }
+}
@@ -0,0 +1,15 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(HedgingProperties.class)
+public class HedgingConfig {
+
+    @Bean
+    public HedgingPolicy hedgingPolicy(HedgingProperties props) {
+        return new HedgingPolicy(props);
+    }
+}
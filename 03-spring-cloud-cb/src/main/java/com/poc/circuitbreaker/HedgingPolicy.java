@@ -0,0 +1,174 @@
+package com.poc.circuitbreaker;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedged request: 第一次呼叫在 hedge delay 內沒有回應，就再送一次，取先成功的結果並取消另一個
+ *
+ * - hedge delay 為最近成功呼叫延遲的百分位 (樣本不足時用 initialDelay)
+ * - 預算: 每個請求存入 budgetPercent/100 個 token，hedge 需花 1 個 token，額外流量不超過設定比例
+ * - 整個 hedged 呼叫在斷路器裡只算一次，兩次 attempt 不會重複計入 sliding window
+ * - 取消透過取消訂閱完成，WebClient 會中斷輸掉那一方的 HTTP 請求
+ */
+public class HedgingPolicy {
+
+    private static final int TOKEN = 100;
+    private static final int MAX_TOKENS = 10 * TOKEN;
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final HedgingProperties props;
+    private final long[] samples;
+    private int sampleIndex;
+    private int sampleCount;
+    private volatile long hedgeDelayNanos;
+
+    private final AtomicInteger tokens = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedgesFired = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder budgetDenied = new LongAdder();
+
+    public HedgingPolicy(HedgingProperties props) {
+        this.props = props;
+        this.samples = new long[props.getSampleSize()];
+        this.hedgeDelayNanos = props.getInitialDelay().toNanos();
+    }
+
+    public <T> Mono<T> execute(Supplier<Mono<T>> attempt) {
+        if (!props.isEnabled()) {
+            return timed(attempt);
+        }
+        return Mono.defer(() -> {
+            requests.increment();
+            depositToken();
+            return race(attempt, Duration.ofNanos(hedgeDelayNanos));
+        });
+    }
+
+    private <T> Mono<T> race(Supplier<Mono<T>> attempt, Duration delay) {
+        return Mono.create(sink -> {
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicInteger pending = new AtomicInteger(1);
+            Disposable.Composite inFlight = Disposables.composite();
+            sink.onDispose(inFlight);
+
+            // 先排定 hedge 計時，再送出第一次呼叫: 計時從請求開始算，不受第一次呼叫的 subscribe 成本影響
+            inFlight.add(Mono.delay(delay).subscribe(tick -> {
+                if (done.get()) {
+                    return;
+                }
+                if (!tryWithdrawToken()) {
+                    budgetDenied.increment();
+                    return;
+                }
+                hedgesFired.increment();
+                pending.incrementAndGet();
+                inFlight.add(timed(attempt).subscribe(
+                    value -> {
+                        if (done.compareAndSet(false, true)) {
+                            hedgesWon.increment();
+                            sink.success(value);
+                        }
+                    },
+                    error -> {
+                        if (pending.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+                            sink.error(error);
+                        }
+                    },
+                    () -> completeEmpty(sink, done, pending)));
+            }));
+
+            inFlight.add(timed(attempt).subscribe(
+                value -> {
+                    if (done.compareAndSet(false, true)) {
+                        sink.success(value);
+                    }
+                },
+                error -> {
+                    if (pending.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+                        sink.error(error);
+                    }
+                },
+                () -> completeEmpty(sink, done, pending)));
+        });
+    }
+
+    /**
+     * attempt 沒有回傳值就結束時 (回應 body 為空)；有值時 done 已設定，這裡不會再發出訊號
+     */
+    private static <T> void completeEmpty(MonoSink<T> sink, AtomicBoolean done, AtomicInteger pending) {
+        if (pending.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+            sink.success();
+        }
+    }
+
+    /**
+     * 只記錄成功 attempt 的延遲；被取消的一方拿不到完整延遲，不列入樣本
+     */
+    private <T> Mono<T> timed(Supplier<Mono<T>> attempt) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return attempt.get().doOnNext(value -> recordLatency(System.nanoTime() - start));
+        });
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        samples[sampleIndex] = nanos;
+        sampleIndex = (sampleIndex + 1) % samples.length;
+        if (sampleCount < samples.length) {
+            sampleCount++;
+        }
+        if (sampleCount >= props.getMinSamples() && sampleIndex % RECOMPUTE_EVERY == 0) {
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(props.getPercentile() / 100.0 * sorted.length) - 1;
+            long percentile = sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+            hedgeDelayNanos = Math.max(percentile, props.getMinDelay().toNanos());
+        }
+    }
+
+    private void depositToken() {
+        tokens.getAndUpdate(current -> Math.min(MAX_TOKENS, current + props.getBudgetPercent()));
+    }
+
+    private boolean tryWithdrawToken() {
+        int current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    public Duration hedgeDelay() {
+        return Duration.ofNanos(hedgeDelayNanos);
+    }
+
+    public Map<String, Object> stats() {
+        long total = requests.sum();
+        long fired = hedgesFired.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", props.isEnabled());
+        stats.put("hedge_delay_ms", hedgeDelay().toMillis());
+        stats.put("requests", total);
+        stats.put("hedges_fired", fired);
+        stats.put("hedges_won", hedgesWon.sum());
+        stats.put("budget_denied", budgetDenied.sum());
+        stats.put("hedge_rate_percent", total == 0 ? 0.0 : fired * 100.0 / total);
+        return stats;
+    }
+}
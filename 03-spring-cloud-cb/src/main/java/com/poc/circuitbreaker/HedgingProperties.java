@@ -0,0 +1,91 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * criticalService 的 hedged request 設定 (hedging.*)
+ *
+ * 第一次呼叫超過觀察到的延遲百分位仍未回應時，送出第二次呼叫，取先回來的結果。
+ */
+@ConfigurationProperties(prefix = "hedging")
+public class HedgingProperties {
+
+    /** 是否啟用 hedging */
+    private boolean enabled = true;
+
+    /** 以最近延遲的第幾百分位作為 hedge 觸發時間 */
+    private double percentile = 95.0;
+
+    /** 樣本數不足時使用的觸發時間 */
+    private Duration initialDelay = Duration.ofMillis(500);
+
+    /** 觸發時間下限，避免下游很快時幾乎每次都 hedge */
+    private Duration minDelay = Duration.ofMillis(20);
+
+    /** 額外呼叫佔總流量的上限 (%) */
+    private int budgetPercent = 10;
+
+    /** 計算百分位使用的最近樣本數 */
+    private int sampleSize = 256;
+
+    /** 樣本數達到此值才改用百分位 */
+    private int minSamples = 20;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    public void setInitialDelay(Duration initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    public Duration getMinDelay() {
+        return minDelay;
+    }
+
+    public void setMinDelay(Duration minDelay) {
+        this.minDelay = minDelay;
+    }
+
+    public int getBudgetPercent() {
+        return budgetPercent;
+    }
+
+    public void setBudgetPercent(int budgetPercent) {
+        this.budgetPercent = budgetPercent;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+}
@@ -0,0 +1,59 @@
+package com.poc.circuitbreaker;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 連線池使用率: GET /actuator/httpclientpool
+ * 最外層是共用連線池，dedicated 底下是各斷路器的專屬連線池 (bulkhead-isolation 的 max-connections)
+ */
+@Component
+@Endpoint(id = "httpclientpool")
+public class HttpClientPoolEndpoint {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final PoolingHttpClientConnectionManager downstreamServiceConnectionManager;
+
+    public HttpClientPoolEndpoint(
+            @Qualifier("downstreamConnectionManager") PoolingHttpClientConnectionManager connectionManager,
+            @Qualifier("downstreamServiceConnectionManager") PoolingHttpClientConnectionManager downstreamServiceConnectionManager) {
+        this.connectionManager = connectionManager;
+        this.downstreamServiceConnectionManager = downstreamServiceConnectionManager;
+    }
+
+    @ReadOperation
+    public Map<String, Object> pool() {
+        Map<String, Object> pool = pool(connectionManager);
+        pool.put("dedicated", Map.of("downstreamService", pool(downstreamServiceConnectionManager)));
+        return pool;
+    }
+
+    private static Map<String, Object> pool(PoolingHttpClientConnectionManager connectionManager) {
+        Map<String, Object> pool = toMap(connectionManager.getTotalStats());
+        pool.put("max_per_route", connectionManager.getDefaultMaxPerRoute());
+
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            routes.put(route.getTargetHost().toURI(), toMap(connectionManager.getStats(route)));
+        }
+        pool.put("routes", routes);
+        return pool;
+    }
+
+    private static Map<String, Object> toMap(PoolStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("leased", stats.getLeased());
+        map.put("available", stats.getAvailable());
+        map.put("pending", stats.getPending());
+        map.put("max", stats.getMax());
+        return map;
+    }
+}
@@ -0,0 +1,66 @@
+package com.poc.circuitbreaker;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * 以請求為 key 的 last-known-good 回應快取 (Caffeine, W-TinyLFU 淘汰)
+ *
+ * 成功的下游回應寫入快取，fallback 時先查快取，查不到才回傳預設回應。
+ * 斷路器 OPEN 期間不會有新的成功回應，快取命中只是一次記憶體查詢，下游負載維持不變。
+ */
+public class LastKnownGoodCache {
+
+    private final FallbackCacheProperties props;
+    private final Cache<String, Entry> cache;
+
+    public LastKnownGoodCache(FallbackCacheProperties props) {
+        this.props = props;
+        Duration retention = props.isServeStaleWhileOpen() && props.getMaxStale().compareTo(props.getTtl()) > 0
+                ? props.getMaxStale()
+                : props.getTtl();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(props.getMaximumSize())
+                .expireAfterWrite(retention)
+                .build();
+    }
+
+    public void put(String key, String body) {
+        if (props.isEnabled() && body != null) {
+            cache.put(key, new Entry(body, System.nanoTime()));
+        }
+    }
+
+    /**
+     * @param breakerOpen 斷路器是否拒絕了這次呼叫；為 true 時允許回傳超過 ttl 的舊資料
+     */
+    public Optional<DownstreamResponse> lookup(String key, boolean breakerOpen) {
+        if (!props.isEnabled()) {
+            return Optional.empty();
+        }
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        Duration age = Duration.ofNanos(System.nanoTime() - entry.storedAtNanos());
+        boolean fresh = age.compareTo(props.getTtl()) <= 0;
+        if (fresh || (breakerOpen && props.isServeStaleWhileOpen())) {
+            return Optional.of(DownstreamResponse.cached(entry.body(), age));
+        }
+        return Optional.empty();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private record Entry(String body, long storedAtNanos) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 各斷路器的延遲百分位: GET /actuator/latency、/actuator/latency/{name}
+ */
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+
+    private final LatencyRecorder latencyRecorder;
+
+    public LatencyEndpoint(LatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> latencies() {
+        return latencyRecorder.snapshots();
+    }
+
+    @ReadOperation
+    public Map<String, Object> latency(@Selector String name) {
+        return latencyRecorder.snapshot(name);
+    }
+}
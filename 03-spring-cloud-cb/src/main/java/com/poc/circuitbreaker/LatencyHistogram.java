@@ -0,0 +1,136 @@
+package com.poc.circuitbreaker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 單一斷路器的延遲分布 (HDR 風格的對數分桶)，記錄時不配置任何物件
+ *
+ * - 以微秒記錄；0~31µs 每 1µs 一桶，之後每個 2 的次方再分 32 桶，相對誤差 ≤ 1/32 (約 3%)
+ * - 上限約 2^37 µs (38 小時)，共 1056 桶，存在 AtomicLongArray，多執行緒記錄不需要鎖
+ * - 兩組陣列輪替: 每個 interval 結束時清空較舊的一組並改為記錄用，
+ *   報表合併兩組 (涵蓋最近 1~2 個 interval)；超過兩個 interval 沒有記錄 / 讀取時兩組都清空
+ * - 輪替在記錄 / 讀取時順便檢查，不需要背景執行緒
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_SHIFT = 31;
+    static final int BUCKETS = SUB_COUNT + (MAX_SHIFT + 1) * SUB_COUNT;
+    private static final long MAX_VALUE = ((long) (2 * SUB_COUNT) << MAX_SHIFT) - 1;
+
+    private final long intervalNanos;
+    private final LongSupplier clock;
+    private final AtomicLongArray[] counts = {new AtomicLongArray(BUCKETS), new AtomicLongArray(BUCKETS)};
+    private final AtomicLong[] max = {new AtomicLong(), new AtomicLong()};
+    private volatile int active;
+    private final AtomicLong intervalEnd;
+
+    public LatencyHistogram(long intervalNanos) {
+        this(intervalNanos, System::nanoTime);
+    }
+
+    LatencyHistogram(long intervalNanos, LongSupplier clock) {
+        this.intervalNanos = intervalNanos;
+        this.clock = clock;
+        this.intervalEnd = new AtomicLong(clock.getAsLong() + intervalNanos);
+    }
+
+    public void record(long nanos) {
+        rotateIfDue(clock.getAsLong());
+        long micros = Math.min(Math.max(0, nanos / 1_000), MAX_VALUE);
+        int index = active;
+        counts[index].incrementAndGet(bucket(micros));
+        AtomicLong currentMax = max[index];
+        long seen;
+        while (micros > (seen = currentMax.get()) && !currentMax.compareAndSet(seen, micros)) {
+            // 其他執行緒同時更新 max，重試
+        }
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_COUNT) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+        return SUB_COUNT + shift * SUB_COUNT + (int) (micros >>> shift) - SUB_COUNT;
+    }
+
+    /**
+     * 該桶內的最大值 (回報保守的上界)
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_COUNT) / SUB_COUNT;
+        long sub = SUB_COUNT + (bucket - SUB_COUNT) % SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    private void rotateIfDue(long now) {
+        long end = intervalEnd.get();
+        if (now - end < 0 || !intervalEnd.compareAndSet(end, now + intervalNanos)) {
+            return;
+        }
+        int next = 1 - active;
+        clear(next);
+        if (now - end >= intervalNanos) {
+            // 記錄中的一組也已超過一個 interval
+            clear(active);
+        }
+        active = next;
+    }
+
+    private void clear(int index) {
+        AtomicLongArray recycled = counts[index];
+        for (int i = 0; i < BUCKETS; i++) {
+            recycled.set(i, 0);
+        }
+        max[index].set(0);
+    }
+
+    /**
+     * p50 / p90 / p99 / p999 / max (毫秒) 與樣本數
+     */
+    public Map<String, Object> snapshot() {
+        rotateIfDue(clock.getAsLong());
+        long[] merged = new long[BUCKETS];
+        long total = 0;
+        for (AtomicLongArray array : counts) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = array.get(i);
+                merged[i] += c;
+                total += c;
+            }
+        }
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("p50_ms", percentile(merged, total, 50.0));
+        snapshot.put("p90_ms", percentile(merged, total, 90.0));
+        snapshot.put("p99_ms", percentile(merged, total, 99.0));
+        snapshot.put("p999_ms", percentile(merged, total, 99.9));
+        snapshot.put("max_ms", Math.max(max[0].get(), max[1].get()) / 1_000.0);
+        return snapshot;
+    }
+
+    private static double percentile(long[] merged, long total, double percentile) {
+        if (total == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += merged[i];
+            if (seen >= rank) {
+                return highestValue(i) / 1_000.0;
+            }
+        }
+        return highestValue(BUCKETS - 1) / 1_000.0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(LoadBalancerProperties.class)
+public class LoadBalancerConfig {
+
+    @Bean(destroyMethod = "close")
+    public DownstreamLoadBalancer downstreamLoadBalancer(LoadBalancerProperties props,
+                                                         @Value("${downstream.url}") String downstreamUrl) {
+        return new DownstreamLoadBalancer(props, downstreamUrl);
+    }
+}
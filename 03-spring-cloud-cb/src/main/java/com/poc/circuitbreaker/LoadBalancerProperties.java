@@ -0,0 +1,105 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RestClient 的 client-side load balancing 設定 (load-balancer.*)
+ *
+ * endpoints 有設定時使用固定清單；否則 resolve-dns 為 true 時解析 downstream.url 的 host
+ * (例如 headless service 名稱) 取得所有 pod 位址並定期更新。
+ */
+@ConfigurationProperties(prefix = "load-balancer")
+public class LoadBalancerProperties {
+
+    /** 是否啟用；關閉時所有請求照常送往 downstream.url */
+    private boolean enabled = false;
+
+    /** 固定的 endpoint 清單 (scheme://host:port) */
+    private List<String> endpoints = new ArrayList<>();
+
+    /** 沒有設定 endpoints 時，以 DNS 解析 downstream.url 的 host */
+    private boolean resolveDns = false;
+
+    /** DNS 重新解析的間隔 */
+    private Duration dnsRefreshInterval = Duration.ofSeconds(30);
+
+    /** 連續失敗 (連線錯誤或 5xx) 幾次後剔除該 endpoint */
+    private int consecutiveFailures = 3;
+
+    /** 第一次剔除的時間，之後每次剔除加倍 */
+    private Duration baseEjectionTime = Duration.ofSeconds(10);
+
+    /** 剔除時間上限；恢復後持續健康超過此時間，加倍次數歸零 */
+    private Duration maxEjectionTime = Duration.ofMinutes(2);
+
+    /** 單次請求最多嘗試幾個不同的 endpoint (含第一次) */
+    private int maxAttempts = 2;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(List<String> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public boolean isResolveDns() {
+        return resolveDns;
+    }
+
+    public void setResolveDns(boolean resolveDns) {
+        this.resolveDns = resolveDns;
+    }
+
+    public Duration getDnsRefreshInterval() {
+        return dnsRefreshInterval;
+    }
+
+    public void setDnsRefreshInterval(Duration dnsRefreshInterval) {
+        this.dnsRefreshInterval = dnsRefreshInterval;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public void setConsecutiveFailures(int consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public Duration getBaseEjectionTime() {
+        return baseEjectionTime;
+    }
+
+    public void setBaseEjectionTime(Duration baseEjectionTime) {
+        this.baseEjectionTime = baseEjectionTime;
+    }
+
+    public Duration getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    public void setMaxEjectionTime(Duration maxEjectionTime) {
+        this.maxEjectionTime = maxEjectionTime;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+}
@@ -0,0 +1,51 @@
+package com.poc.circuitbreaker;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 同一個 JVM 內的傳輸層 (測試 / 單一節點用)
+ *
+ * peer() 建立的 transport 屬於同一組，broadcast 在呼叫端執行緒上同步交給同組的其他成員。
+ */
+public class LoopbackClusterTransport implements ClusterStateTransport {
+
+    private final List<LoopbackClusterTransport> members;
+    private volatile Consumer<byte[]> handler = payload -> { };
+
+    public LoopbackClusterTransport() {
+        this(new CopyOnWriteArrayList<>());
+    }
+
+    private LoopbackClusterTransport(List<LoopbackClusterTransport> members) {
+        this.members = members;
+        members.add(this);
+    }
+
+    /**
+     * 加入同一組的另一個節點
+     */
+    public LoopbackClusterTransport peer() {
+        return new LoopbackClusterTransport(members);
+    }
+
+    @Override
+    public void broadcast(byte[] payload) {
+        for (LoopbackClusterTransport member : members) {
+            if (member != this) {
+                member.handler.accept(payload.clone());
+            }
+        }
+    }
+
+    @Override
+    public void onReceive(Consumer<byte[]> handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void close() {
+        members.remove(this);
+    }
+}
@@ -0,0 +1,16 @@
+package com.poc.circuitbreaker;
+
+import java.io.IOException;
+
+/**
+ * 負載平衡池中所有 endpoint 都被剔除
+ *
+ * 整個池都不健康才會出現，計入斷路器失敗 (RestClient 包成 ResourceAccessException)；
+ * 單一 endpoint 故障時請求改送其他 endpoint，不會走到這裡。
+ */
+public class NoHealthyEndpointException extends IOException {
+
+    public NoHealthyEndpointException(int endpoints) {
+        super("All " + endpoints + " downstream endpoints are ejected");
+    }
+}
@@ -0,0 +1,116 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * 非阻塞版本: WebClient + ReactiveCircuitBreakerFactory
+ *
+ * 與 DownstreamService 的差異:
+ * - 呼叫不會交給 executor 執行，等待下游時不佔用任何執行緒
+ * - TimeLimiter 以 Mono.timeout 實作，逾時即取消訂閱，Reactor Netty 會中斷該次請求
+ * - 斷路器、bulkhead、timelimiter 設定與 last-known-good 快取都與阻塞版本共用
+ * - 與阻塞版本共用同一個 BulkheadIsolation 計數，criticalService 使用專屬連線池的 WebClient
+ */
+@Service
+public class ReactiveDownstreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveDownstreamService.class);
+
+    private final WebClient webClient;
+    private final WebClient criticalWebClient;
+    private final ReactiveCircuitBreakerFactory<?, ?> reactiveCircuitBreakerFactory;
+    private final LastKnownGoodCache lastKnownGoodCache;
+    private final HedgingPolicy hedgingPolicy;
+    private final BulkheadIsolationRegistry bulkheadIsolationRegistry;
+
+    public ReactiveDownstreamService(@Qualifier("webClient") WebClient webClient,
+                                     @Qualifier("criticalWebClient") WebClient criticalWebClient,
+                                     ReactiveCircuitBreakerFactory<?, ?> reactiveCircuitBreakerFactory,
+                                     LastKnownGoodCache lastKnownGoodCache,
+                                     HedgingPolicy hedgingPolicy,
+                                     BulkheadIsolationRegistry bulkheadIsolationRegistry) {
+        this.webClient = webClient;
+        this.criticalWebClient = criticalWebClient;
+        this.reactiveCircuitBreakerFactory = reactiveCircuitBreakerFactory;
+        this.lastKnownGoodCache = lastKnownGoodCache;
+        this.hedgingPolicy = hedgingPolicy;
+        this.bulkheadIsolationRegistry = bulkheadIsolationRegistry;
+    }
+
+    /**
+     * 一般服務 (downstreamService)
+     */
+    public Mono<DownstreamResponse> callWithSpringCloudCB() {
+        return isolated("downstreamService", () -> reactiveCircuitBreakerFactory.create("downstreamService").run(
+            record("Reactive CB", request(webClient)),
+            throwable -> {
+                log.warn(">>> [Reactive CB] FALLBACK! Reason: {}", throwable.getMessage());
+                if (throwable instanceof BulkheadFullException) {
+                    return Mono.just(DownstreamService.shed(throwable));
+                }
+                return Mono.just(lastKnownGoodCache.lookup(DownstreamService.CACHE_KEY, throwable instanceof CallNotPermittedException)
+                    .orElseGet(() -> DownstreamResponse.fallback("{\"source\":\"REACTIVE_CB_FALLBACK\","
+                     + "\"message\":\"Circuit breaker fallback via reactive Spring Cloud abstraction\","
+                     + "\"error\":\"" + String.valueOf(throwable.getMessage()).replace("\"", "'") + "\"}")));
+            }
+        ));
+    }
+
+    /**
+     * 關鍵服務 (criticalService)，與阻塞版本相同套用 hedged request
+     */
+    public Mono<DownstreamResponse> callCriticalService() {
+        return isolated("criticalService", () -> reactiveCircuitBreakerFactory.create("criticalService").run(
+            record("Reactive Critical CB", hedgingPolicy.execute(() -> request(criticalWebClient))),
+            throwable -> {
+                log.warn(">>> [Reactive Critical CB] FALLBACK! Reason: {}", throwable.getMessage());
+                if (throwable instanceof BulkheadFullException) {
+                    return Mono.just(DownstreamService.shed(throwable));
+                }
+                return Mono.just(lastKnownGoodCache.lookup(DownstreamService.CACHE_KEY, throwable instanceof CallNotPermittedException)
+                    .orElseGet(() -> DownstreamResponse.fallback("{\"source\":\"REACTIVE_CRITICAL_CB_FALLBACK\","
+                     + "\"message\":\"Strict reactive circuit breaker fallback\","
+                     + "\"error\":\"" + String.valueOf(throwable.getMessage()).replace("\"", "'") + "\"}")));
+            }
+        ));
+    }
+
+    /**
+     * 訂閱時才佔 bulkhead 位置，完成、失敗或取消時釋放；位置用完回傳 BULKHEAD_FULL，不進入斷路器
+     */
+    private Mono<DownstreamResponse> isolated(String name, Supplier<Mono<DownstreamResponse>> call) {
+        return Mono.defer(() -> {
+            BulkheadIsolation isolation = bulkheadIsolationRegistry.isolation(name);
+            if (!isolation.tryEnter()) {
+                return Mono.just(DownstreamService.shed(isolation.queueFull()));
+            }
+            return call.get().doFinally(signal -> isolation.exit());
+        });
+    }
+
+    private static Mono<String> request(WebClient client) {
+        return client.get()
+            .uri("/")
+            .retrieve()
+            .bodyToMono(String.class);
+    }
+
+    private Mono<DownstreamResponse> record(String tag, Mono<String> call) {
+        return call
+            .doOnNext(response -> {
+                log.debug(">>> [{}] Success: {}", tag, response);
+                lastKnownGoodCache.put(DownstreamService.CACHE_KEY, response);
+            })
+            .map(DownstreamResponse::of);
+    }
+}
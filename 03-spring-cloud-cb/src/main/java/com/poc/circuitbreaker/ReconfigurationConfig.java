@@ -0,0 +1,23 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ReconfigurationProperties.class)
+public class ReconfigurationConfig {
+
+    @Bean
+    public CircuitBreakerReconfigurer circuitBreakerReconfigurer(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new CircuitBreakerReconfigurer(circuitBreakerRegistry);
+    }
+
+    @Bean
+    public BreakerConfigFileWatcher breakerConfigFileWatcher(ReconfigurationProperties props,
+                                                             CircuitBreakerReconfigurer circuitBreakerReconfigurer,
+                                                             CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new BreakerConfigFileWatcher(props, circuitBreakerReconfigurer, circuitBreakerRegistry);
+    }
+}
@@ -0,0 +1,92 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight: 同一個 key 同時只有一個呼叫在進行，其餘請求等待並共用結果 (或例外)
+ *
+ * 放在斷路器前面，N 個同時到達的相同請求只佔用一次斷路器呼叫；
+ * HALF_OPEN 時也只消耗一個探測名額，其餘請求直接拿探測結果。
+ * 只適用於冪等且與呼叫者無關的請求 (這裡的 GET)。
+ */
+@Component
+public class RequestCoalescer {
+
+    private final boolean enabled;
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(@Value("${coalescing.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        Stats keyStats = stats.computeIfAbsent(key, k -> new Stats());
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            keyStats.coalesced.increment();
+            return (T) await(leader);
+        }
+
+        keyStats.executed.increment();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error ex) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(ex);
+            throw ex;
+        }
+        // 先移除再通知: 完成之後才到的請求會送出新的呼叫，不會拿到已結束那次的結果
+        inFlight.remove(key, mine);
+        mine.complete(result);
+        return result;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** 實際送出 (經過斷路器) 的呼叫數 */
+    public long executedCalls(String key) {
+        Stats keyStats = stats.get(key);
+        return keyStats == null ? 0 : keyStats.executed.sum();
+    }
+
+    /** 共用其他請求結果、沒有送出的呼叫數 */
+    public long coalescedCalls(String key) {
+        Stats keyStats = stats.get(key);
+        return keyStats == null ? 0 : keyStats.coalesced.sum();
+    }
+
+    private static Object await(CompletableFuture<Object> leader) {
+        try {
+            return leader.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (ex.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw ex;
+        }
+    }
+
+    private static final class Stats {
+        final LongAdder executed = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+    }
+}
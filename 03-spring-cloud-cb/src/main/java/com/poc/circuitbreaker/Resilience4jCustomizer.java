@@ -1,63 +1,113 @@
 package com.poc.circuitbreaker;
 
-import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
-import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnStateTransitionEvent;
 import jakarta.annotation.PostConstruct;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.thread.Threading;
 import org.springframework.cloud.client.circuitbreaker.CircuitBreakerFactory;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
 import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JCircuitBreakerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.core.task.support.ExecutorServiceAdapter;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class Resilience4jCustomizer {
 
-    private static final Logger log = LoggerFactory.getLogger(Resilience4jCustomizer.class);
-
     private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final CircuitBreakerEventSink eventSink;
 
     @Value("${downstream.url}")
     private String downstreamUrl;
 
-    public Resilience4jCustomizer(CircuitBreakerRegistry circuitBreakerRegistry) {
+    public Resilience4jCustomizer(CircuitBreakerRegistry circuitBreakerRegistry,
+                                  CircuitBreakerEventSink eventSink) {
         this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.eventSink = eventSink;
     }
 
     /**
      * Spring Boot 4 推薦使用 RestClient (取代 RestTemplate)
+     * 底層使用 DownstreamClientConfig 的連線池 HttpClient；DeadlineRequestFactory 依呼叫端預算調整逾時並在期限到時中斷連線。
+     * 啟用 load-balancer 時，請求由 DownstreamLoadBalancer 分散到各個 endpoint
+     */
+    @Bean
+    public RestClient restClient(@Qualifier("downstreamHttpClient") CloseableHttpClient downstreamHttpClient,
+                                 DownstreamLoadBalancer downstreamLoadBalancer) {
+        return loadBalancedClient(downstreamHttpClient, downstreamLoadBalancer);
+    }
+
+    /**
+     * downstreamService 專用的 RestClient，使用專屬連線池，下游卡住時不佔用其他呼叫的連線
+     */
+    @Bean
+    public RestClient downstreamServiceRestClient(
+            @Qualifier("downstreamServiceHttpClient") CloseableHttpClient downstreamServiceHttpClient,
+            DownstreamLoadBalancer downstreamLoadBalancer) {
+        return loadBalancedClient(downstreamServiceHttpClient, downstreamLoadBalancer);
+    }
+
+    private RestClient loadBalancedClient(CloseableHttpClient httpClient, DownstreamLoadBalancer downstreamLoadBalancer) {
+        RestClient.Builder builder = RestClient.builder()
+                .baseUrl(downstreamUrl)
+                .requestFactory(new DeadlineRequestFactory(httpClient));
+        if (downstreamLoadBalancer.isEnabled()) {
+            builder.requestInterceptor(downstreamLoadBalancer);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reactive 路徑使用的 WebClient，I/O 在 Reactor Netty event loop 上完成，不佔用請求執行緒
      */
     @Bean
-    public RestClient restClient() {
-        return RestClient.builder()
+    public WebClient webClient(ReactorClientHttpConnector downstreamClientConnector) {
+        return WebClient.builder()
                 .baseUrl(downstreamUrl)
+                .clientConnector(downstreamClientConnector)
                 .build();
     }
 
     /**
-     * 註冊狀態轉換事件監聽器
+     * criticalService 專用的 WebClient，使用專屬連線池，不與一般下游搶連線
+     */
+    @Bean
+    public WebClient criticalWebClient(@Qualifier("criticalConnectionProvider") ConnectionProvider criticalConnectionProvider,
+                                       DownstreamHttpProperties props) {
+        return WebClient.builder()
+                .baseUrl(downstreamUrl)
+                .clientConnector(DownstreamClientConfig.connector(criticalConnectionProvider, props))
+                .build();
+    }
+
+    /**
+     * Virtual thread 模式: CircuitBreakerFactory 預設以 cached thread pool 執行呼叫 (TimeLimiter 需要)，
+     * 開啟 spring.threads.virtual.enabled 時改為每次呼叫一個 virtual thread；並行上限由 bulkhead 控制。
+     */
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Customizer<Resilience4JCircuitBreakerFactory> virtualThreadExecutorCustomizer() {
+        return factory -> factory.configureExecutorService(
+                new ExecutorServiceAdapter(new VirtualThreadTaskExecutor("cb-vt-")));
+    }
+
+    /**
+     * 註冊事件監聽器: 每次呼叫的事件交給 CircuitBreakerEventSink 批次彙總，狀態轉換立即輸出；
+     * 之後才建立或執行中被替換的斷路器也一併註冊
      */
     @PostConstruct
     public void registerEventListeners() {
-        circuitBreakerRegistry.getAllCircuitBreakers().forEach(cb -> {
-            cb.getEventPublisher()
-                .onStateTransition(this::logStateTransition)
-                .onError(event -> log.error("CB [{}] Error: {}",
-                    event.getCircuitBreakerName(), event.getThrowable().getMessage()))
-                .onSuccess(event -> log.info("CB [{}] Success (duration: {}ms)",
-                    event.getCircuitBreakerName(), event.getElapsedDuration().toMillis()));
-        });
-    }
-
-    private void logStateTransition(CircuitBreakerOnStateTransitionEvent event) {
-        log.warn("============================================");
-        log.warn("  CB [{}] 狀態轉換: {} → {}",
-            event.getCircuitBreakerName(),
-            event.getStateTransition().getFromState(),
-            event.getStateTransition().getToState());
-        log.warn("============================================");
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(eventSink::register);
+        circuitBreakerRegistry.getEventPublisher()
+            .onEntryAdded(event -> eventSink.register(event.getAddedEntry()))
+            .onEntryReplaced(event -> eventSink.register(event.getNewEntry()));
     }
 }
@@ -0,0 +1,206 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 斷路器之內的重試 (每個斷路器一個，由 RetryPolicyRegistry 建立)
+ *
+ * - 只重試連線錯誤與 5xx；並行上限拒絕、4xx、所有 endpoint 都被剔除 (NoHealthyEndpointException) 等不重試
+ * - 預算: 每次成功存入 budgetPercent/100 個 token，重試花 1 個 token，額外流量不超過成功流量的設定比例
+ * - 斷路器不是 CLOSED (OPEN / HALF_OPEN / FORCED_OPEN) 時不重試，HALF_OPEN 的探測結果不被重試掩蓋
+ * - 等待時間為 decorrelated jitter: min(maxDelay, random(baseDelay, 上次等待 × 3))
+ * - 整個呼叫在斷路器裡只記一次，重試成功即計為成功
+ * - 呼叫端帶有 Deadline 時，剩餘預算不足以等待下一次就不重試
+ * - DownstreamLoadBalancer 改送其他 endpoint 也算一次 attempt: 與重試共用 maxAttempts 與預算 (permitFailover)，
+ *   兩層不會相乘，一次呼叫最多送出 maxAttempts 個下游請求
+ */
+public class RetryPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private static final int TOKEN = 100;
+
+    /** 目前執行緒上正在進行的呼叫，load balancer 改送其他 endpoint 時向它申請額度 */
+    private static final ThreadLocal<Call> CURRENT = new ThreadLocal<>();
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final String name;
+    private final RetryProperties props;
+    private final AtomicInteger tokens = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder succeededAfterRetry = new LongAdder();
+    private final LongAdder budgetDenied = new LongAdder();
+    private final LongAdder skippedNotClosed = new LongAdder();
+    private final LongAdder skippedDeadline = new LongAdder();
+
+    public RetryPolicy(CircuitBreakerRegistry circuitBreakerRegistry, String name, RetryProperties props) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.name = name;
+        this.props = props;
+    }
+
+    public <T> T execute(Supplier<T> attempt) {
+        if (!props.isEnabled()) {
+            return attempt.get();
+        }
+        calls.increment();
+        Call call = new Call(this);
+        Call outer = CURRENT.get();
+        CURRENT.set(call);
+        try {
+            long delayNanos = props.getBaseDelay().toNanos();
+            for (boolean retried = false; ; retried = true) {
+                call.attempts++;
+                requests.increment();
+                try {
+                    T result = attempt.get();
+                    depositToken();
+                    if (retried) {
+                        succeededAfterRetry.increment();
+                    }
+                    return result;
+                } catch (RuntimeException ex) {
+                    if (call.attempts >= props.getMaxAttempts() || !isRetryable(ex)) {
+                        throw ex;
+                    }
+                    delayNanos = nextDelay(delayNanos);
+                    if (!permitRetry(delayNanos) || !sleep(delayNanos)) {
+                        throw ex;
+                    }
+                    retries.increment();
+                    log.debug("Retrying {} (attempt {}) after {}ms: {}", name, call.attempts + 1,
+                        TimeUnit.NANOSECONDS.toMillis(delayNanos), ex.getMessage());
+                }
+            }
+        } finally {
+            if (outer != null) {
+                CURRENT.set(outer);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * load balancer 改送另一個 endpoint 前呼叫: 在 RetryPolicy 之內時佔用同一次呼叫的 attempt 與重試預算，
+     * 不在 RetryPolicy 之內 (或重試關閉) 時一律允許
+     */
+    static boolean permitFailover() {
+        Call call = CURRENT.get();
+        return call == null || call.policy.permitFailover(call);
+    }
+
+    private boolean permitFailover(Call call) {
+        if (call.attempts >= props.getMaxAttempts() || !permitRetry(0)) {
+            return false;
+        }
+        call.attempts++;
+        requests.increment();
+        failovers.increment();
+        return true;
+    }
+
+    private static boolean isRetryable(RuntimeException ex) {
+        if (ex instanceof ResourceAccessException) {
+            return !(ex.getCause() instanceof NoHealthyEndpointException);
+        }
+        return ex instanceof HttpServerErrorException;
+    }
+
+    private boolean permitRetry(long delayNanos) {
+        if (circuitBreakerRegistry.circuitBreaker(name).getState() != CircuitBreaker.State.CLOSED) {
+            skippedNotClosed.increment();
+            return false;
+        }
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.remainingNanos() <= delayNanos) {
+            skippedDeadline.increment();
+            return false;
+        }
+        if (!tryWithdrawToken()) {
+            budgetDenied.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private long nextDelay(long previousNanos) {
+        long base = props.getBaseDelay().toNanos();
+        long upper = Math.max(base + 1, previousNanos * 3);
+        return Math.min(props.getMaxDelay().toNanos(), ThreadLocalRandom.current().nextLong(base, upper));
+    }
+
+    private static boolean sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void depositToken() {
+        int max = props.getMaxTokens() * TOKEN;
+        tokens.getAndUpdate(current -> Math.min(max, current + props.getBudgetPercent()));
+    }
+
+    private boolean tryWithdrawToken() {
+        int current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    public Map<String, Object> stats() {
+        long total = calls.sum();
+        long retried = retries.sum();
+        long sent = requests.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", props.isEnabled());
+        stats.put("calls", total);
+        stats.put("retries", retried);
+        stats.put("failovers", failovers.sum());
+        stats.put("succeeded_after_retry", succeededAfterRetry.sum());
+        stats.put("budget_denied", budgetDenied.sum());
+        stats.put("skipped_not_closed", skippedNotClosed.sum());
+        stats.put("skipped_deadline", skippedDeadline.sum());
+        stats.put("budget_tokens", tokens.get() / (double) TOKEN);
+        // 送往下游的請求數 (每次 attempt 加上 load balancer 改送) / 呼叫數
+        stats.put("amplification", total == 0 ? 1.0 : sent / (double) total);
+        return stats;
+    }
+
+    /**
+     * 一次呼叫已使用的 attempt 數 (重試與 load balancer 改送合計)
+     */
+    private static final class Call {
+
+        private final RetryPolicy policy;
+        private int attempts;
+
+        Call(RetryPolicy policy) {
+            this.policy = policy;
+        }
+    }
+}
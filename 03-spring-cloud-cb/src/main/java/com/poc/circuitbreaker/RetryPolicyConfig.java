@@ -0,0 +1,16 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(RetryProperties.class)
+public class RetryPolicyConfig {
+
+    @Bean
+    public RetryPolicyRegistry retryPolicyRegistry(RetryProperties props, CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new RetryPolicyRegistry(props, circuitBreakerRegistry);
+    }
+}
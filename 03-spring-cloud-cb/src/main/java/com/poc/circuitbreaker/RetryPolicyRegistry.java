@@ -0,0 +1,25 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每個斷路器各自一個 RetryPolicy (名稱與斷路器相同)，重試預算與統計互不影響
+ */
+public class RetryPolicyRegistry {
+
+    private final RetryProperties props;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final Map<String, RetryPolicy> policies = new ConcurrentHashMap<>();
+
+    public RetryPolicyRegistry(RetryProperties props, CircuitBreakerRegistry circuitBreakerRegistry) {
+        this.props = props;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+    }
+
+    public RetryPolicy policy(String name) {
+        return policies.computeIfAbsent(name, key -> new RetryPolicy(circuitBreakerRegistry, key, props));
+    }
+}
@@ -0,0 +1,20 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(RouteBreakerProperties.class)
+public class RouteBreakerConfig {
+
+    @Bean
+    public RouteCircuitBreakerRegistry routeCircuitBreakerRegistry(RouteBreakerProperties props,
+                                                                   CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new RouteCircuitBreakerRegistry(
+            circuitBreakerRegistry.getConfiguration(props.getBaseConfig())
+                .orElseGet(circuitBreakerRegistry::getDefaultConfig),
+            props);
+    }
+}
@@ -0,0 +1,47 @@
+package com.poc.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 每個下游路由 (host + path) 一個斷路器的設定 (route-breaker.*)
+ *
+ * 斷路器依 baseConfig 指定的 resilience4j 設定建立，數量受 maxRoutes 限制。
+ */
+@ConfigurationProperties(prefix = "route-breaker")
+public class RouteBreakerProperties {
+
+    /** 同時保留的路由數上限，超過時淘汰閒置或最久未使用的路由 */
+    private int maxRoutes = 10_000;
+
+    /** 超過此時間沒有呼叫的路由可被淘汰 */
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    /** 作為 template 的 resilience4j.circuitbreaker.configs 名稱 */
+    private String baseConfig = "shared";
+
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    public void setMaxRoutes(int maxRoutes) {
+        this.maxRoutes = maxRoutes;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public String getBaseConfig() {
+        return baseConfig;
+    }
+
+    public void setBaseConfig(String baseConfig) {
+        this.baseConfig = baseConfig;
+    }
+}
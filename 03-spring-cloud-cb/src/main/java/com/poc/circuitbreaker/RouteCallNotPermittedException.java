@@ -0,0 +1,11 @@
+package com.poc.circuitbreaker;
+
+/**
+ * 路由斷路器為 OPEN (或 HALF_OPEN 探測名額已用完) 時拒絕的呼叫
+ */
+public class RouteCallNotPermittedException extends RuntimeException {
+
+    public RouteCallNotPermittedException(String key) {
+        super("Route circuit breaker '" + key + "' does not permit further calls", null, false, false);
+    }
+}
@@ -0,0 +1,354 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 依路由 (host + path) 動態建立的斷路器，數量有上限、閒置過久自動淘汰
+ *
+ * - 第一次呼叫某個 key 時依 template CircuitBreakerConfig 建立，不註冊到 CircuitBreakerRegistry
+ * - 狀態存在以 slot 索引的 primitive 陣列，每個 key 約 55 bytes (另加 key 字串與 map entry)
+ * - sliding window 固定為 count-based，以 64-bit 位元環記錄結果 (1 = 失敗)，視窗最多 64 筆
+ * - OPEN 在 waitDurationInOpenState 之後的下一次呼叫轉為 HALF_OPEN (不需要排程器)
+ * - slot 以陣列實作的雙向串列依最近使用排序 (LRU)；每次呼叫從最久未使用的一端淘汰至多 SWEEP_BATCH 個
+ *   閒置超過 idleTimeout 的 key，到達 maxRoutes 時淘汰最久未使用的 key，都是 O(1)，不掃描所有 slot
+ * - find / reset 只查詢，不會建立新 key
+ *
+ * 每次操作只有幾個陣列讀寫，整個 registry 共用一把鎖。
+ */
+public class RouteCircuitBreakerRegistry {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final byte CLOSED = 0;
+    private static final byte OPEN = 1;
+    private static final byte HALF_OPEN = 2;
+    private static final int MAX_WINDOW = Long.SIZE;
+    /** 每次呼叫最多淘汰的閒置 key 數 (分攤清理成本) */
+    private static final int SWEEP_BATCH = 4;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final long waitInOpenNanos;
+    private final int halfOpenPermits;
+    private final Predicate<Throwable> recordFailure;
+    private final Predicate<Throwable> ignore;
+    private final long idleTimeoutNanos;
+    private final LongSupplier clock;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final String[] keys;
+    private final int[] generations;
+    private final byte[] states;
+    private final long[] outcomes;
+    private final byte[] cursors;
+    private final byte[] calls;
+    private final long[] openedAt;
+    private final long[] lastAccess;
+    private final int[] halfOpenIssued;
+    private final int[] halfOpenSucceeded;
+    private final int[] halfOpenFailed;
+    private final int[] freeSlots;
+    /** LRU 串列: newer 指向較近使用的 slot，older 指向較久未使用的 slot，-1 表示端點 */
+    private final int[] newer;
+    private final int[] older;
+    private int mostRecent = -1;
+    private int leastRecent = -1;
+    private int freeCount;
+    private long evictions;
+
+    public RouteCircuitBreakerRegistry(CircuitBreakerConfig template, RouteBreakerProperties props) {
+        this(template, props, System::nanoTime);
+    }
+
+    RouteCircuitBreakerRegistry(CircuitBreakerConfig template, RouteBreakerProperties props, LongSupplier clock) {
+        this.windowSize = Math.min(template.getSlidingWindowSize(), MAX_WINDOW);
+        this.minimumCalls = Math.min(template.getMinimumNumberOfCalls(), windowSize);
+        this.failureRateThreshold = template.getFailureRateThreshold();
+        this.waitInOpenNanos = template.getWaitIntervalFunctionInOpenState().apply(1) * 1_000_000L;
+        this.halfOpenPermits = template.getPermittedNumberOfCallsInHalfOpenState();
+        this.recordFailure = template.getRecordExceptionPredicate();
+        this.ignore = template.getIgnoreExceptionPredicate();
+        this.idleTimeoutNanos = props.getIdleTimeout().toNanos();
+        this.clock = clock;
+
+        int capacity = props.getMaxRoutes();
+        this.keys = new String[capacity];
+        this.generations = new int[capacity];
+        this.states = new byte[capacity];
+        this.outcomes = new long[capacity];
+        this.cursors = new byte[capacity];
+        this.calls = new byte[capacity];
+        this.openedAt = new long[capacity];
+        this.lastAccess = new long[capacity];
+        this.halfOpenIssued = new int[capacity];
+        this.halfOpenSucceeded = new int[capacity];
+        this.halfOpenFailed = new int[capacity];
+        this.freeSlots = new int[capacity];
+        this.newer = new int[capacity];
+        this.older = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+    }
+
+    /**
+     * 以 key 的斷路器執行呼叫；被拒絕或失敗時交給 fallback
+     * (拒絕時 fallback 收到 RouteCallNotPermittedException)
+     * Error 照樣記錄結果 (歸還 HALF_OPEN 名額) 後往外拋，不交給 fallback
+     */
+    public <T> T run(String key, Supplier<T> call, Function<Throwable, T> fallback) {
+        long permit;
+        try {
+            permit = acquire(key);
+        } catch (RouteCallNotPermittedException ex) {
+            return fallback.apply(ex);
+        }
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException ex) {
+            onError(permit, ex);
+            return fallback.apply(ex);
+        } catch (Throwable ex) {
+            onError(permit, ex);
+            throw ex;
+        }
+        onResult(permit, false);
+        return result;
+    }
+
+    /**
+     * 取得呼叫許可；回傳值高 32 bits 為 slot、低 32 bits 為 generation，
+     * slot 在呼叫期間被淘汰並重用時，結果不會記到新的 key 上
+     */
+    synchronized long acquire(String key) {
+        long now = clock.getAsLong();
+        Integer existing = slots.get(key);
+        if (existing != null) {
+            touch(existing, now);
+        }
+        sweepIdle(now);
+        int slot = existing != null ? existing : allocate(key, now);
+
+        if (states[slot] == OPEN) {
+            if (now - openedAt[slot] < waitInOpenNanos) {
+                throw new RouteCallNotPermittedException(key);
+            }
+            states[slot] = HALF_OPEN;
+            halfOpenIssued[slot] = 0;
+            halfOpenSucceeded[slot] = 0;
+            halfOpenFailed[slot] = 0;
+        }
+        if (states[slot] == HALF_OPEN) {
+            if (halfOpenIssued[slot] >= halfOpenPermits) {
+                throw new RouteCallNotPermittedException(key);
+            }
+            halfOpenIssued[slot]++;
+        }
+        return ((long) slot << 32) | (generations[slot] & 0xFFFFFFFFL);
+    }
+
+    void onError(long permit, Throwable ex) {
+        if (ignore.test(ex)) {
+            release(permit);
+        } else {
+            onResult(permit, recordFailure.test(ex));
+        }
+    }
+
+    synchronized void onResult(long permit, boolean failed) {
+        int slot = (int) (permit >>> 32);
+        if (generations[slot] != (int) permit) {
+            return;
+        }
+        if (states[slot] == CLOSED) {
+            long bit = 1L << cursors[slot];
+            outcomes[slot] = failed ? outcomes[slot] | bit : outcomes[slot] & ~bit;
+            cursors[slot] = (byte) ((cursors[slot] + 1) % windowSize);
+            if (calls[slot] < windowSize) {
+                calls[slot]++;
+            }
+            if (calls[slot] >= minimumCalls && failureRate(slot) >= failureRateThreshold) {
+                open(slot);
+            }
+        } else if (states[slot] == HALF_OPEN) {
+            if (failed) {
+                halfOpenFailed[slot]++;
+            } else {
+                halfOpenSucceeded[slot]++;
+            }
+            int done = halfOpenSucceeded[slot] + halfOpenFailed[slot];
+            if (done >= halfOpenPermits) {
+                if (halfOpenFailed[slot] * 100f / done >= failureRateThreshold) {
+                    open(slot);
+                } else {
+                    close(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * 忽略的例外: 歸還 HALF_OPEN 名額，不記錄結果
+     */
+    private synchronized void release(long permit) {
+        int slot = (int) (permit >>> 32);
+        if (generations[slot] == (int) permit && states[slot] == HALF_OPEN && halfOpenIssued[slot] > 0) {
+            halfOpenIssued[slot]--;
+        }
+    }
+
+    private float failureRate(int slot) {
+        return calls[slot] == 0 ? 0f : Long.bitCount(outcomes[slot]) * 100f / calls[slot];
+    }
+
+    private void open(int slot) {
+        states[slot] = OPEN;
+        openedAt[slot] = clock.getAsLong();
+    }
+
+    private void close(int slot) {
+        states[slot] = CLOSED;
+        outcomes[slot] = 0;
+        cursors[slot] = 0;
+        calls[slot] = 0;
+    }
+
+    private int allocate(String key, long now) {
+        if (freeCount == 0) {
+            free(leastRecent);
+        }
+        int slot = freeSlots[--freeCount];
+        keys[slot] = key;
+        slots.put(key, slot);
+        close(slot);
+        lastAccess[slot] = now;
+        linkMostRecent(slot);
+        return slot;
+    }
+
+    /**
+     * 從最久未使用的一端淘汰閒置超過 idleTimeout 的 key，每次最多 SWEEP_BATCH 個
+     */
+    private void sweepIdle(long now) {
+        for (int i = 0; i < SWEEP_BATCH && leastRecent >= 0 && now - lastAccess[leastRecent] > idleTimeoutNanos; i++) {
+            free(leastRecent);
+        }
+    }
+
+    private void touch(int slot, long now) {
+        lastAccess[slot] = now;
+        if (slot != mostRecent) {
+            unlink(slot);
+            linkMostRecent(slot);
+        }
+    }
+
+    private void linkMostRecent(int slot) {
+        newer[slot] = -1;
+        older[slot] = mostRecent;
+        if (mostRecent >= 0) {
+            newer[mostRecent] = slot;
+        } else {
+            leastRecent = slot;
+        }
+        mostRecent = slot;
+    }
+
+    private void unlink(int slot) {
+        if (newer[slot] >= 0) {
+            older[newer[slot]] = older[slot];
+        } else {
+            mostRecent = older[slot];
+        }
+        if (older[slot] >= 0) {
+            newer[older[slot]] = newer[slot];
+        } else {
+            leastRecent = newer[slot];
+        }
+    }
+
+    private void free(int slot) {
+        unlink(slot);
+        slots.remove(keys[slot]);
+        keys[slot] = null;
+        generations[slot]++;
+        freeSlots[freeCount++] = slot;
+        evictions++;
+    }
+
+    /**
+     * 只查詢既有的 key，不會建立斷路器
+     */
+    public synchronized Optional<Map<String, Object>> find(String key) {
+        Integer slot = slots.get(key);
+        return slot == null ? Optional.empty() : Optional.of(describe(slot));
+    }
+
+    /**
+     * 重置既有 key 為 CLOSED；key 不存在時回傳 false
+     */
+    public synchronized boolean reset(String key) {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            return false;
+        }
+        close(slot);
+        return true;
+    }
+
+    public synchronized State state(String key) {
+        Integer slot = slots.get(key);
+        return slot == null ? null : State.values()[states[slot]];
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * 總覽: 數量、上限、淘汰數，以及最多 limit 個非 CLOSED 的路由
+     */
+    public synchronized Map<String, Object> stats(int limit) {
+        List<Map<String, Object>> notClosed = new ArrayList<>();
+        int open = 0;
+        for (int slot : slots.values()) {
+            if (states[slot] != CLOSED) {
+                open++;
+                if (notClosed.size() < limit) {
+                    notClosed.add(describe(slot));
+                }
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("routes", slots.size());
+        stats.put("max_routes", keys.length);
+        stats.put("not_closed", open);
+        stats.put("evictions", evictions);
+        stats.put("not_closed_routes", notClosed);
+        return stats;
+    }
+
+    private Map<String, Object> describe(int slot) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("route", keys[slot]);
+        info.put("state", State.values()[states[slot]].name());
+        info.put("failure_rate", calls[slot] < minimumCalls ? -1.0f : failureRate(slot));
+        info.put("buffered_calls", (int) calls[slot]);
+        info.put("failed_calls", Long.bitCount(outcomes[slot]));
+        return info;
+    }
+}
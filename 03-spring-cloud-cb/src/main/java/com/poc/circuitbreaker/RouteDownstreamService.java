@@ -0,0 +1,67 @@
+package com.poc.circuitbreaker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.net.URI;
+import java.util.regex.Pattern;
+
+/**
+ * 每個下游路由 (host + path) 各自一個斷路器
+ *
+ * 某個 path 故障只會讓該路由跳開，其他 path 照常呼叫；
+ * 斷路器由 RouteCircuitBreakerRegistry 依需要建立，數量有上限。
+ */
+@Service
+public class RouteDownstreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(RouteDownstreamService.class);
+
+    /** 路由只允許以 / 開頭的單純路徑，避免透過 path 改變 host */
+    static final Pattern PATH = Pattern.compile("/(?!/)[A-Za-z0-9._~\\-/]*");
+
+    private final RestClient restClient;
+    private final RouteCircuitBreakerRegistry routeRegistry;
+    private final LastKnownGoodCache lastKnownGoodCache;
+    private final String host;
+
+    public RouteDownstreamService(@Qualifier("restClient") RestClient restClient,
+                                  RouteCircuitBreakerRegistry routeRegistry,
+                                  LastKnownGoodCache lastKnownGoodCache,
+                                  @Value("${downstream.url}") String downstreamUrl) {
+        this.restClient = restClient;
+        this.routeRegistry = routeRegistry;
+        this.lastKnownGoodCache = lastKnownGoodCache;
+        this.host = URI.create(downstreamUrl).getAuthority();
+    }
+
+    public String routeKey(String path) {
+        return host + path;
+    }
+
+    public DownstreamResponse call(String path) {
+        String key = routeKey(path);
+        return routeRegistry.run(key,
+            () -> {
+                String response = restClient.get()
+                    .uri(path)
+                    .retrieve()
+                    .body(String.class);
+                log.debug(">>> [Route CB {}] Success: {}", key, response);
+                lastKnownGoodCache.put("GET " + path, response);
+                return DownstreamResponse.of(response);
+            },
+            throwable -> {
+                log.warn(">>> [Route CB {}] FALLBACK! Reason: {}", key, throwable.getMessage());
+                return lastKnownGoodCache.lookup("GET " + path, throwable instanceof RouteCallNotPermittedException)
+                    .orElseGet(() -> DownstreamResponse.fallback("{\"source\":\"ROUTE_CB_FALLBACK\","
+                     + "\"route\":\"" + key + "\","
+                     + "\"error\":\"" + String.valueOf(throwable.getMessage()).replace("\"", "'") + "\"}"));
+            }
+        );
+    }
+}
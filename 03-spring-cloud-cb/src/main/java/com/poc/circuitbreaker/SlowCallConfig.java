@@ -0,0 +1,17 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(SlowCallProperties.class)
+public class SlowCallConfig {
+
+    @Bean
+    public SlowCallDetectorRegistry slowCallDetectorRegistry(SlowCallProperties props,
+                                                             CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new SlowCallDetectorRegistry(props, circuitBreakerRegistry);
+    }
+}
@@ -0,0 +1,26 @@
+package com.poc.circuitbreaker;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每個斷路器各自一個 AdaptiveSlowCallDetector (名稱與斷路器相同)，各自學習自己的延遲基準
+ */
+public class SlowCallDetectorRegistry {
+
+    private final SlowCallProperties props;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final Map<String, AdaptiveSlowCallDetector> detectors = new ConcurrentHashMap<>();
+
+    public SlowCallDetectorRegistry(SlowCallProperties props, CircuitBreakerRegistry circuitBreakerRegistry) {
+        this.props = props;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+    }
+
+    public AdaptiveSlowCallDetector detector(String name) {
+        return detectors.computeIfAbsent(name,
+            key -> new AdaptiveSlowCallDetector(circuitBreakerRegistry, key, props));
+    }
+}
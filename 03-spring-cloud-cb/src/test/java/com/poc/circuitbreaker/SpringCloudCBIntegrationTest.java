@@ -3,13 +3,44 @@ package com.poc.circuitbreaker;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.context.properties.bind.BindException;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigurationProperties;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4jBulkheadProvider;
+import org.springframework.cloud.client.circuitbreaker.CircuitBreakerFactory;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,6 +79,7 @@ class SpringCloudCBIntegrationTest {
                 .waitDurationInOpenState(Duration.ofSeconds(2))
                 .permittedNumberOfCallsInHalfOpenState(1)
                 .automaticTransitionFromOpenToHalfOpenEnabled(false)
+                .ignoreExceptions(ConcurrencyLimitExceededException.class, DeadlineExceededException.class)
                 .build();
 
         cbRegistry = CircuitBreakerRegistry.of(sharedConfig);
@@ -167,4 +199,1459 @@ class SpringCloudCBIntegrationTest {
 
         assertEquals(40.0f, criticalCb.getCircuitBreakerConfig().getFailureRateThreshold());
     }
+
+    @Test
+    @DisplayName("Pooled client bounds a hanging downstream by its response timeout")
+    void pooledClient_timesOutHangingDownstream() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withFixedDelay(3000)));
+
+        DownstreamHttpProperties props = new DownstreamHttpProperties();
+        props.setReadTimeout(Duration.ofMillis(500));
+        props.setResponseTimeout(Duration.ofMillis(500));
+        DownstreamClientConfig config = new DownstreamClientConfig();
+
+        try (PoolingHttpClientConnectionManager connectionManager = config.downstreamConnectionManager(props);
+             CloseableHttpClient httpClient = config.downstreamHttpClient(connectionManager, props)) {
+            RestClient pooledClient = RestClient.builder()
+                    .baseUrl(wireMock.baseUrl())
+                    .requestFactory(new HttpComponentsClientHttpRequestFactory(httpClient))
+                    .build();
+            CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+
+            long start = System.nanoTime();
+            assertThrows(ResourceAccessException.class, () ->
+                    cb.executeSupplier(() -> pooledClient.get().uri("/").retrieve().body(String.class)));
+            long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            assertTrue(elapsedMs < 2000, "call should be bounded by response-timeout, took " + elapsedMs + "ms");
+            assertEquals(1, cb.getMetrics().getNumberOfFailedCalls());
+        }
+    }
+
+    @Test
+    @DisplayName("Reactive path - success passes through the reactive circuit breaker")
+    void reactive_success() {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"status\":\"ok\"}")));
+
+        WebClient client = WebClient.builder().baseUrl(wireMock.baseUrl()).build();
+        ReactiveDownstreamService service = new ReactiveDownstreamService(
+                client, client,
+                reactiveFactory(Duration.ofSeconds(2)),
+                new LastKnownGoodCache(new FallbackCacheProperties()),
+                new HedgingPolicy(new HedgingProperties()),
+                new BulkheadIsolationRegistry(new BulkheadIsolationProperties(), BulkheadRegistry.ofDefaults()));
+
+        String result = service.callWithSpringCloudCB().block(Duration.ofSeconds(5)).body();
+
+        assertNotNull(result);
+        assertTrue(result.contains("ok"));
+        assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfSuccessfulCalls());
+    }
+
+    @Test
+    @DisplayName("Reactive path - TimeLimiter cancels a hanging call and records a failure")
+    void reactive_timeLimiterCancelsHangingCall() {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withFixedDelay(3000)));
+
+        DownstreamHttpProperties props = new DownstreamHttpProperties();
+        DownstreamClientConfig config = new DownstreamClientConfig();
+        ConnectionProvider provider = config.downstreamConnectionProvider(props);
+        try {
+            WebClient client = WebClient.builder()
+                    .baseUrl(wireMock.baseUrl())
+                    .clientConnector(config.downstreamClientConnector(provider, props))
+                    .build();
+            ReactiveDownstreamService service = new ReactiveDownstreamService(
+                    client, client,
+                    reactiveFactory(Duration.ofMillis(300)),
+                    new LastKnownGoodCache(new FallbackCacheProperties()),
+                    new HedgingPolicy(new HedgingProperties()),
+                    new BulkheadIsolationRegistry(new BulkheadIsolationProperties(), BulkheadRegistry.ofDefaults()));
+
+            long start = System.nanoTime();
+            String result = service.callWithSpringCloudCB().block(Duration.ofSeconds(5)).body();
+            long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            assertNotNull(result);
+            assertTrue(result.contains("REACTIVE_CB_FALLBACK"));
+            assertTrue(elapsedMs < 1500, "call should be cancelled by the TimeLimiter, took " + elapsedMs + "ms");
+            assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfFailedCalls());
+        } finally {
+            provider.dispose();
+        }
+    }
+
+    @Test
+    @DisplayName("Failed call serves the last-known-good response with its age")
+    void failedCall_servesLastKnownGood() {
+        DownstreamService service = downstreamService(new LastKnownGoodCache(new FallbackCacheProperties()));
+
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        assertFalse(service.callWithSpringCloudCB().fromCache());
+
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(500).withBody("error")));
+        DownstreamResponse fallback = service.callCriticalService();
+
+        assertTrue(fallback.fromCache(), "both breakers share the cached entry for GET /");
+        assertEquals("{\"status\":\"ok\"}", fallback.body());
+        assertTrue(fallback.age().toMillis() < 1000);
+    }
+
+    @Test
+    @DisplayName("Stale entry is served only while the breaker is OPEN")
+    void staleEntry_servedOnlyWhileOpen() throws Exception {
+        FallbackCacheProperties props = new FallbackCacheProperties();
+        props.setTtl(Duration.ofMillis(200));
+        DownstreamService service = downstreamService(new LastKnownGoodCache(props));
+
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        service.callWithSpringCloudCB();
+
+        Thread.sleep(300);
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(500).withBody("error")));
+
+        // CLOSED: 過期的快取不回傳
+        DownstreamResponse failed = service.callWithSpringCloudCB();
+        assertFalse(failed.fromCache());
+        assertTrue(failed.body().contains("SPRING_CLOUD_CB_FALLBACK"));
+        service.callWithSpringCloudCB();
+        assertEquals(CircuitBreaker.State.OPEN, cbRegistry.circuitBreaker("downstreamService").getState());
+
+        // OPEN: 回傳舊資料
+        DownstreamResponse stale = service.callWithSpringCloudCB();
+        assertTrue(stale.fromCache());
+        assertEquals("{\"status\":\"ok\"}", stale.body());
+        assertTrue(stale.age().toMillis() >= 300);
+    }
+
+    @Test
+    @DisplayName("Concurrent identical requests share one downstream call and one breaker call")
+    void concurrentCalls_areCoalesced() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")
+                        .withFixedDelay(300)));
+        DownstreamService service = downstreamService(new LastKnownGoodCache(new FallbackCacheProperties()));
+        RequestCoalescer coalescer = new RequestCoalescer(true);
+
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<DownstreamResponse>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return coalescer.execute("downstreamService", service::callWithSpringCloudCB);
+                }));
+            }
+            start.countDown();
+            for (Future<DownstreamResponse> result : results) {
+                assertTrue(result.get().body().contains("ok"));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        wireMock.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/")));
+        assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfBufferedCalls());
+        assertEquals(1, coalescer.executedCalls("downstreamService"));
+        assertEquals(3, coalescer.coalescedCalls("downstreamService"));
+    }
+
+    @Test
+    @DisplayName("Hedge wins over a stalled first attempt and counts once in the breaker")
+    void hedgedCall_winsOverStalledAttempt() {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).inScenario("stall")
+                .whenScenarioStateIs(com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED)
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"attempt\":\"first\"}").withFixedDelay(3000))
+                .willSetStateTo("hedged"));
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).inScenario("stall")
+                .whenScenarioStateIs("hedged")
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"attempt\":\"hedge\"}")));
+
+        HedgingProperties props = new HedgingProperties();
+        props.setInitialDelay(Duration.ofMillis(100));
+        props.setBudgetPercent(100);
+        HedgingPolicy policy = new HedgingPolicy(props);
+        WebClient webClient = WebClient.create(wireMock.baseUrl());
+        DownstreamService service = service().criticalWebClient(webClient).hedgingPolicy(policy).build();
+
+        // Reactor Netty 第一次使用的初始化可能超過 1s TimeLimiter，先暖機
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/warmup")).willReturn(WireMock.aResponse().withStatus(200)));
+        webClient.get().uri("/warmup").retrieve().toBodilessEntity().block(Duration.ofSeconds(10));
+
+        long start = System.nanoTime();
+        DownstreamResponse result = service.callCriticalService();
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertEquals("{\"attempt\":\"hedge\"}", result.body());
+        assertTrue(elapsedMs < 1000, "hedge should answer long before the 3s stall, took " + elapsedMs + "ms");
+        assertEquals(1, cbRegistry.circuitBreaker("criticalService").getMetrics().getNumberOfBufferedCalls());
+        assertEquals(1L, policy.stats().get("hedges_won"));
+    }
+
+    @Test
+    @DisplayName("Hedge budget caps extra attempts")
+    void hedgeBudget_capsExtraAttempts() {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}").withFixedDelay(200)));
+
+        HedgingProperties props = new HedgingProperties();
+        props.setInitialDelay(Duration.ofMillis(50));
+        props.setBudgetPercent(50);
+        HedgingPolicy policy = new HedgingPolicy(props);
+        DownstreamService service = service().hedgingPolicy(policy).build();
+
+        for (int i = 0; i < 4; i++) {
+            service.callCriticalService();
+        }
+
+        // 50% 預算: 每兩個請求才累積一個 hedge
+        assertEquals(2L, policy.stats().get("hedges_fired"));
+        assertEquals(2L, policy.stats().get("budget_denied"));
+        wireMock.verify(6, WireMock.getRequestedFor(WireMock.urlEqualTo("/")));
+    }
+
+    @Test
+    @DisplayName("Concurrency limit shrinks when RTT rises above the long-term baseline")
+    void concurrencyLimit_shrinksOnRisingRtt() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", new ConcurrencyLimitProperties());
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(10_000_000L, 1_000, false);
+        }
+        int healthy = limiter.limit();
+        assertTrue(healthy > 20, "limit should grow while RTT is stable: " + healthy);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(100_000_000L, 1_000, false);
+        }
+        assertTrue(limiter.limit() < healthy / 2, "limit should shrink under latency: " + limiter.limit());
+    }
+
+    @Test
+    @DisplayName("Calls above the concurrency limit are shed with a distinct reason and not recorded by the breaker")
+    void concurrencyLimit_shedsExcessCalls() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}").withFixedDelay(500)));
+
+        ConcurrencyLimitProperties props = new ConcurrencyLimitProperties();
+        props.setInitialLimit(1);
+        props.setMinLimit(1);
+        ConcurrencyLimiterRegistry limiters = new ConcurrencyLimiterRegistry(props);
+        DownstreamService service = service().limiters(limiters).build();
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<DownstreamResponse> inFlight = caller.submit(service::callWithSpringCloudCB);
+            while ((int) limiters.limiter("downstreamService").stats().get("in_flight") == 0) {
+                Thread.sleep(10);
+            }
+
+            DownstreamResponse shed = service.callWithSpringCloudCB();
+            assertTrue(shed.body().contains("CONCURRENCY_LIMIT"), shed.body());
+            inFlight.get();
+        } finally {
+            caller.shutdownNow();
+        }
+
+        assertEquals(1L, limiters.limiter("downstreamService").stats().get("shed_calls"));
+        // 只有真正送出的那一次進入 sliding window
+        assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfBufferedCalls());
+    }
+
+    @Test
+    @DisplayName("Route breakers are isolated per host + path")
+    void routeBreakers_isolatePerPath() {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/bad")).willReturn(WireMock.aResponse().withStatus(500)));
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/good"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+
+        RouteCircuitBreakerRegistry routes = new RouteCircuitBreakerRegistry(cbRegistry.getDefaultConfig(), new RouteBreakerProperties());
+        RouteDownstreamService service = new RouteDownstreamService(restClient, routes,
+                new LastKnownGoodCache(new FallbackCacheProperties()), wireMock.baseUrl());
+
+        service.call("/bad");
+        service.call("/bad");
+        assertTrue(service.call("/bad").body().contains("ROUTE_CB_FALLBACK"));
+        assertEquals("{\"status\":\"ok\"}", service.call("/good").body());
+
+        assertEquals(RouteCircuitBreakerRegistry.State.OPEN, routes.state(service.routeKey("/bad")));
+        assertEquals(RouteCircuitBreakerRegistry.State.CLOSED, routes.state(service.routeKey("/good")));
+        // 第三次 /bad 被 OPEN 的路由擋下，沒有送到下游
+        wireMock.verify(2, WireMock.getRequestedFor(WireMock.urlEqualTo("/bad")));
+    }
+
+    @Test
+    @DisplayName("Route registry is bounded, evicts idle or least recently used routes, and lookups never create")
+    void routeRegistry_boundedWithEviction() {
+        long[] now = {0};
+        RouteBreakerProperties props = new RouteBreakerProperties();
+        props.setMaxRoutes(3);
+        props.setIdleTimeout(Duration.ofSeconds(1));
+        RouteCircuitBreakerRegistry routes = new RouteCircuitBreakerRegistry(cbRegistry.getDefaultConfig(), props, () -> now[0]);
+
+        routes.run("a", () -> "ok", ex -> "fallback");
+        routes.run("b", () -> "ok", ex -> "fallback");
+        routes.run("c", () -> "ok", ex -> "fallback");
+        now[0] = Duration.ofMillis(500).toNanos();
+        routes.run("a", () -> "ok", ex -> "fallback");
+
+        // 沒有閒置的路由: 淘汰最久未使用的 b
+        now[0] = Duration.ofMillis(600).toNanos();
+        long stalePermit = routes.acquire("c");
+        routes.run("d", () -> "ok", ex -> "fallback");
+        assertEquals(3, routes.size());
+        assertTrue(routes.find("b").isEmpty());
+
+        // 全部閒置超過 1s: 一次淘汰，c 的舊 permit 不會記到重用的 slot 上
+        now[0] = Duration.ofSeconds(5).toNanos();
+        routes.run("e", () -> "ok", ex -> "fallback");
+        assertEquals(1, routes.size());
+        routes.onResult(stalePermit, true);
+        assertEquals(0, routes.find("e").orElseThrow().get("failed_calls"));
+
+        assertTrue(routes.find("unknown").isEmpty());
+        assertFalse(routes.reset("unknown"));
+        assertEquals(1, routes.size());
+        assertEquals(4L, routes.stats(10).get("evictions"));
+
+        // 閒置清理分攤到每次呼叫 (每次最多 4 個)，剛使用的 key 不會被清掉
+        props.setMaxRoutes(10);
+        RouteCircuitBreakerRegistry many = new RouteCircuitBreakerRegistry(cbRegistry.getDefaultConfig(), props, () -> now[0]);
+        now[0] = 0;
+        for (int i = 0; i < 10; i++) {
+            many.run("k" + i, () -> "ok", ex -> "fallback");
+        }
+        now[0] = Duration.ofSeconds(5).toNanos();
+        many.run("k0", () -> "ok", ex -> "fallback");
+        assertEquals(6, many.size());
+        assertTrue(many.find("k0").isPresent());
+        assertTrue(many.find("k1").isEmpty());
+        assertTrue(many.find("k9").isPresent());
+        many.run("k0", () -> "ok", ex -> "fallback");
+        many.run("k0", () -> "ok", ex -> "fallback");
+        assertEquals(1, many.size());
+    }
+
+    @Test
+    @DisplayName("Route breaker moves OPEN -> HALF_OPEN -> CLOSED after the wait duration")
+    void routeBreaker_recoversThroughHalfOpen() {
+        long[] now = {0};
+        RouteCircuitBreakerRegistry routes = new RouteCircuitBreakerRegistry(cbRegistry.getDefaultConfig(),
+                new RouteBreakerProperties(), () -> now[0]);
+        Supplier<String> failing = () -> { throw new IllegalStateException("boom"); };
+
+        routes.run("r", failing, ex -> "fallback");
+        routes.run("r", failing, ex -> "fallback");
+        assertEquals(RouteCircuitBreakerRegistry.State.OPEN, routes.state("r"));
+        assertEquals("rejected", routes.run("r", () -> "ok",
+                ex -> ex instanceof RouteCallNotPermittedException ? "rejected" : "fallback"));
+
+        // HALF_OPEN 探測拋出 Error: 照樣記為失敗並回到 OPEN，不會佔住探測名額
+        now[0] = Duration.ofSeconds(3).toNanos();
+        assertThrows(StackOverflowError.class, () -> routes.run("r", () -> { throw new StackOverflowError(); }, ex -> "fallback"));
+        assertEquals(RouteCircuitBreakerRegistry.State.OPEN, routes.state("r"));
+
+        now[0] = Duration.ofSeconds(6).toNanos();
+        assertEquals("ok", routes.run("r", () -> "ok", ex -> "fallback"));
+        assertEquals(RouteCircuitBreakerRegistry.State.CLOSED, routes.state("r"));
+    }
+
+    @Test
+    @DisplayName("Event sink aggregates per breaker, drops instead of blocking when full, and reports transitions")
+    void eventSink_aggregatesAndDropsWhenFull() {
+        EventSinkProperties props = new EventSinkProperties();
+        props.setBufferSize(4);
+        props.setDrainInterval(Duration.ofHours(1));
+        props.setFlushInterval(Duration.ofHours(1));
+        try (CircuitBreakerEventSink sink = new CircuitBreakerEventSink(props)) {
+            CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+            sink.register(cb);
+            sink.register(cb);
+
+            for (int i = 0; i < 6; i++) {
+                cb.executeSupplier(() -> "ok");
+            }
+            assertEquals(2, sink.droppedEvents());
+            assertEquals(4, sink.drain());
+            assertEquals(4, sink.pending("downstreamService", CircuitBreakerEventSink.SUCCESS));
+
+            cb.transitionToOpenState();
+            assertThrows(io.github.resilience4j.circuitbreaker.CallNotPermittedException.class,
+                    () -> cb.executeSupplier(() -> "ok"));
+            sink.drain();
+            assertEquals(1, sink.pending("downstreamService", CircuitBreakerEventSink.STATE_TRANSITION));
+            assertEquals(1, sink.pending("downstreamService", CircuitBreakerEventSink.NOT_PERMITTED));
+
+            sink.flush();
+            assertEquals(0, sink.pending("downstreamService", CircuitBreakerEventSink.SUCCESS));
+        }
+    }
+
+    @Test
+    @DisplayName("Latency histogram reports percentiles within bucket precision and records every downstream call")
+    void latencyHistogram_percentilesAndRecording() {
+        LatencyHistogram histogram = new LatencyHistogram(Duration.ofMinutes(1).toNanos());
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.record(Duration.ofMillis(ms).toNanos());
+        }
+        var snapshot = histogram.snapshot();
+        assertEquals(1000L, snapshot.get("count"));
+        assertEquals(500.0, (double) snapshot.get("p50_ms"), 500.0 / 32);
+        assertEquals(990.0, (double) snapshot.get("p99_ms"), 990.0 / 32);
+        assertEquals(1000.0, (double) snapshot.get("max_ms"), 0.001);
+        for (long micros : new long[] {0, 31, 32, 1_000, 123_456_789}) {
+            int bucket = LatencyHistogram.bucket(micros);
+            assertTrue(LatencyHistogram.highestValue(bucket) >= micros);
+            assertTrue(bucket == 0 || LatencyHistogram.highestValue(bucket - 1) < micros);
+        }
+
+        // 輪替一次保留上一個 interval；中間閒置超過兩個 interval 時舊資料全部清空
+        long[] now = {0};
+        long interval = Duration.ofMinutes(1).toNanos();
+        LatencyHistogram idle = new LatencyHistogram(interval, () -> now[0]);
+        idle.record(Duration.ofMillis(5).toNanos());
+        now[0] += interval;
+        assertEquals(1L, idle.snapshot().get("count"));
+        idle.record(Duration.ofMillis(5).toNanos());
+        now[0] += 2 * interval + 1;
+        assertEquals(0L, idle.snapshot().get("count"));
+        assertEquals(0.0, (double) idle.snapshot().get("max_ms"));
+
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}").withFixedDelay(50)));
+        LatencyRecorder recorder = new LatencyRecorder(Duration.ofMinutes(1));
+        DownstreamService service = service().recorder(recorder).build();
+        service.callWithSpringCloudCB();
+        service.callWithSpringCloudCB();
+
+        assertEquals(2L, recorder.snapshot("downstreamService").get("count"));
+        assertTrue((double) recorder.snapshot("downstreamService").get("p50_ms") >= 50.0);
+        assertEquals(0L, recorder.snapshot("criticalService").get("count"));
+    }
+
+    @Test
+    @DisplayName("Cluster state: remote OPEN opens local breakers once, merged windows trip, UDP carries messages only from peers, signatures are checked")
+    void clusterState_propagatesAcrossReplicas() throws Exception {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .slidingWindowSize(10).minimumNumberOfCalls(6).failureRateThreshold(50).build();
+        ClusterStateProperties props = new ClusterStateProperties();
+        props.setEnabled(true);
+        props.setTransport(ClusterStateProperties.Transport.LOOPBACK);
+        props.setSummaryInterval(Duration.ofHours(1));
+        CircuitBreakerRegistry registryA = CircuitBreakerRegistry.of(config);
+        CircuitBreakerRegistry registryB = CircuitBreakerRegistry.of(config);
+        CircuitBreaker a = registryA.circuitBreaker("downstreamService");
+        CircuitBreaker b = registryB.circuitBreaker("downstreamService");
+        LoopbackClusterTransport transportA = new LoopbackClusterTransport();
+
+        try (ClusterStateSync syncA = new ClusterStateSync(props, transportA, registryA);
+             ClusterStateSync syncB = new ClusterStateSync(props, transportA.peer(), registryB)) {
+            // A 自己累積失敗而 OPEN，B 立即跟著 OPEN
+            for (int i = 0; i < 6; i++) {
+                a.onError(0, java.util.concurrent.TimeUnit.MILLISECONDS, new RuntimeException("down"));
+            }
+            syncA.awaitPending();
+            assertEquals(CircuitBreaker.State.OPEN, a.getState());
+            assertEquals(CircuitBreaker.State.OPEN, b.getState());
+            assertEquals(1L, syncB.stats().get("remote_opens"));
+
+            // B 恢復後，A 仍是 OPEN 的摘要不會再次開啟 B
+            b.reset();
+            syncB.awaitPending();
+            syncA.publishSummaries();
+            assertEquals(CircuitBreaker.State.CLOSED, b.getState());
+            assertEquals(1, syncB.view("downstreamService").get("open_peers"));
+
+            // 兩邊各自未達門檻，合併後的視窗達到門檻
+            a.reset();
+            b.reset();
+            syncA.awaitPending();
+            syncB.awaitPending();
+            for (int i = 0; i < 3; i++) {
+                a.onError(0, java.util.concurrent.TimeUnit.MILLISECONDS, new RuntimeException("down"));
+                b.onError(0, java.util.concurrent.TimeUnit.MILLISECONDS, new RuntimeException("down"));
+            }
+            assertEquals(CircuitBreaker.State.CLOSED, a.getState());
+            syncB.publishSummaries();
+            assertEquals(CircuitBreaker.State.OPEN, a.getState());
+            syncA.awaitPending();
+            assertEquals(CircuitBreaker.State.OPEN, b.getState());
+
+            // 損毀的訊息只計數
+            syncA.receive(new byte[] {1, 2, 3});
+            assertEquals(1L, syncA.stats().get("decode_errors"));
+
+            // 送出時間超過 peerTimeout 或序號未增加的訊息視為重送
+            long received = (long) syncA.stats().get("messages_received");
+            syncA.receive(clusterMessage(7, 1, System.currentTimeMillis() - props.getPeerTimeout().toMillis() - 1000));
+            assertEquals(1L, syncA.stats().get("stale_messages"));
+            syncA.receive(clusterMessage(7, 1, System.currentTimeMillis()));
+            syncA.receive(clusterMessage(7, 1, System.currentTimeMillis()));
+            assertEquals(2L, syncA.stats().get("stale_messages"));
+            syncA.receive(clusterMessage(7, 2, System.currentTimeMillis()));
+            assertEquals(received + 2, syncA.stats().get("messages_received"));
+        }
+
+        // 設定 secret 時，以其他 secret 簽章 (或未簽章) 的 OPEN 整則丟棄，相同 secret 的節點照常套用
+        props.setSecret("s3cret");
+        CircuitBreakerRegistry signedA = CircuitBreakerRegistry.of(config);
+        CircuitBreakerRegistry signedB = CircuitBreakerRegistry.of(config);
+        ClusterStateProperties forgedProps = new ClusterStateProperties();
+        forgedProps.setEnabled(true);
+        forgedProps.setSummaryInterval(Duration.ofHours(1));
+        forgedProps.setSecret("guess");
+        CircuitBreakerRegistry forgedRegistry = CircuitBreakerRegistry.of(config);
+        LoopbackClusterTransport signedTransport = new LoopbackClusterTransport();
+        try (ClusterStateSync syncA = new ClusterStateSync(props, signedTransport, signedA);
+             ClusterStateSync syncB = new ClusterStateSync(props, signedTransport.peer(), signedB);
+             ClusterStateSync forger = new ClusterStateSync(forgedProps, signedTransport.peer(), forgedRegistry)) {
+            CircuitBreaker signed = signedA.circuitBreaker("downstreamService");
+            forgedRegistry.circuitBreaker("downstreamService").transitionToOpenState();
+            forger.awaitPending();
+            assertEquals(CircuitBreaker.State.CLOSED, signed.getState());
+            assertEquals(1L, syncA.stats().get("auth_failures"));
+            syncA.receive(new byte[] {(byte) 0xCB, 0x51, ClusterStateSync.TRANSITION, 0, 0, 0, 0, 0, 0, 0, 1});
+            assertEquals(2L, syncA.stats().get("auth_failures"));
+
+            long nodeA = Long.parseUnsignedLong((String) syncA.stats().get("node_id"), 16);
+            List<byte[]> captured = new java.util.concurrent.CopyOnWriteArrayList<>();
+            signedTransport.peer().onReceive(payload -> {
+                if (java.nio.ByteBuffer.wrap(payload).getLong(3) != nodeA) {
+                    captured.add(payload);
+                }
+            });
+            signedB.circuitBreaker("downstreamService").transitionToOpenState();
+            syncB.awaitPending();
+            assertEquals(CircuitBreaker.State.OPEN, signed.getState());
+            assertEquals(1L, syncA.stats().get("remote_opens"));
+
+            // 簽章正確但已收過的訊息重送後整則丟棄
+            assertFalse(captured.isEmpty());
+            long received = (long) syncA.stats().get("messages_received");
+            captured.forEach(syncA::receive);
+            assertEquals((long) captured.size(), syncA.stats().get("stale_messages"));
+            assertEquals(received, syncA.stats().get("messages_received"));
+        }
+
+        // UDP 只接受來自 peer 的 datagram
+        int receiverPort = freeUdpPort();
+        try (UdpClusterTransport sender = new UdpClusterTransport(0, List.of("127.0.0.1:" + receiverPort));
+             UdpClusterTransport stranger = new UdpClusterTransport(0, List.of("127.0.0.1:" + receiverPort));
+             UdpClusterTransport receiver = new UdpClusterTransport(receiverPort, List.of("127.0.0.1:" + sender.localPort()))) {
+            CountDownLatch delivered = new CountDownLatch(1);
+            List<byte[]> received = new java.util.concurrent.CopyOnWriteArrayList<>();
+            receiver.onReceive(payload -> {
+                received.add(payload);
+                delivered.countDown();
+            });
+            stranger.broadcast(new byte[] {9, 9});
+            sender.broadcast(new byte[] {1, 2, 3});
+            assertTrue(delivered.await(5, java.util.concurrent.TimeUnit.SECONDS));
+            assertEquals(0, sender.sendFailures());
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (receiver.rejectedDatagrams() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, receiver.rejectedDatagrams());
+            assertEquals(1, received.size());
+            assertArrayEquals(new byte[] {1, 2, 3}, received.get(0));
+        }
+    }
+
+    /**
+     * 只有標頭的未簽章叢集訊息 (magic、類型、node id、序號、送出時間)
+     */
+    private static byte[] clusterMessage(long nodeId, long sequence, long sentAtMillis) {
+        return java.nio.ByteBuffer.allocate(27)
+                .putShort((short) 0xCB51).put(ClusterStateSync.SUMMARY)
+                .putLong(nodeId).putLong(sequence).putLong(sentAtMillis)
+                .array();
+    }
+
+    private static int freeUdpPort() throws java.io.IOException {
+        try (java.nio.channels.DatagramChannel probe = java.nio.channels.DatagramChannel.open()
+                .bind(new java.net.InetSocketAddress(0))) {
+            return ((java.net.InetSocketAddress) probe.getLocalAddress()).getPort();
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshot restores OPEN until its original deadline, HALF_OPEN after it, CLOSED windows, and lazily created breakers")
+    void breakerSnapshot_restoresStateAfterRestart(@TempDir java.nio.file.Path dir) {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .slidingWindowSize(10).minimumNumberOfCalls(10).failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofSeconds(30)).build();
+        BreakerSnapshotProperties props = new BreakerSnapshotProperties();
+        props.setEnabled(true);
+        props.setPath(dir.resolve("snapshot.bin"));
+        props.setInterval(Duration.ofHours(1));
+        long[] now = {1_000_000L};
+
+        CircuitBreakerRegistry before = CircuitBreakerRegistry.of(config);
+        try (BreakerSnapshotStore store = new BreakerSnapshotStore(props, before, () -> now[0])) {
+            before.circuitBreaker("downstreamService").transitionToOpenState();
+            CircuitBreaker closed = before.circuitBreaker("criticalService");
+            closed.onSuccess(0, java.util.concurrent.TimeUnit.NANOSECONDS);
+            closed.onError(0, java.util.concurrent.TimeUnit.NANOSECONDS, new RuntimeException("down"));
+            closed.onError(0, java.util.concurrent.TimeUnit.NANOSECONDS, new RuntimeException("down"));
+        }
+
+        // 10 秒後重啟: downstreamService 仍在 30s 等待內，criticalService 之後才建立
+        now[0] += 10_000;
+        CircuitBreakerRegistry after = CircuitBreakerRegistry.of(config);
+        CircuitBreaker open = after.circuitBreaker("downstreamService");
+        try (BreakerSnapshotStore store = new BreakerSnapshotStore(props, after, () -> now[0])) {
+            assertEquals(CircuitBreaker.State.OPEN, open.getState());
+            CircuitBreaker closed = after.circuitBreaker("criticalService");
+            assertEquals(CircuitBreaker.State.CLOSED, closed.getState());
+            assertEquals(3, closed.getMetrics().getNumberOfBufferedCalls());
+            assertEquals(2, closed.getMetrics().getNumberOfFailedCalls());
+            assertEquals(2, store.restored());
+        }
+
+        // 等待時間已過: 以 HALF_OPEN 恢復，只放行探測
+        now[0] += 30_000;
+        CircuitBreakerRegistry later = CircuitBreakerRegistry.of(config);
+        later.circuitBreaker("downstreamService");
+        try (BreakerSnapshotStore store = new BreakerSnapshotStore(props, later, () -> now[0])) {
+            assertEquals(CircuitBreaker.State.HALF_OPEN, later.circuitBreaker("downstreamService").getState());
+        }
+
+        // 超過 max-age 的快照不還原
+        now[0] += Duration.ofMinutes(10).toMillis();
+        CircuitBreakerRegistry stale = CircuitBreakerRegistry.of(config);
+        stale.circuitBreaker("downstreamService");
+        try (BreakerSnapshotStore store = new BreakerSnapshotStore(props, stale, () -> now[0])) {
+            assertEquals(0, store.restored());
+            assertEquals(CircuitBreaker.State.CLOSED, stale.circuitBreaker("downstreamService").getState());
+        }
+    }
+
+    @Test
+    @DisplayName("Adaptive slow-call threshold learns the latency baseline and opens the breaker on degradation")
+    void slowCall_opensOnLatencyDegradation() {
+        SlowCallProperties props = new SlowCallProperties();
+        props.setMinThreshold(Duration.ofMillis(1));
+        props.setBaselineWindow(100);
+        CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+        AdaptiveSlowCallDetector detector = new AdaptiveSlowCallDetector(cbRegistry, "downstreamService", props);
+        assertEquals(2000.0, detector.thresholdMillis(), 0.001);
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(detector.record(Duration.ofMillis(10).toNanos()));
+        }
+        // 基準 p99 = 10ms，門檻 = 3 倍
+        assertEquals(30.0, detector.thresholdMillis(), 0.001);
+        assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+
+        // 視窗 20 筆中 10 筆慢速 = 50%
+        for (int i = 0; i < 10; i++) {
+            assertTrue(detector.record(Duration.ofMillis(100).toNanos()));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+        assertEquals(1L, detector.stats().get("slow_opens"));
+
+        // 透過 DownstreamService: 正常延遲建立基準後，下游變慢但仍回傳 200 也會 OPEN
+        cb.reset();
+        SlowCallProperties serviceProps = new SlowCallProperties();
+        serviceProps.setMinThreshold(Duration.ofMillis(20));
+        serviceProps.setBaselineWindow(5);
+        serviceProps.setWindowSize(4);
+        serviceProps.setMinimumCalls(4);
+        SlowCallDetectorRegistry detectors = new SlowCallDetectorRegistry(serviceProps, cbRegistry);
+        DownstreamService service = service().detectors(detectors).build();
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        for (int i = 0; i < 5; i++) {
+            service.callWithSpringCloudCB();
+        }
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}").withFixedDelay(200)));
+        for (int i = 0; i < 3; i++) {
+            service.callWithSpringCloudCB();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+        assertEquals(0, cb.getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    @DisplayName("Hot reconfiguration swaps the breaker config, keeps its state and window, and applies file changes")
+    void reconfigure_keepsStateAndWindow(@TempDir java.nio.file.Path dir) throws Exception {
+        CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+        cb.onSuccess(0, java.util.concurrent.TimeUnit.NANOSECONDS);
+        cb.onSuccess(0, java.util.concurrent.TimeUnit.NANOSECONDS);
+        cb.onError(0, java.util.concurrent.TimeUnit.NANOSECONDS, new RuntimeException("boom"));
+        assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+
+        CircuitBreakerReconfigurer reconfigurer = new CircuitBreakerReconfigurer(cbRegistry);
+        assertEquals(1, reconfigurer.version("downstreamService"));
+
+        // 視窗 1/3 失敗 (33%) 帶到新 instance，新門檻 30% 隨即生效
+        long version = reconfigurer.reconfigure("downstreamService",
+                CircuitBreakerReconfigurer.Change.parse(java.util.Map.of("failure-rate-threshold", "30")));
+        assertEquals(2, version);
+        CircuitBreaker replaced = cbRegistry.circuitBreaker("downstreamService");
+        assertNotSame(cb, replaced);
+        assertEquals(30f, replaced.getCircuitBreakerConfig().getFailureRateThreshold());
+        assertEquals(CircuitBreaker.State.OPEN, replaced.getState());
+
+        // OPEN 中延長等待時間: 仍為 OPEN；縮短到已經過去: 直接 HALF_OPEN
+        reconfigurer.reconfigure("downstreamService",
+                CircuitBreakerReconfigurer.Change.parse(java.util.Map.of("waitDurationInOpenState", "60s")));
+        assertEquals(CircuitBreaker.State.OPEN, cbRegistry.circuitBreaker("downstreamService").getState());
+        Thread.sleep(5);
+        reconfigurer.reconfigure("downstreamService",
+                CircuitBreakerReconfigurer.Change.parse(java.util.Map.of("waitDurationInOpenState", "1ms")));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, cbRegistry.circuitBreaker("downstreamService").getState());
+        assertEquals(4, reconfigurer.version("downstreamService"));
+
+        // 設定相同時不替換、版本不變；不存在的斷路器或不合法的值被拒絕
+        assertEquals(4, reconfigurer.reconfigure("downstreamService",
+                CircuitBreakerReconfigurer.Change.parse(java.util.Map.of("failureRateThreshold", "30"))));
+        assertThrows(IllegalArgumentException.class, () -> reconfigurer.reconfigure("unknown",
+                CircuitBreakerReconfigurer.Change.parse(java.util.Map.of("failureRateThreshold", "30"))));
+        assertThrows(IllegalArgumentException.class, () -> reconfigurer.reconfigure("downstreamService",
+                CircuitBreakerReconfigurer.Change.parse(java.util.Map.of("failureRateThreshold", "150"))));
+
+        // 等待時間與 application.yml 同樣接受 ISO-8601 與 h / d 單位
+        assertEquals(Duration.ofHours(1), CircuitBreakerReconfigurer.Change.parse(
+                java.util.Map.of("wait-duration-in-open-state", "1h")).waitDurationInOpenState());
+        assertEquals(Duration.ofSeconds(30), CircuitBreakerReconfigurer.Change.parse(
+                java.util.Map.of("wait-duration-in-open-state", "PT30S")).waitDurationInOpenState());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreakerReconfigurer.Change.parse(
+                java.util.Map.of("wait-duration-in-open-state", "soon")));
+
+        // 呼叫路徑由 registry 取得替換後的斷路器: HALF_OPEN 探測成功即 CLOSED
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        downstreamService(new LastKnownGoodCache(new FallbackCacheProperties())).callWithSpringCloudCB();
+        assertEquals(CircuitBreaker.State.CLOSED, cbRegistry.circuitBreaker("downstreamService").getState());
+
+        // 檔案來源: 內容改變時套用一次
+        cbRegistry.circuitBreaker("criticalService");
+        java.nio.file.Path file = dir.resolve("breakers.yml");
+        java.nio.file.Files.writeString(file, "criticalService:\n  sliding-window-size: 10\n  minimum-number-of-calls: 5\n");
+        ReconfigurationProperties props = new ReconfigurationProperties();
+        props.setFile(file);
+        props.setPollInterval(Duration.ofHours(1));
+        try (BreakerConfigFileWatcher watcher = new BreakerConfigFileWatcher(props, reconfigurer, cbRegistry)) {
+            watcher.poll();
+            watcher.poll();
+            CircuitBreakerConfig config = cbRegistry.circuitBreaker("criticalService").getCircuitBreakerConfig();
+            assertEquals(10, config.getSlidingWindowSize());
+            assertEquals(5, config.getMinimumNumberOfCalls());
+            assertEquals(2, reconfigurer.version("criticalService"));
+        }
+    }
+
+    @Test
+    @DisplayName("Caller deadline bounds and forwards the downstream call, aborts a dribbling response and rejects expired requests")
+    void deadline_propagatesAndCancels() throws Exception {
+        // 回應標頭立即送出、body 3 秒內慢慢送完: socket read timeout 每收到一段就重新計算，擋不住
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"slow-but-alive\"}")
+                        .withChunkedDribbleDelay(10, 3000)));
+
+        DownstreamHttpProperties props = new DownstreamHttpProperties();
+        DownstreamClientConfig config = new DownstreamClientConfig();
+        try (PoolingHttpClientConnectionManager connectionManager = config.downstreamConnectionManager(props);
+             CloseableHttpClient httpClient = config.downstreamHttpClient(connectionManager, props)) {
+            RestClient deadlineClient = RestClient.builder()
+                    .baseUrl(wireMock.baseUrl())
+                    .requestFactory(new DeadlineRequestFactory(httpClient))
+                    .build();
+            DownstreamService service = service().restClient(deadlineClient).build();
+            CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+
+            long start = System.nanoTime();
+            DownstreamResponse response;
+            try (Deadline.Scope scope = Deadline.open(Deadline.after(Duration.ofMillis(300)))) {
+                response = service.callWithSpringCloudCB();
+            }
+            long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            assertTrue(elapsedMs < 900, "call should end at the caller deadline, took " + elapsedMs + "ms");
+            assertTrue(response.body().contains("SPRING_CLOUD_CB_FALLBACK"));
+            // 請求已送出、下游用完整個預算: 計入失敗；連線已被中斷並歸還
+            assertEquals(1, cb.getMetrics().getNumberOfFailedCalls());
+            // 呼叫端在期限到時就拿到 fallback，被中斷的執行緒稍後才把連線還回連線池
+            long releaseBy = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+            while (connectionManager.getTotalStats().getLeased() > 0 && System.nanoTime() < releaseBy) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, connectionManager.getTotalStats().getLeased());
+            wireMock.verify(WireMock.getRequestedFor(WireMock.urlEqualTo("/"))
+                    .withHeader(Deadline.HEADER, WireMock.matching("[1-2]?[0-9]{1,2}|300")));
+
+            // 期限已過: 不送出請求、不佔用斷路器名額
+            wireMock.resetRequests();
+            try (Deadline.Scope scope = Deadline.open(Deadline.after(Duration.ZERO))) {
+                assertThrows(DeadlineExceededException.class, service::callWithSpringCloudCB);
+            }
+            assertEquals(1, cb.getMetrics().getNumberOfBufferedCalls());
+            assertEquals(0, wireMock.getAllServeEvents().size());
+        }
+
+        // Filter: 預算為 0 直接 504；有預算時在 chain 中可以取得 Deadline
+        DeadlineFilter filter = new DeadlineFilter(new DeadlineProperties());
+        org.springframework.mock.web.MockHttpServletRequest request = new org.springframework.mock.web.MockHttpServletRequest("GET", "/api/call");
+        request.addHeader(Deadline.HEADER, "0");
+        org.springframework.mock.web.MockHttpServletResponse rejected = new org.springframework.mock.web.MockHttpServletResponse();
+        filter.doFilter(request, rejected, new org.springframework.mock.web.MockFilterChain());
+        assertEquals(504, rejected.getStatus());
+
+        request = new org.springframework.mock.web.MockHttpServletRequest("GET", "/api/call");
+        request.addHeader(Deadline.HEADER, "500");
+        Duration[] seen = new Duration[1];
+        filter.doFilter(request, new org.springframework.mock.web.MockHttpServletResponse(),
+                (req, res) -> seen[0] = Deadline.current().remaining());
+        assertTrue(seen[0].compareTo(Duration.ofMillis(500)) <= 0 && seen[0].toMillis() > 0);
+        assertNull(Deadline.current());
+    }
+
+    @Test
+    @DisplayName("A hanging downstream opens the breaker even when every caller's deadline is shorter than the read timeout")
+    void deadline_hangingDownstreamOpensBreaker() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}").withFixedDelay(5000)));
+
+        DownstreamHttpProperties props = new DownstreamHttpProperties();
+        DownstreamClientConfig config = new DownstreamClientConfig();
+        try (PoolingHttpClientConnectionManager connectionManager = config.downstreamConnectionManager(props);
+             CloseableHttpClient httpClient = config.downstreamHttpClient(connectionManager, props)) {
+            RestClient deadlineClient = RestClient.builder()
+                    .baseUrl(wireMock.baseUrl())
+                    .requestFactory(new DeadlineRequestFactory(httpClient))
+                    .build();
+            DownstreamService service = service().restClient(deadlineClient).build();
+            CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+
+            // 每個呼叫端都只給 200ms (比 2 秒的 read timeout 短)，請求都在期限到時被中斷
+            for (int i = 0; i < 2; i++) {
+                try (Deadline.Scope scope = Deadline.open(Deadline.after(Duration.ofMillis(200)))) {
+                    assertTrue(service.callWithSpringCloudCB().fallback());
+                }
+            }
+            assertEquals(2, cb.getMetrics().getNumberOfFailedCalls());
+            assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+
+            // 批次取消 (Deadline.cancel()) 仍不計入
+            cb.reset();
+            Deadline cancelled = Deadline.after(Duration.ofSeconds(5));
+            java.util.concurrent.ScheduledExecutorService canceller = Executors.newSingleThreadScheduledExecutor();
+            try (Deadline.Scope scope = Deadline.open(cancelled)) {
+                canceller.schedule(cancelled::cancel, 200, java.util.concurrent.TimeUnit.MILLISECONDS);
+                assertTrue(service.callWithSpringCloudCB().fallback());
+            } finally {
+                canceller.shutdownNow();
+            }
+            assertEquals(0, cb.getMetrics().getNumberOfBufferedCalls());
+        }
+    }
+
+    @Test
+    @DisplayName("Batch runs items concurrently, cancels the rest when a critical item fails, and honours the batch deadline")
+    @SuppressWarnings("unchecked")
+    void batch_cancelsOnCriticalFailureAndDeadline() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"slow\"}")
+                        .withChunkedDribbleDelay(10, 3000)));
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/good"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/bad")).willReturn(WireMock.aResponse().withStatus(500)));
+
+        DownstreamHttpProperties httpProps = new DownstreamHttpProperties();
+        DownstreamClientConfig config = new DownstreamClientConfig();
+        try (PoolingHttpClientConnectionManager connectionManager = config.downstreamConnectionManager(httpProps);
+             CloseableHttpClient httpClient = config.downstreamHttpClient(connectionManager, httpProps)) {
+            RestClient deadlineClient = RestClient.builder()
+                    .baseUrl(wireMock.baseUrl())
+                    .requestFactory(new DeadlineRequestFactory(httpClient))
+                    .build();
+            LastKnownGoodCache cache = new LastKnownGoodCache(new FallbackCacheProperties());
+            DownstreamService service = service().restClient(deadlineClient).cache(cache).build();
+            RouteCircuitBreakerRegistry routes = new RouteCircuitBreakerRegistry(cbRegistry.getDefaultConfig(), new RouteBreakerProperties());
+            RouteDownstreamService routeService = new RouteDownstreamService(deadlineClient, routes, cache, wireMock.baseUrl());
+            BatchProperties props = new BatchProperties();
+            props.setMaxConcurrency(2);
+            props.setTimeout(Duration.ofMillis(400));
+
+            try (BatchCallExecutor batch = new BatchCallExecutor(props, service, routeService, cbRegistry, routes)) {
+                // critical 項目失敗: 進行中的慢速呼叫被中斷，尚未開始的項目不送出
+                long start = System.nanoTime();
+                Map<String, Object> result = batch.execute(List.of(
+                        new BatchCallExecutor.Item("slow", null, null, false),
+                        new BatchCallExecutor.Item("profile", "route", "/bad", true),
+                        new BatchCallExecutor.Item("later", "downstreamService", null, false)));
+                assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 350);
+                assertEquals("profile", result.get("cancelled_by"));
+                List<Map<String, Object>> items = (List<Map<String, Object>>) result.get("items");
+                assertEquals("CANCELLED", items.get(0).get("status"));
+                assertEquals("FALLBACK", items.get(1).get("status"));
+                assertEquals("CANCELLED", items.get(2).get("status"));
+                assertTrue(wireMock.findAll(WireMock.getRequestedFor(WireMock.urlEqualTo("/"))).size() <= 1);
+                // 取消不算下游失敗
+                assertEquals(0, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfFailedCalls());
+                assertEquals(0, connectionManager.getTotalStats().getLeased());
+
+                // 沒有 critical 項目: 期限到時中斷慢速項目，其他項目照常回傳
+                start = System.nanoTime();
+                result = batch.execute(List.of(
+                        new BatchCallExecutor.Item("slow", null, null, false),
+                        new BatchCallExecutor.Item("news", "route", "/good", false)));
+                long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+                assertTrue(elapsedMs >= 350 && elapsedMs < 900, "batch should end at its deadline, took " + elapsedMs + "ms");
+                items = (List<Map<String, Object>>) result.get("items");
+                assertEquals("DEADLINE_EXCEEDED", items.get(0).get("status"));
+                assertEquals("OK", items.get(1).get("status"));
+                assertEquals("{\"status\":\"ok\"}", items.get(1).get("response"));
+                assertEquals(true, result.get("deadline_exceeded"));
+                // 期限到 (不是取消) 時下游已用完整個預算: 計入失敗
+                assertEquals(1, cbRegistry.circuitBreaker("downstreamService").getMetrics().getNumberOfFailedCalls());
+
+                assertThrows(IllegalArgumentException.class, () -> batch.execute(List.of(
+                        new BatchCallExecutor.Item("x", "unknownService", null, false))));
+                assertThrows(IllegalArgumentException.class, () -> batch.execute(List.of(
+                        new BatchCallExecutor.Item("x", "route", "//evil.example", false))));
+            }
+
+            // 所有批次共用固定數量的 worker: 1 條執行緒與 1 個排隊位置都被慢速批次佔住時，新的批次立即拒絕
+            BatchProperties oneWorker = new BatchProperties();
+            oneWorker.setMaxConcurrency(2);
+            oneWorker.setMaxWorkers(1);
+            oneWorker.setTimeout(Duration.ofMillis(400));
+            ExecutorService caller = Executors.newSingleThreadExecutor();
+            try (BatchCallExecutor batch = new BatchCallExecutor(oneWorker, service, routeService, cbRegistry, routes)) {
+                Future<Map<String, Object>> slowBatch = caller.submit(() -> batch.execute(List.of(
+                        new BatchCallExecutor.Item("slow", null, null, false),
+                        new BatchCallExecutor.Item("slow-too", null, null, false))));
+                while (batch.pendingWorkers() < 2) {
+                    Thread.sleep(10);
+                }
+                assertThrows(java.util.concurrent.RejectedExecutionException.class, () -> batch.execute(List.of(
+                        new BatchCallExecutor.Item("news", "route", "/good", false))));
+
+                Map<String, Object> result = slowBatch.get(5, java.util.concurrent.TimeUnit.SECONDS);
+                assertEquals(true, result.get("deadline_exceeded"));
+                result = batch.execute(List.of(new BatchCallExecutor.Item("news", "route", "/good", false)));
+                assertEquals(1, result.get("succeeded"));
+            } finally {
+                caller.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Load balancer ejects a failing endpoint, fails over, re-probes it, and only trips the breaker when the whole pool is down")
+    @SuppressWarnings("unchecked")
+    void loadBalancer_ejectsOutlierAndKeepsBreakerClosed() throws Exception {
+        WireMockServer healthyPod = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        healthyPod.start();
+        try {
+            wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).willReturn(WireMock.aResponse().withStatus(500)));
+            healthyPod.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                    .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+
+            LoadBalancerProperties props = new LoadBalancerProperties();
+            props.setEnabled(true);
+            props.setEndpoints(List.of(wireMock.baseUrl(), healthyPod.baseUrl()));
+            props.setBaseEjectionTime(Duration.ofMillis(500));
+            try (DownstreamLoadBalancer balancer = new DownstreamLoadBalancer(props, "http://downstream.invalid")) {
+                RestClient balanced = RestClient.builder()
+                        .baseUrl("http://downstream.invalid")
+                        .requestInterceptor(balancer)
+                        .build();
+                CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+                Supplier<String> call = () -> balanced.get().uri("/").retrieve().body(String.class);
+
+                // 故障的 pod 失敗時改送健康的 pod，連續失敗後被剔除；斷路器只看到成功
+                for (int i = 0; i < 30 && (Integer) balancer.stats().get("healthy_endpoints") == 2; i++) {
+                    assertEquals("{\"status\":\"ok\"}", cb.executeSupplier(call));
+                }
+                assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+                assertEquals(0, cb.getMetrics().getNumberOfFailedCalls());
+                Map<String, Object> stats = balancer.stats();
+                List<Map<String, Object>> endpoints = (List<Map<String, Object>>) stats.get("endpoints");
+                assertEquals("EJECTED", endpoints.get(0).get("state"));
+                assertEquals(3L, endpoints.get(0).get("failures"));
+                assertEquals(1, stats.get("healthy_endpoints"));
+                assertEquals(3L, stats.get("failovers"));
+
+                // 剔除時間到後送一次探測，成功即回到池中
+                wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"recovered\"}")));
+                Thread.sleep(600);
+                assertEquals("{\"status\":\"recovered\"}", cb.executeSupplier(call));
+                endpoints = (List<Map<String, Object>>) balancer.stats().get("endpoints");
+                assertEquals("HEALTHY", endpoints.get(0).get("state"));
+                endpoints.forEach(endpoint -> assertEquals(0, endpoint.get("outstanding")));
+
+                // 整個池都故障: 全部剔除後才計入斷路器失敗並跳開
+                wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).willReturn(WireMock.aResponse().withStatus(500)));
+                healthyPod.stubFor(WireMock.get(WireMock.urlEqualTo("/")).willReturn(WireMock.aResponse().withStatus(500)));
+                cb.reset();
+                for (int i = 0; i < 4 && cb.getState() == CircuitBreaker.State.CLOSED; i++) {
+                    assertThrows(RuntimeException.class, () -> cb.executeSupplier(call));
+                }
+                assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+                RuntimeException error = null;
+                for (int i = 0; i < 5 && !(error instanceof ResourceAccessException); i++) {
+                    error = assertThrows(RuntimeException.class, call::get);
+                }
+                assertInstanceOf(NoHealthyEndpointException.class, error.getCause());
+                assertEquals(0, balancer.stats().get("healthy_endpoints"));
+                assertEquals(1L, balancer.stats().get("no_healthy_endpoint"));
+            }
+        } finally {
+            healthyPod.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("A probe that ends at the caller deadline puts the endpoint back to EJECTED instead of leaving it PROBING")
+    @SuppressWarnings("unchecked")
+    void loadBalancer_probeCutByDeadlineIsNotLost() throws Exception {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).willReturn(WireMock.aResponse().withStatus(500)));
+        LoadBalancerProperties props = new LoadBalancerProperties();
+        props.setEnabled(true);
+        props.setEndpoints(List.of(wireMock.baseUrl()));
+        props.setBaseEjectionTime(Duration.ofMillis(200));
+
+        DownstreamHttpProperties httpProps = new DownstreamHttpProperties();
+        DownstreamClientConfig config = new DownstreamClientConfig();
+        try (PoolingHttpClientConnectionManager connectionManager = config.downstreamConnectionManager(httpProps);
+             CloseableHttpClient httpClient = config.downstreamHttpClient(connectionManager, httpProps);
+             DownstreamLoadBalancer balancer = new DownstreamLoadBalancer(props, "http://downstream.invalid")) {
+            RestClient balanced = RestClient.builder()
+                    .baseUrl("http://downstream.invalid")
+                    .requestFactory(new DeadlineRequestFactory(httpClient))
+                    .requestInterceptor(balancer)
+                    .build();
+            Supplier<String> call = () -> balanced.get().uri("/").retrieve().body(String.class);
+            Supplier<Object> state = () -> ((List<Map<String, Object>>) balancer.stats().get("endpoints")).get(0).get("state");
+
+            for (int i = 0; i < 3; i++) {
+                assertThrows(RuntimeException.class, call::get);
+            }
+            assertEquals("EJECTED", state.get());
+            Thread.sleep(250);
+
+            // 探測在送出前就因期限已過而失敗 (DeadlineExceededException)
+            try (Deadline.Scope scope = Deadline.open(Deadline.after(Duration.ZERO))) {
+                assertThrows(DeadlineExceededException.class, call::get);
+            }
+            assertEquals("EJECTED", state.get());
+
+            // 探測送出後期限到而中斷
+            wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                    .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}").withFixedDelay(500)));
+            try (Deadline.Scope scope = Deadline.open(Deadline.after(Duration.ofMillis(100)))) {
+                assertThrows(RuntimeException.class, call::get);
+            }
+            assertEquals("EJECTED", state.get());
+            assertEquals(0L, balancer.stats().get("no_healthy_endpoint"));
+
+            // 剔除時間沒有被延長，下一個請求就能探測並恢復
+            wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                    .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+            assertEquals("{\"status\":\"ok\"}", call.get());
+            assertEquals("HEALTHY", state.get());
+            assertEquals(0, ((List<Map<String, Object>>) balancer.stats().get("endpoints")).get(0).get("outstanding"));
+        }
+    }
+
+    @Test
+    @DisplayName("Retries inside the breaker are funded by successful calls and skipped when the deadline cannot cover the backoff")
+    void retry_budgetedInsideBreaker() {
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        RetryProperties props = new RetryProperties();
+        props.setBaseDelay(Duration.ofMillis(100));
+        props.setMaxDelay(Duration.ofMillis(200));
+        RetryPolicyRegistry retries = new RetryPolicyRegistry(props, cbRegistry);
+        DownstreamService service = service().retries(retries).build();
+        CircuitBreaker cb = cbRegistry.circuitBreaker("downstreamService");
+
+        // 10 次成功存入 1 次重試額度
+        for (int i = 0; i < 10; i++) {
+            assertFalse(service.callWithSpringCloudCB().fallback());
+        }
+
+        // 暫時性的 500: 重試後成功，斷路器只記一次成功
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).inScenario("blip")
+                .whenScenarioStateIs(com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED)
+                .willReturn(WireMock.aResponse().withStatus(500))
+                .willSetStateTo("recovered"));
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).inScenario("blip")
+                .whenScenarioStateIs("recovered")
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"recovered\"}")));
+        DownstreamResponse recovered = service.callWithSpringCloudCB();
+        assertFalse(recovered.fallback());
+        assertEquals("{\"status\":\"recovered\"}", recovered.body());
+        assertEquals(0, cb.getMetrics().getNumberOfFailedCalls());
+
+        // 額度用完: 下一次失敗直接 fallback，不再放大流量
+        wireMock.resetAll();
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).willReturn(WireMock.aResponse().withStatus(500)));
+        assertTrue(service.callWithSpringCloudCB().fallback());
+        assertEquals(1, wireMock.findAll(WireMock.getRequestedFor(WireMock.urlEqualTo("/"))).size());
+
+        Map<String, Object> stats = retries.policy("downstreamService").stats();
+        assertEquals(12L, stats.get("calls"));
+        assertEquals(1L, stats.get("retries"));
+        assertEquals(1L, stats.get("succeeded_after_retry"));
+        assertEquals(1L, stats.get("budget_denied"));
+        assertEquals(13 / 12.0, (Double) stats.get("amplification"), 0.0001);
+
+        // 有額度但呼叫端剩餘預算不足以等待 backoff: 不重試
+        cb.reset();
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+        for (int i = 0; i < 10; i++) {
+            service.callWithSpringCloudCB();
+        }
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/")).willReturn(WireMock.aResponse().withStatus(500)));
+        try (Deadline.Scope scope = Deadline.open(Deadline.after(Duration.ofMillis(80)))) {
+            assertTrue(service.callWithSpringCloudCB().fallback());
+        }
+        assertEquals(1L, retries.policy("downstreamService").stats().get("skipped_deadline"));
+    }
+
+    @Test
+    @DisplayName("Load balancer failover and retries share one attempt limit and budget instead of multiplying")
+    @SuppressWarnings("unchecked")
+    void retry_sharesAttemptsAndBudgetWithLoadBalancerFailover() throws Exception {
+        WireMockServer otherPod = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        otherPod.start();
+        try {
+            for (WireMockServer pod : List.of(wireMock, otherPod)) {
+                pod.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+            }
+            LoadBalancerProperties lbProps = new LoadBalancerProperties();
+            lbProps.setEnabled(true);
+            lbProps.setEndpoints(List.of(wireMock.baseUrl(), otherPod.baseUrl()));
+            lbProps.setConsecutiveFailures(100);
+            lbProps.setMaxAttempts(2);
+            RetryProperties retryProps = new RetryProperties();
+            retryProps.setMaxAttempts(2);
+            retryProps.setBudgetPercent(100);
+            retryProps.setBaseDelay(Duration.ofMillis(10));
+            retryProps.setMaxDelay(Duration.ofMillis(20));
+            RetryPolicyRegistry retries = new RetryPolicyRegistry(retryProps, cbRegistry);
+            try (DownstreamLoadBalancer balancer = new DownstreamLoadBalancer(lbProps, "http://downstream.invalid")) {
+                RestClient balanced = RestClient.builder()
+                        .baseUrl("http://downstream.invalid")
+                        .requestInterceptor(balancer)
+                        .build();
+                DownstreamService service = service().restClient(balanced).retries(retries).build();
+
+                // 沒有額度: 第一個 pod 失敗後不改送，也不重試
+                for (WireMockServer pod : List.of(wireMock, otherPod)) {
+                    pod.stubFor(WireMock.get(WireMock.urlEqualTo("/")).willReturn(WireMock.aResponse().withStatus(500)));
+                }
+                assertTrue(service.callWithSpringCloudCB().fallback());
+                assertEquals(1, requestsTo(wireMock) + requestsTo(otherPod));
+                assertEquals(1L, balancer.stats().get("failovers_denied"));
+
+                // 有額度時兩層共用 max-attempts: 改送後不再重試，兩個 pod 都故障時只送出 2 個請求 (不是 2 x 2)
+                for (WireMockServer pod : List.of(wireMock, otherPod)) {
+                    pod.resetAll();
+                    pod.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                            .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"ok\"}")));
+                }
+                cbRegistry.circuitBreaker("downstreamService").reset();
+                for (int i = 0; i < 3; i++) {
+                    assertFalse(service.callWithSpringCloudCB().fallback());
+                }
+                for (WireMockServer pod : List.of(wireMock, otherPod)) {
+                    pod.resetAll();
+                    pod.stubFor(WireMock.get(WireMock.urlEqualTo("/")).willReturn(WireMock.aResponse().withStatus(500)));
+                }
+                assertTrue(service.callWithSpringCloudCB().fallback());
+                assertEquals(1, requestsTo(wireMock));
+                assertEquals(1, requestsTo(otherPod));
+
+                Map<String, Object> stats = retries.policy("downstreamService").stats();
+                assertEquals(5L, stats.get("calls"));
+                assertEquals(1L, stats.get("failovers"));
+                assertEquals(0L, stats.get("retries"));
+                // 實際送出 1 + 3 + 2 = 6 個請求
+                assertEquals(6 / 5.0, (Double) stats.get("amplification"), 0.0001);
+                assertEquals(1L, balancer.stats().get("failovers"));
+            }
+        } finally {
+            otherPod.stop();
+        }
+    }
+
+    private static int requestsTo(WireMockServer pod) {
+        return pod.findAll(WireMock.getRequestedFor(WireMock.urlEqualTo("/"))).size();
+    }
+
+    @Test
+    @DisplayName("Bulkhead isolation keeps criticalService p99 low while the regular downstream hangs; without it critical calls queue behind the hanging ones")
+    void bulkhead_isolatesCriticalFromHangingDownstream() throws Exception {
+        // 一般下游卡住，關鍵服務在另一個健康的 pod；兩者共用的是請求執行緒
+        wireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                .willReturn(WireMock.aResponse().withStatus(200).withFixedDelay(1500)));
+        WireMockServer criticalPod = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        criticalPod.start();
+        try {
+            criticalPod.stubFor(WireMock.get(WireMock.urlEqualTo("/"))
+                    .willReturn(WireMock.aResponse().withStatus(200).withBody("{\"status\":\"critical-ok\"}")));
+
+            // 沒有隔離: 卡住的一般呼叫佔滿請求執行緒，關鍵服務的請求排在卡住 1 秒 (TimeLimiter) 的呼叫後面
+            HangingDownstreamRun unisolated = runWithHangingDownstream(criticalPod, false);
+            assertTrue(unisolated.criticalP99Ms() > 1000, "critical p99 without isolation was " + unisolated.criticalP99Ms() + "ms");
+            assertEquals(0, unisolated.shed());
+
+            HangingDownstreamRun isolated = runWithHangingDownstream(criticalPod, true);
+            assertTrue(isolated.criticalP99Ms() < 600, "critical p99 with isolation was " + isolated.criticalP99Ms() + "ms");
+            // 最多 4 個在下游卡住、2 個排隊，其餘立即拒絕
+            assertTrue(isolated.shed() >= 34, "shed " + isolated.shed() + " regular calls");
+
+            Map<String, Object> stats = isolated.isolations().isolation("downstreamService").stats();
+            assertTrue((Long) stats.get("rejected_queue_full") > 0);
+            assertTrue((Long) stats.get("rejected_wait_timeout") > 0);
+            assertEquals(0, stats.get("queue_depth"));
+            assertEquals(0L, isolated.isolations().isolation("criticalService").stats().get("rejected_queue_full"));
+            assertEquals(CircuitBreaker.State.CLOSED, isolated.breakers().circuitBreaker("downstreamService").getState());
+        } finally {
+            criticalPod.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("max-connections sizes a dedicated pool per isolated breaker and is rejected at bind time for breakers without their own client")
+    void bulkhead_maxConnectionsSizesDedicatedPools() {
+        Binder binder = new Binder(new MapConfigurationPropertySource(Map.of(
+                "bulkhead-isolation.instances.downstreamService.max-connections", "5",
+                "bulkhead-isolation.instances.criticalService.max-queue-depth", "3")));
+        BulkheadIsolationProperties isolation = binder.bind("bulkhead-isolation", BulkheadIsolationProperties.class).get();
+        DownstreamHttpProperties httpProps = new DownstreamHttpProperties();
+        DownstreamClientConfig config = new DownstreamClientConfig();
+
+        try (PoolingHttpClientConnectionManager shared = config.downstreamConnectionManager(httpProps);
+             PoolingHttpClientConnectionManager dedicated = config.downstreamServiceConnectionManager(httpProps, isolation)) {
+            assertEquals(5, dedicated.getMaxTotal());
+            assertEquals(5, dedicated.getDefaultMaxPerRoute());
+            assertEquals(httpProps.getMaxConnectionsTotal(), shared.getMaxTotal());
+        }
+        // 未設定時沿用 per-route 上限
+        assertEquals(httpProps.getMaxConnectionsPerRoute(),
+                DownstreamClientConfig.dedicatedConnections("criticalService", httpProps, isolation));
+
+        Binder unsupported = new Binder(new MapConfigurationPropertySource(Map.of(
+                "bulkhead-isolation.instances.routeService.max-connections", "5")));
+        BindException ex = assertThrows(BindException.class,
+                () -> unsupported.bind("bulkhead-isolation", BulkheadIsolationProperties.class));
+        String cause = NestedExceptionUtils.getMostSpecificCause(ex).getMessage();
+        assertTrue(cause.contains("routeService"), cause);
+    }
+
+    private record HangingDownstreamRun(long criticalP99Ms, long shed,
+                                        BulkheadIsolationRegistry isolations, CircuitBreakerRegistry breakers) {
+    }
+
+    /**
+     * 16 條 worker (模擬 Tomcat 的請求執行緒) 先收到 40 個打卡住下游的一般呼叫，再每 20ms 收到一個關鍵服務呼叫；
+     * isolated 為 false 時 bulkhead 不限並行也不排隊，等同沒有隔離
+     */
+    private HangingDownstreamRun runWithHangingDownstream(WireMockServer criticalPod, boolean isolated) throws Exception {
+        // 斷路器不會開啟，隔離完全來自 bulkhead
+        CircuitBreakerRegistry breakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .minimumNumberOfCalls(1000)
+                .ignoreExceptions(BulkheadFullException.class)
+                .build());
+        BulkheadRegistry bulkheads = BulkheadRegistry.of(BulkheadConfig.custom().maxConcurrentCalls(1000).build());
+        BulkheadIsolationProperties isolationProps = new BulkheadIsolationProperties();
+        if (isolated) {
+            bulkheads.bulkhead("downstreamService", BulkheadConfig.custom()
+                    .maxConcurrentCalls(4).maxWaitDuration(Duration.ofMillis(50)).build());
+            bulkheads.bulkhead("criticalService", BulkheadConfig.custom()
+                    .maxConcurrentCalls(10).maxWaitDuration(Duration.ofMillis(250)).build());
+            BulkheadIsolationProperties.Instance regular = new BulkheadIsolationProperties.Instance();
+            regular.setMaxQueueDepth(2);
+            isolationProps.getInstances().put("downstreamService", regular);
+            BulkheadIsolationProperties.Instance critical = new BulkheadIsolationProperties.Instance();
+            critical.setMaxQueueDepth(10);
+            isolationProps.getInstances().put("criticalService", critical);
+        }
+        BulkheadIsolationRegistry isolations = new BulkheadIsolationRegistry(isolationProps, bulkheads);
+
+        Resilience4JConfigurationProperties cbProps = new Resilience4JConfigurationProperties();
+        cbProps.setEnableSemaphoreDefaultBulkhead(true);
+        TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom().timeoutDuration(Duration.ofSeconds(1)).build();
+        Resilience4JCircuitBreakerFactory factory = new Resilience4JCircuitBreakerFactory(breakers,
+                TimeLimiterRegistry.of(timeLimiterConfig),
+                new Resilience4jBulkheadProvider(ThreadPoolBulkheadRegistry.ofDefaults(), bulkheads, cbProps), cbProps);
+        factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
+                .circuitBreakerConfig(breakers.getDefaultConfig())
+                .timeLimiterConfig(timeLimiterConfig)
+                .build());
+        SlowCallProperties slowCall = new SlowCallProperties();
+        slowCall.setEnabled(false);
+        DownstreamService service = service()
+                .criticalWebClient(WebClient.create(criticalPod.baseUrl()))
+                .factory(factory)
+                .detectors(new SlowCallDetectorRegistry(slowCall, breakers))
+                .retries(new RetryPolicyRegistry(new RetryProperties(), breakers))
+                .isolations(isolations)
+                .build();
+
+        // 預熱 WebClient (第一次建立 Netty event loop 可能超過 TimeLimiter)
+        for (int i = 0; i < 5; i++) {
+            service.callCriticalService();
+        }
+        assertFalse(service.callCriticalService().fallback());
+
+        ExecutorService workers = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<DownstreamResponse>> regularCalls = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                regularCalls.add(workers.submit(service::callWithSpringCloudCB));
+            }
+            List<Future<Long>> criticalCalls = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                long submitted = System.nanoTime();
+                criticalCalls.add(workers.submit(() -> {
+                    DownstreamResponse response = service.callCriticalService();
+                    assertFalse(response.fallback(), response.body());
+                    return System.nanoTime() - submitted;
+                }));
+                Thread.sleep(20);
+            }
+
+            List<Long> latencies = new ArrayList<>();
+            for (Future<Long> call : criticalCalls) {
+                latencies.add(call.get(10, java.util.concurrent.TimeUnit.SECONDS));
+            }
+            latencies.sort(null);
+            long p99Ms = Duration.ofNanos(latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1)).toMillis();
+
+            long shed = 0;
+            for (Future<DownstreamResponse> call : regularCalls) {
+                if (call.get(10, java.util.concurrent.TimeUnit.SECONDS).body().contains("BULKHEAD_FULL")) {
+                    shed++;
+                }
+            }
+            return new HangingDownstreamRun(p99Ms, shed, isolations, breakers);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private DownstreamService downstreamService(LastKnownGoodCache cache) {
+        return service().cache(cache).build();
+    }
+
+    private ServiceBuilder service() {
+        return new ServiceBuilder();
+    }
+
+    /**
+     * 測試用的 DownstreamService: 預設打 wireMock、使用 cbRegistry，各測試只覆寫自己關心的元件
+     */
+    private final class ServiceBuilder {
+
+        private RestClient restClient = SpringCloudCBIntegrationTest.this.restClient;
+        private WebClient criticalWebClient = WebClient.create(wireMock.baseUrl());
+        private CircuitBreakerFactory<?, ?> factory = blockingFactory();
+        private LastKnownGoodCache cache = new LastKnownGoodCache(new FallbackCacheProperties());
+        private HedgingPolicy hedgingPolicy = new HedgingPolicy(new HedgingProperties());
+        private ConcurrencyLimiterRegistry limiters = new ConcurrencyLimiterRegistry(new ConcurrencyLimitProperties());
+        private LatencyRecorder recorder = new LatencyRecorder(Duration.ofMinutes(1));
+        private SlowCallDetectorRegistry detectors = new SlowCallDetectorRegistry(new SlowCallProperties(), cbRegistry);
+        private RetryPolicyRegistry retries = new RetryPolicyRegistry(new RetryProperties(), cbRegistry);
+        private BulkheadIsolationRegistry isolations =
+                new BulkheadIsolationRegistry(new BulkheadIsolationProperties(), BulkheadRegistry.ofDefaults());
+
+        ServiceBuilder restClient(RestClient restClient) {
+            this.restClient = restClient;
+            return this;
+        }
+
+        ServiceBuilder criticalWebClient(WebClient criticalWebClient) {
+            this.criticalWebClient = criticalWebClient;
+            return this;
+        }
+
+        ServiceBuilder factory(CircuitBreakerFactory<?, ?> factory) {
+            this.factory = factory;
+            return this;
+        }
+
+        ServiceBuilder cache(LastKnownGoodCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        ServiceBuilder hedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        ServiceBuilder limiters(ConcurrencyLimiterRegistry limiters) {
+            this.limiters = limiters;
+            return this;
+        }
+
+        ServiceBuilder recorder(LatencyRecorder recorder) {
+            this.recorder = recorder;
+            return this;
+        }
+
+        ServiceBuilder detectors(SlowCallDetectorRegistry detectors) {
+            this.detectors = detectors;
+            return this;
+        }
+
+        ServiceBuilder retries(RetryPolicyRegistry retries) {
+            this.retries = retries;
+            return this;
+        }
+
+        ServiceBuilder isolations(BulkheadIsolationRegistry isolations) {
+            this.isolations = isolations;
+            return this;
+        }
+
+        DownstreamService build() {
+            return new DownstreamService(restClient, criticalWebClient, factory, cache, hedgingPolicy,
+                    limiters, recorder, detectors, retries, isolations);
+        }
+    }
+
+    private Resilience4JCircuitBreakerFactory blockingFactory() {
+        TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.ofDefaults();
+        Resilience4JCircuitBreakerFactory factory = new Resilience4JCircuitBreakerFactory(
+                cbRegistry, TimeLimiterRegistry.of(timeLimiterConfig), null);
+        factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
+                .circuitBreakerConfig(cbRegistry.getDefaultConfig())
+                .timeLimiterConfig(timeLimiterConfig)
+                .build());
+        return factory;
+    }
+
+    private ReactiveResilience4JCircuitBreakerFactory reactiveFactory(Duration timeout) {
+        TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom().timeoutDuration(timeout).build();
+        ReactiveResilience4JCircuitBreakerFactory factory = new ReactiveResilience4JCircuitBreakerFactory(
+                cbRegistry, TimeLimiterRegistry.of(timeLimiterConfig), null, new Resilience4JConfigurationProperties());
+        factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
+                .circuitBreakerConfig(cbRegistry.getDefaultConfig())
+                .timeLimiterConfig(timeLimiterConfig)
+                .build());
+        return factory;
+    }
 }
@@ -0,0 +1,101 @@
+package com.poc.simulator;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 某個時間點下游對每個請求的行為
+ *
+ * @param latency      回應前的延遲
+ * @param errorLatency 錯誤回應的延遲，null 表示與 latency 相同
+ * @param errorRate    回傳 errorStatus 的比例
+ * @param resetRate    延遲結束後直接 RST 斷線、不回應的比例
+ * @param slowBody     非 null 時 header 先送出，body 分成多段慢慢送
+ */
+public record Behavior(LatencyDistribution latency, LatencyDistribution errorLatency, double errorRate,
+                       int errorStatus, double resetRate, SlowBody slowBody) {
+
+    /**
+     * body 分成 chunks 段，每段間隔 interval
+     */
+    public record SlowBody(int chunks, Duration interval) {
+
+        public SlowBody {
+            if (chunks < 1) {
+                throw new IllegalArgumentException("chunks must be >= 1");
+            }
+        }
+    }
+
+    public Behavior {
+        if (latency == null) {
+            throw new IllegalArgumentException("latency is required");
+        }
+        checkRate("errorRate", errorRate);
+        checkRate("resetRate", resetRate);
+    }
+
+    public static Behavior healthy() {
+        return new Behavior(LatencyDistribution.fixed(Duration.ofMillis(5)), null, 0, 500, 0, null);
+    }
+
+    /**
+     * 與 shared/flaky-service 相同: 60% 在 3 秒後回傳 500，其餘立即成功
+     */
+    public static Behavior flaky() {
+        return new Behavior(LatencyDistribution.fixed(Duration.ZERO), LatencyDistribution.fixed(Duration.ofSeconds(3)),
+            0.6, 500, 0, null);
+    }
+
+    public Behavior withLatency(LatencyDistribution latency) {
+        return new Behavior(latency, errorLatency, errorRate, errorStatus, resetRate, slowBody);
+    }
+
+    public Behavior withErrors(double errorRate, int errorStatus) {
+        return new Behavior(latency, errorLatency, errorRate, errorStatus, resetRate, slowBody);
+    }
+
+    public Behavior withErrorRate(double errorRate) {
+        return withErrors(errorRate, errorStatus);
+    }
+
+    public Behavior withErrorLatency(LatencyDistribution errorLatency) {
+        return new Behavior(latency, errorLatency, errorRate, errorStatus, resetRate, slowBody);
+    }
+
+    public Behavior withResetRate(double resetRate) {
+        return new Behavior(latency, errorLatency, errorRate, errorStatus, resetRate, slowBody);
+    }
+
+    public Behavior withSlowBody(int chunks, Duration interval) {
+        return new Behavior(latency, errorLatency, errorRate, errorStatus, resetRate, new SlowBody(chunks, interval));
+    }
+
+    public LatencyDistribution latencyFor(boolean error) {
+        return error && errorLatency != null ? errorLatency : latency;
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("latency", latency.describe());
+        if (errorLatency != null) {
+            description.put("error_latency", errorLatency.describe());
+        }
+        description.put("error_rate", errorRate);
+        description.put("error_status", errorStatus);
+        description.put("reset_rate", resetRate);
+        if (slowBody != null) {
+            description.put("slow_body", Map.of(
+                "chunks", slowBody.chunks(),
+                "interval_ms", slowBody.interval().toMillis()));
+        }
+        return description;
+    }
+
+    private static void checkRate(String name, double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1: " + rate);
+        }
+    }
+}
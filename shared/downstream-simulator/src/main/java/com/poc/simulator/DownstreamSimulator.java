@@ -0,0 +1,159 @@
+package com.poc.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可編寫情境、可注入故障的下游模擬器 (Netty non-blocking server)，取代 shared/flaky-service 做效能測試
+ *
+ * 每個 replica 各自 listen 一個 port，共用 event loop；可嵌入測試:
+ * <pre>
+ * try (DownstreamSimulator simulator = DownstreamSimulator.start(Scenario.constant(Behavior.healthy()), 0, 3)) {
+ *     simulator.replica(1).behave(Behavior.healthy().withErrors(1, 503));
+ *     ...
+ * }
+ * </pre>
+ * 或獨立執行: ./gradlew run --args="--port=8080 --replicas=3 --scenario=scenarios/failure-ramp.json"
+ */
+public final class DownstreamSimulator implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final EventLoopGroup bossGroup = new NioEventLoopGroup(1);
+    private final EventLoopGroup workerGroup = new NioEventLoopGroup();
+    private final List<Replica> replicas = new ArrayList<>();
+    private final List<Channel> channels = new ArrayList<>();
+
+    private DownstreamSimulator() {
+    }
+
+    /**
+     * 啟動 replicaCount 個 replica；basePort 為 0 時每個 replica 使用隨機 port，否則依序使用 basePort、basePort + 1 ...
+     */
+    public static DownstreamSimulator start(Scenario scenario, int basePort, int replicaCount) throws InterruptedException {
+        DownstreamSimulator simulator = new DownstreamSimulator();
+        try {
+            for (int i = 0; i < replicaCount; i++) {
+                simulator.bind(i, basePort == 0 ? 0 : basePort + i, scenario.forReplica(i));
+            }
+        } catch (RuntimeException | InterruptedException ex) {
+            simulator.close();
+            throw ex;
+        }
+        return simulator;
+    }
+
+    public static DownstreamSimulator start(Scenario scenario) throws InterruptedException {
+        return start(scenario, 0, 1);
+    }
+
+    private void bind(int index, int port, Scenario scenario) throws InterruptedException {
+        Replica replica = new Replica(index, scenario);
+        Channel channel = new ServerBootstrap()
+            .group(bossGroup, workerGroup)
+            .channel(NioServerSocketChannel.class)
+            .option(ChannelOption.SO_BACKLOG, 4096)
+            .childOption(ChannelOption.TCP_NODELAY, true)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    ch.pipeline()
+                        .addLast(new FlushConsolidationHandler(256, true))
+                        .addLast(new HttpServerCodec())
+                        .addLast(new HttpObjectAggregator(1024 * 1024))
+                        .addLast(new SimulatorHandler(DownstreamSimulator.this, replica));
+                }
+            })
+            .bind(port)
+            .sync()
+            .channel();
+        replica.bound(((InetSocketAddress) channel.localAddress()).getPort());
+        channels.add(channel);
+        replicas.add(replica);
+    }
+
+    public Replica replica(int index) {
+        return replicas.get(index);
+    }
+
+    public List<Replica> replicas() {
+        return List.copyOf(replicas);
+    }
+
+    public List<String> urls() {
+        return replicas.stream().map(Replica::url).toList();
+    }
+
+    /**
+     * 所有 replica 換成新的情境 (各自套用 replicas 覆寫) 並重新計時
+     */
+    public void script(Scenario scenario) {
+        replicas.forEach(replica -> replica.script(scenario.forReplica(replica.index())));
+    }
+
+    public long requests() {
+        return replicas.stream().mapToLong(Replica::requests).sum();
+    }
+
+    byte[] statsJson() throws Exception {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests());
+        stats.put("replicas", replicas.stream().map(Replica::stats).toList());
+        return MAPPER.writeValueAsBytes(stats);
+    }
+
+    @Override
+    public void close() {
+        channels.forEach(Channel::close);
+        bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * --port=8080 --replicas=1 --scenario=scenarios/flaky.json (未指定情境時與 flaky-service 相同: 60% 在 3 秒後回 500)
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("expected --name=value: " + arg);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        Scenario scenario = options.containsKey("scenario")
+            ? Scenario.load(Path.of(options.get("scenario")))
+            : Scenario.constant(Behavior.flaky());
+        DownstreamSimulator simulator = start(scenario,
+            Integer.parseInt(options.getOrDefault("port", "8080")),
+            Integer.parseInt(options.getOrDefault("replicas", "1")));
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            simulator.close();
+            stopped.countDown();
+        }));
+        System.out.println("downstream simulator listening on " + simulator.urls()
+            + " (stats: /__simulator/stats, new scenario: POST /__simulator/scenario)");
+        stopped.await();
+    }
+}
@@ -0,0 +1,123 @@
+package com.poc.simulator;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * 回應延遲的分布，每個請求抽樣一次
+ */
+public interface LatencyDistribution {
+
+    long sampleNanos(RandomGenerator random);
+
+    /**
+     * 報告 / stats 用的描述，例如 {"type": "lognormal", "median_ms": 20, "p99_ms": 200}
+     */
+    Map<String, Object> describe();
+
+    static LatencyDistribution fixed(Duration latency) {
+        return new Fixed(latency.toNanos());
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        return new Uniform(min.toNanos(), max.toNanos());
+    }
+
+    /**
+     * 以中位數與 p99 決定的 log-normal 分布: 大部分請求很快、少數拖很長的尾巴
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        return new LogNormal(median.toNanos(), p99.toNanos());
+    }
+
+    /**
+     * slowFraction 比例的請求落在 slow，其餘為 fast (例如 GC 停頓、冷快取)
+     */
+    static LatencyDistribution bimodal(Duration fast, Duration slow, double slowFraction) {
+        return new Bimodal(fast.toNanos(), slow.toNanos(), slowFraction);
+    }
+
+    record Fixed(long nanos) implements LatencyDistribution {
+
+        @Override
+        public long sampleNanos(RandomGenerator random) {
+            return nanos;
+        }
+
+        @Override
+        public Map<String, Object> describe() {
+            return LatencyDistribution.description("fixed", "value_ms", nanos);
+        }
+    }
+
+    record Uniform(long minNanos, long maxNanos) implements LatencyDistribution {
+
+        public Uniform {
+            if (maxNanos < minNanos) {
+                throw new IllegalArgumentException("max must be >= min");
+            }
+        }
+
+        @Override
+        public long sampleNanos(RandomGenerator random) {
+            return maxNanos == minNanos ? minNanos : random.nextLong(minNanos, maxNanos + 1);
+        }
+
+        @Override
+        public Map<String, Object> describe() {
+            Map<String, Object> description = LatencyDistribution.description("uniform", "min_ms", minNanos);
+            description.put("max_ms", maxNanos / 1_000_000.0);
+            return description;
+        }
+    }
+
+    record LogNormal(long medianNanos, long p99Nanos) implements LatencyDistribution {
+
+        /** 標準常態分布的 p99 */
+        private static final double Z_99 = 2.3263;
+
+        public LogNormal {
+            if (medianNanos <= 0 || p99Nanos < medianNanos) {
+                throw new IllegalArgumentException("expected 0 < median <= p99");
+            }
+        }
+
+        @Override
+        public long sampleNanos(RandomGenerator random) {
+            double sigma = Math.log((double) p99Nanos / medianNanos) / Z_99;
+            return (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+        }
+
+        @Override
+        public Map<String, Object> describe() {
+            Map<String, Object> description = LatencyDistribution.description("lognormal", "median_ms", medianNanos);
+            description.put("p99_ms", p99Nanos / 1_000_000.0);
+            return description;
+        }
+    }
+
+    record Bimodal(long fastNanos, long slowNanos, double slowFraction) implements LatencyDistribution {
+
+        @Override
+        public long sampleNanos(RandomGenerator random) {
+            return random.nextDouble() < slowFraction ? slowNanos : fastNanos;
+        }
+
+        @Override
+        public Map<String, Object> describe() {
+            Map<String, Object> description = LatencyDistribution.description("bimodal", "fast_ms", fastNanos);
+            description.put("slow_ms", slowNanos / 1_000_000.0);
+            description.put("slow_fraction", slowFraction);
+            return description;
+        }
+    }
+
+    private static Map<String, Object> description(String type, String key, long nanos) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("type", type);
+        description.put(key, nanos / 1_000_000.0);
+        return description;
+    }
+}
@@ -0,0 +1,83 @@
+package com.poc.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一個模擬的下游 replica (一個 port)，有自己的情境時間軸與計數
+ */
+public final class Replica {
+
+    private final int index;
+    private volatile int port;
+    private volatile Scenario scenario;
+    private volatile long startNanos;
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder ok = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder resets = new LongAdder();
+    final LongAdder slowBodies = new LongAdder();
+
+    Replica(int index, Scenario scenario) {
+        this.index = index;
+        script(scenario);
+    }
+
+    void bound(int port) {
+        this.port = port;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public String url() {
+        return "http://localhost:" + port;
+    }
+
+    /**
+     * 換成新的情境並從第一個步驟重新計時
+     */
+    public void script(Scenario scenario) {
+        this.startNanos = System.nanoTime();
+        this.scenario = scenario;
+    }
+
+    /**
+     * 固定成單一行為，直到下一次 script / behave
+     */
+    public void behave(Behavior behavior) {
+        script(Scenario.constant(behavior));
+    }
+
+    public Behavior currentBehavior() {
+        return scenario.behaviorAt(System.nanoTime() - startNanos);
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long resets() {
+        return resets.sum();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("replica", index);
+        stats.put("port", port);
+        stats.put("step", scenario.stepAt(System.nanoTime() - startNanos).name());
+        stats.put("requests", requests.sum());
+        stats.put("ok", ok.sum());
+        stats.put("errors", errors.sum());
+        stats.put("resets", resets.sum());
+        stats.put("slow_bodies", slowBodies.sum());
+        return stats;
+    }
+}
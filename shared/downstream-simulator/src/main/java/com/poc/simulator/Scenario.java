@@ -0,0 +1,188 @@
+package com.poc.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 依時間排列的步驟；最後一個步驟結束後維持最後的行為，loop 為 true 時從頭開始
+ * replicas 可覆寫個別 replica (從 0 起算) 的情境，例如只讓其中一個 replica 故障
+ *
+ * JSON 格式 (時間可寫 "250ms"、"3s"、"2m"、"1d" 或毫秒數字):
+ * <pre>
+ * {
+ *   "loop": false,
+ *   "steps": [
+ *     {"name": "healthy", "duration": "30s", "latency": {"type": "lognormal", "median": "10ms", "p99": "80ms"}},
+ *     {"name": "ramp", "duration": "60s", "error_rate": 0, "error_rate_to": 0.8, "error_status": 503},
+ *     {"name": "brownout", "duration": "20s", "latency": {"type": "bimodal", "fast": "10ms", "slow": "2s", "slow_fraction": 0.3}},
+ *     {"name": "resets", "duration": "10s", "reset_rate": 0.2},
+ *     {"name": "slow-body", "duration": "10s", "slow_body": {"chunks": 10, "interval": "200ms"}}
+ *   ],
+ *   "replicas": {"1": {"steps": [{"name": "down", "duration": "1m", "error_rate": 1, "error_status": 503}]}}
+ * }
+ * </pre>
+ */
+public record Scenario(List<Step> steps, boolean loop, Map<Integer, Scenario> replicas) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public Scenario {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("scenario needs at least one step");
+        }
+        steps = List.copyOf(steps);
+        replicas = Map.copyOf(replicas);
+    }
+
+    public static Scenario of(Step... steps) {
+        return new Scenario(List.of(steps), false, Map.of());
+    }
+
+    /**
+     * 固定行為 (不會隨時間改變)
+     */
+    public static Scenario constant(Behavior behavior) {
+        return of(Step.of("constant", Duration.ofDays(365), behavior));
+    }
+
+    public Scenario looping() {
+        return new Scenario(steps, true, replicas);
+    }
+
+    public Scenario withReplica(int replica, Scenario scenario) {
+        Map<Integer, Scenario> overrides = new HashMap<>(replicas);
+        overrides.put(replica, scenario);
+        return new Scenario(steps, loop, overrides);
+    }
+
+    public Scenario forReplica(int replica) {
+        return replicas.getOrDefault(replica, new Scenario(steps, loop, Map.of()));
+    }
+
+    public Duration totalDuration() {
+        return steps.stream().map(Step::duration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    /**
+     * 情境開始 elapsedNanos 後所在的步驟
+     */
+    public Step stepAt(long elapsedNanos) {
+        return locate(elapsedNanos).step;
+    }
+
+    public Behavior behaviorAt(long elapsedNanos) {
+        Position position = locate(elapsedNanos);
+        return position.step.behaviorAt(position.offsetNanos);
+    }
+
+    private Position locate(long elapsedNanos) {
+        long remaining = elapsedNanos;
+        if (loop) {
+            long total = 0;
+            for (Step step : steps) {
+                total += step.duration().toNanos();
+            }
+            remaining %= total;
+        }
+        for (Step step : steps) {
+            long length = step.duration().toNanos();
+            if (remaining < length) {
+                return new Position(step, remaining);
+            }
+            remaining -= length;
+        }
+        Step last = steps.get(steps.size() - 1);
+        return new Position(last, last.duration().toNanos());
+    }
+
+    private record Position(Step step, long offsetNanos) {
+    }
+
+    // --- JSON ---
+
+    public static Scenario load(Path file) throws IOException {
+        return parse(Files.readString(file));
+    }
+
+    public static Scenario parse(String json) throws IOException {
+        return parse(MAPPER.readTree(json));
+    }
+
+    private static Scenario parse(JsonNode node) {
+        List<Step> steps = new ArrayList<>();
+        for (JsonNode step : node.path("steps")) {
+            steps.add(parseStep(step));
+        }
+        Map<Integer, Scenario> replicas = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> overrides = node.path("replicas").fields();
+        while (overrides.hasNext()) {
+            Map.Entry<String, JsonNode> override = overrides.next();
+            replicas.put(Integer.parseInt(override.getKey()), parse(override.getValue()));
+        }
+        return new Scenario(steps, node.path("loop").asBoolean(false), replicas);
+    }
+
+    private static Step parseStep(JsonNode node) {
+        Behavior behavior = new Behavior(
+            node.has("latency") ? parseLatency(node.get("latency")) : Behavior.healthy().latency(),
+            node.has("error_latency") ? parseLatency(node.get("error_latency")) : null,
+            node.path("error_rate").asDouble(0),
+            node.path("error_status").asInt(500),
+            node.path("reset_rate").asDouble(0),
+            node.has("slow_body")
+                ? new Behavior.SlowBody(node.get("slow_body").path("chunks").asInt(10),
+                    parseDuration(node.get("slow_body").path("interval"), Duration.ofMillis(100)))
+                : null);
+        Double errorRateTo = node.has("error_rate_to") ? node.get("error_rate_to").asDouble() : null;
+        return new Step(node.path("name").asText("step"), parseDuration(node.path("duration"), null), behavior, errorRateTo);
+    }
+
+    private static LatencyDistribution parseLatency(JsonNode node) {
+        if (!node.isObject()) {
+            return LatencyDistribution.fixed(parseDuration(node, null));
+        }
+        String type = node.path("type").asText("fixed");
+        return switch (type) {
+            case "fixed" -> LatencyDistribution.fixed(parseDuration(node.path("value"), null));
+            case "uniform" -> LatencyDistribution.uniform(parseDuration(node.path("min"), null), parseDuration(node.path("max"), null));
+            case "lognormal" -> LatencyDistribution.logNormal(parseDuration(node.path("median"), null), parseDuration(node.path("p99"), null));
+            case "bimodal" -> LatencyDistribution.bimodal(parseDuration(node.path("fast"), null),
+                parseDuration(node.path("slow"), null), node.path("slow_fraction").asDouble());
+            default -> throw new IllegalArgumentException("unknown latency type: " + type);
+        };
+    }
+
+    static Duration parseDuration(JsonNode node, Duration defaultValue) {
+        if (node.isMissingNode() || node.isNull()) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("missing duration");
+            }
+            return defaultValue;
+        }
+        if (node.isNumber()) {
+            return Duration.ofMillis(node.asLong());
+        }
+        String text = node.asText().trim();
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        long amount = Long.parseLong(text.substring(0, text.length() - 1));
+        return switch (text.charAt(text.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            case 'd' -> Duration.ofDays(amount);
+            default -> throw new IllegalArgumentException("unsupported duration: " + text);
+        };
+    }
+}
@@ -0,0 +1,175 @@
+package com.poc.simulator;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 依 replica 當下的行為處理一個請求
+ *
+ * 不佔用 event loop: 延遲與慢速 body 都用 event loop 的 schedule，到期才寫出。
+ * 同一條連線上 pipelining 的請求若延遲不同，回應順序不保證 (一般 HTTP/1.1 client 不會 pipeline)。
+ */
+final class SimulatorHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private static final String CONTROL_PREFIX = "/__simulator/";
+
+    private final DownstreamSimulator simulator;
+    private final Replica replica;
+    private final byte[] okBody;
+    private final byte[] errorBody = "{\"error\":\"injected failure\"}".getBytes(StandardCharsets.UTF_8);
+
+    SimulatorHandler(DownstreamSimulator simulator, Replica replica) {
+        this.simulator = simulator;
+        this.replica = replica;
+        this.okBody = ("{\"status\":\"ok\",\"data\":\"response from replica " + replica.index() + "\"}")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        String path = request.uri();
+        if ("/health".equals(path)) {
+            write(ctx, full(HttpResponseStatus.OK, "{\"status\":\"UP\"}".getBytes(StandardCharsets.UTF_8)), keepAlive);
+            return;
+        }
+        if (path.startsWith(CONTROL_PREFIX)) {
+            write(ctx, control(path.substring(CONTROL_PREFIX.length()), request), keepAlive);
+            return;
+        }
+
+        replica.requests.increment();
+        Behavior behavior = replica.currentBehavior();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean reset = random.nextDouble() < behavior.resetRate();
+        boolean error = !reset && random.nextDouble() < behavior.errorRate();
+        long delayNanos = behavior.latencyFor(error).sampleNanos(random);
+
+        Runnable respond = () -> {
+            if (reset) {
+                replica.resets.increment();
+                // SO_LINGER 0: close 時送出 RST，client 看到 connection reset
+                ctx.channel().config().setOption(ChannelOption.SO_LINGER, 0);
+                ctx.close();
+            } else if (error) {
+                replica.errors.increment();
+                write(ctx, full(HttpResponseStatus.valueOf(behavior.errorStatus()), errorBody), keepAlive);
+            } else if (behavior.slowBody() != null) {
+                replica.slowBodies.increment();
+                replica.ok.increment();
+                writeSlowly(ctx, behavior.slowBody(), keepAlive);
+            } else {
+                replica.ok.increment();
+                write(ctx, full(HttpResponseStatus.OK, okBody), keepAlive);
+            }
+        };
+        if (delayNanos <= 0) {
+            respond.run();
+        } else {
+            ctx.executor().schedule(respond, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * GET /__simulator/stats: 各 replica 的計數；POST /__simulator/scenario: 換成 body 中的情境 (JSON)
+     */
+    private FullHttpResponse control(String action, FullHttpRequest request) {
+        try {
+            if ("stats".equals(action)) {
+                return full(HttpResponseStatus.OK, simulator.statsJson());
+            }
+            if ("scenario".equals(action) && HttpMethod.POST.equals(request.method())) {
+                simulator.script(Scenario.parse(request.content().toString(StandardCharsets.UTF_8)));
+                return full(HttpResponseStatus.OK, simulator.statsJson());
+            }
+            return full(HttpResponseStatus.NOT_FOUND, "{\"error\":\"unknown control endpoint\"}".getBytes(StandardCharsets.UTF_8));
+        } catch (Exception ex) {
+            String message = String.valueOf(ex.getMessage()).replace("\"", "'");
+            return full(HttpResponseStatus.BAD_REQUEST, ("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * header 立即送出，body 切成 chunks 段，每 interval 送一段
+     */
+    private void writeSlowly(ChannelHandlerContext ctx, Behavior.SlowBody slowBody, boolean keepAlive) {
+        HttpResponse head = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        head.headers()
+            .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+            .setInt(HttpHeaderNames.CONTENT_LENGTH, okBody.length);
+        if (!keepAlive) {
+            head.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        }
+        ctx.writeAndFlush(head);
+        writeChunk(ctx, slowBody, 0, keepAlive);
+    }
+
+    private void writeChunk(ChannelHandlerContext ctx, Behavior.SlowBody slowBody, int chunk, boolean keepAlive) {
+        ctx.executor().schedule(() -> {
+            if (!ctx.channel().isActive()) {
+                return;
+            }
+            int chunks = Math.min(slowBody.chunks(), okBody.length);
+            int from = okBody.length * chunk / chunks;
+            int to = okBody.length * (chunk + 1) / chunks;
+            ByteBuf slice = Unpooled.wrappedBuffer(okBody, from, to - from);
+            if (chunk + 1 < chunks) {
+                ctx.writeAndFlush(new DefaultHttpContent(slice));
+                writeChunk(ctx, slowBody, chunk + 1, keepAlive);
+            } else {
+                var future = ctx.writeAndFlush(new DefaultLastHttpContent(slice));
+                if (!keepAlive) {
+                    future.addListener(ChannelFutureListener.CLOSE);
+                }
+            }
+        }, slowBody.interval().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static FullHttpResponse full(HttpResponseStatus status, byte[] body) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, Unpooled.wrappedBuffer(body));
+        response.headers()
+            .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+            .setInt(HttpHeaderNames.CONTENT_LENGTH, body.length);
+        return response;
+    }
+
+    private static void write(ChannelHandlerContext ctx, FullHttpResponse response, boolean keepAlive) {
+        if (!ctx.channel().isActive()) {
+            response.release();
+            return;
+        }
+        if (keepAlive) {
+            ctx.writeAndFlush(response);
+        } else {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // client 中斷連線 (逾時、RST) 是模擬中的正常情況
+        ctx.close();
+    }
+}
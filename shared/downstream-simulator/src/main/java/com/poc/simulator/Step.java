@@ -0,0 +1,50 @@
+package com.poc.simulator;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 情境中的一個步驟: duration 內維持 behavior；errorRateTo 非 null 時錯誤率從 behavior.errorRate 線性爬升到 errorRateTo
+ */
+public record Step(String name, Duration duration, Behavior behavior, Double errorRateTo) {
+
+    public Step {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("step duration must be positive: " + duration);
+        }
+    }
+
+    public static Step of(String name, Duration duration, Behavior behavior) {
+        return new Step(name, duration, behavior, null);
+    }
+
+    /**
+     * 錯誤率在 duration 內從 behavior.errorRate 爬升到 errorRateTo
+     */
+    public static Step ramp(String name, Duration duration, Behavior behavior, double errorRateTo) {
+        return new Step(name, duration, behavior, errorRateTo);
+    }
+
+    /**
+     * 進入此步驟 elapsedNanos 後的行為
+     */
+    public Behavior behaviorAt(long elapsedNanos) {
+        if (errorRateTo == null) {
+            return behavior;
+        }
+        double progress = Math.min(1.0, Math.max(0.0, (double) elapsedNanos / duration.toNanos()));
+        return behavior.withErrorRate(behavior.errorRate() + (errorRateTo - behavior.errorRate()) * progress);
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("name", name);
+        description.put("duration_ms", duration.toMillis());
+        description.putAll(behavior.describe());
+        if (errorRateTo != null) {
+            description.put("error_rate_to", errorRateTo);
+        }
+        return description;
+    }
+}
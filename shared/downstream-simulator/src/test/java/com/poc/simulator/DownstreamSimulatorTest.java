@@ -0,0 +1,212 @@
+package com.poc.simulator;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 下游模擬器測試: 情境時間軸、各種故障注入、per-replica 行為與吞吐量
+ */
+class DownstreamSimulatorTest {
+
+    static HttpClient client;
+
+    @BeforeAll
+    static void createClient() {
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    static HttpResponse<String> get(String url) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(10)).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    @DisplayName("Scripted scenario walks through its steps, ramps the error rate and applies per-replica overrides")
+    void scenario_stepsRampsAndReplicaOverrides() throws Exception {
+        Scenario scenario = Scenario.load(Path.of("scenarios/failure-ramp.json"));
+        long second = 1_000_000_000L;
+
+        assertEquals("healthy", scenario.stepAt(10 * second).name());
+        assertEquals("error-ramp", scenario.stepAt(31 * second).name());
+        assertEquals(0.4, scenario.behaviorAt(60 * second).errorRate(), 1e-9);
+        assertEquals(503, scenario.behaviorAt(60 * second).errorStatus());
+        assertEquals("outage", scenario.stepAt(95 * second).name());
+        assertNotNull(scenario.stepAt(170 * second).behavior().slowBody());
+        // loop: 結束後從頭開始
+        assertEquals("healthy", scenario.stepAt(scenario.totalDuration().toNanos() + second).name());
+
+        assertEquals("bad-replica", scenario.forReplica(2).stepAt(0).name());
+        assertEquals("healthy", scenario.forReplica(1).stepAt(0).name());
+
+        Scenario rampOnly = Scenario.of(Step.ramp("ramp", Duration.ofSeconds(10), Behavior.healthy(), 1.0));
+        assertEquals(0.0, rampOnly.behaviorAt(0).errorRate());
+        assertEquals(1.0, rampOnly.behaviorAt(20 * second).errorRate(), "stays on the last step after the end");
+    }
+
+    @Test
+    @DisplayName("Latency distributions sample around their configured median and tail")
+    void latency_distributions() {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] samples = new long[100_000];
+        LatencyDistribution logNormal = LatencyDistribution.logNormal(Duration.ofMillis(10), Duration.ofMillis(200));
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = logNormal.sampleNanos(random);
+        }
+        Arrays.sort(samples);
+        assertEquals(10, samples[samples.length / 2] / 1e6, 1.0);
+        assertEquals(200, samples[samples.length * 99 / 100] / 1e6, 20.0);
+
+        LatencyDistribution bimodal = LatencyDistribution.bimodal(Duration.ofMillis(5), Duration.ofSeconds(2), 0.25);
+        long slow = 0;
+        for (int i = 0; i < 100_000; i++) {
+            slow += bimodal.sampleNanos(random) == Duration.ofSeconds(2).toNanos() ? 1 : 0;
+        }
+        assertEquals(0.25, slow / 100_000.0, 0.01);
+    }
+
+    @Test
+    @DisplayName("Each replica has its own behavior: one replica fails with 503 while the other stays healthy")
+    void replicas_haveIndependentBehavior() throws Exception {
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(Scenario.constant(Behavior.healthy()), 0, 2)) {
+            simulator.replica(1).behave(Behavior.healthy().withErrors(1, 503));
+
+            for (int i = 0; i < 5; i++) {
+                assertEquals(200, get(simulator.replica(0).url() + "/").statusCode());
+                assertEquals(503, get(simulator.replica(1).url() + "/").statusCode());
+            }
+            assertTrue(get(simulator.replica(0).url() + "/").body().contains("replica 0"));
+            assertEquals(200, get(simulator.replica(1).url() + "/health").statusCode());
+
+            String stats = get(simulator.replica(0).url() + "/__simulator/stats").body();
+            assertTrue(stats.contains("\"requests\":11"), stats);
+            assertEquals(5, simulator.replica(1).requests());
+        }
+    }
+
+    @Test
+    @DisplayName("Error latency applies only to failed responses (same shape as shared/flaky-service)")
+    void errorLatency_appliesToFailuresOnly() throws Exception {
+        Behavior flakyFast = Behavior.flaky().withErrorLatency(LatencyDistribution.fixed(Duration.ofMillis(300)));
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(Scenario.constant(flakyFast))) {
+            int slowErrors = 0;
+            int fastSuccesses = 0;
+            for (int i = 0; i < 20; i++) {
+                long start = System.nanoTime();
+                int status = get(simulator.replica(0).url() + "/").statusCode();
+                long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                if (status == 500 && elapsedMs >= 290) {
+                    slowErrors++;
+                } else if (status == 200 && elapsedMs < 250) {
+                    fastSuccesses++;
+                }
+            }
+            assertEquals(20, slowErrors + fastSuccesses);
+            assertTrue(slowErrors > 0 && fastSuccesses > 0);
+        }
+    }
+
+    @Test
+    @DisplayName("Connection resets surface as I/O errors on the client")
+    void reset_closesConnectionWithoutResponse() throws Exception {
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(
+                Scenario.constant(Behavior.healthy().withResetRate(1)))) {
+            assertThrows(IOException.class, () -> get(simulator.replica(0).url() + "/"));
+            // JDK HttpClient 對 idempotent GET 會在 connection reset 後自動重試一次
+            assertTrue(simulator.replica(0).resets() >= 1);
+
+            simulator.replica(0).behave(Behavior.healthy());
+            assertEquals(200, get(simulator.replica(0).url() + "/").statusCode());
+        }
+    }
+
+    @Test
+    @DisplayName("Slow body sends headers first and trickles the body in chunks")
+    void slowBody_tricklesChunks() throws Exception {
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(
+                Scenario.constant(Behavior.healthy().withSlowBody(5, Duration.ofMillis(100))))) {
+            long start = System.nanoTime();
+            HttpResponse<java.io.InputStream> response = client.send(
+                HttpRequest.newBuilder(URI.create(simulator.replica(0).url() + "/")).build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+            long headersMs = (System.nanoTime() - start) / 1_000_000;
+            String body;
+            try (var in = response.body()) {
+                body = new String(in.readAllBytes());
+            }
+            long bodyMs = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(200, response.statusCode());
+            assertTrue(body.contains("\"status\":\"ok\""), body);
+            assertTrue(headersMs < 200, "headers arrive before the body: " + headersMs + "ms");
+            assertTrue(bodyMs >= 480, "5 chunks x 100ms: " + bodyMs + "ms");
+        }
+    }
+
+    @Test
+    @DisplayName("Scenario can be replaced at runtime through POST /__simulator/scenario")
+    void controlEndpoint_replacesScenario() throws Exception {
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(Scenario.constant(Behavior.healthy()))) {
+            String url = simulator.replica(0).url();
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + "/__simulator/scenario"))
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"steps\": [{\"name\": \"down\", \"duration\": \"1m\", \"error_rate\": 1, \"error_status\": 502}]}"))
+                    .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("\"step\":\"down\""), response.body());
+            assertEquals(502, get(url + "/").statusCode());
+        }
+    }
+
+    @Test
+    @DisplayName("Non-blocking server keeps thousands of slow requests in flight without serializing them")
+    void throughput_manySlowRequestsConcurrently() throws Exception {
+        int total = 5_000;
+        int concurrency = 1_000;
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(
+                Scenario.constant(Behavior.healthy().withLatency(LatencyDistribution.fixed(Duration.ofMillis(50)))))) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(simulator.replica(0).url() + "/")).build();
+            Semaphore permits = new Semaphore(concurrency);
+            AtomicInteger ok = new AtomicInteger();
+            List<CompletableFuture<?>> futures = new ArrayList<>(total);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                permits.acquire();
+                futures.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error == null && response.statusCode() == 200) {
+                            ok.incrementAndGet();
+                        }
+                        permits.release();
+                    }));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            assertEquals(total, ok.get());
+            assertEquals(total, simulator.requests());
+            // 逐一處理只有 20 rps，1000 個同時進行時理論上限 20000 rps (實際受限於 client，單核約 900 rps)；
+            // 至少 250 rps 表示平均有 12 個以上的請求在 server 上同時等待
+            double rps = total / seconds;
+            assertTrue(rps >= 250, "throughput " + rps + " rps");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.poc.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 以 fast-start 目錄 (./gradlew fastStart 的輸出) 啟動受測應用程式，下游指向 stub
+ */
+public final class AppProcess implements AutoCloseable {
+
+    private final Process process;
+    private final int port;
+
+    private AppProcess(Process process, int port) {
+        this.process = process;
+        this.port = port;
+    }
+
+    public static AppProcess start(Path appDir, String downstreamUrl, Duration startupTimeout) throws Exception {
+        if (!Files.exists(appDir.resolve("app.args"))) {
+            throw new IllegalArgumentException(appDir + "/app.args not found, run ./gradlew fastStart first");
+        }
+        int port = freePort();
+        ProcessBuilder builder = new ProcessBuilder("java", "@app.args", "--server.port=" + port)
+            .directory(appDir.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(new File(appDir.toFile(), "load-test-app.log"));
+        builder.environment().put("DOWNSTREAM_URL", downstreamUrl);
+        AppProcess app = new AppProcess(builder.start(), port);
+        app.awaitHealthy(startupTimeout);
+        return app;
+    }
+
+    public String url() {
+        return "http://localhost:" + port;
+    }
+
+    private void awaitHealthy(Duration timeout) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest health = HttpRequest.newBuilder(URI.create(url() + "/actuator/health"))
+            .timeout(Duration.ofSeconds(1))
+            .build();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("application exited with " + process.exitValue() + ", see load-test-app.log");
+            }
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException ex) {
+                // 尚未開始 listen
+            }
+            Thread.sleep(200);
+        }
+        close();
+        throw new IllegalStateException("application not healthy within " + timeout);
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+    }
+}
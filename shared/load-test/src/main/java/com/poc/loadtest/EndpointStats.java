@@ -0,0 +1,103 @@
+package com.poc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 單一端點在單一階段的統計: HDR 延遲分布 (微秒) 與各種結果的次數
+ */
+public final class EndpointStats {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public enum Outcome { OK, FALLBACK, ERROR, TIMEOUT }
+
+    private final Histogram latencyMicros = new ConcurrentHistogram(3);
+    private final Map<Outcome, LongAdder> outcomes = new LinkedHashMap<>();
+
+    public EndpointStats() {
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    public void record(Outcome outcome, long latencyNanos) {
+        latencyMicros.recordValue(Math.max(1, latencyNanos / 1_000));
+        outcomes.get(outcome).increment();
+    }
+
+    public long count(Outcome outcome) {
+        return outcomes.get(outcome).sum();
+    }
+
+    public long requests() {
+        return latencyMicros.getTotalCount();
+    }
+
+    public double percentileMillis(double percentile) {
+        return latencyMicros.getValueAtPercentile(percentile) / 1_000.0;
+    }
+
+    /**
+     * 2xx 但不是這次下游呼叫的結果 (fallback 內容或 last-known-good 快取) 視為 FALLBACK
+     */
+    public static Outcome classify(HttpResponse<String> response) {
+        if (response.statusCode() / 100 != 2) {
+            return Outcome.ERROR;
+        }
+        if (response.headers().firstValue("Age").isPresent()) {
+            return Outcome.FALLBACK;
+        }
+        return isFallbackBody(response.body()) ? Outcome.FALLBACK : Outcome.OK;
+    }
+
+    static boolean isFallbackBody(String body) {
+        try {
+            JsonNode node = MAPPER.readTree(body);
+            if (node == null) {
+                return false;
+            }
+            if (node.has("cache_age_ms")) {
+                return true;
+            }
+            // 03 的 fallback 內容: {"source":"SPRING_CLOUD_CB_FALLBACK", ...}
+            JsonNode response = node.path("response");
+            return response.isTextual() && response.asText().startsWith("{\"source\"");
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    public Map<String, Object> report(double seconds) {
+        long total = requests();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", total);
+        report.put("throughput_rps", round(total / seconds));
+        report.put("ok", count(Outcome.OK));
+        report.put("fallback", count(Outcome.FALLBACK));
+        report.put("errors", count(Outcome.ERROR));
+        report.put("timeouts", count(Outcome.TIMEOUT));
+        report.put("fallback_ratio", total == 0 ? 0.0 : round((double) count(Outcome.FALLBACK) / total));
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", percentileMillis(50));
+        latency.put("p90", percentileMillis(90));
+        latency.put("p99", percentileMillis(99));
+        latency.put("p999", percentileMillis(99.9));
+        latency.put("max", latencyMicros.getMaxValue() / 1_000.0);
+        latency.put("mean", round(latencyMicros.getMean() / 1_000.0));
+        report.put("latency_ms", latency);
+        return report;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1_000) / 1_000.0;
+    }
+}
@@ -0,0 +1,153 @@
+package com.poc.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.poc.simulator.Behavior;
+import com.poc.simulator.DownstreamSimulator;
+import com.poc.simulator.LatencyDistribution;
+import com.poc.simulator.Scenario;
+import com.poc.simulator.Step;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 斷路器壓測: 以固定到達率打 /api/call、/api/call-critical、/api/dashboard，
+ * 依序切換內嵌下游模擬器 (shared/downstream-simulator) 的故障情境，
+ * 輸出 JSON 報告 (每階段的延遲百分位數、吞吐量、fallback 比例 + 狀態轉換時間線)
+ *
+ * 用法 (參數皆可省略):
+ *   --app-dir=../../03-spring-cloud-cb/build/fast-start  啟動受測應用程式 (下游指向模擬器)
+ *   --target=http://localhost:8081                       或打一個已在執行的應用程式 (需自行把 DOWNSTREAM_URL 指向模擬器)
+ *   --stub-port=0 --rate=200 --phase-seconds=20
+ *   --scenario=../downstream-simulator/scenarios/failure-ramp.json  以情境檔的步驟取代預設階段 (每個步驟是一個階段)
+ *   --mix=/api/call:45,/api/call-critical:45,/api/dashboard:10
+ *   --report=build/load-test/report.json
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        Duration phaseLength = Duration.ofSeconds(Long.parseLong(options.getOrDefault("phase-seconds", "20")));
+        Map<String, Integer> mix = parseMix(options.getOrDefault("mix", "/api/call:45,/api/call-critical:45,/api/dashboard:10"));
+        Path reportPath = Path.of(options.getOrDefault("report", "build/load-test/report.json"));
+        List<Step> phases = options.containsKey("scenario")
+            ? Scenario.load(Path.of(options.get("scenario"))).steps()
+            : standardScenario(phaseLength);
+
+        int stubPort = Integer.parseInt(options.getOrDefault("stub-port", "0"));
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(Scenario.of(phases.get(0)), stubPort, 1)) {
+            String downstreamUrl = simulator.replica(0).url();
+            AppProcess app = null;
+            String target = options.get("target");
+            if (target == null) {
+                Path appDir = Path.of(options.getOrDefault("app-dir", "../../03-spring-cloud-cb/build/fast-start"));
+                System.out.println("starting " + appDir + " with DOWNSTREAM_URL=" + downstreamUrl);
+                app = AppProcess.start(appDir, downstreamUrl, Duration.ofMinutes(2));
+                target = app.url();
+            }
+            try {
+                Map<String, Object> report = run(target, simulator, phases, rate, mix);
+                Files.createDirectories(reportPath.toAbsolutePath().getParent());
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportPath.toFile(), report);
+                System.out.println("report: " + reportPath.toAbsolutePath());
+            } finally {
+                if (app != null) {
+                    app.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 預設情境: 健康 → 部分失敗 → 大量失敗 → 完全中斷 → 變慢 → 恢復
+     */
+    static List<Step> standardScenario(Duration phaseLength) {
+        Behavior failing = Behavior.healthy().withLatency(LatencyDistribution.fixed(Duration.ofMillis(20)));
+        return List.of(
+            Step.of("healthy", phaseLength, Behavior.healthy()),
+            Step.of("degraded", phaseLength, failing.withErrorRate(0.2)),
+            Step.of("failing", phaseLength, failing.withErrorRate(0.6)),
+            Step.of("outage", phaseLength, Behavior.healthy().withLatency(LatencyDistribution.fixed(Duration.ZERO)).withErrors(1, 503)),
+            Step.of("slow", phaseLength, Behavior.healthy().withLatency(LatencyDistribution.fixed(Duration.ofMillis(800)))),
+            Step.of("recovery", phaseLength, Behavior.healthy()));
+    }
+
+    /**
+     * 依序執行每個階段並組成報告；每個階段開始時模擬器切換到該步驟 (步驟內的錯誤率爬升從階段開始計時)
+     */
+    static Map<String, Object> run(String target, DownstreamSimulator simulator, List<Step> phases,
+                                   double rate, Map<String, Integer> mix) throws InterruptedException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("started_at", Instant.now().toString());
+        report.put("target", target);
+        report.put("arrival_rate_rps", rate);
+        report.put("mix", mix);
+
+        List<Map<String, Object>> phaseReports = new ArrayList<>();
+        try (StateTimeline timeline = new StateTimeline();
+             OpenLoopDriver driver = new OpenLoopDriver(target, rate, mix, Duration.ofSeconds(5))) {
+            timeline.start(target, Duration.ofMillis(200));
+            for (Step phase : phases) {
+                simulator.script(Scenario.of(phase));
+                timeline.phase(phase.name());
+                System.out.printf("phase %-18s %s%n", phase.name(), phase.describe());
+                Map<String, EndpointStats> stats = driver.run(phase.duration());
+
+                Map<String, Object> phaseReport = new LinkedHashMap<>();
+                phaseReport.put("phase", phase.name());
+                phaseReport.put("duration_s", phase.duration().toSeconds());
+                phaseReport.put("downstream", phase.describe());
+                Map<String, Object> endpoints = new LinkedHashMap<>();
+                stats.forEach((path, endpointStats) ->
+                    endpoints.put(path, endpointStats.report(phase.duration().toMillis() / 1_000.0)));
+                phaseReport.put("endpoints", endpoints);
+                phaseReports.add(phaseReport);
+            }
+            report.put("phases", phaseReports);
+            report.put("state_transitions", timeline.transitions());
+        }
+        report.put("downstream_requests", simulator.requests());
+        return report;
+    }
+
+    static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("expected --name=value: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            int colon = entry.lastIndexOf(':');
+            weights.put(entry.substring(0, colon).trim(), Integer.parseInt(entry.substring(colon + 1).trim()));
+        }
+        return weights;
+    }
+}
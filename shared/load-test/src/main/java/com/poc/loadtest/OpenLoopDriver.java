@@ -0,0 +1,140 @@
+package com.poc.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 固定到達率 (open-loop) 的負載產生器
+ *
+ * 第 i 個請求的預定送出時間是 start + i / rate，不等前一個請求完成；延遲從預定時間開始計算，
+ * 所以送出端落後 (GC、排程) 或目標變慢時，等待的時間也算進延遲，避免 coordinated omission。
+ */
+public final class OpenLoopDriver implements AutoCloseable {
+
+    private final String target;
+    private final double rate;
+    private final List<String> schedule;
+    private final Duration requestTimeout;
+    private final ExecutorService callbacks = Executors.newFixedThreadPool(4, LoadTest.daemon("load-callback"));
+    private final HttpClient client;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param mix 端點 → 權重，例如 {/api/call=45, /api/call-critical=45, /api/dashboard=10}
+     */
+    public OpenLoopDriver(String target, double rate, Map<String, Integer> mix, Duration requestTimeout) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        }
+        this.target = target;
+        this.rate = rate;
+        this.schedule = interleave(mix);
+        this.requestTimeout = requestTimeout;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(requestTimeout)
+            .executor(callbacks)
+            .build();
+    }
+
+    /**
+     * 以固定到達率送出請求 duration 時間，等待尚未完成的請求後回傳各端點的統計
+     */
+    public Map<String, EndpointStats> run(Duration duration) throws InterruptedException {
+        Map<String, EndpointStats> stats = new LinkedHashMap<>();
+        schedule.forEach(path -> stats.putIfAbsent(path, new EndpointStats()));
+
+        long periodNanos = (long) (1_000_000_000L / rate);
+        long total = (long) (duration.toNanos() / (double) periodNanos);
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * periodNanos;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String path = schedule.get((int) (i % schedule.size()));
+            pending.add(send(path, intended, stats.get(path)));
+            if (pending.size() >= 10_000) {
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                .get(requestTimeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (Exception ex) {
+            // 逾時的請求已由 HttpClient 記為 TIMEOUT，這裡只是不再等待
+        }
+        return stats;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private CompletableFuture<?> send(String path, long intendedNanos, EndpointStats stats) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(target + path))
+            .timeout(requestTimeout)
+            .GET()
+            .build();
+        inFlight.incrementAndGet();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .handle((response, error) -> {
+                long latency = System.nanoTime() - intendedNanos;
+                if (error == null) {
+                    stats.record(EndpointStats.classify(response), latency);
+                } else if (error.getCause() instanceof HttpTimeoutException) {
+                    stats.record(EndpointStats.Outcome.TIMEOUT, latency);
+                } else {
+                    stats.record(EndpointStats.Outcome.ERROR, latency);
+                }
+                inFlight.decrementAndGet();
+                return null;
+            });
+    }
+
+    /**
+     * Smooth weighted round-robin: 依權重把端點平均打散，而不是連續送出同一個端點
+     */
+    static List<String> interleave(Map<String, Integer> mix) {
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("mix must have a positive weight: " + mix);
+        }
+        Map<String, Integer> current = new LinkedHashMap<>();
+        mix.keySet().forEach(path -> current.put(path, 0));
+        List<String> schedule = new ArrayList<>(totalWeight);
+        for (int i = 0; i < totalWeight; i++) {
+            String selected = null;
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                int weight = current.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                if (selected == null || weight > current.get(selected)) {
+                    selected = entry.getKey();
+                }
+            }
+            current.merge(selected, -totalWeight, Integer::sum);
+            schedule.add(selected);
+        }
+        return schedule;
+    }
+
+    @Override
+    public void close() {
+        callbacks.shutdownNow();
+    }
+}
@@ -0,0 +1,85 @@
+package com.poc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定期讀取 /api/dashboard，記錄每個斷路器的狀態轉換時間線
+ */
+public final class StateTimeline implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(LoadTest.daemon("dashboard-poller"));
+    private final Map<String, String> lastStates = new HashMap<>();
+    private final List<Map<String, Object>> transitions = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private volatile String phase = "";
+
+    public void start(String target, Duration interval) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(target + "/api/dashboard"))
+            .timeout(interval.multipliedBy(5))
+            .build();
+        poller.scheduleAtFixedRate(() -> {
+            try {
+                observe(client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            } catch (Exception ex) {
+                // dashboard 暫時無回應時略過這次取樣
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void phase(String phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * 比對一次 dashboard 回應與上次看到的狀態，有變化就記錄一筆轉換
+     */
+    synchronized void observe(String dashboardJson) throws Exception {
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        Iterator<Map.Entry<String, JsonNode>> breakers = MAPPER.readTree(dashboardJson).fields();
+        while (breakers.hasNext()) {
+            Map.Entry<String, JsonNode> breaker = breakers.next();
+            JsonNode state = breaker.getValue().path("state");
+            if (!state.isTextual()) {
+                continue;
+            }
+            String previous = lastStates.put(breaker.getKey(), state.asText());
+            if (previous != null && !previous.equals(state.asText())) {
+                Map<String, Object> transition = new LinkedHashMap<>();
+                transition.put("t_ms", elapsedMs);
+                transition.put("phase", phase);
+                transition.put("breaker", breaker.getKey());
+                transition.put("from", previous);
+                transition.put("to", state.asText());
+                transitions.add(transition);
+            }
+        }
+    }
+
+    public synchronized List<Map<String, Object>> transitions() {
+        return List.copyOf(transitions);
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+}
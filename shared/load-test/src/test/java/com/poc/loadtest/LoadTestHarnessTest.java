@@ -0,0 +1,94 @@
+package com.poc.loadtest;
+
+import com.poc.simulator.Behavior;
+import com.poc.simulator.DownstreamSimulator;
+import com.poc.simulator.LatencyDistribution;
+import com.poc.simulator.Scenario;
+import org.junit.jupiter.api.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 壓測工具本身的測試: open-loop 送出速率、fallback 判斷、狀態轉換時間線
+ */
+class LoadTestHarnessTest {
+
+    @Test
+    @DisplayName("Open-loop driver keeps its arrival rate and measures latency from the intended send time when the target is slow")
+    void openLoop_keepsRateAgainstSlowTarget() throws Exception {
+        Behavior slow = Behavior.healthy().withLatency(LatencyDistribution.fixed(Duration.ofSeconds(1)));
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(Scenario.constant(slow));
+             OpenLoopDriver driver = new OpenLoopDriver(simulator.replica(0).url(), 100, Map.of("/", 1), Duration.ofSeconds(5))) {
+
+            long start = System.nanoTime();
+            EndpointStats stats = driver.run(Duration.ofSeconds(2)).get("/");
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            // closed-loop 會被 1 秒的回應拖慢到只送出少數請求；open-loop 照排程送出 200 個
+            assertEquals(200, stats.requests());
+            assertEquals(200, stats.count(EndpointStats.Outcome.OK));
+            assertEquals(200, simulator.requests());
+            assertTrue(stats.percentileMillis(50) >= 1000, "p50 includes the 1s downstream latency");
+            assertTrue(elapsed.toMillis() < 4000, "sending did not wait for responses: " + elapsed);
+            assertEquals(0, driver.inFlight());
+        }
+    }
+
+    @Test
+    @DisplayName("Errors, fallback bodies and cached responses are classified separately")
+    void classify_fallbackAndErrors() throws Exception {
+        assertFalse(EndpointStats.isFallbackBody(
+            "{\"circuit_breaker\":\"downstreamService\",\"response\":\"{\\\"status\\\":\\\"ok\\\"}\"}"));
+        assertTrue(EndpointStats.isFallbackBody(
+            "{\"circuit_breaker\":\"downstreamService\",\"response\":\"{\\\"source\\\":\\\"SPRING_CLOUD_CB_FALLBACK\\\"}\"}"));
+        assertTrue(EndpointStats.isFallbackBody("{\"circuit_breaker\":\"criticalService\",\"cache_age_ms\":1200}"));
+        assertFalse(EndpointStats.isFallbackBody("not json"));
+
+        Behavior outage = Behavior.healthy().withErrors(1, 503);
+        try (DownstreamSimulator simulator = DownstreamSimulator.start(Scenario.constant(outage));
+             OpenLoopDriver driver = new OpenLoopDriver(simulator.replica(0).url(), 200, Map.of("/", 1), Duration.ofSeconds(5))) {
+            EndpointStats stats = driver.run(Duration.ofMillis(500)).get("/");
+
+            assertEquals(100, stats.count(EndpointStats.Outcome.ERROR));
+            Map<String, Object> report = stats.report(0.5);
+            assertEquals(200.0, report.get("throughput_rps"));
+            assertEquals(0.0, report.get("fallback_ratio"));
+        }
+    }
+
+    @Test
+    @DisplayName("Weighted mix interleaves endpoints instead of sending them in bursts")
+    void mix_interleavesByWeight() {
+        List<String> schedule = OpenLoopDriver.interleave(LoadTest.parseMix("/a:2,/b:1"));
+
+        assertEquals(List.of("/a", "/b", "/a"), schedule);
+        assertEquals(100, OpenLoopDriver.interleave(
+            LoadTest.parseMix("/api/call:45,/api/call-critical:45,/api/dashboard:10")).size());
+    }
+
+    @Test
+    @DisplayName("State timeline records only changes, tagged with the current phase")
+    void timeline_recordsTransitions() throws Exception {
+        try (StateTimeline timeline = new StateTimeline()) {
+            timeline.phase("healthy");
+            timeline.observe("{\"downstreamService\":{\"state\":\"CLOSED\"},\"criticalService\":{\"state\":\"CLOSED\"}}");
+            timeline.observe("{\"downstreamService\":{\"state\":\"CLOSED\"},\"criticalService\":{\"state\":\"CLOSED\"}}");
+            timeline.phase("outage");
+            timeline.observe("{\"downstreamService\":{\"state\":\"OPEN\"},\"criticalService\":{\"state\":\"CLOSED\"}}");
+            timeline.phase("recovery");
+            timeline.observe("{\"downstreamService\":{\"state\":\"HALF_OPEN\"},\"criticalService\":{\"state\":\"CLOSED\"}}");
+
+            List<Map<String, Object>> transitions = timeline.transitions();
+            assertEquals(2, transitions.size());
+            assertEquals("outage", transitions.get(0).get("phase"));
+            assertEquals("downstreamService", transitions.get(0).get("breaker"));
+            assertEquals("CLOSED", transitions.get(0).get("from"));
+            assertEquals("OPEN", transitions.get(0).get("to"));
+            assertEquals("HALF_OPEN", transitions.get(1).get("to"));
+        }
+    }
+}
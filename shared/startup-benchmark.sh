@@ -0,0 +1,66 @@
+#!/usr/bin/env bash
+# 啟動時間基準: 目前的 fat jar 啟動 vs. fast-start 模式 (Spring AOT + CDS archive)
+#
+# 用法: shared/startup-benchmark.sh <02-java-resilience4j|03-spring-cloud-cb> [runs]
+#
+# 每種模式啟動 runs 次 (預設 5)，量測從啟動 JVM 到第一個 /api/call 回應 (含 fallback) 的時間，
+# 以及當下的 RSS，輸出中位數。CDS archive 由本機 JDK 的 training run 產生，必須與執行時是同一個 JDK。
+# 需要 JDK 17+、curl、GNU date。
+set -euo pipefail
+
+APP_DIR=${1:?usage: $0 <app-dir> [runs]}
+RUNS=${2:-5}
+PORT=${PORT:-18080}
+GRADLE=${GRADLE:-./gradlew}
+
+cd "$(dirname "$0")/../$APP_DIR"
+$GRADLE -q bootJar fastStart -Paot
+FAT_JAR=$(ls build/libs/*-1.0.0.jar)
+FAST_DIR=build/fast-start
+
+# Training run: context refresh 完成即結束，載入過的類別寫入 app.jsa
+rm -f "$FAST_DIR/app.jsa"
+(cd "$FAST_DIR" && java -XX:ArchiveClassesAtExit=app.jsa -Dspring.aot.enabled=true \
+    -Dspring.context.exit=onRefresh @app.args > training.log 2>&1)
+
+# 啟動一次，輸出 "<毫秒> <RSS KB>"；$1 為工作目錄，其餘為 java 參數
+measure() {
+    local dir=$1; shift
+    local start end pid rss
+    start=$(date +%s%N)
+    (cd "$dir" && exec java "$@" --server.port="$PORT") > /dev/null 2>&1 &
+    pid=$!
+    until curl -s -o /dev/null "http://localhost:$PORT/api/call"; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "process exited before serving /api/call" >&2
+            return 1
+        fi
+        sleep 0.01
+    done
+    end=$(date +%s%N)
+    rss=$(ps -o rss= -p "$pid")
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+    echo "$(( (end - start) / 1000000 )) $rss"
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'
+}
+
+report() {
+    local mode=$1; shift
+    local samples=()
+    for _ in $(seq "$RUNS"); do
+        samples+=("$(measure "$@")")
+    done
+    local ms rss
+    ms=$(printf '%s\n' "${samples[@]}" | cut -d' ' -f1 | median)
+    rss=$(printf '%s\n' "${samples[@]}" | cut -d' ' -f2 | median)
+    printf '%-10s %20s %10s\n' "$mode" "$ms" "$(( rss / 1024 ))"
+}
+
+printf '%-10s %20s %10s\n' "mode" "first_api_call_ms" "rss_mb"
+report fat-jar . -jar "$FAT_JAR"
+report aot "$FAST_DIR" -Dspring.aot.enabled=true @app.args
+report aot+cds "$FAST_DIR" -XX:SharedArchiveFile=app.jsa -Dspring.aot.enabled=true @app.args